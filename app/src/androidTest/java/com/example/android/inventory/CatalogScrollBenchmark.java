@@ -0,0 +1,144 @@
+package com.example.android.inventory;
+
+import android.content.ContentValues;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+/**
+ * Scrolls the catalog and counts the objects allocated on the main thread while rows are bound.
+ * <p/>
+ * The products are added to the database of the app and removed again afterwards.
+ */
+@SuppressWarnings("deprecation")
+public class CatalogScrollBenchmark extends ActivityInstrumentationTestCase2<CatalogActivity> {
+
+    private static final String LOG_TAG = CatalogScrollBenchmark.class.getSimpleName();
+
+    /**
+     * Supplier of the benchmark products, used to remove them again
+     */
+    private static final String BENCHMARK_SUPPLIER = "Scroll Benchmark Supplier";
+
+    /**
+     * Number of products added for the benchmark
+     */
+    private static final int ROW_COUNT = 500;
+
+    /**
+     * Number of times every loaded row is bound
+     */
+    private static final int BIND_PASSES = 10;
+
+    /**
+     * Distance scrolled per simulated frame, in pixels
+     */
+    private static final int SCROLL_STEP = 40;
+
+    /**
+     * Number of simulated scroll frames
+     */
+    private static final int SCROLL_FRAMES = 200;
+
+    private CatalogActivity mActivity;
+    private RecyclerView mRecyclerView;
+
+    public CatalogScrollBenchmark() {
+        super(CatalogActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContentValues[] rows = new ContentValues[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_NAME, "Benchmark Product " + i);
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_PRICE, 199 + i % 100 * 100);
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_QUANTITY, i % 50);
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, BENCHMARK_SUPPLIER);
+        }
+        getInstrumentation().getTargetContext().getContentResolver()
+                .bulkInsert(ProductEntry.CONTENT_URI, rows);
+
+        mActivity = getActivity();
+        mRecyclerView = (RecyclerView) mActivity.findViewById(R.id.list);
+        waitForRows(ProductPager.PAGE_SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().getTargetContext().getContentResolver().delete(
+                ProductEntry.CONTENT_URI, ProductEntry.COLUMN_PRODUCT_SUPPLIER + "=?",
+                new String[]{BENCHMARK_SUPPLIER});
+        super.tearDown();
+    }
+
+    public void testBindAllocatesNothing() throws Throwable {
+        final long[] allocations = new long[1];
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                ProductCursorAdapter adapter = mActivity.mCursorAdapter;
+                ProductCursorAdapter.ProductViewHolder holder =
+                        adapter.onCreateViewHolder(mRecyclerView, 0);
+
+                // Bind every row of the first page once, so lazily created objects already exist
+                for (int position = 0; position < ProductPager.PAGE_SIZE; position++) {
+                    adapter.onBindViewHolder(holder, position);
+                }
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                for (int pass = 0; pass < BIND_PASSES; pass++) {
+                    for (int position = 0; position < ProductPager.PAGE_SIZE; position++) {
+                        adapter.onBindViewHolder(holder, position);
+                    }
+                }
+                Debug.stopAllocCounting();
+                allocations[0] = Debug.getThreadAllocCount();
+            }
+        });
+        Log.i(LOG_TAG, "bind: " + allocations[0] + " allocations in "
+                + BIND_PASSES * ProductPager.PAGE_SIZE + " binds");
+        assertEquals(0, allocations[0]);
+    }
+
+    public void testScroll() throws Throwable {
+        final long[] results = new long[2];
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                long start = SystemClock.uptimeMillis();
+                // RecyclerView lays out the new rows within scrollBy(), like it does in a frame
+                for (int frame = 0; frame < SCROLL_FRAMES; frame++) {
+                    mRecyclerView.scrollBy(0, SCROLL_STEP);
+                }
+                results[0] = SystemClock.uptimeMillis() - start;
+                Debug.stopAllocCounting();
+                results[1] = Debug.getThreadAllocCount();
+            }
+        });
+        // Layout and drawing allocate in the framework, so this is logged rather than asserted
+        Log.i(LOG_TAG, "scroll: " + SCROLL_FRAMES + " frames in " + results[0] + " ms, "
+                + results[1] + " allocations");
+    }
+
+    /**
+     * Wait until the catalog shows at least the given number of rows.
+     */
+    private void waitForRows(int count) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (mActivity.mCursorAdapter.getItemCount() < count) {
+            assertTrue("Catalog didn't load", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+        getInstrumentation().waitForIdleSync();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.inventory;
+
+import android.database.Cursor;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+/**
+ * Checks that the catalog never writes to the provider on the main thread. The provider reports
+ * main thread writes to {@link StrictMode}, and the policy set here crashes the app for them.
+ */
+@SuppressWarnings("deprecation")
+public class CatalogStrictModeTest extends ActivityInstrumentationTestCase2<CatalogActivity> {
+
+    // Selects the products the "Insert dummy data" menu option adds
+    private static final String DUMMY_SELECTION = ProductEntry.COLUMN_PRODUCT_NAME + "=? AND "
+            + ProductEntry.COLUMN_PRODUCT_SUPPLIER + "=?";
+    private static final String[] DUMMY_SELECTION_ARGS = {"Jump Rope", "Big 5 Sporting Goods"};
+
+    private CatalogActivity mActivity;
+    private StrictMode.ThreadPolicy mOldPolicy;
+    private long mMaxIdBefore;
+
+    public CatalogStrictModeTest() {
+        super(CatalogActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMaxIdBefore = queryMaxDummyId();
+        mActivity = getActivity();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mOldPolicy = StrictMode.getThreadPolicy();
+                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                        .detectCustomSlowCalls()
+                        .penaltyLog()
+                        .penaltyDeath()
+                        .build());
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictMode.setThreadPolicy(mOldPolicy);
+            }
+        });
+        // Only remove the products this test added
+        getInstrumentation().getTargetContext().getContentResolver().delete(
+                ProductEntry.CONTENT_URI, DUMMY_SELECTION + " AND " + ProductEntry._ID + ">?",
+                new String[]{DUMMY_SELECTION_ARGS[0], DUMMY_SELECTION_ARGS[1],
+                        String.valueOf(mMaxIdBefore)});
+        super.tearDown();
+    }
+
+    public void testInsertAndSaleWriteOffTheMainThread() throws Exception {
+        assertTrue(getInstrumentation().invokeMenuActionSync(mActivity,
+                R.id.action_insert_dummy_data, 0));
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (queryMaxDummyId() == mMaxIdBefore) {
+            assertTrue("Product wasn't inserted", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+
+        // Sell one piece from the first row, which also writes through the provider
+        getInstrumentation().waitForIdleSync();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mActivity.findViewById(R.id.sale_btn).performClick();
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+    }
+
+    /**
+     * Returns the highest ID of the dummy products, or 0 if there are none.
+     */
+    private long queryMaxDummyId() {
+        Cursor cursor = getInstrumentation().getTargetContext().getContentResolver().query(
+                ProductEntry.CONTENT_URI, new String[]{"max(" + ProductEntry._ID + ")"},
+                DUMMY_SELECTION, DUMMY_SELECTION_ARGS, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.inventory;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link FrameStats}.
+ */
+public class FrameStatsTest extends TestCase {
+
+    /**
+     * Refresh interval of a 60 Hz display
+     */
+    private static final long FRAME_INTERVAL_NANOS = 16666667;
+
+    public void testDroppedFramesRoundToClosestInterval() {
+        assertEquals(0, FrameStats.getDroppedFrames(0, FRAME_INTERVAL_NANOS));
+        assertEquals(0, FrameStats.getDroppedFrames(16600000, FRAME_INTERVAL_NANOS));
+        // Vsync jitter doesn't count as a dropped frame
+        assertEquals(0, FrameStats.getDroppedFrames(20000000, FRAME_INTERVAL_NANOS));
+        assertEquals(1, FrameStats.getDroppedFrames(30000000, FRAME_INTERVAL_NANOS));
+        assertEquals(2, FrameStats.getDroppedFrames(50000000, FRAME_INTERVAL_NANOS));
+    }
+
+    public void testTraceListsFramesOldestFirst() throws IOException, JSONException {
+        FrameStats stats = new FrameStats(3);
+        FrameStats.Screen screen = stats.getScreen("CatalogActivity");
+        stats.addTracedFrame(screen, 1000000, 16000000, 0);
+        stats.addTracedFrame(screen, 2000000, 16000000, 0);
+
+        List<Double> starts = getFrameStarts(stats);
+        assertEquals(2, starts.size());
+        assertEquals(1000.0, starts.get(0), 0);
+        assertEquals(2000.0, starts.get(1), 0);
+    }
+
+    public void testTraceKeepsMostRecentFramesOnceRingIsFull() throws IOException, JSONException {
+        FrameStats stats = new FrameStats(3);
+        FrameStats.Screen screen = stats.getScreen("CatalogActivity");
+        for (int i = 1; i <= 5; i++) {
+            stats.addTracedFrame(screen, i * 1000000L, 16000000, i == 5 ? -1 : 0);
+        }
+
+        JSONArray events = writeTrace(stats);
+        List<Double> starts = getFrameStarts(stats);
+        assertEquals(3, starts.size());
+        assertEquals(3000.0, starts.get(0), 0);
+        assertEquals(4000.0, starts.get(1), 0);
+        assertEquals(5000.0, starts.get(2), 0);
+
+        // The screen is named first, the opening has no dropped frames
+        assertEquals("M", events.getJSONObject(0).getString("ph"));
+        JSONObject open = events.getJSONObject(events.length() - 1);
+        assertEquals("Open", open.getString("name"));
+        assertFalse(open.has("args"));
+        assertEquals(0, events.getJSONObject(1).getJSONObject("args").getLong("dropped"));
+    }
+
+    private static JSONArray writeTrace(FrameStats stats) throws IOException, JSONException {
+        StringWriter writer = new StringWriter();
+        stats.writeTrace(writer);
+        return new JSONObject(writer.toString()).getJSONArray("traceEvents");
+    }
+
+    /**
+     * Returns the start times of the traced frames in microseconds, in the order of the trace.
+     */
+    private static List<Double> getFrameStarts(FrameStats stats) throws IOException, JSONException {
+        JSONArray events = writeTrace(stats);
+        List<Double> starts = new ArrayList<Double>();
+        for (int i = 0; i < events.length(); i++) {
+            JSONObject event = events.getJSONObject(i);
+            if ("X".equals(event.getString("ph"))) {
+                starts.add(event.getDouble("ts"));
+            }
+        }
+        return starts;
+    }
+}
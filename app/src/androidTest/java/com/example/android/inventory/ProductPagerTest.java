@@ -0,0 +1,417 @@
+package com.example.android.inventory;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.test.IsolatedContext;
+import android.test.ProviderTestCase2;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.inventory.data.ProductContract;
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductProvider;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ProductPager}, over a provider of its own whose changes reach the observer of
+ * the pager.
+ */
+public class ProductPagerTest extends ProviderTestCase2<ProductProvider> {
+
+    /**
+     * Name of the database of the provider, prefixed by the test context
+     */
+    private static final String DATABASE_NAME = "inventory.db";
+
+    /**
+     * Columns the pager loads, the sort column is added by the pager
+     */
+    private static final String[] PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY};
+
+    private ForwardingResolver mResolver;
+    private ProductProvider mProvider;
+    private ProductPager mPager;
+    private RecordingListener mListener;
+
+    public ProductPagerTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = new ForwardingResolver(getContext());
+        Context context = new IsolatedContext(mResolver,
+                new RenamingDelegatingContext(getContext(), "pager."));
+        context.deleteDatabase(DATABASE_NAME);
+        mProvider = new ProductProvider();
+        mProvider.attachInfo(context, null);
+        mResolver.addProvider(ProductContract.CONTENT_AUTHORITY, mProvider);
+        mListener = new RecordingListener();
+        mPager = new ProductPager(mResolver, PROJECTION, mListener);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mPager.close();
+            }
+        });
+        mProvider.getContext().deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testRowsKeepTheirIdsWhileTheirPageIsClosed() throws Exception {
+        int count = 4 * ProductPager.PAGE_SIZE + 50;
+        insertProducts(count, 0);
+        showPages(ProductEntry.SORT_ORDER_NAME, null);
+
+        // Scrolling to the last page closes the first pages
+        long[] ids = readRowIds(count);
+        assertNull(getRow(0));
+        for (int position = 0; position < count; position++) {
+            assertEquals(ids[position], getRowId(position));
+        }
+
+        // The first page is loaded again with the same IDs
+        scrollTo(0);
+        for (int position = 0; position < ProductPager.PAGE_SIZE; position++) {
+            assertEquals(ids[position], getRowId(position));
+        }
+    }
+
+    public void testPagesListEveryProductOnceInSortOrder() throws Exception {
+        // Every price is shared by about 36 products, so ties cross both page boundaries
+        int count = 2 * ProductPager.PAGE_SIZE + 50;
+        insertProducts(count, 7);
+        showPages(ProductEntry.SORT_ORDER_PRICE, null);
+
+        assertRowIds(queryIds(ProductEntry.SORT_ORDER_PRICE, null), readRowIds(count));
+    }
+
+    public void testProductsWithTheSameSortKeyArePagedById() throws Exception {
+        // The last page holds a single product
+        int count = 2 * ProductPager.PAGE_SIZE + 1;
+        insertProducts(count, 0);
+        showPages(ProductEntry.SORT_ORDER_PRICE, null);
+
+        assertRowIds(queryIds(ProductEntry.SORT_ORDER_PRICE, null), readRowIds(count));
+    }
+
+    public void testFullLastPageIsFollowedByNoRows() throws Exception {
+        int count = 2 * ProductPager.PAGE_SIZE;
+        insertProducts(count, 3);
+        showPages(ProductEntry.SORT_ORDER_PRICE, null);
+
+        long[] ids = readRowIds(count);
+        assertRowIds(queryIds(ProductEntry.SORT_ORDER_PRICE, null), ids);
+        // The page opened after the last full one finds no rows
+        scrollTo(count - 1);
+        assertEquals(count, getCount());
+        assertNull(getRow(count));
+    }
+
+    public void testChangedProductIsPatchedWithoutReloadingItsPage() throws Exception {
+        int count = ProductPager.PAGE_SIZE + 50;
+        insertProducts(count, 0);
+        showPages(ProductEntry.SORT_ORDER_NAME, null);
+        waitForCount(count);
+        String neighbourName = getRowValue(6, ProductEntry.COLUMN_PRODUCT_NAME);
+        int pagesChanged = getListenerCounts()[0];
+
+        // The price isn't the sort key, so the product keeps its place
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 4200);
+        assertEquals(1, mResolver.update(
+                ContentUris.withAppendedId(ProductEntry.CONTENT_URI, getRowId(5)), values,
+                null, null));
+
+        waitFor("The changed row wasn't refreshed", new Condition() {
+            @Override
+            public boolean isMet() {
+                return mListener.rowsChanged == 1;
+            }
+        });
+        int[] counts = getListenerCounts();
+        assertEquals(pagesChanged, counts[0]);
+        assertEquals(5, counts[2]);
+        assertEquals("4200", getRowValue(5, ProductEntry.COLUMN_PRODUCT_PRICE));
+        assertEquals(neighbourName, getRowValue(6, ProductEntry.COLUMN_PRODUCT_NAME));
+    }
+
+    public void testProductLeavingTheSelectionIsRemoved() throws Exception {
+        int count = ProductPager.PAGE_SIZE + 50;
+        insertProducts(count, 0);
+        showPages(ProductEntry.SORT_ORDER_NAME, ProductEntry.SELECTION_IN_STOCK);
+        waitForCount(count);
+        long nextId = getRowId(6);
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 0);
+        assertEquals(1, mResolver.update(
+                ContentUris.withAppendedId(ProductEntry.CONTENT_URI, getRowId(5)), values,
+                null, null));
+
+        // The pages are loaded again without the product, instead of patching its row
+        waitForCount(count - 1);
+        assertEquals(nextId, getRowId(5));
+        assertEquals(0, getListenerCounts()[1]);
+    }
+
+    /**
+     * Insert products named in the order they are inserted, with prices repeating every
+     * priceCycle products, or all the same price if it's 0.
+     */
+    private void insertProducts(int count, int priceCycle) {
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new ContentValues();
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_NAME,
+                    String.format(Locale.US, "Product %04d", i));
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_PRICE,
+                    priceCycle == 0 ? 100 : i % priceCycle * 100);
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 10);
+            rows[i].put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Big 5 Sporting Goods");
+        }
+        assertEquals(count, mResolver.bulkInsert(ProductEntry.CONTENT_URI, rows));
+    }
+
+    /**
+     * Show the pages of the catalog in the given order and wait for the first one.
+     */
+    private void showPages(final String sortOrder, final String selection)
+            throws InterruptedException {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mPager.setSortOrder(sortOrder, selection);
+            }
+        });
+        scrollTo(0);
+    }
+
+    /**
+     * Show the row at the given position and wait until its page is loaded.
+     */
+    private void scrollTo(final int position) throws InterruptedException {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                mPager.onVisibleRowsChanged(position, position);
+            }
+        });
+        waitFor("Row " + position + " wasn't loaded", new Condition() {
+            @Override
+            public boolean isMet() {
+                return mPager.getRow(position) != null;
+            }
+        });
+    }
+
+    /**
+     * Scroll through the given number of rows and return their product IDs, in order.
+     */
+    private long[] readRowIds(int count) throws InterruptedException {
+        long[] ids = new long[count];
+        for (int position = 0; position < count; position++) {
+            scrollTo(position);
+            ids[position] = getRowId(position);
+        }
+        waitForCount(count);
+        return ids;
+    }
+
+    /**
+     * Returns the product IDs of all products matching the selection, queried in one go.
+     */
+    private long[] queryIds(String sortOrder, String selection) {
+        Cursor cursor = mResolver.query(ProductEntry.CONTENT_URI, new String[]{ProductEntry._ID},
+                selection, null, sortOrder);
+        assertNotNull(cursor);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertRowIds(long[] expected, long[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Row " + i, expected[i], actual[i]);
+        }
+    }
+
+    private void waitForCount(final int count) throws InterruptedException {
+        waitFor("Expected " + count + " rows", new Condition() {
+            @Override
+            public boolean isMet() {
+                return mPager.getCount() == count;
+            }
+        });
+    }
+
+    private int getCount() throws InterruptedException {
+        final int[] count = new int[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                count[0] = mPager.getCount();
+            }
+        });
+        return count[0];
+    }
+
+    private long getRowId(final int position) throws InterruptedException {
+        final long[] id = new long[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                id[0] = mPager.getRowId(position);
+            }
+        });
+        return id[0];
+    }
+
+    /**
+     * Returns the given column of the loaded row at the given position, or null if the row
+     * isn't loaded.
+     */
+    private String getRowValue(final int position, final String column)
+            throws InterruptedException {
+        final String[] value = new String[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                Cursor row = mPager.getRow(position);
+                value[0] = row == null ? null : row.getString(row.getColumnIndexOrThrow(column));
+            }
+        });
+        return value[0];
+    }
+
+    /**
+     * Returns the number of page changes, the number of row changes and the position of the
+     * last changed row the listener received.
+     */
+    private int[] getListenerCounts() throws InterruptedException {
+        final int[] counts = new int[3];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                counts[0] = mListener.pagesChanged;
+                counts[1] = mListener.rowsChanged;
+                counts[2] = mListener.changedPosition;
+            }
+        });
+        return counts;
+    }
+
+    private Cursor getRow(final int position) throws InterruptedException {
+        final Cursor[] row = new Cursor[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                row[0] = mPager.getRow(position);
+            }
+        });
+        return row[0];
+    }
+
+    /**
+     * A condition checked on the main thread.
+     */
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private static void waitFor(String message, final Condition condition)
+            throws InterruptedException {
+        final boolean[] met = new boolean[1];
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (true) {
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    met[0] = condition.isMet();
+                }
+            });
+            if (met[0]) {
+                return;
+            }
+            assertTrue(message, SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Counts the updates of the pager. Only used on the main thread.
+     */
+    private static class RecordingListener implements ProductPager.Listener {
+
+        int pagesChanged;
+        int rowsChanged;
+        int changedPosition = -1;
+
+        @Override
+        public void onPagesChanged() {
+            pagesChanged++;
+        }
+
+        @Override
+        public void onRowChanged(int position) {
+            rowsChanged++;
+            changedPosition = position;
+        }
+    }
+
+    /**
+     * Resolver that passes the changes notified by the provider on to the observers registered
+     * with the system, like the one of the pager, instead of dropping them.
+     */
+    private static class ForwardingResolver extends MockContentResolver {
+
+        private final Context mContext;
+
+        ForwardingResolver(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public void notifyChange(Uri uri, ContentObserver observer, boolean syncToNetwork) {
+            mContext.getContentResolver().notifyChange(uri, observer, false);
+        }
+    }
+}
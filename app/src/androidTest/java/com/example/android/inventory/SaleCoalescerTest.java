@@ -0,0 +1,155 @@
+package com.example.android.inventory;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.text.format.DateUtils;
+
+import com.example.android.inventory.data.ProductContract;
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductProvider;
+import com.example.android.inventory.data.ProductWriter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link SaleCoalescer}.
+ */
+public class SaleCoalescerTest extends ProviderTestCase2<ProductProvider> {
+
+    /**
+     * Quantity of the product before any sales
+     */
+    private static final int QUANTITY = 10;
+
+    private long mProductId;
+
+    public SaleCoalescerTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Jump Rope");
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1399);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, QUANTITY);
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Big 5 Sporting Goods");
+        Uri uri = getMockContentResolver().insert(ProductEntry.CONTENT_URI, values);
+        mProductId = ContentUris.parseId(uri);
+    }
+
+    public void testSalesWithinTheWindowAreWrittenTogether() throws Exception {
+        final SaleCoalescer coalescer =
+                new SaleCoalescer(new ProductWriter(getMockContentResolver()), 100);
+        final int[] pendingDelta = new int[1];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                coalescer.addSale(mProductId, QUANTITY);
+                coalescer.addSale(mProductId, QUANTITY);
+                coalescer.addSale(mProductId, QUANTITY);
+                pendingDelta[0] = coalescer.getPendingDelta(mProductId, QUANTITY);
+            }
+        });
+
+        // The sales are shown right away, but not stored before the window ends
+        assertEquals(-3, pendingDelta[0]);
+        assertEquals(10, queryQuantity());
+
+        waitForSalesStored(coalescer);
+        assertEquals(7, queryQuantity());
+    }
+
+    public void testFlushWritesPendingSalesRightAway() throws Exception {
+        final SaleCoalescer coalescer = new SaleCoalescer(
+                new ProductWriter(getMockContentResolver()), DateUtils.HOUR_IN_MILLIS);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                coalescer.addSale(mProductId, QUANTITY);
+                coalescer.flush();
+            }
+        });
+
+        waitForSalesStored(coalescer);
+        assertEquals(9, queryQuantity());
+    }
+
+    public void testRowRequeriedBeforeTheWriterReportsBackDoesNotCountTheSaleTwice()
+            throws Exception {
+        final SaleCoalescer coalescer = new SaleCoalescer(
+                new ProductWriter(getMockContentResolver()), DateUtils.HOUR_IN_MILLIS);
+        final int[] pendingDeltas = new int[2];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                coalescer.addSale(mProductId, QUANTITY);
+                coalescer.flush();
+                // The writer reports back on the main thread, so it can't while this waits
+                // for the requeried row
+                long deadline = SystemClock.uptimeMillis() + 5000;
+                while (queryQuantity() == QUANTITY && SystemClock.uptimeMillis() < deadline) {
+                    SystemClock.sleep(10);
+                }
+                pendingDeltas[0] = coalescer.getPendingDelta(mProductId, QUANTITY);
+                pendingDeltas[1] = coalescer.getPendingDelta(mProductId, QUANTITY - 1);
+            }
+        });
+
+        // A row still showing the old quantity subtracts the sale, the requeried one doesn't
+        assertEquals(-1, pendingDeltas[0]);
+        assertEquals(0, pendingDeltas[1]);
+        waitForSalesStored(coalescer);
+        assertEquals(QUANTITY - 1, queryQuantity());
+    }
+
+    private void waitForSalesStored(final SaleCoalescer coalescer) throws InterruptedException {
+        final int[] pendingDelta = new int[1];
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        do {
+            assertTrue("Sales weren't stored", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(50);
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    // Compared with the quantity before the sales, so only the writer
+                    // reporting back clears the delta
+                    pendingDelta[0] = coalescer.getPendingDelta(mProductId, QUANTITY);
+                }
+            });
+        } while (pendingDelta[0] != 0);
+    }
+
+    private static void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                runnable.run();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private int queryQuantity() {
+        Cursor cursor = getMockContentResolver().query(
+                ContentUris.withAppendedId(ProductEntry.CONTENT_URI, mProductId),
+                new String[]{ProductEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
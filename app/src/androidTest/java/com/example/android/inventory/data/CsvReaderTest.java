@@ -0,0 +1,60 @@
+package com.example.android.inventory.data;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link CsvReader}.
+ */
+public class CsvReaderTest extends TestCase {
+
+    public void testQuotedFieldsKeepCommasQuotesAndLineBreaks() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\uFEFFname,supplier\r\n"
+                + "\"Rope, Jump\",\"Big \"\"5\"\"\"\r\n"
+                + "\"Two\nLines\",Acme\n"
+                + "Last,\n"));
+
+        assertRow(reader, 1, "name", "supplier");
+        assertRow(reader, 2, "Rope, Jump", "Big \"5\"");
+        assertRow(reader, 3, "Two\nLines", "Acme");
+        // The quoted line break counts as a line
+        assertRow(reader, 5, "Last", "");
+        assertNull(reader.readRow());
+    }
+
+    public void testLastRowNeedsNoLineBreak() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,b\n\nc,d"));
+
+        assertRow(reader, 1, "a", "b");
+        assertRow(reader, 2, "");
+        assertRow(reader, 3, "c", "d");
+        assertNull(reader.readRow());
+    }
+
+    public void testUnclosedQuoteIsLimitedToOneField() {
+        StringBuilder csv = new StringBuilder("name\n\"");
+        for (int i = 0; i <= CsvReader.MAX_FIELD_LENGTH; i++) {
+            csv.append('x');
+        }
+        CsvReader reader = new CsvReader(new StringReader(csv.toString()));
+
+        try {
+            reader.readRow();
+            reader.readRow();
+            fail("Expected the endless field to be rejected");
+        } catch (IOException expected) {
+            // The rest of the input isn't read into memory
+        }
+    }
+
+    private static void assertRow(CsvReader reader, int lineNumber, String... fields)
+            throws IOException {
+        String[] row = reader.readRow();
+        assertNotNull(row);
+        assertEquals(Arrays.asList(fields), Arrays.asList(row));
+        assertEquals(lineNumber, reader.getRowLineNumber());
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures catalog query latency while another thread keeps writing quantity changes, once in
+ * rollback-journal mode and once in the storage mode of the build type.
+ */
+public class ProductDbContentionBenchmark extends AndroidTestCase {
+
+    private static final String LOG_TAG = ProductDbContentionBenchmark.class.getSimpleName();
+
+    /**
+     * Number of products in the benchmark database
+     */
+    private static final int ROW_COUNT = 5000;
+
+    /**
+     * Number of catalog queries timed per run
+     */
+    private static final int QUERY_COUNT = 200;
+
+    public void testReadLatencyUnderWrites() throws Exception {
+        long[] rollbackLatencies = measureReadLatencies("contention_rollback.db",
+                ProductDbConfig.ROLLBACK_JOURNAL);
+        long[] configuredLatencies = measureReadLatencies("contention_configured.db",
+                ProductDbConfig.fromBuildConfig());
+
+        logLatencies("rollback journal", rollbackLatencies);
+        logLatencies("build type storage mode", configuredLatencies);
+    }
+
+    /**
+     * Return the sorted latencies, in microseconds, of {@link #QUERY_COUNT} catalog queries run
+     * while a second thread keeps updating quantities.
+     */
+    private long[] measureReadLatencies(String name, ProductDbConfig config) throws Exception {
+        getContext().deleteDatabase(name);
+        final ProductDbHelper dbHelper = new ProductDbHelper(getContext(), name, config);
+        try {
+            seedProducts(dbHelper.getWritableDatabase());
+
+            final AtomicBoolean running = new AtomicBoolean(true);
+            final AtomicInteger writes = new AtomicInteger();
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SQLiteDatabase db = dbHelper.getWritableDatabase();
+                    ContentValues values = new ContentValues();
+                    int i = 0;
+                    while (running.get()) {
+                        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, i % 100);
+                        db.update(ProductEntry.TABLE_NAME, values, ProductEntry._ID + "=?",
+                                new String[]{String.valueOf(1 + i % ROW_COUNT)});
+                        writes.incrementAndGet();
+                        i++;
+                    }
+                }
+            });
+            writer.start();
+
+            long[] latencies = new long[QUERY_COUNT];
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            String[] projection = {ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_NAME,
+                    ProductEntry.COLUMN_PRODUCT_QUANTITY, ProductEntry.COLUMN_PRODUCT_PRICE};
+            for (int i = 0; i < QUERY_COUNT; i++) {
+                long start = System.nanoTime();
+                Cursor cursor = db.query(ProductEntry.TABLE_NAME, projection, null, null, null,
+                        null, ProductEntry.SORT_ORDER_NAME);
+                // getCount() fills the first cursor window, which is when the query actually runs
+                assertEquals(ROW_COUNT, cursor.getCount());
+                cursor.close();
+                latencies[i] = (System.nanoTime() - start) / 1000;
+            }
+
+            running.set(false);
+            writer.join();
+            Log.i(LOG_TAG, name + ": " + writes.get() + " writes during the reads");
+
+            Arrays.sort(latencies);
+            return latencies;
+        } finally {
+            dbHelper.close();
+            getContext().deleteDatabase(name);
+        }
+    }
+
+    private static void seedProducts(SQLiteDatabase db) {
+        ContentValues values = new ContentValues();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+                values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 199 + i % 100 * 100);
+                values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, i % 50);
+                values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Supplier " + (i % 20));
+                db.insert(ProductEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static void logLatencies(String label, long[] sortedLatencies) {
+        Log.i(LOG_TAG, label + " read latency (us): p50=" + sortedLatencies[sortedLatencies.length / 2]
+                + " p95=" + sortedLatencies[sortedLatencies.length * 95 / 100]
+                + " max=" + sortedLatencies[sortedLatencies.length - 1]);
+    }
+}
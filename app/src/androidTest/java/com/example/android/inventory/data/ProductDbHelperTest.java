@@ -0,0 +1,219 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.SummaryEntry;
+
+/**
+ * Tests for the schema and migrations of {@link ProductDbHelper}.
+ */
+public class ProductDbHelperTest extends AndroidTestCase {
+
+    /**
+     * Columns shown by the catalog
+     */
+    private static final String CATALOG_COLUMNS = ProductEntry._ID + ", "
+            + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", "
+            + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+            + ProductEntry.COLUMN_PRODUCT_IMAGE;
+
+    private RenamingDelegatingContext mContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = new RenamingDelegatingContext(getContext(), "test.");
+        mContext.deleteDatabase("inventory.db");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase("inventory.db");
+        super.tearDown();
+    }
+
+    public void testCatalogSortOrdersUseIndexes() {
+        ProductDbHelper dbHelper = new ProductDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try {
+            String namePlan = explainCatalogQuery(db, ProductEntry.SORT_ORDER_NAME);
+            assertTrue(namePlan, namePlan.contains("COVERING INDEX " + ProductDbHelper.INDEX_PRODUCTS_NAME));
+            assertUsesIndex(explainCatalogQuery(db, ProductEntry.SORT_ORDER_SUPPLIER),
+                    ProductDbHelper.INDEX_PRODUCTS_SUPPLIER);
+            assertUsesIndex(explainCatalogQuery(db, ProductEntry.SORT_ORDER_QUANTITY),
+                    ProductDbHelper.INDEX_PRODUCTS_QUANTITY);
+            assertUsesIndex(explainCatalogQuery(db, ProductEntry.SORT_ORDER_PRICE),
+                    ProductDbHelper.INDEX_PRODUCTS_PRICE);
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    public void testInStockCatalogUsesSortIndexes() {
+        ProductDbHelper dbHelper = new ProductDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try {
+            String selection = ProductEntry.SELECTION_IN_STOCK;
+            String namePlan = explainCatalogQuery(db, selection, ProductEntry.SORT_ORDER_NAME);
+            assertTrue(namePlan, namePlan.contains("COVERING INDEX " + ProductDbHelper.INDEX_PRODUCTS_NAME));
+            assertFalse(namePlan, namePlan.contains("TEMP B-TREE"));
+            assertUsesIndex(explainCatalogQuery(db, selection, ProductEntry.SORT_ORDER_SUPPLIER),
+                    ProductDbHelper.INDEX_PRODUCTS_SUPPLIER);
+            assertUsesIndex(explainCatalogQuery(db, selection, ProductEntry.SORT_ORDER_QUANTITY),
+                    ProductDbHelper.INDEX_PRODUCTS_QUANTITY);
+            assertUsesIndex(explainCatalogQuery(db, selection, ProductEntry.SORT_ORDER_PRICE),
+                    ProductDbHelper.INDEX_PRODUCTS_PRICE);
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    public void testUpgradeFromVersion1CreatesIndexes() {
+        SQLiteDatabase oldDb = createVersion1Database();
+        oldDb.execSQL("INSERT INTO " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ") VALUES ('Jump Rope', 13.99, 'Big 5')");
+        oldDb.close();
+
+        ProductDbHelper dbHelper = new ProductDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try {
+            Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?",
+                    new String[]{ProductDbHelper.INDEX_PRODUCTS_NAME});
+            try {
+                assertEquals(1, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+            assertUsesIndex(explainCatalogQuery(db, ProductEntry.SORT_ORDER_NAME),
+                    ProductDbHelper.INDEX_PRODUCTS_NAME);
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    public void testUpgradeStoresPricesInCents() {
+        SQLiteDatabase oldDb = createVersion1Database();
+        oldDb.execSQL("INSERT INTO " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", " + ProductEntry.COLUMN_PRODUCT_SUPPLIER
+                + ") VALUES ('Jump Rope', 13.99, 3, 'Big 5')");
+        oldDb.execSQL("INSERT INTO " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ") VALUES ('Ball', 0.1, 'Big 5')");
+        oldDb.execSQL("DELETE FROM " + ProductEntry.TABLE_NAME + " WHERE "
+                + ProductEntry.COLUMN_PRODUCT_NAME + " = 'Ball'");
+        oldDb.close();
+
+        ProductDbHelper dbHelper = new ProductDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            Cursor cursor = db.rawQuery("SELECT " + ProductEntry.COLUMN_PRODUCT_PRICE + ", typeof("
+                    + ProductEntry.COLUMN_PRODUCT_PRICE + ") FROM " + ProductEntry.TABLE_NAME, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(1399, cursor.getLong(0));
+                assertEquals("integer", cursor.getString(1));
+            } finally {
+                cursor.close();
+            }
+            assertTrue(ProductDbHelper.isSummaryConsistent(db));
+
+            // The ID of the deleted product isn't handed out again
+            db.execSQL("INSERT INTO " + ProductEntry.TABLE_NAME + " ("
+                    + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+                    + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ") VALUES ('Hoop', 2500, 'Big 5')");
+            cursor = db.rawQuery("SELECT max(" + ProductEntry._ID + ") FROM "
+                    + ProductEntry.TABLE_NAME, null);
+            try {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(3, cursor.getLong(0));
+            } finally {
+                cursor.close();
+            }
+            assertTrue(ProductDbHelper.isSummaryConsistent(db));
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    public void testSummaryCheckDetectsAndRepairsDrift() {
+        ProductDbHelper dbHelper = new ProductDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        try {
+            db.execSQL("INSERT INTO " + ProductEntry.TABLE_NAME + " ("
+                    + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", " + ProductEntry.COLUMN_PRODUCT_SUPPLIER
+                    + ") VALUES ('Jump Rope', 1399, 3, 'Big 5')");
+            assertTrue(ProductDbHelper.isSummaryConsistent(db));
+
+            db.execSQL("UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                    + SummaryEntry.COLUMN_PRODUCT_COUNT + " = 5");
+            assertFalse(ProductDbHelper.isSummaryConsistent(db));
+
+            ProductDbHelper.rebuildSummary(db);
+            assertTrue(ProductDbHelper.isSummaryConsistent(db));
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    /**
+     * Create a database with the version 1 schema, where prices were dollars.
+     */
+    private SQLiteDatabase createVersion1Database() {
+        SQLiteDatabase oldDb = mContext.openOrCreateDatabase("inventory.db", 0, null);
+        oldDb.execSQL("CREATE TABLE " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ProductEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                + ProductEntry.COLUMN_PRODUCT_PRICE + " REAL NOT NULL, "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " TEXT NOT NULL, "
+                + ProductEntry.COLUMN_PRODUCT_IMAGE + " TEXT);");
+        oldDb.setVersion(1);
+        return oldDb;
+    }
+
+    /**
+     * Assert that a query plan reads from the given index and doesn't need a temporary B-tree
+     * to sort the results.
+     */
+    private static void assertUsesIndex(String plan, String indexName) {
+        assertTrue(plan, plan.contains("INDEX " + indexName));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    /**
+     * Return the details of the query plan for the catalog query in the given sort order.
+     */
+    private static String explainCatalogQuery(SQLiteDatabase db, String sortOrder) {
+        return explainCatalogQuery(db, null, sortOrder);
+    }
+
+    /**
+     * Return the details of the query plan for the catalog query of the products matching the
+     * given selection, or all of them if it's null, in the given sort order.
+     */
+    private static String explainCatalogQuery(SQLiteDatabase db, String selection,
+                                              String sortOrder) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN SELECT " + CATALOG_COLUMNS
+                + " FROM " + ProductEntry.TABLE_NAME
+                + (selection == null ? "" : " WHERE " + selection)
+                + " ORDER BY " + sortOrder, null);
+        try {
+            int detailColumnIndex = cursor.getColumnIndexOrThrow("detail");
+            StringBuilder plan = new StringBuilder();
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
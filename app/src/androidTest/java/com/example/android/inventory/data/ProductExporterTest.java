@@ -0,0 +1,109 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Tests for {@link ProductExporter}.
+ */
+public class ProductExporterTest extends ProviderTestCase2<ProductProvider> {
+
+    private static final String TRICKY_NAME = "Rope, \"Jump\"\nExtra Long";
+
+    public ProductExporterTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // One more product than fits in a page
+        ContentValues[] products = new ContentValues[ProductExporter.PAGE_SIZE + 1];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new ContentValues();
+            products[i].put(ProductEntry.COLUMN_PRODUCT_NAME,
+                    i == 0 ? TRICKY_NAME : "Product " + i);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_PRICE, 1399);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_QUANTITY, i);
+            products[i].put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Acme");
+        }
+        getMockContentResolver().bulkInsert(ProductEntry.CONTENT_URI, products);
+    }
+
+    public void testCsvExportCoversEveryProductAndCanBeImported() throws Exception {
+        byte[] csv = readExport(ProductContract.EXPORT_FORMAT_CSV);
+
+        CsvReader reader = new CsvReader(new InputStreamReader(new ByteArrayInputStream(csv),
+                "UTF-8"));
+        String[] header = reader.readRow();
+        assertNotNull(header);
+        assertEquals(ProductEntry._ID, header[0]);
+        assertEquals(ProductEntry.COLUMN_PRODUCT_NAME, header[1]);
+        String[] first = reader.readRow();
+        assertNotNull(first);
+        assertEquals(TRICKY_NAME, first[1]);
+        assertEquals("13.99", first[2]);
+        int rows = 1;
+        while (reader.readRow() != null) {
+            rows++;
+        }
+        assertEquals(ProductExporter.PAGE_SIZE + 1, rows);
+
+        // Importing the export adds a copy of every product
+        ProductImporter.Result result = new ProductImporter(getMockContentResolver())
+                .importCsv(new ByteArrayInputStream(csv), false, null);
+        assertEquals(ProductExporter.PAGE_SIZE + 1, result.rowsImported);
+        assertEquals(0, result.rowsSkipped);
+    }
+
+    public void testJsonExportCoversEveryProduct() throws Exception {
+        JSONArray products = new JSONArray(
+                new String(readExport(ProductContract.EXPORT_FORMAT_JSON), "UTF-8"));
+
+        assertEquals(ProductExporter.PAGE_SIZE + 1, products.length());
+        JSONObject first = products.getJSONObject(0);
+        assertEquals(TRICKY_NAME, first.getString(ProductEntry.COLUMN_PRODUCT_NAME));
+        assertEquals(13.99, first.getDouble(ProductEntry.COLUMN_PRODUCT_PRICE), 0);
+        assertTrue(first.isNull(ProductEntry.COLUMN_PRODUCT_IMAGE));
+        JSONObject last = products.getJSONObject(ProductExporter.PAGE_SIZE);
+        assertEquals(ProductExporter.PAGE_SIZE, last.getInt(ProductEntry.COLUMN_PRODUCT_QUANTITY));
+    }
+
+    public void testExportIsReadOnly() throws Exception {
+        try {
+            getMockContentResolver().openOutputStream(
+                    ProductEntry.buildExportUri(ProductContract.EXPORT_FORMAT_CSV));
+            fail("Expected the export to be read only");
+        } catch (IllegalArgumentException expected) {
+            // Exports can only be read
+        }
+    }
+
+    private byte[] readExport(String format) throws IOException {
+        InputStream in = getMockContentResolver().openInputStream(
+                ProductEntry.buildExportUri(format));
+        assertNotNull(in);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.android.inventory.data;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Collections;
+
+/**
+ * Tests for {@link ProductImageStore}.
+ */
+public class ProductImageStoreTest extends AndroidTestCase {
+
+    private File mDirectory;
+    private File mSourceFile;
+    private ProductImageStore mImageStore;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "image_store_test");
+        deleteDirectory();
+        mImageStore = new ProductImageStore(getContext().getContentResolver(), mDirectory);
+
+        // A picked photo, larger than the stored images
+        mSourceFile = new File(getContext().getCacheDir(), "image_store_test_source.png");
+        Bitmap source = Bitmap.createBitmap(3000, 2000, Bitmap.Config.ARGB_8888);
+        source.eraseColor(Color.RED);
+        FileOutputStream out = new FileOutputStream(mSourceFile);
+        try {
+            assertTrue(source.compress(Bitmap.CompressFormat.PNG, 100, out));
+        } finally {
+            out.close();
+            source.recycle();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mSourceFile.delete();
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    public void testIngestScalesDownAndSharesDuplicates() throws Exception {
+        Uri first = mImageStore.ingest(Uri.fromFile(mSourceFile));
+        Uri second = mImageStore.ingest(Uri.fromFile(mSourceFile));
+
+        assertEquals(first, second);
+        assertTrue(first.toString().startsWith(ProductContract.IMAGES_URI.toString()));
+        assertEquals(1, mDirectory.listFiles().length);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(mImageStore.getFile(first).getPath(), options);
+        assertEquals(ProductImageStore.MAX_IMAGE_SIZE, options.outWidth);
+        assertEquals(683, options.outHeight);
+    }
+
+    public void testGetFileOnlyAcceptsStoredImageNames() {
+        assertNull(mImageStore.getFile(Uri.withAppendedPath(ProductContract.IMAGES_URI, "..%2Finventory.db")));
+        assertNull(mImageStore.getFile(Uri.withAppendedPath(ProductContract.IMAGES_URI, "image.jpg")));
+    }
+
+    public void testCollectGarbageKeepsReferencedAndRecentImages() throws Exception {
+        Uri imageUri = mImageStore.ingest(Uri.fromFile(mSourceFile));
+        String name = imageUri.getLastPathSegment();
+        long now = System.currentTimeMillis();
+        long later = now + 2 * ProductImageStore.GARBAGE_GRACE_PERIOD_MILLIS;
+
+        // Picked recently, so the product referring to it may not be saved yet
+        assertEquals(0, mImageStore.collectGarbage(Collections.<String>emptySet(), now));
+        // Still referenced by a product
+        assertEquals(0, mImageStore.collectGarbage(Collections.singleton(name), later));
+
+        assertEquals(1, mImageStore.collectGarbage(Collections.<String>emptySet(), later));
+        assertFalse(mImageStore.getFile(imageUri).exists());
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link ProductImporter}.
+ */
+public class ProductImporterTest extends ProviderTestCase2<ProductProvider> {
+
+    public ProductImporterTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    public void testInvalidRowsAreSkippedAndReported() throws IOException {
+        String csv = "_id,Supplier,Name,Price,Quantity\n"
+                + "1,Acme,Jump Rope,13.99,5\n"
+                + "2,Acme,,1.00,5\n"
+                + "3,Acme,Dumbbell,cheap,5\n"
+                + "\n"
+                + "4,Acme,Kettlebell,20,-1\n"
+                + "5,Acme,Yoga Mat\n"
+                + "6,Acme,\"Mat, Large\",25.50,\n";
+
+        ProductImporter.Result result = importCsv(csv, false, null);
+
+        assertEquals(6, result.rowsRead);
+        assertEquals(2, result.rowsImported);
+        assertEquals(4, result.rowsSkipped);
+        assertEquals(4, result.errors.size());
+        assertTrue(result.errors.get(0).startsWith("Line 3: "));
+        assertTrue(result.errors.get(1).startsWith("Line 4: "));
+        assertTrue(result.errors.get(2).startsWith("Line 6: "));
+        assertTrue(result.errors.get(3).startsWith("Line 7: "));
+        // An empty quantity leaves the default
+        assertEquals(0, queryQuantity("Mat, Large"));
+        // Prices are read in dollars and stored in cents
+        assertEquals(2550, queryPrice("Mat, Large"));
+    }
+
+    public void testLargeFilesAreWrittenInBatches() throws IOException {
+        int rows = 2 * ProductImporter.BATCH_SIZE + 1;
+        StringBuilder csv = new StringBuilder("name,price,supplier\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append("Product ").append(i).append(",1.50,Acme\n");
+        }
+        final List<Integer> progress = new ArrayList<Integer>();
+
+        ProductImporter.Result result = importCsv(csv.toString(), false,
+                new ProductImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytesRead, int rowsRead) {
+                        progress.add(rowsRead);
+                    }
+                });
+
+        assertEquals(rows, result.rowsImported);
+        assertEquals(0, result.rowsSkipped);
+        assertEquals(3, progress.size());
+        assertEquals(Integer.valueOf(ProductImporter.BATCH_SIZE), progress.get(0));
+        assertEquals(Integer.valueOf(rows), progress.get(2));
+        assertEquals(rows, countProducts());
+    }
+
+    public void testUpsertUpdatesProductsWithTheSameNameAndSupplier() throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Jump Rope");
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1399);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 4);
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Acme");
+        getMockContentResolver().insert(ProductEntry.CONTENT_URI, values);
+
+        ProductImporter.Result result = importCsv("name,price,quantity,supplier\n"
+                + "JUMP ROPE,12.99,10,acme\n"
+                + "Jump Rope,12.99,1,Other Supplier\n", true, null);
+
+        assertEquals(2, result.rowsImported);
+        assertEquals(2, countProducts());
+        Cursor cursor = getMockContentResolver().query(ProductEntry.CONTENT_URI,
+                new String[]{ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_QUANTITY},
+                ProductEntry.COLUMN_PRODUCT_SUPPLIER + "=?", new String[]{"acme"}, null);
+        assertNotNull(cursor);
+        long id;
+        try {
+            assertTrue(cursor.moveToFirst());
+            id = cursor.getLong(0);
+            assertEquals(10, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+
+        // The new quantity is recorded as a correction
+        cursor = getMockContentResolver().query(StockMovementEntry.buildMovementsUri(id),
+                new String[]{StockMovementEntry.COLUMN_TYPE, StockMovementEntry.COLUMN_DELTA},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToLast());
+            assertEquals(StockMovementEntry.TYPE_CORRECTION, cursor.getInt(0));
+            assertEquals(6, cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testMissingRequiredColumnIsRejected() throws IOException {
+        try {
+            importCsv("name,quantity\nJump Rope,1\n", false, null);
+            fail("Expected the file to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Without a price and supplier no row can be imported
+        }
+        assertEquals(0, countProducts());
+    }
+
+    private ProductImporter.Result importCsv(String csv, boolean upsert,
+                                             ProductImporter.ProgressListener listener)
+            throws IOException {
+        InputStream in = new ByteArrayInputStream(csv.getBytes("UTF-8"));
+        return new ProductImporter(getMockContentResolver()).importCsv(in, upsert, listener);
+    }
+
+    private int countProducts() {
+        Cursor cursor = getMockContentResolver().query(ProductEntry.CONTENT_URI,
+                new String[]{ProductEntry._ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long queryPrice(String name) {
+        Cursor cursor = getMockContentResolver().query(ProductEntry.CONTENT_URI,
+                new String[]{ProductEntry.COLUMN_PRODUCT_PRICE},
+                ProductEntry.COLUMN_PRODUCT_NAME + "=?", new String[]{name}, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int queryQuantity(String name) {
+        Cursor cursor = getMockContentResolver().query(ProductEntry.CONTENT_URI,
+                new String[]{ProductEntry.COLUMN_PRODUCT_QUANTITY},
+                ProductEntry.COLUMN_PRODUCT_NAME + "=?", new String[]{name}, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+
+import com.example.android.inventory.data.ProductContract.MetricsEntry;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ProductMetrics}.
+ */
+public class ProductMetricsTest extends TestCase {
+
+    public void testBucketsCoverEveryLatencyInOrder() {
+        int previous = ProductMetrics.getBucket(0);
+        assertEquals(0, previous);
+        for (long micros = 1; micros < 10000000; micros += 1 + micros / 7) {
+            int bucket = ProductMetrics.getBucket(micros);
+            assertTrue(bucket >= previous);
+            if (bucket < ProductMetrics.BUCKET_COUNT - 1) {
+                // The latency is within the bucket, and less than 25% below its limit
+                long limit = ProductMetrics.getBucketLimit(bucket);
+                assertTrue(micros <= limit);
+                assertTrue(micros > (bucket == 0 ? -1 : ProductMetrics.getBucketLimit(bucket - 1)));
+                assertTrue(limit < micros * 1.25 + 1);
+            }
+            previous = bucket;
+        }
+        assertEquals(ProductMetrics.BUCKET_COUNT - 1, ProductMetrics.getBucket(Long.MAX_VALUE));
+    }
+
+    public void testPercentilesAndReset() {
+        ProductMetrics metrics = new ProductMetrics(100, new String[]{"products", "products/#"});
+        long now = System.nanoTime();
+        // 99 fast queries and a slow one, which only shows in the 99th percentile and above
+        for (int i = 0; i < 99; i++) {
+            metrics.record(101, ProductMetrics.QUERY, 1, now - 100 * 1000);
+        }
+        metrics.record(101, ProductMetrics.QUERY, 1, now - 50 * 1000 * 1000);
+        // Codes without a name aren't recorded
+        metrics.record(102, ProductMetrics.QUERY, 1, now);
+
+        Cursor cursor = metrics.query(null);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("products/#", cursor.getString(
+                    cursor.getColumnIndexOrThrow(MetricsEntry.COLUMN_URI)));
+            assertEquals(MetricsEntry.OPERATION_QUERY, cursor.getString(
+                    cursor.getColumnIndexOrThrow(MetricsEntry.COLUMN_OPERATION)));
+            assertEquals(100, cursor.getLong(cursor.getColumnIndexOrThrow(MetricsEntry.COLUMN_CALLS)));
+            long p50 = cursor.getLong(cursor.getColumnIndexOrThrow(MetricsEntry.COLUMN_P50_MICROS));
+            long p99 = cursor.getLong(cursor.getColumnIndexOrThrow(MetricsEntry.COLUMN_P99_MICROS));
+            long max = cursor.getLong(cursor.getColumnIndexOrThrow(MetricsEntry.COLUMN_MAX_MICROS));
+            assertTrue(p50 >= 100 && p50 < 50 * 1000);
+            assertTrue(p99 < 50 * 1000);
+            assertTrue(max >= 50 * 1000);
+        } finally {
+            cursor.close();
+        }
+
+        metrics.reset();
+        cursor = metrics.query(new String[]{MetricsEntry.COLUMN_CALLS});
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.android.inventory.data;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ProductPrice}.
+ */
+public class ProductPriceTest extends TestCase {
+
+    public void testParsesDollarsIntoCents() {
+        assertEquals(1399, ProductPrice.parseCents("13.99"));
+        assertEquals(1390, ProductPrice.parseCents("13.9"));
+        assertEquals(1300, ProductPrice.parseCents("13"));
+        assertEquals(1300, ProductPrice.parseCents("13."));
+        assertEquals(99, ProductPrice.parseCents(".99"));
+        assertEquals(10, ProductPrice.parseCents("0.1"));
+        assertEquals(-250, ProductPrice.parseCents("-2.50"));
+        assertEquals(250, ProductPrice.parseCents("+2.5"));
+    }
+
+    public void testExtraDecimalsRoundHalfUp() {
+        assertEquals(1399, ProductPrice.parseCents("13.994"));
+        assertEquals(1400, ProductPrice.parseCents("13.995"));
+        assertEquals(1400, ProductPrice.parseCents("13.9999"));
+        assertEquals(-1400, ProductPrice.parseCents("-13.995"));
+    }
+
+    public void testInvalidPricesAreRejected() {
+        String[] invalid = {"", "-", ".", "cheap", "1,99", "1.2.3", "1e3", " 13.99",
+                "92233720368547758.08"};
+        for (String text : invalid) {
+            try {
+                ProductPrice.parseCents(text);
+                fail("Expected " + text + " to be rejected");
+            } catch (NumberFormatException expected) {
+                // Not a price, or too large for a long
+            }
+        }
+        assertEquals(Long.MAX_VALUE, ProductPrice.parseCents("92233720368547758.07"));
+    }
+
+    public void testFormatsCentsWithTwoDecimals() {
+        assertEquals("13.99", ProductPrice.format(1399));
+        assertEquals("0.05", ProductPrice.format(5));
+        assertEquals("0.00", ProductPrice.format(0));
+        assertEquals("-0.50", ProductPrice.format(-50));
+        assertEquals("92233720368547758.07", ProductPrice.format(Long.MAX_VALUE));
+        assertEquals("-92233720368547758.08", ProductPrice.format(Long.MIN_VALUE));
+        assertEquals(ProductPrice.MAX_CHARS, ProductPrice.format(Long.MIN_VALUE).length());
+    }
+
+    public void testFormattedPricesParseBack() {
+        long[] prices = {0, 1, 99, 100, 1399, -1399, 123456789};
+        for (long cents : prices) {
+            assertEquals(cents, ProductPrice.parseCents(ProductPrice.format(cents)));
+        }
+    }
+
+    public void testWritesIntoBuffer() {
+        char[] buffer = new char[4 + ProductPrice.MAX_CHARS];
+        buffer[0] = '$';
+        int end = ProductPrice.writeCents(buffer, 1, 1399);
+        assertEquals("$13.99", new String(buffer, 0, end));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+/**
+ * Compares the throughput of {@link ProductProvider#bulkInsert} against inserting the same
+ * products one row at a time through {@link ProductProvider#insert}.
+ */
+public class ProductProviderBulkInsertBenchmark extends ProviderTestCase2<ProductProvider> {
+
+    private static final String LOG_TAG = ProductProviderBulkInsertBenchmark.class.getSimpleName();
+
+    /**
+     * Number of products written by each benchmark run
+     */
+    private static final int ROW_COUNT = 5000;
+
+    public ProductProviderBulkInsertBenchmark() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    public void testBulkInsertIsFasterThanPerRowInsert() {
+        ContentValues[] rows = createProducts(ROW_COUNT);
+
+        long start = SystemClock.elapsedRealtime();
+        for (ContentValues values : rows) {
+            getMockContentResolver().insert(ProductEntry.CONTENT_URI, values);
+        }
+        long perRowMillis = Math.max(1, SystemClock.elapsedRealtime() - start);
+        assertEquals(ROW_COUNT, countProducts());
+
+        getMockContentResolver().delete(ProductEntry.CONTENT_URI, null, null);
+
+        start = SystemClock.elapsedRealtime();
+        int inserted = getMockContentResolver().bulkInsert(ProductEntry.CONTENT_URI, rows);
+        long bulkMillis = Math.max(1, SystemClock.elapsedRealtime() - start);
+        assertEquals(ROW_COUNT, inserted);
+        assertEquals(ROW_COUNT, countProducts());
+
+        Log.i(LOG_TAG, "per-row insert: " + (ROW_COUNT * 1000L / perRowMillis) + " rows/sec");
+        Log.i(LOG_TAG, "bulk insert: " + (ROW_COUNT * 1000L / bulkMillis) + " rows/sec");
+        assertTrue("bulkInsert should beat per-row inserts", bulkMillis < perRowMillis);
+    }
+
+    public void testBulkInsertRejectsWholeBatchOnInvalidRow() {
+        ContentValues[] rows = createProducts(10);
+        rows[7].putNull(ProductEntry.COLUMN_PRODUCT_NAME);
+
+        try {
+            getMockContentResolver().bulkInsert(ProductEntry.CONTENT_URI, rows);
+            fail("Expected the invalid row to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Validation runs before any row is written
+        }
+        assertEquals(0, countProducts());
+    }
+
+    private static ContentValues[] createProducts(int count) {
+        ContentValues[] rows = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Product " + i);
+            values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 199 + i % 100 * 100);
+            values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, i % 50);
+            values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Supplier " + (i % 20));
+            rows[i] = values;
+        }
+        return rows;
+    }
+
+    private int countProducts() {
+        Cursor cursor = getMockContentResolver().query(ProductEntry.CONTENT_URI,
+                new String[]{ProductEntry._ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
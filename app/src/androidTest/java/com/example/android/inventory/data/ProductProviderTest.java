@@ -0,0 +1,706 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.IsolatedContext;
+import android.test.ProviderTestCase2;
+import android.test.RenamingDelegatingContext;
+import android.test.mock.MockContentResolver;
+
+import com.example.android.inventory.data.ProductContract.MetricsEntry;
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderItemEntry;
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+import com.example.android.inventory.data.ProductContract.SummaryEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests for {@link ProductProvider}.
+ */
+public class ProductProviderTest extends ProviderTestCase2<ProductProvider> {
+
+    public ProductProviderTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    public void testApplyBatchResolvesBackReferences() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(ProductEntry.CONTENT_URI)
+                .withValues(createProduct("Jump Rope", 33))
+                .build());
+        operations.add(ContentProviderOperation.newUpdate(ProductEntry.CONTENT_URI)
+                .withSelection(ProductEntry._ID + "=?", new String[1])
+                .withSelectionBackReference(0, 0)
+                .withValue(ProductEntry.COLUMN_PRODUCT_QUANTITY, 12)
+                .withYieldAllowed(true)
+                .build());
+
+        ContentProviderResult[] results =
+                getMockContentResolver().applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+
+        assertEquals(2, results.length);
+        assertEquals(Integer.valueOf(1), results[1].count);
+        assertEquals(12, queryQuantity(ContentUris.parseId(results[0].uri)));
+    }
+
+    public void testApplyBatchRollsBackOnFailure() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(ProductEntry.CONTENT_URI)
+                .withValues(createProduct("Jump Rope", 33))
+                .build());
+        operations.add(ContentProviderOperation.newInsert(ProductEntry.CONTENT_URI)
+                .withValues(createProduct("Broken Product", -1))
+                .build());
+
+        try {
+            getMockContentResolver().applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+            fail("Expected the invalid quantity to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The whole batch is rolled back
+        }
+
+        Cursor cursor = getMockContentResolver().query(ProductEntry.CONTENT_URI,
+                new String[]{ProductEntry._ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testAdjustQuantityAppliesDeltaAndClampsAtZero() {
+        Uri productUri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Jump Rope", 2));
+        assertNotNull(productUri);
+        Uri adjustUri = ProductEntry.buildAdjustUri(ContentUris.parseId(productUri));
+
+        assertEquals(5, callAdjust(adjustUri, 3));
+        assertEquals(0, callAdjust(adjustUri, -8));
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.KEY_QUANTITY_DELTA, 4);
+        assertEquals(1, getMockContentResolver().update(adjustUri, values, null, null));
+        assertEquals(4, queryQuantity(ContentUris.parseId(productUri)));
+    }
+
+    public void testAdjustQuantityOfMissingProductReturnsNull() {
+        Uri adjustUri = ProductEntry.buildAdjustUri(42);
+        Bundle extras = new Bundle();
+        extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, -1);
+        assertNull(getProvider().call(ProductContract.METHOD_ADJUST_QUANTITY,
+                adjustUri.toString(), extras));
+    }
+
+    public void testSearchRanksNameMatchesBeforeSupplierMatches() {
+        ContentValues ladder = createProduct("Rope Ladder", 1);
+        ladder.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Jumpers Inc");
+        getMockContentResolver().insert(ProductEntry.CONTENT_URI, ladder);
+        getMockContentResolver().insert(ProductEntry.CONTENT_URI, createProduct("Jump Rope", 1));
+        getMockContentResolver().insert(ProductEntry.CONTENT_URI, createProduct("Tennis Ball", 1));
+
+        Cursor cursor = getMockContentResolver().query(ProductEntry.buildSearchUri("jum"),
+                new String[]{ProductEntry.COLUMN_PRODUCT_NAME}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Jump Rope", cursor.getString(0));
+            assertTrue(cursor.moveToNext());
+            assertEquals("Rope Ladder", cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testSearchFollowsRenamedProducts() {
+        Uri productUri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Jump Rope", 1));
+        assertNotNull(productUri);
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Skipping Rope");
+        getMockContentResolver().update(productUri, values, null, null);
+
+        assertEquals(0, countSearchResults("jump"));
+        assertEquals(1, countSearchResults("skip ro"));
+
+        getMockContentResolver().delete(productUri, null, null);
+        assertEquals(0, countSearchResults("skip"));
+    }
+
+    public void testKeysetPagesCoverEveryProductOnce() {
+        ContentValues[] rows = new ContentValues[25];
+        for (int i = 0; i < rows.length; i++) {
+            // Many products share a quantity, so pages have to break ties by _id
+            rows[i] = createProduct("Product " + i, i % 4);
+        }
+        getMockContentResolver().bulkInsert(ProductEntry.CONTENT_URI, rows);
+
+        ArrayList<Long> ids = new ArrayList<Long>();
+        String afterKey = null;
+        long afterId = -1;
+        while (true) {
+            Uri.Builder builder = ProductEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT, "7");
+            if (afterKey != null) {
+                builder.appendQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_KEY, afterKey)
+                        .appendQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_ID,
+                                String.valueOf(afterId));
+            }
+            Cursor cursor = getMockContentResolver().query(builder.build(),
+                    new String[]{ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_QUANTITY},
+                    null, null, ProductEntry.SORT_ORDER_QUANTITY);
+            assertNotNull(cursor);
+            try {
+                if (!cursor.moveToFirst()) {
+                    break;
+                }
+                assertTrue(cursor.getCount() <= 7);
+                do {
+                    ids.add(cursor.getLong(0));
+                    afterId = cursor.getLong(0);
+                    afterKey = cursor.getString(1);
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+
+        assertEquals(25, ids.size());
+        assertEquals(25, new HashSet<Long>(ids).size());
+    }
+
+    public void testQuantityChangesAreAppendedToTheLedger() {
+        Uri productUri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Jump Rope", 10));
+        assertNotNull(productUri);
+        long id = ContentUris.parseId(productUri);
+        Uri adjustUri = ProductEntry.buildAdjustUri(id);
+        callAdjust(adjustUri, -3);
+        callAdjust(adjustUri, 5);
+        // Selling from an empty shelf changes nothing, so it isn't recorded
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 0);
+        getMockContentResolver().update(productUri, values, null, null);
+        callAdjust(adjustUri, -1);
+
+        Cursor cursor = getMockContentResolver().query(StockMovementEntry.buildMovementsUri(id),
+                new String[]{StockMovementEntry.COLUMN_TYPE, StockMovementEntry.COLUMN_DELTA},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(4, cursor.getCount());
+            assertMovement(cursor, StockMovementEntry.TYPE_INITIAL, 10);
+            assertMovement(cursor, StockMovementEntry.TYPE_SALE, -3);
+            assertMovement(cursor, StockMovementEntry.TYPE_SHIPMENT, 5);
+            assertMovement(cursor, StockMovementEntry.TYPE_CORRECTION, -12);
+        } finally {
+            cursor.close();
+        }
+
+        // The ledger can't be rewritten through the provider
+        try {
+            getMockContentResolver().delete(StockMovementEntry.buildMovementsUri(id), null, null);
+            fail("Expected the ledger to be append-only");
+        } catch (IllegalArgumentException expected) {
+            // Only queries are supported
+        }
+    }
+
+    public void testStockUriReturnsQuantityAtPointInTime() throws Exception {
+        long beforeInsert = System.currentTimeMillis() - 1;
+        Uri productUri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Jump Rope", 10));
+        assertNotNull(productUri);
+        long id = ContentUris.parseId(productUri);
+        Thread.sleep(5);
+        long afterInsert = System.currentTimeMillis();
+        Thread.sleep(5);
+        callAdjust(ProductEntry.buildAdjustUri(id), -4);
+
+        assertEquals(0, queryStock(StockMovementEntry.buildStockUri(id, beforeInsert)));
+        assertEquals(10, queryStock(StockMovementEntry.buildStockUri(id, afterInsert)));
+        assertEquals(6, queryStock(StockMovementEntry.buildStockUri(id, System.currentTimeMillis())));
+    }
+
+    public void testSummaryFollowsProductChanges() {
+        Uri ropeUri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Jump Rope", 2));
+        assertNotNull(ropeUri);
+        Uri ballUri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Tennis Ball", 0));
+        assertNotNull(ballUri);
+        assertSummary(2798, 2, 1);
+
+        callAdjust(ProductEntry.buildAdjustUri(ContentUris.parseId(ballUri)), 3);
+        assertSummary(6995, 2, 0);
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 125);
+        getMockContentResolver().update(ropeUri, values, null, null);
+        assertSummary(4447, 2, 0);
+
+        getMockContentResolver().delete(ballUri, null, null);
+        assertSummary(250, 1, 0);
+
+        Bundle result = getProvider().call(ProductContract.METHOD_CHECK_SUMMARY, null, null);
+        assertNotNull(result);
+        assertTrue(result.getBoolean(SummaryEntry.KEY_CONSISTENT));
+    }
+
+    public void testPurchaseOrdersGroupLowStockBySupplier() {
+        long rope = insertProduct("Jump Rope", "Big 5 Sporting Goods", 2, 5);
+        long ball = insertProduct("Tennis Ball", "Big 5 Sporting Goods", 0, 10);
+        long mat = insertProduct("Yoga Mat", "Mats Unlimited", 1, 4);
+        // At or above its reorder point, or without one, a product isn't ordered
+        insertProduct("Water Bottle", "Big 5 Sporting Goods", 5, 5);
+        insertProduct("Headband", "Mats Unlimited", 0, 0);
+
+        long[] orderIds = callCreatePurchaseOrders();
+        assertEquals(2, orderIds.length);
+        assertPurchaseOrder(orderIds[0], "Big 5 Sporting Goods");
+        assertItems(orderIds[0], new long[]{rope, ball}, new int[]{8, 20});
+        assertPurchaseOrder(orderIds[1], "Mats Unlimited");
+        assertItems(orderIds[1], new long[]{mat}, new int[]{7});
+
+        // Products on an open order aren't ordered again
+        assertEquals(0, callCreatePurchaseOrders().length);
+    }
+
+    public void testReceivingPurchaseOrderAddsItToStock() {
+        long rope = insertProduct("Jump Rope", "Big 5 Sporting Goods", 2, 5);
+        long ball = insertProduct("Tennis Ball", "Big 5 Sporting Goods", 0, 10);
+        long[] orderIds = callCreatePurchaseOrders();
+        assertEquals(1, orderIds.length);
+        Uri orderUri = ContentUris.withAppendedId(PurchaseOrderEntry.CONTENT_URI, orderIds[0]);
+
+        // Items of deleted products are skipped
+        getMockContentResolver().delete(
+                ContentUris.withAppendedId(ProductEntry.CONTENT_URI, ball), null, null);
+        Bundle result = getProvider().call(ProductContract.METHOD_RECEIVE_PURCHASE_ORDER,
+                orderUri.toString(), null);
+        assertNotNull(result);
+        assertEquals(1, result.getInt(PurchaseOrderEntry.KEY_RECEIVED_ITEMS));
+        assertEquals(10, queryQuantity(rope));
+
+        Cursor cursor = getMockContentResolver().query(StockMovementEntry.buildMovementsUri(rope),
+                new String[]{StockMovementEntry.COLUMN_TYPE, StockMovementEntry.COLUMN_DELTA},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertMovement(cursor, StockMovementEntry.TYPE_INITIAL, 2);
+            assertMovement(cursor, StockMovementEntry.TYPE_SHIPMENT, 8);
+        } finally {
+            cursor.close();
+        }
+
+        // An order is only received once
+        assertNull(getProvider().call(ProductContract.METHOD_RECEIVE_PURCHASE_ORDER,
+                orderUri.toString(), null));
+        assertEquals(10, queryQuantity(rope));
+    }
+
+    public void testChangedProductIdIsOnlySetForSingleProducts() {
+        assertEquals(7, ProductEntry.getChangedProductId(
+                ContentUris.withAppendedId(ProductEntry.CONTENT_URI, 7)));
+        assertEquals(-1, ProductEntry.getChangedProductId(ProductEntry.CONTENT_URI));
+        assertEquals(-1, ProductEntry.getChangedProductId(ProductEntry.buildAdjustUri(7)));
+        assertEquals(-1, ProductEntry.getChangedProductId(null));
+    }
+
+    public void testSingleProductChangeOnlyNotifiesThatProduct() {
+        NotificationRecorder recorder = new NotificationRecorder();
+        ProductProvider provider = attachProvider(new ProductProvider(), recorder);
+        try {
+            Uri uri = recorder.insert(ProductEntry.CONTENT_URI, createProduct("Jump Rope", 33));
+            assertNotNull(uri);
+            long id = ContentUris.parseId(uri);
+
+            recorder.clearNotifications();
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 32);
+            assertEquals(1, recorder.update(uri, values, null, null));
+            assertOnlyProductNotified(recorder, id);
+
+            recorder.clearNotifications();
+            Bundle extras = new Bundle();
+            extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, -1);
+            assertNotNull(provider.call(ProductContract.METHOD_ADJUST_QUANTITY,
+                    ProductEntry.buildAdjustUri(id).toString(), extras));
+            assertOnlyProductNotified(recorder, id);
+        } finally {
+            provider.getContext().deleteDatabase("inventory.db");
+        }
+    }
+
+    public void testChangesCommittedByAYieldLeaveTheCacheWhenTheBatchFails() throws Exception {
+        NotificationRecorder recorder = new NotificationRecorder();
+        ProductProvider provider = attachProvider(new YieldingProvider(), recorder);
+        try {
+            Uri uri = recorder.insert(ProductEntry.CONTENT_URI, createProduct("Jump Rope", 33));
+            assertNotNull(uri);
+            long id = ContentUris.parseId(uri);
+            // Cache the row
+            assertEquals(33, queryQuantity(recorder, id));
+
+            applyBatchFailingAfterYield(recorder, uri);
+
+            assertEquals(12, queryQuantity(recorder, id));
+        } finally {
+            provider.getContext().deleteDatabase("inventory.db");
+        }
+    }
+
+    public void testChangesCommittedByAYieldAreNotifiedWhenTheBatchFails() throws Exception {
+        NotificationRecorder recorder = new NotificationRecorder();
+        ProductProvider provider = attachProvider(new YieldingProvider(), recorder);
+        try {
+            Uri uri = recorder.insert(ProductEntry.CONTENT_URI, createProduct("Jump Rope", 33));
+            assertNotNull(uri);
+
+            recorder.clearNotifications();
+            applyBatchFailingAfterYield(recorder, uri);
+
+            List<Uri> notifiedUris = recorder.getNotifiedUris();
+            // The update was committed by the yield, the insert after it was rolled back
+            assertTrue(notifiedUris.toString(), notifiedUris.contains(uri));
+            assertTrue(notifiedUris.toString(), notifiedUris.contains(SummaryEntry.CONTENT_URI));
+            assertFalse(notifiedUris.toString(), notifiedUris.contains(ProductEntry.CONTENT_URI));
+        } finally {
+            provider.getContext().deleteDatabase("inventory.db");
+        }
+    }
+
+    public void testMetricsCountCallsPerUriAndOperation() {
+        Uri uri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Jump Rope", 33));
+        assertNotNull(uri);
+        queryQuantity(ContentUris.parseId(uri));
+        queryQuantity(ContentUris.parseId(uri));
+        assertEquals(0, getMockContentResolver().delete(ProductEntry.CONTENT_URI,
+                ProductEntry.COLUMN_PRODUCT_NAME + "=?", new String[]{"Unknown"}));
+
+        Cursor cursor = getMockContentResolver().query(MetricsEntry.CONTENT_URI, new String[]{
+                MetricsEntry.COLUMN_URI, MetricsEntry.COLUMN_OPERATION, MetricsEntry.COLUMN_CALLS,
+                MetricsEntry.COLUMN_ROWS, MetricsEntry.COLUMN_P50_MICROS,
+                MetricsEntry.COLUMN_MAX_MICROS}, null, null, null);
+        assertNotNull(cursor);
+        int matched = 0;
+        try {
+            while (cursor.moveToNext()) {
+                String pattern = cursor.getString(0);
+                String operation = cursor.getString(1);
+                assertTrue(cursor.getLong(4) <= cursor.getLong(5));
+                if ("products".equals(pattern) && MetricsEntry.OPERATION_INSERT.equals(operation)) {
+                    assertEquals(1, cursor.getLong(2));
+                    assertEquals(1, cursor.getLong(3));
+                    matched++;
+                } else if ("products/#".equals(pattern)
+                        && MetricsEntry.OPERATION_QUERY.equals(operation)) {
+                    assertEquals(2, cursor.getLong(2));
+                    assertEquals(2, cursor.getLong(3));
+                    matched++;
+                } else if ("products".equals(pattern)
+                        && MetricsEntry.OPERATION_DELETE.equals(operation)) {
+                    assertEquals(1, cursor.getLong(2));
+                    assertEquals(0, cursor.getLong(3));
+                    matched++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(3, matched);
+
+        getProvider().call(ProductContract.METHOD_RESET_METRICS, null, null);
+        cursor = getMockContentResolver().query(MetricsEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void assertMovement(Cursor cursor, int type, long delta) {
+        assertTrue(cursor.moveToNext());
+        assertEquals(type, cursor.getInt(0));
+        assertEquals(delta, cursor.getLong(1));
+    }
+
+    private void assertSummary(long valueCents, int productCount, int outOfStockCount) {
+        Cursor cursor = getMockContentResolver().query(SummaryEntry.CONTENT_URI, new String[]{
+                SummaryEntry.COLUMN_TOTAL_VALUE_CENTS, SummaryEntry.COLUMN_PRODUCT_COUNT,
+                SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(valueCents, cursor.getLong(0));
+            assertEquals(productCount, cursor.getInt(1));
+            assertEquals(outOfStockCount, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long queryStock(Uri stockUri) {
+        Cursor cursor = getMockContentResolver().query(stockUri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_QUANTITY));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertPurchaseOrder(long orderId, String supplier) {
+        Cursor cursor = getMockContentResolver().query(
+                ContentUris.withAppendedId(PurchaseOrderEntry.CONTENT_URI, orderId),
+                new String[]{PurchaseOrderEntry.COLUMN_SUPPLIER, PurchaseOrderEntry.COLUMN_STATUS},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(supplier, cursor.getString(0));
+            assertEquals(PurchaseOrderEntry.STATUS_OPEN, cursor.getInt(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertItems(long orderId, long[] productIds, int[] quantities) {
+        Cursor cursor = getMockContentResolver().query(PurchaseOrderItemEntry.buildItemsUri(orderId),
+                new String[]{PurchaseOrderItemEntry.COLUMN_PRODUCT_ID,
+                        PurchaseOrderItemEntry.COLUMN_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(productIds.length, cursor.getCount());
+            for (int i = 0; i < productIds.length; i++) {
+                assertTrue(cursor.moveToNext());
+                assertEquals(productIds[i], cursor.getLong(0));
+                assertEquals(quantities[i], cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testCachedProductFollowsEveryWrite() throws Exception {
+        Uri uri = getMockContentResolver().insert(ProductEntry.CONTENT_URI,
+                createProduct("Jump Rope", 33));
+        assertNotNull(uri);
+        long id = ContentUris.parseId(uri);
+        assertEquals(33, queryQuantity(id));
+        assertEquals(33, queryQuantity(id));
+
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 20);
+        getMockContentResolver().update(uri, values, null, null);
+        assertEquals(20, queryQuantity(id));
+
+        callAdjust(ProductEntry.buildAdjustUri(id), -5);
+        assertEquals(15, queryQuantity(id));
+
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 10);
+        getMockContentResolver().update(ProductEntry.CONTENT_URI, values,
+                ProductEntry.COLUMN_PRODUCT_NAME + "=?", new String[]{"Jump Rope"});
+        assertEquals(10, queryQuantity(id));
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newUpdate(uri)
+                .withValue(ProductEntry.COLUMN_PRODUCT_QUANTITY, 7)
+                .build());
+        getMockContentResolver().applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+        assertEquals(7, queryQuantity(id));
+
+        // The whole row is served with the columns of the table
+        Cursor cursor = getMockContentResolver().query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(id, cursor.getLong(cursor.getColumnIndexOrThrow(ProductEntry._ID)));
+            assertEquals("Jump Rope", cursor.getString(
+                    cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_NAME)));
+            assertEquals(1399, cursor.getLong(
+                    cursor.getColumnIndexOrThrow(ProductEntry.COLUMN_PRODUCT_PRICE)));
+        } finally {
+            cursor.close();
+        }
+
+        getMockContentResolver().delete(uri, null, null);
+        cursor = getMockContentResolver().query(uri, new String[]{ProductEntry._ID}, null, null,
+                null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Apply a batch that sets the quantity of the given product to 12, yields, inserts a product
+     * and then fails, and check that it fails.
+     */
+    private static void applyBatchFailingAfterYield(ContentResolver resolver, Uri productUri)
+            throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newUpdate(productUri)
+                .withValue(ProductEntry.COLUMN_PRODUCT_QUANTITY, 12)
+                .build());
+        operations.add(ContentProviderOperation.newInsert(ProductEntry.CONTENT_URI)
+                .withValues(createProduct("Tennis Ball", 3))
+                .withYieldAllowed(true)
+                .build());
+        operations.add(ContentProviderOperation.newInsert(ProductEntry.CONTENT_URI)
+                .withValues(createProduct("Broken Product", -1))
+                .build());
+        try {
+            resolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+            fail("Expected the invalid quantity to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Only the operations after the yield are rolled back
+        }
+    }
+
+    /**
+     * Assert that the catalog, which observes the products URI and its descendants, was only told
+     * about the given product, so it refreshes that row instead of reloading every page. The
+     * summary is told too.
+     */
+    private static void assertOnlyProductNotified(NotificationRecorder recorder, long id) {
+        List<Uri> notifiedUris = recorder.getNotifiedUris();
+        for (Uri uri : notifiedUris) {
+            if (uri.toString().startsWith(ProductEntry.CONTENT_URI.toString())) {
+                assertEquals(uri.toString(), id, ProductEntry.getChangedProductId(uri));
+            }
+        }
+        assertTrue(notifiedUris.toString(), notifiedUris.contains(SummaryEntry.CONTENT_URI));
+    }
+
+    /**
+     * Attach a provider to a database of its own that sends its notifications to the given
+     * recorder, as the mock resolver of the test case drops them.
+     */
+    private ProductProvider attachProvider(ProductProvider provider, NotificationRecorder recorder) {
+        Context context = new IsolatedContext(recorder,
+                new RenamingDelegatingContext(getContext(), "notifications."));
+        context.deleteDatabase("inventory.db");
+        provider.attachInfo(context, null);
+        recorder.addProvider(ProductContract.CONTENT_AUTHORITY, provider);
+        return provider;
+    }
+
+    /**
+     * Provider that commits at every yield point of a batch, as it does when another connection
+     * is waiting for the database.
+     */
+    public static class YieldingProvider extends ProductProvider {
+
+        @Override
+        boolean yieldIfContended(SQLiteDatabase database) {
+            database.setTransactionSuccessful();
+            database.endTransaction();
+            database.beginTransaction();
+            return true;
+        }
+    }
+
+    /**
+     * Resolver that records the URIs of the notified changes instead of dropping them.
+     */
+    private static class NotificationRecorder extends MockContentResolver {
+
+        private final List<Uri> mNotifiedUris = new ArrayList<Uri>();
+
+        @Override
+        public synchronized void notifyChange(Uri uri, ContentObserver observer,
+                                              boolean syncToNetwork) {
+            mNotifiedUris.add(uri);
+        }
+
+        synchronized List<Uri> getNotifiedUris() {
+            return new ArrayList<Uri>(mNotifiedUris);
+        }
+
+        synchronized void clearNotifications() {
+            mNotifiedUris.clear();
+        }
+    }
+
+    private long[] callCreatePurchaseOrders() {
+        Bundle result = getProvider().call(ProductContract.METHOD_CREATE_PURCHASE_ORDERS, null, null);
+        assertNotNull(result);
+        return result.getLongArray(PurchaseOrderEntry.KEY_ORDER_IDS);
+    }
+
+    private long insertProduct(String name, String supplier, int quantity, int reorderPoint) {
+        ContentValues values = createProduct(name, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, supplier);
+        values.put(ProductEntry.COLUMN_PRODUCT_REORDER_POINT, reorderPoint);
+        Uri uri = getMockContentResolver().insert(ProductEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return ContentUris.parseId(uri);
+    }
+
+    private int countSearchResults(String text) {
+        Cursor cursor = getMockContentResolver().query(ProductEntry.buildSearchUri(text),
+                new String[]{ProductEntry._ID}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long callAdjust(Uri adjustUri, int delta) {
+        Bundle extras = new Bundle();
+        extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, delta);
+        Bundle result = getProvider().call(ProductContract.METHOD_ADJUST_QUANTITY,
+                adjustUri.toString(), extras);
+        assertNotNull(result);
+        return result.getLong(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+    }
+
+    private static ContentValues createProduct(String name, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1399);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Big 5 Sporting Goods");
+        return values;
+    }
+
+    private int queryQuantity(long id) {
+        return queryQuantity(getMockContentResolver(), id);
+    }
+
+    private static int queryQuantity(ContentResolver resolver, long id) {
+        Cursor cursor = resolver.query(
+                ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                new String[]{ProductEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link ProductRowCache}.
+ */
+public class ProductRowCacheTest extends TestCase {
+
+    public void testCountsHitsAndMisses() {
+        ProductRowCache cache = new ProductRowCache(10);
+        assertNull(cache.get(1));
+        cache.put(1, createRow(1), cache.getGeneration());
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(1));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.resetCounts();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    public void testRowReadBeforeRemovalIsNotKept() {
+        ProductRowCache cache = new ProductRowCache(10);
+        long generation = cache.getGeneration();
+        // A write commits and removes the row while the old row is being read
+        cache.remove(1);
+        cache.put(1, createRow(1), generation);
+        assertNull(cache.get(1));
+
+        generation = cache.getGeneration();
+        cache.put(2, createRow(2), generation);
+        cache.clear();
+        cache.put(1, createRow(1), generation);
+        assertNull(cache.get(1));
+        assertNull(cache.get(2));
+    }
+
+    public void testLeastRecentlyUsedRowIsDroppedFirst() {
+        ProductRowCache cache = new ProductRowCache(2);
+        cache.put(1, createRow(1), cache.getGeneration());
+        cache.put(2, createRow(2), cache.getGeneration());
+        assertNotNull(cache.get(1));
+        cache.put(3, createRow(3), cache.getGeneration());
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    public void testDisabledCacheKeepsNothing() {
+        ProductRowCache cache = new ProductRowCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put(1, createRow(1), cache.getGeneration());
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    public void testCursorHasTheProjectedColumns() {
+        String[] projection = {ProductEntry.COLUMN_PRODUCT_QUANTITY, ProductEntry._ID};
+        int[] columnIndexes = ProductRowCache.getColumnIndexes(projection);
+        assertNotNull(columnIndexes);
+        Cursor cursor = ProductRowCache.toCursor(createRow(7), projection, columnIndexes);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(33, cursor.getInt(0));
+            assertEquals(7, cursor.getLong(1));
+        } finally {
+            cursor.close();
+        }
+
+        // Expressions are left to the database
+        assertNull(ProductRowCache.getColumnIndexes(new String[]{"count(*)"}));
+    }
+
+    private static Object[] createRow(long id) {
+        return new Object[]{id, "Jump Rope", 1399L, 33L, "Big 5 Sporting Goods", null, 0L};
+    }
+}
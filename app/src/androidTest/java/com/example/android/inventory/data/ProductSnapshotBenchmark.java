@@ -0,0 +1,99 @@
+package com.example.android.inventory.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import java.io.File;
+
+/**
+ * Measures the throughput of {@link ProductSnapshot} backups and restores of 100k and 1M
+ * products, and how long writers wait during a backup.
+ * <p/>
+ * The figures are logged under the ProductSnapshotBenchmark tag; run it on a device with
+ * {@code ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=
+ * com.example.android.inventory.data.ProductSnapshotBenchmark} and read them with
+ * {@code adb logcat -s ProductSnapshotBenchmark}. No figures have been recorded yet: they depend
+ * on the storage of the device, and the benchmark hasn't been run on one since it was added.
+ */
+public class ProductSnapshotBenchmark extends AndroidTestCase {
+
+    private static final String LOG_TAG = ProductSnapshotBenchmark.class.getSimpleName();
+
+    /**
+     * Name of the benchmark database
+     */
+    private static final String DATABASE_NAME = "snapshot_benchmark.db";
+
+    public void testThroughputOf100kProducts() throws Exception {
+        measure(100000);
+    }
+
+    public void testThroughputOf1mProducts() throws Exception {
+        measure(1000000);
+    }
+
+    private void measure(int productCount) throws Exception {
+        getContext().deleteDatabase(DATABASE_NAME);
+        File snapshotFile = new File(getContext().getCacheDir(), "benchmark.snapshot");
+        ProductDbHelper dbHelper = new ProductDbHelper(getContext(), DATABASE_NAME,
+                ProductDbConfig.fromBuildConfig());
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            seedProducts(db, productCount);
+
+            long start = SystemClock.elapsedRealtime();
+            ProductSnapshot.Result backup = ProductSnapshot.backup(db, snapshotFile,
+                    getContext().getCacheDir());
+            long backupMillis = Math.max(1, SystemClock.elapsedRealtime() - start);
+            assertEquals(productCount, backup.rows);
+
+            start = SystemClock.elapsedRealtime();
+            ProductSnapshot.Result restore = ProductSnapshot.restore(db, snapshotFile);
+            long restoreMillis = Math.max(1, SystemClock.elapsedRealtime() - start);
+            assertEquals(productCount, restore.rows);
+
+            logThroughput(productCount + " products, backup", backup, backupMillis);
+            Log.i(LOG_TAG, productCount + " products, backup held the write lock for "
+                    + backup.lockMillis + " ms");
+            logThroughput(productCount + " products, restore", restore, restoreMillis);
+        } finally {
+            dbHelper.close();
+            getContext().deleteDatabase(DATABASE_NAME);
+            snapshotFile.delete();
+        }
+    }
+
+    private static void logThroughput(String label, ProductSnapshot.Result result, long millis) {
+        Log.i(LOG_TAG, label + ": " + millis + " ms, " + (result.rows * 1000L / millis)
+                + " rows/sec, " + (result.bytes * 1000L / millis / 1024) + " KiB/sec, "
+                + result.bytes + " bytes");
+    }
+
+    /**
+     * Insert products without a starting quantity, so the ledger stays empty and only the
+     * products are measured.
+     */
+    private static void seedProducts(SQLiteDatabase db, int count) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + ProductEntry.TABLE_NAME
+                + " (" + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_PRICE
+                + ", " + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ") VALUES (?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                insert.bindString(1, "Product " + i);
+                insert.bindLong(2, 199 + i % 100 * 100);
+                insert.bindString(3, "Supplier " + (i % 20));
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+}
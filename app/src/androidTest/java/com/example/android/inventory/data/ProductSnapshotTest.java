@@ -0,0 +1,129 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+import com.example.android.inventory.data.ProductContract.SummaryEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Tests for {@link ProductSnapshot}.
+ */
+public class ProductSnapshotTest extends AndroidTestCase {
+
+    private RenamingDelegatingContext mContext;
+    private ProductDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private File mSnapshotFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = new RenamingDelegatingContext(getContext(), "test.");
+        mContext.deleteDatabase("inventory.db");
+        mDbHelper = new ProductDbHelper(mContext);
+        mDb = mDbHelper.getWritableDatabase();
+        mSnapshotFile = new File(getContext().getCacheDir(), "test.snapshot");
+        mSnapshotFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase("inventory.db");
+        mSnapshotFile.delete();
+        super.tearDown();
+    }
+
+    public void testRestoreBringsBackEveryTableAsBackedUp() throws IOException {
+        long ropeId = insertProduct("Jump Rope, \"Deluxe\"", 1399, 5);
+        insertProduct("Kettlebell", 2000, 0);
+        StockLedger.recordMovement(mDb, ropeId, StockMovementEntry.TYPE_SALE, -2, 3, 1000);
+
+        ProductSnapshot.Result backup = ProductSnapshot.backup(mDb, mSnapshotFile,
+                getContext().getCacheDir());
+        // Two products, the starting quantity of the rope and its sale
+        assertEquals(4, backup.rows);
+        assertEquals(mSnapshotFile.length(), backup.bytes);
+
+        // Change everything after the backup
+        mDb.delete(ProductEntry.TABLE_NAME, null, null);
+        insertProduct("Yoga Mat", 2550, 7);
+
+        ProductSnapshot.Result restore = ProductSnapshot.restore(mDb, mSnapshotFile);
+
+        assertEquals(4, restore.rows);
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, ProductEntry.TABLE_NAME));
+        Cursor cursor = mDb.query(ProductEntry.TABLE_NAME, new String[]{
+                        ProductEntry.COLUMN_PRODUCT_NAME, ProductEntry.COLUMN_PRODUCT_PRICE,
+                        ProductEntry.COLUMN_PRODUCT_IMAGE},
+                ProductEntry._ID + "=?", new String[]{String.valueOf(ropeId)}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Jump Rope, \"Deluxe\"", cursor.getString(0));
+            assertEquals(1399, cursor.getLong(1));
+            assertTrue(cursor.isNull(2));
+        } finally {
+            cursor.close();
+        }
+        assertEquals(3, StockLedger.getQuantityAt(mDb, ropeId, Long.MAX_VALUE));
+        // The summary follows the restored products through its triggers
+        assertEquals(2, DatabaseUtils.longForQuery(mDb, "SELECT "
+                + SummaryEntry.COLUMN_PRODUCT_COUNT + " FROM " + SummaryEntry.TABLE_NAME, null));
+
+        // The ledger is append-only again
+        try {
+            mDb.delete(StockMovementEntry.TABLE_NAME, null, null);
+            fail("Expected the ledger to be append-only after a restore");
+        } catch (SQLiteException expected) {
+            // Rejected by the trigger
+        }
+    }
+
+    public void testCorruptSnapshotLeavesDatabaseUnchanged() throws IOException {
+        insertProduct("Jump Rope", 1399, 5);
+        ProductSnapshot.backup(mDb, mSnapshotFile, getContext().getCacheDir());
+        insertProduct("Kettlebell", 2000, 0);
+
+        // Flip a bit in the middle of the file
+        RandomAccessFile file = new RandomAccessFile(mSnapshotFile, "rw");
+        try {
+            long position = file.length() / 2;
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 1);
+        } finally {
+            file.close();
+        }
+
+        try {
+            ProductSnapshot.restore(mDb, mSnapshotFile);
+            fail("Expected the corrupt snapshot to be rejected");
+        } catch (IOException expected) {
+            // The checksum doesn't match
+        }
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, ProductEntry.TABLE_NAME));
+    }
+
+    private long insertProduct(String name, long priceCents, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, priceCents);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Acme");
+        long id = mDb.insert(ProductEntry.TABLE_NAME, null, values);
+        StockLedger.recordInitialQuantity(mDb, id, quantity, 0);
+        return id;
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Looper;
+import android.test.ProviderTestCase2;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ProductWriter}.
+ */
+public class ProductWriterTest extends ProviderTestCase2<ProductProvider> {
+
+    private ProductWriter mWriter;
+
+    public ProductWriterTest() {
+        super(ProductProvider.class, ProductContract.CONTENT_AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mWriter = new ProductWriter(getMockContentResolver());
+    }
+
+    public void testWritesRunInOrderAndReportOnTheMainThread() throws Exception {
+        final int count = 20;
+        final List<Long> ids = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            assertTrue(mWriter.insert(ProductEntry.CONTENT_URI, createProduct("Product " + i),
+                    new ProductWriter.Callback<Uri>() {
+                        @Override
+                        public void onSuccess(Uri newUri) {
+                            if (Looper.myLooper() == Looper.getMainLooper()) {
+                                ids.add(ContentUris.parseId(newUri));
+                            }
+                            done.countDown();
+                        }
+                    }));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(count, ids.size());
+        for (int i = 1; i < count; i++) {
+            assertTrue(ids.get(i) > ids.get(i - 1));
+        }
+    }
+
+    public void testFailuresAreReportedToTheCallback() throws Exception {
+        final Exception[] failure = new Exception[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        ContentValues values = createProduct("Broken Product");
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, -1);
+
+        assertTrue(mWriter.insert(ProductEntry.CONTENT_URI, values, new ProductWriter.Callback<Uri>() {
+            @Override
+            public void onSuccess(Uri newUri) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failure[0] = e;
+                done.countDown();
+            }
+        }));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(failure[0] instanceof IllegalArgumentException);
+    }
+
+    public void testWritesAreRefusedWhileTheQueueIsFull() throws Exception {
+        // Keep the writer thread busy with a batch that waits until it is released
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        ArrayList<ContentProviderOperation> blockingBatch = new ArrayList<ContentProviderOperation>() {
+            @Override
+            public int size() {
+                awaitRelease();
+                return super.size();
+            }
+
+            @Override
+            public Iterator<ContentProviderOperation> iterator() {
+                awaitRelease();
+                return super.iterator();
+            }
+
+            private void awaitRelease() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final CountDownLatch done = new CountDownLatch(ProductWriter.MAX_PENDING_WRITES + 1);
+        assertTrue(mWriter.applyBatch(blockingBatch, new ProductWriter.Callback<ContentProviderResult[]>() {
+            @Override
+            public void onSuccess(ContentProviderResult[] results) {
+                done.countDown();
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try {
+            for (int i = 0; i < ProductWriter.MAX_PENDING_WRITES; i++) {
+                assertTrue(mWriter.insert(ProductEntry.CONTENT_URI, createProduct("Product " + i),
+                        new ProductWriter.Callback<Uri>() {
+                            @Override
+                            public void onSuccess(Uri newUri) {
+                                done.countDown();
+                            }
+                        }));
+            }
+            assertFalse(mWriter.insert(ProductEntry.CONTENT_URI, createProduct("Refused"), null));
+        } finally {
+            release.countDown();
+        }
+
+        // Everything that was accepted is still written
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static ContentValues createProduct(String name) {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, name);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1399);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 1);
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Big 5 Sporting Goods");
+        return values;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.inventory.data;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+
+/**
+ * Tests for {@link StockLedger}.
+ */
+public class StockLedgerTest extends AndroidTestCase {
+
+    private static final long PRODUCT_ID = 7;
+
+    private RenamingDelegatingContext mContext;
+    private ProductDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext = new RenamingDelegatingContext(getContext(), "test.");
+        mContext.deleteDatabase("inventory.db");
+        mDbHelper = new ProductDbHelper(mContext);
+        mDb = mDbHelper.getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase("inventory.db");
+        super.tearDown();
+    }
+
+    public void testQuantityAtPointInTimeStartsFromSnapshots() {
+        // One shipment of a single piece every second
+        int movements = 2 * StockLedger.SNAPSHOT_INTERVAL + 50;
+        for (int i = 0; i < movements; i++) {
+            StockLedger.recordMovement(mDb, PRODUCT_ID, StockMovementEntry.TYPE_SHIPMENT, 1, i + 1,
+                    i * 1000L);
+        }
+
+        assertEquals(2, DatabaseUtils.queryNumEntries(mDb, ProductDbHelper.TABLE_STOCK_SNAPSHOTS));
+        assertEquals(0, StockLedger.getQuantityAt(mDb, PRODUCT_ID, -1));
+        assertEquals(1, StockLedger.getQuantityAt(mDb, PRODUCT_ID, 0));
+        // Between the first and the second snapshot
+        assertEquals(150, StockLedger.getQuantityAt(mDb, PRODUCT_ID, 149500));
+        // Exactly at the second snapshot
+        assertEquals(2 * StockLedger.SNAPSHOT_INTERVAL, StockLedger.getQuantityAt(mDb, PRODUCT_ID,
+                (2 * StockLedger.SNAPSHOT_INTERVAL - 1) * 1000L));
+        assertEquals(movements, StockLedger.getQuantityAt(mDb, PRODUCT_ID, Long.MAX_VALUE));
+        // Other products don't count
+        assertEquals(0, StockLedger.getQuantityAt(mDb, PRODUCT_ID + 1, Long.MAX_VALUE));
+    }
+
+    public void testLedgerIsAppendOnly() {
+        StockLedger.recordInitialQuantity(mDb, PRODUCT_ID, 10, 0);
+        try {
+            mDb.delete(StockMovementEntry.TABLE_NAME, null, null);
+            fail("Expected movements not to be deleted");
+        } catch (SQLiteException expected) {
+            // Rejected by the trigger
+        }
+        try {
+            mDb.execSQL("UPDATE " + StockMovementEntry.TABLE_NAME + " SET "
+                    + StockMovementEntry.COLUMN_DELTA + " = 20");
+            fail("Expected movements not to be changed");
+        } catch (SQLiteException expected) {
+            // Rejected by the trigger
+        }
+        assertEquals(10, StockLedger.getQuantityAt(mDb, PRODUCT_ID, Long.MAX_VALUE));
+    }
+}
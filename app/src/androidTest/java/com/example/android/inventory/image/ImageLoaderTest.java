@@ -0,0 +1,46 @@
+package com.example.android.inventory.image;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * Tests for {@link ImageLoader}.
+ */
+public class ImageLoaderTest extends AndroidTestCase {
+
+    public void testInSampleSizeKeepsImageAtLeastAsLargeAsRequested() {
+        assertEquals(1, ImageLoader.calculateInSampleSize(300, 300, 300, 300));
+        assertEquals(1, ImageLoader.calculateInSampleSize(599, 599, 300, 300));
+        assertEquals(2, ImageLoader.calculateInSampleSize(600, 600, 300, 300));
+        // A 12 MP photo shown at 300 x 300 pixels
+        assertEquals(8, ImageLoader.calculateInSampleSize(4000, 3000, 300, 300));
+        // The smaller side decides
+        assertEquals(1, ImageLoader.calculateInSampleSize(4000, 400, 300, 300));
+    }
+
+    public void testDecodeDownsamplesLargeImages() throws Exception {
+        File file = new File(getContext().getCacheDir(), "image_loader_test.png");
+        Bitmap original = Bitmap.createBitmap(2000, 1600, Bitmap.Config.ARGB_8888);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            assertTrue(original.compress(Bitmap.CompressFormat.PNG, 100, out));
+        } finally {
+            out.close();
+            original.recycle();
+        }
+
+        try {
+            Bitmap bitmap = ImageLoader.decodeSampledBitmap(getContext().getContentResolver(),
+                    Uri.fromFile(file), 300, 300);
+            assertNotNull(bitmap);
+            assertEquals(500, bitmap.getWidth());
+            assertEquals(400, bitmap.getHeight());
+        } finally {
+            file.delete();
+        }
+    }
+}
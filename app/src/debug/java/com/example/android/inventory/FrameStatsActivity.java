@@ -0,0 +1,151 @@
+package com.example.android.inventory;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows the frame times {@link FrameStats} collected for every screen, in debug builds. The
+ * frames can be exported as a trace file to look at them on a computer.
+ */
+public class FrameStatsActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = FrameStatsActivity.class.getSimpleName();
+
+    // Name of the exported trace file
+    private static final String TRACE_FILE_NAME = "frame_stats.json";
+
+    // Writes the trace file off the main thread
+    private static final ExecutorService sExportExecutor = Executors.newSingleThreadExecutor();
+
+    // Shows the stats of every screen
+    private TextView mStatsView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_frame_stats);
+        mStatsView = (TextView) findViewById(R.id.frame_stats);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showStats();
+    }
+
+    /**
+     * Show the stats of every screen that was shown since the stats were last reset.
+     */
+    private void showStats() {
+        List<FrameStats.Screen> screens = FrameStats.getInstance().getScreens();
+        StringBuilder text = new StringBuilder();
+        for (FrameStats.Screen screen : screens) {
+            if (screen.frames == 0 && screen.opens == 0) {
+                continue;
+            }
+            text.append(getString(R.string.frame_stats_screen, screen.name, screen.frames,
+                    screen.jankyFrames, screen.droppedFrames, screen.worstFrameNanos / 1e6,
+                    screen.opens, screen.worstOpenNanos / 1e6));
+        }
+        if (text.length() == 0) {
+            mStatsView.setText(R.string.frame_stats_empty);
+        } else {
+            mStatsView.setText(text);
+        }
+    }
+
+    /**
+     * Write the collected frames as a trace file. The trace is rendered here, as the stats may
+     * only be read on the main thread, and written to the file on a background thread. The file
+     * goes to the app's external files directory where it can be pulled with adb, or to its
+     * internal files directory before KitKat, where writing to the external one needs a
+     * permission.
+     */
+    private void exportTrace() {
+        final StringWriter trace = new StringWriter();
+        try {
+            FrameStats.getInstance().writeTrace(trace);
+        } catch (IOException e) {
+            // A string writer doesn't throw
+            throw new IllegalStateException(e);
+        }
+
+        File directory = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? getExternalFilesDir(null) : null;
+        if (directory == null) {
+            directory = getFilesDir();
+        }
+        final File traceFile = new File(directory, TRACE_FILE_NAME);
+        final Context appContext = getApplicationContext();
+        sExportExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean written = false;
+                try {
+                    Writer writer = new OutputStreamWriter(new FileOutputStream(traceFile),
+                            Charset.forName("UTF-8"));
+                    try {
+                        writer.write(trace.toString());
+                        written = true;
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Failed to write " + traceFile, e);
+                }
+                final String message = written
+                        ? appContext.getString(R.string.frame_stats_exported, traceFile.getPath())
+                        : appContext.getString(R.string.frame_stats_export_failed);
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(appContext, message, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        // Inflate the menu options from the res/menu/menu_frame_stats.xml file.
+        // This adds menu items to the app bar.
+        getMenuInflater().inflate(R.menu.menu_frame_stats, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        // User clicked on a menu option in the app bar overflow menu
+        switch (item.getItemId()) {
+            case R.id.action_export_trace:
+                exportTrace();
+                return true;
+            case R.id.action_reset_frame_stats:
+                FrameStats.getInstance().reset();
+                showStats();
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
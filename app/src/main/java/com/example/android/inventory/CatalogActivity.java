@@ -1,41 +1,181 @@
 package com.example.android.inventory;
 
+import android.app.Activity;
+import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.preference.PreferenceManager;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v7.widget.SearchView;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
 
+import com.example.android.inventory.data.ProductContract;
 import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.SummaryEntry;
+import com.example.android.inventory.data.ProductWriter;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Displays list of products that were entered and stored in the app.
  */
 public class CatalogActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
 
-    // Identifies a particular Loader being used in this component
-    private static final int PRODUCT_LOADER = 0;
+    // Identifies the Loader of search results. The full catalog is loaded by a {@link ProductPager}.
+    private static final int SEARCH_LOADER = 0;
+
+    // Identifies the Loader of the inventory summary shown above the catalog
+    private static final int SUMMARY_LOADER = 1;
+
+    // Identifies the picker of the CSV file to import
+    private static final int PICK_CSV_REQUEST = 0;
+
+    // Name of the backup file, in the app's files directory
+    private static final String SNAPSHOT_FILE_NAME = "inventory.snapshot";
+
+    // Runs backups, which only read the database, so they don't hold up the writes queued
+    // behind them
+    private static final ExecutorService sBackupExecutor = Executors.newSingleThreadExecutor();
+
+    // Types of the files offered for import. Not every app labels CSV files the same way.
+    private static final String[] CSV_MIME_TYPES = {
+            "text/csv", "text/comma-separated-values", "application/csv", "text/plain"
+    };
+
+    // Columns of the inventory summary, in the order of the summary format arguments
+    private static final String[] SUMMARY_PROJECTION = {
+            SummaryEntry.COLUMN_TOTAL_VALUE_CENTS,
+            SummaryEntry.COLUMN_PRODUCT_COUNT,
+            SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+    };
+
+    // Columns shown for every product in the catalog
+    private static final String[] CATALOG_PROJECTION = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_IMAGE
+    };
+
+    // Key of the preference that remembers the selected catalog sort order
+    private static final String PREF_SORT_ORDER = "sort_order";
+
+    // Key of the preference that remembers whether the catalog only lists products in stock
+    private static final String PREF_IN_STOCK_ONLY = "in_stock_only";
+
+    // Key of the search text in the saved instance state
+    private static final String STATE_SEARCH_TEXT = "search_text";
+
+    // Time to wait after the last keystroke before searching, in milliseconds
+    private static final long SEARCH_DELAY_MILLIS = 200;
 
     // Create a new adapter that takes the list of products as inputs
     ProductCursorAdapter mCursorAdapter;
 
+    // Loads the catalog page by page as the user scrolls
+    private ProductPager mPager;
+
+    // Shown instead of the list while there are no products
+    private View mEmptyView;
+
+    // Shows the value of the stock and the number of products above the list
+    private TextView mSummaryView;
+
+    // Formats the value of the stock with grouping, kept as the summary changes with every sale
+    private final DecimalFormat mValueFormat = new DecimalFormat("#,##0.00");
+
+    // Sort order of the catalog, one of the SORT_ORDER constants in {@link ProductEntry}
+    private String mSortOrder;
+
+    // Whether the catalog only lists products in stock
+    private boolean mInStockOnly;
+
+    // Text the catalog is currently filtered by, empty to show all products
+    private String mSearchText = "";
+
+    // Text typed into the search box that hasn't been searched for yet
+    private String mPendingSearchText = "";
+
+    // Handler used to wait for a pause in typing before searching
+    private final Handler mSearchHandler = new Handler();
+
+    // Restarts the loader with the pending search text. Restarting the loader also cancels
+    // the search that is still running for the previous text.
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mPendingSearchText.equals(mSearchText)) {
+                mSearchText = mPendingSearchText;
+                if (TextUtils.isEmpty(mSearchText)) {
+                    // Go back to paging through the whole catalog
+                    getLoaderManager().destroyLoader(SEARCH_LOADER);
+                    mPager.setSortOrder(mSortOrder, getCatalogSelection());
+                } else {
+                    getLoaderManager().restartLoader(SEARCH_LOADER, null, CatalogActivity.this);
+                }
+            }
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        FrameStats.getInstance().noteCreate();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_catalog);
 
+        if (BuildConfig.DEBUG) {
+            // Log disk and network access on the main thread, including the provider writes
+            // that should have gone through the {@link ProductWriter}
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectAll()
+                    .penaltyLog()
+                    .build());
+        }
+
+        // Restore the sort order the user picked last time, sorting by name by default
+        mSortOrder = PreferenceManager.getDefaultSharedPreferences(this)
+                .getString(PREF_SORT_ORDER, ProductEntry.SORT_ORDER_NAME);
+        if (getSortMenuItemId(mSortOrder) == 0) {
+            mSortOrder = ProductEntry.SORT_ORDER_NAME;
+        }
+        mInStockOnly = PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(PREF_IN_STOCK_ONLY, false);
+
+        // Restore the search text after a configuration change
+        if (savedInstanceState != null) {
+            mSearchText = savedInstanceState.getString(STATE_SEARCH_TEXT, "");
+            mPendingSearchText = mSearchText;
+        }
+
         // Setup FAB to open EditorActivity
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
@@ -46,23 +186,39 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        // Find the ListView which will be populated with the product data
-        ListView productListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the product data
+        RecyclerView productListView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        productListView.setLayoutManager(layoutManager);
+        // Rows all have the same height, so changes to the rows never resize the list
+        productListView.setHasFixedSize(true);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        productListView.setEmptyView(emptyView);
+        // Find the empty view, shown while the list has 0 items. RecyclerView doesn't show it
+        // by itself, so its visibility is updated whenever the pages change.
+        mEmptyView = findViewById(R.id.empty_view);
 
-        // Create a new adapter that takes the list of products as inputs
-        mCursorAdapter = new ProductCursorAdapter(this, null);
+        // Load the inventory summary. It's a single row kept up to date by the database, so
+        // reloading it after every change is cheap.
+        mSummaryView = (TextView) findViewById(R.id.summary);
+        getLoaderManager().initLoader(SUMMARY_LOADER, null, this);
 
-        // Set the adapter on the {@link ListView}
-        // so the list can be populated in the user interface
-        productListView.setAdapter(mCursorAdapter);
+        // Create a pager that loads the products, and an adapter that shows them
+        mPager = new ProductPager(getContentResolver(), CATALOG_PROJECTION, new ProductPager.Listener() {
+            @Override
+            public void onPagesChanged() {
+                mCursorAdapter.notifyDataSetChanged();
+                mEmptyView.setVisibility(mPager.getCount() == 0 ? View.VISIBLE : View.GONE);
+            }
 
-        productListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onRowChanged(int position) {
+                // Rebind just the row of the product that changed
+                mCursorAdapter.notifyItemChanged(position, ProductCursorAdapter.PAYLOAD_ROW_DATA);
+            }
+        });
+        mCursorAdapter = new ProductCursorAdapter(this, mPager, new ProductCursorAdapter.OnProductClickListener() {
+            @Override
+            public void onProductClick(long id) {
                 // Create new intent to go to {@link EditorActivity}
                 Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
                 // Form the content URI to represent the specific product that was clicked on,
@@ -77,43 +233,115 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
             }
         });
 
-        // Prepare the loader.  Either re-connect with an existing one,
-        // or start a new one.
-        getLoaderManager().initLoader(PRODUCT_LOADER, null, this);
+        // Set the adapter on the {@link RecyclerView}
+        // so the list can be populated in the user interface
+        productListView.setAdapter(mCursorAdapter);
+
+        // Tell the pager which rows are on screen, so it can load and drop pages as the user scrolls
+        productListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int firstPosition = layoutManager.findFirstVisibleItemPosition();
+                int lastPosition = layoutManager.findLastVisibleItemPosition();
+                mPager.onVisibleRowsChanged(firstPosition, lastPosition);
+                // Prefetch the images of the rows about to scroll into view
+                mCursorAdapter.onVisibleRowsChanged(firstPosition, lastPosition);
+            }
+        });
+
+        if (TextUtils.isEmpty(mSearchText)) {
+            // Start loading the first page of the catalog
+            mPager.setSortOrder(mSortOrder, getCatalogSelection());
+        } else {
+            // Prepare the search loader.  Either re-connect with an existing one,
+            // or start a new one.
+            getLoaderManager().initLoader(SEARCH_LOADER, null, this);
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SEARCH_TEXT, mSearchText);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Collect the frame times of scrolling the catalog, in debug builds
+        FrameStats.getInstance().start(this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        FrameStats.getInstance().stop();
+        // Write the sales still waiting for their window, the app may be killed from here on
+        SaleCoalescer.getInstance(this).flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Drop a search that is still waiting for the typing to pause
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        // Release the pages of the catalog
+        mPager.close();
     }
 
     // Called when a new Loader needs to be created
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-
-        // Define a projection that specifies the columns from the products table.
-        String[] projection = {
-                ProductEntry._ID,
-                ProductEntry.COLUMN_PRODUCT_NAME,
-                ProductEntry.COLUMN_PRODUCT_QUANTITY,
-                ProductEntry.COLUMN_PRODUCT_PRICE
-        };
+        if (id == SUMMARY_LOADER) {
+            return new CursorLoader(this, SummaryEntry.CONTENT_URI, SUMMARY_PROJECTION,
+                    null, null, null);
+        }
         // Now create and return a CursorLoader that will take care of
-        // creating a Cursor for the data being displayed.
+        // creating a Cursor for the ranked search results.
         // This loader will execute the ContentProvider's query method on a background thread
-        return new CursorLoader(this, ProductEntry.CONTENT_URI, projection, null, null, null);
+        return new CursorLoader(this, ProductEntry.buildSearchUri(mSearchText), CATALOG_PROJECTION,
+                null, null, null);
     }
 
     // Called when a previously created loader has finished loading
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Swap the new cursor in.  (The framework will take care of closing the
-        // old cursor once we return.)
-        mCursorAdapter.swapCursor(data);
+        if (loader.getId() == SUMMARY_LOADER) {
+            showSummary(data);
+            return;
+        }
+        // Show the search results instead of the catalog.  (The framework will take care
+        // of closing the old cursor once we return.)
+        mPager.showCursor(data);
     }
 
     // Called when a previously created loader is reset, making the data unavailable
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == SUMMARY_LOADER) {
+            mSummaryView.setText(null);
+            return;
+        }
         // This is called when the last Cursor provided to onLoadFinished()
         // above is about to be closed.  We need to make sure we are no
         // longer using it.
-        mCursorAdapter.swapCursor(null);
+        if (mPager.isShowingCursor()) {
+            mPager.showCursor(null);
+        }
+    }
+
+    /**
+     * Show the inventory summary in the given cursor above the catalog.
+     */
+    private void showSummary(Cursor summary) {
+        if (summary == null || !summary.moveToFirst()) {
+            mSummaryView.setText(null);
+            return;
+        }
+        // The value is a sum of cents, which a BigDecimal holds exactly
+        String value = mValueFormat.format(BigDecimal.valueOf(summary.getLong(0), 2));
+        mSummaryView.setText(getString(R.string.catalog_summary, value, summary.getInt(1),
+                summary.getInt(2)));
     }
 
     @Override
@@ -121,28 +349,138 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+        menu.findItem(R.id.action_frame_stats).setVisible(FrameStats.isEnabled());
+
+        // Setup the search box to filter the catalog while typing
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        if (!TextUtils.isEmpty(mSearchText)) {
+            MenuItemCompat.expandActionView(searchItem);
+            searchView.setQuery(mSearchText, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // Search right away instead of waiting for the delay
+                search(query, 0);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText, SEARCH_DELAY_MILLIS);
+                return true;
+            }
+        });
         return true;
     }
 
+    /**
+     * Helper method to search the catalog for the given text once the given delay has passed
+     * without another call. Empty text shows the whole catalog again.
+     */
+    private void search(String text, long delayMillis) {
+        mPendingSearchText = text.trim();
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mSearchHandler.postDelayed(mSearchRunnable, delayMillis);
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        // Check the menu items of the current sort order and filter
+        menu.findItem(getSortMenuItemId(mSortOrder)).setChecked(true);
+        menu.findItem(R.id.action_in_stock_only).setChecked(mInStockOnly);
+        return true;
+    }
+
+    /**
+     * Return the selection of the products the catalog lists, or null if it lists all of them.
+     */
+    private String getCatalogSelection() {
+        return mInStockOnly ? ProductEntry.SELECTION_IN_STOCK : null;
+    }
+
+    /**
+     * Return the id of the "Sort by" menu item for the given sort order, or 0 if the sort order
+     * isn't one the catalog offers.
+     */
+    private static int getSortMenuItemId(String sortOrder) {
+        if (ProductEntry.SORT_ORDER_NAME.equals(sortOrder)) {
+            return R.id.action_sort_name;
+        } else if (ProductEntry.SORT_ORDER_SUPPLIER.equals(sortOrder)) {
+            return R.id.action_sort_supplier;
+        } else if (ProductEntry.SORT_ORDER_QUANTITY.equals(sortOrder)) {
+            return R.id.action_sort_quantity;
+        } else if (ProductEntry.SORT_ORDER_PRICE.equals(sortOrder)) {
+            return R.id.action_sort_price;
+        }
+        return 0;
+    }
+
     void insertProduct() {
 
         // Create a new map of values, where column names are the keys
         ContentValues values = new ContentValues();
         values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Jump Rope");
-        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 13.99);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1399);
         values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 33);
         values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Big 5 Sporting Goods");
 
         // Insert a new row for Jump Rope into the provider using the ContentResolver.
         // Use the {@link ProductEntry#CONTENT_URI} to indicate that we want to insert
         // into the products database table.
-        getContentResolver().insert(ProductEntry.CONTENT_URI, values);
+        // The row is written on the writer thread, and shows up once the catalog reloads.
+        if (!ProductWriter.getInstance(this).insert(ProductEntry.CONTENT_URI, values, null)) {
+            Toast.makeText(this, R.string.write_queue_full, Toast.LENGTH_SHORT).show();
+        }
     }
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Respond to a click on one of the "Sort by" menu options
+            case R.id.action_sort_name:
+                setSortOrder(ProductEntry.SORT_ORDER_NAME);
+                return true;
+            case R.id.action_sort_supplier:
+                setSortOrder(ProductEntry.SORT_ORDER_SUPPLIER);
+                return true;
+            case R.id.action_sort_quantity:
+                setSortOrder(ProductEntry.SORT_ORDER_QUANTITY);
+                return true;
+            case R.id.action_sort_price:
+                setSortOrder(ProductEntry.SORT_ORDER_PRICE);
+                return true;
+            // Respond to a click on the "In stock only" menu option
+            case R.id.action_in_stock_only:
+                setInStockOnly(!mInStockOnly);
+                return true;
+            // Respond to a click on the "Import CSV" menu option
+            case R.id.action_import_csv:
+                openCsvSelector();
+                return true;
+            // Respond to a click on the "Export CSV" menu option
+            case R.id.action_export_csv:
+                shareCsvExport();
+                return true;
+            // Respond to a click on the "Back up" menu option
+            case R.id.action_backup:
+                backUp();
+                return true;
+            // Respond to a click on the "Restore backup" menu option
+            case R.id.action_restore:
+                showRestoreConfirmationDialog();
+                return true;
+            // Respond to a click on the "Frame stats" menu option
+            case R.id.action_frame_stats:
+                startActivity(new Intent().setClassName(this, FrameStats.ACTIVITY_CLASS_NAME));
+                return true;
+            // Respond to a click on the "Purchase orders" menu option
+            case R.id.action_purchase_orders:
+                startActivity(new Intent(this, PurchaseOrderActivity.class));
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 // Insert dummy row for a product in db
@@ -157,11 +495,199 @@ public class CatalogActivity extends AppCompatActivity implements LoaderManager.
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Starts a file chooser intent to pick the CSV file to import
+     */
+    private void openCsvSelector() {
+        Intent intent;
+
+        if (Build.VERSION.SDK_INT < 19) {
+            intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.setType("text/*");
+        } else {
+            intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            intent.putExtra(Intent.EXTRA_MIME_TYPES, CSV_MIME_TYPES);
+        }
+
+        startActivityForResult(intent, PICK_CSV_REQUEST);
+    }
+
+    /**
+     * Asks whether the picked CSV file updates products with the same name and supplier, then
+     * starts the import.
+     */
+    @Override
+    public void onActivityResult(int requestCode, int resultCode, Intent resultData) {
+        super.onActivityResult(requestCode, resultCode, resultData);
+        if (requestCode != PICK_CSV_REQUEST || resultCode != Activity.RESULT_OK
+                || resultData == null || resultData.getData() == null) {
+            return;
+        }
+
+        final Uri csvUri = resultData.getData();
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(R.string.import_upsert_dialog_msg);
+        builder.setPositiveButton(R.string.import_upsert, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                startImport(csvUri, true);
+            }
+        });
+        builder.setNegativeButton(R.string.import_add, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                startImport(csvUri, false);
+            }
+        });
+        builder.create().show();
+    }
+
+    /**
+     * Import the products of the given CSV file in the background. The catalog shows them as
+     * each batch is written.
+     */
+    private void startImport(Uri csvUri, boolean upsert) {
+        ImportService.start(this, csvUri, upsert);
+        Toast.makeText(this, R.string.import_started, Toast.LENGTH_SHORT).show();
+    }
+
+    /**
+     * Share all products as a CSV file. The receiving app reads the export straight from the
+     * provider, which writes it while it is being read.
+     */
+    private void shareCsvExport() {
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType(ProductContract.EXPORT_CSV_TYPE);
+        intent.putExtra(Intent.EXTRA_STREAM,
+                ProductEntry.buildExportUri(ProductContract.EXPORT_FORMAT_CSV));
+        intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.export_subject));
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivity(Intent.createChooser(intent, getString(R.string.export_chooser_title)));
+        }
+    }
+
+    /**
+     * Back up the inventory into the snapshot file on a background thread, replacing the
+     * previous backup.
+     */
+    private void backUp() {
+        final Context appContext = getApplicationContext();
+        final String snapshotPath = new File(getFilesDir(), SNAPSHOT_FILE_NAME).getPath();
+        sBackupExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bundle result = appContext.getContentResolver().call(
+                        ProductEntry.CONTENT_URI, ProductContract.METHOD_BACKUP_SNAPSHOT,
+                        snapshotPath, null);
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    @Override
+                    public void run() {
+                        String message = result == null
+                                ? appContext.getString(R.string.backup_failed)
+                                : appContext.getString(R.string.backup_done,
+                                result.getLong(ProductContract.KEY_SNAPSHOT_ROWS));
+                        Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Ask the user to confirm replacing the inventory with the backup.
+     */
+    private void showRestoreConfirmationDialog() {
+        final File snapshotFile = new File(getFilesDir(), SNAPSHOT_FILE_NAME);
+        if (!snapshotFile.exists()) {
+            Toast.makeText(this, R.string.restore_no_backup, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String backupTime = DateUtils.formatDateTime(this, snapshotFile.lastModified(),
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(getString(R.string.restore_dialog_msg, backupTime));
+        builder.setPositiveButton(R.string.restore, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                restore(snapshotFile);
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+        builder.create().show();
+    }
+
+    /**
+     * Replace the inventory with the given backup. The catalog reloads once it is restored.
+     */
+    private void restore(File snapshotFile) {
+        final Context appContext = getApplicationContext();
+        boolean queued = ProductWriter.getInstance(this).call(ProductEntry.CONTENT_URI,
+                ProductContract.METHOD_RESTORE_SNAPSHOT, snapshotFile.getPath(), null,
+                new ProductWriter.Callback<Bundle>() {
+                    @Override
+                    public void onSuccess(Bundle result) {
+                        Toast.makeText(appContext, result == null ? R.string.restore_failed
+                                : R.string.restore_done, Toast.LENGTH_SHORT).show();
+                    }
+                });
+        if (!queued) {
+            Toast.makeText(this, R.string.write_queue_full, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Helper method to change the catalog sort order, remember it and reload the catalog.
+     */
+    private void setSortOrder(String sortOrder) {
+        if (sortOrder.equals(mSortOrder)) {
+            return;
+        }
+        mSortOrder = sortOrder;
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putString(PREF_SORT_ORDER, sortOrder)
+                .apply();
+        invalidateOptionsMenu();
+        // Search results keep their own ranking, the new order applies once the search ends
+        if (TextUtils.isEmpty(mSearchText)) {
+            mPager.setSortOrder(sortOrder, getCatalogSelection());
+        }
+    }
+
+    /**
+     * Helper method to list only the products in stock, or all products, and remember the choice.
+     */
+    private void setInStockOnly(boolean inStockOnly) {
+        mInStockOnly = inStockOnly;
+        PreferenceManager.getDefaultSharedPreferences(this).edit()
+                .putBoolean(PREF_IN_STOCK_ONLY, inStockOnly)
+                .apply();
+        invalidateOptionsMenu();
+        // Search results list every match, the filter applies once the search ends
+        if (TextUtils.isEmpty(mSearchText)) {
+            mPager.setSortOrder(mSortOrder, getCatalogSelection());
+        }
+    }
+
     /**
      * Helper method to delete all products in the database.
      */
     private void deleteAllProducts() {
-        int rowsDeleted = getContentResolver().delete(ProductEntry.CONTENT_URI, null, null);
-        Log.v("CatalogActivity", rowsDeleted + " rows deleted from product database");
+        boolean queued = ProductWriter.getInstance(this).delete(ProductEntry.CONTENT_URI, null, null,
+                new ProductWriter.Callback<Integer>() {
+                    @Override
+                    public void onSuccess(Integer rowsDeleted) {
+                        Log.v("CatalogActivity", rowsDeleted + " rows deleted from product database");
+                    }
+                });
+        if (!queued) {
+            Toast.makeText(this, R.string.write_queue_full, Toast.LENGTH_SHORT).show();
+        }
     }
 }
\ No newline at end of file
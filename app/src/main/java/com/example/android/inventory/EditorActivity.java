@@ -3,18 +3,19 @@ package com.example.android.inventory;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
-import android.os.ParcelFileDescriptor;
+import android.os.Handler;
 import android.support.v4.app.NavUtils;
+import android.support.v4.os.TraceCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.text.TextUtils;
@@ -30,12 +31,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.example.android.inventory.data.ProductContract;
 import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductImageStore;
+import com.example.android.inventory.data.ProductPrice;
+import com.example.android.inventory.data.ProductWriter;
+import com.example.android.inventory.image.ImageLoader;
 
-import java.io.FileDescriptor;
 import java.io.IOException;
-import java.text.DecimalFormat;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Allows user to create a new product or edit an existing one.
@@ -54,16 +60,26 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
      */
     private static final int EXISTING_PRODUCT_LOADER = 0;
 
+    /**
+     * Stores picked images in the background, one at a time
+     */
+    private static final ExecutorService sImageStoreExecutor = Executors.newSingleThreadExecutor();
+
     /**
      * Content URI for the existing product (null if it's a new product)
      */
     private Uri mCurrentProductUri;
 
     /**
-     * File URI for the product image (null if it's a new image)
+     * URI of the product image in the app's image store (null if the product has no image)
      */
     private Uri mProductImageUri;
 
+    /**
+     * Whether the activity was destroyed, so results of background work must be dropped
+     */
+    private boolean mDestroyed;
+
     /**
      * Defines a variable to contain the number of updated rows
      */
@@ -89,6 +105,11 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
      */
     private EditText mQuantityEditText;
 
+    /**
+     * EditText field to enter the product's reorder point
+     */
+    private EditText mReorderPointEditText;
+
     /**
      * EditText field to enter the product's supplier
      */
@@ -115,16 +136,15 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private boolean mProductHasChanged = false;
 
     /**
-     * Defines a variable to contain the quantity of product sold, received, or to reorder
+     * Defines a variable to contain the quantity of product sold or received
      */
     private int updateQuantity = 0;
 
     /**
-     * Defines constants to signal whether quantity change is sale, reorder, or shipment received
+     * Defines constants to signal whether quantity change is sale or shipment received
      */
     private static final int SALE = 0;
     private static final int SHIPMENT = 1;
-    private static final int REORDER = 2;
 
     /**
      * OnTouchListener that listens for any user touches on a View, implying that they are modifying
@@ -140,6 +160,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        FrameStats.getInstance().noteCreate();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_editor);
 
@@ -167,6 +188,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mNameEditText = (EditText) findViewById(R.id.edit_product_name);
         mSupplierEditText = (EditText) findViewById(R.id.edit_product_supplier);
         mQuantityEditText = (EditText) findViewById(R.id.edit_product_quantity);
+        mReorderPointEditText = (EditText) findViewById(R.id.edit_product_reorder_point);
         mPriceEditText = (EditText) findViewById(R.id.edit_product_price);
         mPictureUriTextView = (TextView) findViewById(R.id.image_uri);
         mImageButton = (Button) findViewById(R.id.select_image);
@@ -178,10 +200,32 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mNameEditText.setOnTouchListener(mTouchListener);
         mSupplierEditText.setOnTouchListener(mTouchListener);
         mQuantityEditText.setOnTouchListener(mTouchListener);
+        mReorderPointEditText.setOnTouchListener(mTouchListener);
         mPriceEditText.setOnTouchListener(mTouchListener);
         mImageButton.setOnTouchListener(mTouchListener);
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Collect the frame times of opening and using the editor, in debug builds
+        FrameStats.getInstance().start(this);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        FrameStats.getInstance().stop();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mDestroyed = true;
+        // Stop loading the product image, this activity won't show it anymore
+        ImageLoader.getInstance(this).cancel(mPictureImageView);
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle bundle) {
         // Since the editor shows all product attributes, define a projection that contains
@@ -192,7 +236,8 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 ProductEntry.COLUMN_PRODUCT_PRICE,
                 ProductEntry.COLUMN_PRODUCT_QUANTITY,
                 ProductEntry.COLUMN_PRODUCT_SUPPLIER,
-                ProductEntry.COLUMN_PRODUCT_IMAGE
+                ProductEntry.COLUMN_PRODUCT_IMAGE,
+                ProductEntry.COLUMN_PRODUCT_REORDER_POINT
         };
 
         // Now create and return a CursorLoader that will take care of
@@ -203,6 +248,18 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        TraceCompat.beginSection("EditorActivity.bindProduct");
+        try {
+            bindProduct(cursor);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Show the attributes of the product in the given cursor in the input fields.
+     */
+    private void bindProduct(Cursor cursor) {
         // Bail early if the cursor is null or there is less than 1 row in the cursor
         if (cursor == null || cursor.getCount() < 1) {
             return;
@@ -216,16 +273,18 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             int quantityColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_QUANTITY);
             int supplierColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_SUPPLIER);
             int imageColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_IMAGE);
+            int reorderPointColumnIndex = cursor.getColumnIndex(ProductEntry.COLUMN_PRODUCT_REORDER_POINT);
 
             // Extract out the value from the Cursor for the given column index
             String name = cursor.getString(nameColumnIndex);
             String supplier = cursor.getString(supplierColumnIndex);
             int quantity = cursor.getInt(quantityColumnIndex);
-            double price = cursor.getDouble(priceColumnIndex);
+            long priceCents = cursor.getLong(priceColumnIndex);
             String image = cursor.getString(imageColumnIndex);
+            int reorderPoint = cursor.getInt(reorderPointColumnIndex);
 
             // Format the price to show 2 decimal places
-            String formattedPrice = formatPrice(price);
+            String formattedPrice = ProductPrice.format(priceCents);
 
             // Update the views on the screen with the values from the database
             mNameEditText.setText(name);
@@ -233,11 +292,12 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             mQuantityEditText.setText(String.format(Locale.getDefault(), "%1$d", quantity));
             mPriceEditText.setText(formattedPrice);
             mPictureUriTextView.setText(image);
+            mReorderPointEditText.setText(String.format(Locale.getDefault(), "%1$d", reorderPoint));
 
             // If there's an image uri in the database, parse it and update the image view
             if (!TextUtils.isEmpty(image)) {
                 mProductImageUri = Uri.parse(image);
-                mPictureImageView.setImageBitmap(getBitmapFromUri(mProductImageUri));
+                ImageLoader.getInstance(this).load(mProductImageUri, mPictureImageView);
             }
         }
     }
@@ -250,22 +310,36 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         mQuantityEditText.setText("");
         mPriceEditText.setText("");
         mPictureUriTextView.setText("");
+        mReorderPointEditText.setText("");
     }
 
     /**
-     * Get user input from editor and save new product into database
+     * Save the product, traced as a section of its own.
      */
     private void saveProduct() {
+        TraceCompat.beginSection("EditorActivity.saveProduct");
+        try {
+            saveProductInput();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Get user input from editor and save new product into database
+     */
+    private void saveProductInput() {
         // Read from input fields
         String nameString = mNameEditText.getText().toString().trim();
         String supplierString = mSupplierEditText.getText().toString().trim();
         String quantityString = mQuantityEditText.getText().toString().trim();
         String priceString = mPriceEditText.getText().toString().trim();
         String imageString = mPictureUriTextView.getText().toString().trim();
+        String reorderPointString = mReorderPointEditText.getText().toString().trim();
 
         // Check if all the fields are empty, and save button has been pressed accidentally.
         // If so, do nothing and exit.
-        if (TextUtils.isEmpty(nameString) && TextUtils.isEmpty(supplierString) && TextUtils.isEmpty(quantityString) && TextUtils.isEmpty(priceString) && TextUtils.isEmpty(imageString))
+        if (TextUtils.isEmpty(nameString) && TextUtils.isEmpty(supplierString) && TextUtils.isEmpty(quantityString) && TextUtils.isEmpty(priceString) && TextUtils.isEmpty(imageString) && TextUtils.isEmpty(reorderPointString))
             return;
 
         // Validate the product name and supplier. If empty, alert user that information is required.
@@ -283,52 +357,94 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         }
 
         // Default price to 0.00.
-        double price = 0.00;
-        // If a price has been entered, convert to double.
+        long priceCents = 0;
+        // If a price has been entered, convert to cents.
         if (!TextUtils.isEmpty(priceString)) {
-            price = Double.parseDouble(priceString);
+            try {
+                priceCents = ProductPrice.parseCents(priceString);
+            } catch (NumberFormatException e) {
+                // For example just a decimal point
+                Toast.makeText(this, getString(R.string.editor_invalid_price),
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+        }
+
+        // Default reorder point to 0, which never reorders the product.
+        int reorderPoint = 0;
+        // If a reorder point has been entered, convert to int.
+        if (!TextUtils.isEmpty(reorderPointString)) {
+            reorderPoint = Integer.parseInt(reorderPointString);
         }
 
         // Create a ContentValues object where column names are the keys,
         // and product attributes from the editor are the values.
         ContentValues values = new ContentValues();
         values.put(ProductEntry.COLUMN_PRODUCT_NAME, nameString);
-        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, price);
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, priceCents);
         values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
         values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, supplierString);
         values.put(ProductEntry.COLUMN_PRODUCT_IMAGE, imageString);
+        values.put(ProductEntry.COLUMN_PRODUCT_REORDER_POINT, reorderPoint);
+
+        // The write runs on the writer thread. The editor closes right away, and the result is
+        // shown once the write is done, so the toasts use the application context.
+        final Context appContext = getApplicationContext();
+        ProductWriter writer = ProductWriter.getInstance(this);
+        boolean queued;
 
         // Check if we are updating an existing product or inserting a new product
         if (mCurrentProductUri == null) {
-            // Insert a new product into the provider, returning the content URI for the new product.
-            Uri newUri = getContentResolver().insert(ProductEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Insert a new product into the provider, receiving the content URI for the new product.
+            queued = writer.insert(ProductEntry.CONTENT_URI, values, new ProductWriter.Callback<Uri>() {
+                @Override
+                public void onSuccess(Uri newUri) {
+                    // Show a toast message depending on whether or not the insertion was successful
+                    if (newUri == null) {
+                        // If the new content URI is null, then there was an error with insertion.
+                        showToast(appContext, R.string.editor_insert_product_failed);
+                    } else {
+                        // Otherwise, the insertion was successful and we can display a toast.
+                        showToast(appContext, R.string.editor_insert_product_successful);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    super.onFailure(e);
+                    showToast(appContext, R.string.editor_insert_product_failed);
+                }
+            });
         } else {
-            // Update the existing product and return the number of rows returned
-            mRowsUpdated = getContentResolver().update(mCurrentProductUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was successful
-            if (mRowsUpdated == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_product_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Update the existing product, receiving the number of rows updated
+            queued = writer.update(mCurrentProductUri, values, null, null, new ProductWriter.Callback<Integer>() {
+                @Override
+                public void onSuccess(Integer rowsUpdated) {
+                    mRowsUpdated = rowsUpdated;
+                    // Show a toast message depending on whether or not the update was successful
+                    if (mRowsUpdated == 0) {
+                        // If no rows were affected, then there was an error with the update.
+                        showToast(appContext, R.string.editor_update_product_failed);
+                    } else {
+                        // Otherwise, the update was successful and we can display a toast.
+                        showToast(appContext, R.string.editor_update_product_successful);
+                    }
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    super.onFailure(e);
+                    showToast(appContext, R.string.editor_update_product_failed);
+                }
+            });
         }
-        // Once the save operation is done, then the activity can be closed.
+
+        // If the writer is too busy to take the change, keep editing so nothing is lost
+        if (!queued) {
+            showToast(this, R.string.write_queue_full);
+            return;
+        }
+        // Once the save operation is queued, then the activity can be closed.
         finish();
     }
 
@@ -339,22 +455,36 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
         // Only perform the delete if this is an existing product.
         if (mCurrentProductUri != null) {
-            // Delete the existing product and return the number of rows returned
-            mRowsDeleted = getContentResolver().delete(mCurrentProductUri, null, null);
-
-            // Show a toast message depending on whether or not the delete was successful
-            if (mRowsDeleted == 0) {
-                // If no rows were affected, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_product_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_product_successful),
-                        Toast.LENGTH_SHORT).show();
+            final Context appContext = getApplicationContext();
+            // Delete the existing product on the writer thread, receiving the number of rows deleted
+            boolean queued = ProductWriter.getInstance(this).delete(mCurrentProductUri, null, null,
+                    new ProductWriter.Callback<Integer>() {
+                        @Override
+                        public void onSuccess(Integer rowsDeleted) {
+                            mRowsDeleted = rowsDeleted;
+                            // Show a toast message depending on whether or not the delete was successful
+                            if (mRowsDeleted == 0) {
+                                // If no rows were affected, then there was an error with the delete.
+                                showToast(appContext, R.string.editor_delete_product_failed);
+                            } else {
+                                // Otherwise, the delete was successful and we can display a toast.
+                                showToast(appContext, R.string.editor_delete_product_successful);
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            super.onFailure(e);
+                            showToast(appContext, R.string.editor_delete_product_failed);
+                        }
+                    });
+            if (!queued) {
+                showToast(this, R.string.write_queue_full);
+                return;
             }
         }
 
-        // Once the delete operation is done, then the activity can be closed.
+        // Once the delete operation is queued, then the activity can be closed.
         finish();
     }
 
@@ -381,8 +511,6 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             saleMenuItem.setVisible(false);
             MenuItem receiveMenuItem = menu.findItem(R.id.action_receive);
             receiveMenuItem.setVisible(false);
-            MenuItem reorderMenuItem = menu.findItem(R.id.action_reorder);
-            reorderMenuItem.setVisible(false);
         }
         return true;
     }
@@ -411,11 +539,6 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
                 // Show a dialog to allow the user to input the shipment quantity
                 showQuantityDialog(SHIPMENT);
                 return true;
-            // Respond to a click on the "Reorder" menu option
-            case R.id.action_reorder:
-                // Show a dialog to allow the user to input the reorder quantity
-                showQuantityDialog(REORDER);
-                return true;
             // Respond to a click on the "Up" arrow button in the app bar
             case android.R.id.home:
                 // If the product hasn't changed, continue with navigating up to parent activity
@@ -529,7 +652,7 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     }
 
     /**
-     * This method is called when the sale, receive, or reorder menu option is pressed.
+     * This method is called when the sale or receive menu option is pressed.
      */
     private void showQuantityDialog(final int updateType) {
         // Create an AlertDialog.Builder and set the message, and click listeners
@@ -546,26 +669,16 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             dialogBuilder.setMessage(R.string.quantity_dialog_sale_msg);
         } else if (updateType == SHIPMENT) {
             dialogBuilder.setMessage(R.string.quantity_dialog_shipment_msg);
-        } else if (updateType == REORDER) {
-            dialogBuilder.setMessage(R.string.quantity_dialog_reorder_msg);
         }
 
         dialogBuilder.setPositiveButton(R.string.done, new DialogInterface.OnClickListener() {
             public void onClick(DialogInterface dialog, int whichButton) {
                 // User clicked the "Save" button
                 updateQuantity = Integer.parseInt(quantityUpdateText.getText().toString().trim());
-                String quantityString = mQuantityEditText.getText().toString().trim();
-                Integer newQuantity;
                 if (updateType == SALE) {
-                    newQuantity = Math.max((Integer.parseInt(quantityString) - updateQuantity), 0);
-                    mQuantityEditText.setText(String.format(Locale.getDefault(), "%1$d", newQuantity));
-                    saveProduct();
+                    adjustQuantity(-updateQuantity);
                 } else if (updateType == SHIPMENT) {
-                    newQuantity = Integer.parseInt(quantityString) + updateQuantity;
-                    mQuantityEditText.setText(String.format(Locale.getDefault(), "%1$d", newQuantity));
-                    saveProduct();
-                } else if (updateType == REORDER) {
-                    sendOrderEmail(Integer.parseInt(quantityString));
+                    adjustQuantity(updateQuantity);
                 }
             }
         });
@@ -585,34 +698,70 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     }
 
     /**
-     * Return the formatted price string showing 2 decimal places (i.e. "3.22")
-     * from a decimal price value.
+     * Adjust the stored quantity of the current product by a signed amount. The provider applies
+     * the change to the current value in the database, so concurrent sales can't be lost, and
+     * returns the resulting quantity to show in the editor.
      */
-    private String formatPrice(double price) {
-        DecimalFormat priceFormat = new DecimalFormat("0.00");
-        return priceFormat.format(price);
+    private void adjustQuantity(int delta) {
+        Uri adjustUri = ProductEntry.buildAdjustUri(ContentUris.parseId(mCurrentProductUri));
+        Bundle extras = new Bundle();
+        extras.putInt(ProductEntry.KEY_QUANTITY_DELTA, delta);
+        boolean queued = ProductWriter.getInstance(this).call(adjustUri,
+                ProductContract.METHOD_ADJUST_QUANTITY, adjustUri.toString(), extras,
+                new ProductWriter.Callback<Bundle>() {
+                    @Override
+                    public void onSuccess(Bundle result) {
+                        onQuantityAdjusted(result);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        super.onFailure(e);
+                        onQuantityAdjusted(null);
+                    }
+                });
+        if (!queued) {
+            showToast(this, R.string.write_queue_full);
+        }
     }
 
     /**
-     * Format message and start an email intent for reordering a product
+     * Show the quantity the provider returned after an adjustment, or tell the user the
+     * adjustment failed if the result is null.
      */
-    public void sendOrderEmail(int quantity) {
-        String nameString = mNameEditText.getText().toString().trim();
-        String supplierString = mSupplierEditText.getText().toString().trim();
-        String priceString = mPriceEditText.getText().toString().trim();
+    private void onQuantityAdjusted(Bundle result) {
+        if (mDestroyed) {
+            return;
+        }
 
-        String emailSubject = "Order of " + nameString;
-        String orderSummary = supplierString + ",\n\nI would like to order: \n\n" + quantity + " " + nameString + " at a unit price of $" + priceString + ".\n\nThank you!";
+        // Show a toast message depending on whether or not the adjustment was successful
+        if (result == null) {
+            // If there is no result, then the product no longer exists.
+            Toast.makeText(this, getString(R.string.editor_update_product_failed),
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        long quantity = result.getLong(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        mQuantityEditText.setText(String.format(Locale.getDefault(), "%1$d", quantity));
 
-        Intent intent = new Intent(Intent.ACTION_SENDTO);
-        intent.setData(Uri.parse("mailto:")); // only email apps should handle this
-        intent.putExtra(Intent.EXTRA_SUBJECT, emailSubject);
-        intent.putExtra(Intent.EXTRA_TEXT, orderSummary);
-        if (intent.resolveActivity(getPackageManager()) != null) {
-            startActivity(intent);
+        // If there are other unsaved edits, save them together with the new quantity.
+        // Otherwise the adjustment is already stored.
+        if (mProductHasChanged) {
+            saveProduct();
+        } else {
+            Toast.makeText(this, getString(R.string.editor_update_quantity_successful),
+                    Toast.LENGTH_SHORT).show();
         }
     }
 
+    /**
+     * Show a short toast with the given message.
+     */
+    private static void showToast(Context context, int messageId) {
+        Toast.makeText(context, context.getString(messageId), Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * Starts an image chooser intent when "Select Image" button is clicked on
      */
@@ -645,39 +794,58 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
             // provided to this method as a parameter.  Pull that uri using "resultData.getData()"
 
             if (resultData != null) {
-                mProductImageUri = resultData.getData();
-                Log.i(LOG_TAG, "Uri: " + mProductImageUri.toString());
-
-                mPictureUriTextView.setText(mProductImageUri.toString());
-                mPictureImageView.setImageBitmap(getBitmapFromUri(mProductImageUri));
+                Uri pickedUri = resultData.getData();
+                Log.i(LOG_TAG, "Uri: " + pickedUri.toString());
+                storeImage(pickedUri);
             }
         }
     }
 
     /**
-     * Fetches and decodes bitmap image from file system
+     * Copy the picked image into the app's image store in the background, then show it. The
+     * product refers to the stored copy, so it doesn't depend on the permission to read the
+     * picked document, and only a scaled down image has to be loaded to show it.
      */
-    private Bitmap getBitmapFromUri(Uri uri) {
-        ParcelFileDescriptor parcelFileDescriptor = null;
-        try {
-            parcelFileDescriptor =
-                    getContentResolver().openFileDescriptor(uri, "r");
-            FileDescriptor fileDescriptor = parcelFileDescriptor.getFileDescriptor();
-            Bitmap image = BitmapFactory.decodeFileDescriptor(fileDescriptor);
-            parcelFileDescriptor.close();
-            return image;
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Failed to load image.", e);
-            return null;
-        } finally {
-            try {
-                if (parcelFileDescriptor != null) {
-                    parcelFileDescriptor.close();
+    private void storeImage(final Uri pickedUri) {
+        final ProductImageStore imageStore = new ProductImageStore(this);
+        final Handler handler = new Handler();
+        sImageStoreExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Uri storedUri = null;
+                try {
+                    storedUri = imageStore.ingest(pickedUri);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Failed to store image " + pickedUri, e);
+                } catch (SecurityException e) {
+                    Log.e(LOG_TAG, "Not allowed to read image " + pickedUri, e);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
-                Log.e(LOG_TAG, "Error closing ParcelFile Descriptor");
+                final Uri result = storedUri;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onImageStored(result);
+                    }
+                });
             }
+        });
+    }
+
+    /**
+     * Show the stored image, or tell the user it couldn't be stored if the URI is null.
+     */
+    private void onImageStored(Uri storedUri) {
+        if (mDestroyed) {
+            return;
+        }
+        if (storedUri == null) {
+            Toast.makeText(this, getString(R.string.editor_store_image_failed),
+                    Toast.LENGTH_SHORT).show();
+            return;
         }
+        mProductImageUri = storedUri;
+        mProductHasChanged = true;
+        mPictureUriTextView.setText(storedUri.toString());
+        ImageLoader.getInstance(this).load(storedUri, mPictureImageView);
     }
 }
\ No newline at end of file
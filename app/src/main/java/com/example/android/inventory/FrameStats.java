@@ -0,0 +1,341 @@
+package com.example.android.inventory;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Process;
+import android.util.JsonWriter;
+import android.view.Choreographer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Collects frame times of the screens of the app in debug builds, to find out where scrolling
+ * and opening screens stutter.
+ * <p/>
+ * While a screen is resumed, a {@link Choreographer} callback is posted for every frame and the
+ * time between two frames is recorded. A frame that took longer than the refresh interval of the
+ * display means frames were dropped in between. Every screen keeps its number of frames,
+ * dropped frames and its worst frame, and the most recent frames are kept to be written as a
+ * trace file with {@link #writeTrace(Writer)}.
+ * <p/>
+ * Opening a screen is measured from {@link #noteCreate()} in its onCreate to its first frame,
+ * which covers inflating its layout and everything else done before it is first drawn.
+ * <p/>
+ * Frames are only collected from Jelly Bean on, where the choreographer is available. All
+ * methods must be called on the main thread. The screen that shows the stats is part of the
+ * debug source set, so release builds only carry the calls from the activities, which do
+ * nothing there.
+ */
+public final class FrameStats {
+
+    /**
+     * Class name of the screen that shows the frame stats, which only debug builds have
+     */
+    public static final String ACTIVITY_CLASS_NAME = "com.example.android.inventory.FrameStatsActivity";
+
+    /**
+     * Number of the most recent frames kept for the trace, about a minute at 60 frames per
+     * second
+     */
+    private static final int MAX_TRACED_FRAMES = 3600;
+
+    /**
+     * Frame times of a single screen since the stats were last reset
+     */
+    public static final class Screen {
+        public final String name;
+
+        /**
+         * Index of the screen in the trace, where every screen is shown as a thread of its own
+         */
+        final int traceId;
+
+        public long frames;
+        public long jankyFrames;
+        public long droppedFrames;
+        public long worstFrameNanos;
+        public long opens;
+        public long worstOpenNanos;
+
+        Screen(String name, int traceId) {
+            this.name = name;
+            this.traceId = traceId;
+        }
+    }
+
+    private static FrameStats sInstance;
+
+    /**
+     * Returns the frame stats of the app.
+     */
+    public static synchronized FrameStats getInstance() {
+        if (sInstance == null) {
+            sInstance = new FrameStats();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns true if frames are collected: in debug builds, from Jelly Bean on.
+     */
+    public static boolean isEnabled() {
+        return BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+    }
+
+    private final LinkedHashMap<String, Screen> mScreens = new LinkedHashMap<String, Screen>();
+
+    /**
+     * Start time, duration, dropped frames before it and screen of the most recent frames, in a
+     * ring that starts at {@link #mNextTracedFrame} once it is full. Openings of a screen have
+     * -1 dropped frames.
+     */
+    private final long[] mTracedFrameStarts;
+    private final long[] mTracedFrameNanos;
+    private final long[] mTracedFrameDropped;
+    private final Screen[] mTracedFrameScreens;
+    private int mNextTracedFrame;
+    private int mTracedFrameCount;
+
+    /**
+     * Screen that is resumed, or null if none is
+     */
+    private Screen mCurrentScreen;
+
+    /**
+     * Refresh interval of the display of the current screen
+     */
+    private long mFrameIntervalNanos;
+
+    /**
+     * Time of the last frame of the current screen, or 0 if it had none yet
+     */
+    private long mLastFrameNanos;
+
+    /**
+     * Time the screen being opened was created, or 0 if it has been drawn since
+     */
+    private long mCreateNanos;
+
+    /**
+     * Choreographer callback, only created on Jelly Bean and later
+     */
+    private Object mFrameCallback;
+
+    private FrameStats() {
+        this(MAX_TRACED_FRAMES);
+    }
+
+    /**
+     * Constructs frame stats that keep the given number of the most recent frames for the trace.
+     */
+    FrameStats(int maxTracedFrames) {
+        mTracedFrameStarts = new long[maxTracedFrames];
+        mTracedFrameNanos = new long[maxTracedFrames];
+        mTracedFrameDropped = new long[maxTracedFrames];
+        mTracedFrameScreens = new Screen[maxTracedFrames];
+    }
+
+    /**
+     * Note that a screen is being created, so the time until its first frame is recorded as the
+     * time it took to open. Call first thing in {@link Activity#onCreate}.
+     */
+    public void noteCreate() {
+        if (isEnabled()) {
+            mCreateNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Start collecting the frames of the given activity, named after its class. Call from
+     * {@link Activity#onResume()}.
+     */
+    public void start(Activity activity) {
+        if (!isEnabled()) {
+            return;
+        }
+        mCurrentScreen = getScreen(activity.getClass().getSimpleName());
+        float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60));
+        mLastFrameNanos = 0;
+        postFrameCallback();
+    }
+
+    /**
+     * Stop collecting frames. Call from {@link Activity#onPause()}.
+     */
+    public void stop() {
+        if (!isEnabled() || mCurrentScreen == null) {
+            return;
+        }
+        mCurrentScreen = null;
+        mCreateNanos = 0;
+        removeFrameCallback();
+    }
+
+    /**
+     * Forget all frames collected so far.
+     */
+    public void reset() {
+        for (Screen screen : mScreens.values()) {
+            screen.frames = 0;
+            screen.jankyFrames = 0;
+            screen.droppedFrames = 0;
+            screen.worstFrameNanos = 0;
+            screen.opens = 0;
+            screen.worstOpenNanos = 0;
+        }
+        mNextTracedFrame = 0;
+        mTracedFrameCount = 0;
+        mLastFrameNanos = 0;
+    }
+
+    /**
+     * Returns the screens that were resumed, in the order they were first shown.
+     */
+    public List<Screen> getScreens() {
+        return new ArrayList<Screen>(mScreens.values());
+    }
+
+    /**
+     * Returns the screen with the given name, which is added if it wasn't shown before.
+     */
+    Screen getScreen(String name) {
+        Screen screen = mScreens.get(name);
+        if (screen == null) {
+            screen = new Screen(name, mScreens.size() + 1);
+            mScreens.put(name, screen);
+        }
+        return screen;
+    }
+
+    /**
+     * Write the most recent frames in the JSON trace event format, which chrome://tracing and
+     * the Perfetto UI open. Every frame is a slice on the thread named after its screen, with
+     * the frames dropped before it as an argument. Opening a screen is a slice of its own.
+     */
+    public void writeTrace(Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        int pid = Process.myPid();
+        json.beginObject();
+        json.name("displayTimeUnit").value("ms");
+        json.name("traceEvents").beginArray();
+        for (Screen screen : mScreens.values()) {
+            json.beginObject();
+            json.name("name").value("thread_name");
+            json.name("ph").value("M");
+            json.name("pid").value(pid);
+            json.name("tid").value(screen.traceId);
+            json.name("args").beginObject().name("name").value(screen.name).endObject();
+            json.endObject();
+        }
+        // The oldest frame is the next one to be replaced once the ring is full
+        int capacity = mTracedFrameStarts.length;
+        int first = mTracedFrameCount < capacity ? 0 : mNextTracedFrame;
+        for (int i = 0; i < mTracedFrameCount; i++) {
+            int frame = (first + i) % capacity;
+            long dropped = mTracedFrameDropped[frame];
+            boolean open = dropped == -1;
+            json.beginObject();
+            json.name("name").value(open ? "Open" : "Frame");
+            json.name("cat").value("frame");
+            json.name("ph").value("X");
+            json.name("pid").value(pid);
+            json.name("tid").value(mTracedFrameScreens[frame].traceId);
+            // Microseconds, with the fraction the format allows
+            json.name("ts").value(mTracedFrameStarts[frame] / 1000.0);
+            json.name("dur").value(mTracedFrameNanos[frame] / 1000.0);
+            if (!open) {
+                json.name("args").beginObject()
+                        .name("dropped").value(dropped)
+                        .endObject();
+            }
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    /**
+     * Called with the time of every frame while a screen is resumed.
+     */
+    private void onFrame(long frameTimeNanos) {
+        Screen screen = mCurrentScreen;
+        if (screen == null) {
+            return;
+        }
+        if (mCreateNanos != 0) {
+            // The first frame of a screen that was just created
+            long openNanos = frameTimeNanos - mCreateNanos;
+            screen.opens++;
+            screen.worstOpenNanos = Math.max(screen.worstOpenNanos, openNanos);
+            addTracedFrame(screen, mCreateNanos, openNanos, -1);
+            mCreateNanos = 0;
+        }
+        if (mLastFrameNanos != 0) {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            long dropped = getDroppedFrames(frameNanos, mFrameIntervalNanos);
+            screen.frames++;
+            if (dropped > 0) {
+                screen.jankyFrames++;
+                screen.droppedFrames += dropped;
+            }
+            screen.worstFrameNanos = Math.max(screen.worstFrameNanos, frameNanos);
+            addTracedFrame(screen, mLastFrameNanos, frameNanos, dropped);
+        }
+        mLastFrameNanos = frameTimeNanos;
+        postFrameCallback();
+    }
+
+    /**
+     * Keep a frame for the trace, replacing the oldest one once the ring is full. The dropped
+     * frames are -1 for the opening of a screen.
+     */
+    void addTracedFrame(Screen screen, long startNanos, long frameNanos, long dropped) {
+        int capacity = mTracedFrameStarts.length;
+        mTracedFrameStarts[mNextTracedFrame] = startNanos;
+        mTracedFrameNanos[mNextTracedFrame] = frameNanos;
+        mTracedFrameDropped[mNextTracedFrame] = dropped;
+        mTracedFrameScreens[mNextTracedFrame] = screen;
+        mNextTracedFrame = (mNextTracedFrame + 1) % capacity;
+        mTracedFrameCount = Math.min(mTracedFrameCount + 1, capacity);
+    }
+
+    /**
+     * Returns the number of refresh intervals that passed without a new frame, rounded to the
+     * closest interval, as vsync times jitter. The dropped frames are kept with every traced
+     * frame, as the interval changes with the display of the screen.
+     */
+    static long getDroppedFrames(long frameNanos, long frameIntervalNanos) {
+        return Math.max((frameNanos + frameIntervalNanos / 2) / frameIntervalNanos - 1, 0);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+        Choreographer choreographer = Choreographer.getInstance();
+        // Never post the callback twice, a resume may follow a pause within the same frame
+        choreographer.removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        choreographer.postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void removeFrameCallback() {
+        if (mFrameCallback != null) {
+            Choreographer.getInstance().removeFrameCallback(
+                    (Choreographer.FrameCallback) mFrameCallback);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.android.inventory;
+
+import android.app.IntentService;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.OpenableColumns;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import com.example.android.inventory.data.ProductImporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Imports products from a CSV file in the background, showing the progress and the outcome in a
+ * notification. The import is written in batches, so other changes to the products get their
+ * turn between batches instead of waiting for the whole file.
+ */
+public class ImportService extends IntentService {
+
+    public static final String LOG_TAG = ImportService.class.getSimpleName();
+
+    /**
+     * Extra of the intent telling whether rows update products with the same name and supplier
+     */
+    private static final String EXTRA_UPSERT = "upsert";
+
+    /**
+     * Identifier of the import notification
+     */
+    private static final int NOTIFICATION_ID = 1;
+
+    /**
+     * Shortest time between two progress updates of the notification, in milliseconds
+     */
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+
+    /**
+     * Number of skipped rows listed in the notification when the import is done
+     */
+    private static final int MAX_ERRORS_SHOWN = 5;
+
+    /**
+     * Start importing the CSV file with the given URI.
+     *
+     * @param upsert whether rows update products with the same name and supplier, instead of
+     *               adding more products
+     */
+    public static void start(Context context, Uri csvUri, boolean upsert) {
+        Intent intent = new Intent(context, ImportService.class);
+        intent.setData(csvUri);
+        intent.putExtra(EXTRA_UPSERT, upsert);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        context.startService(intent);
+    }
+
+    public ImportService() {
+        super(LOG_TAG);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        Uri csvUri = intent.getData();
+        boolean upsert = intent.getBooleanExtra(EXTRA_UPSERT, false);
+
+        final NotificationManager notificationManager =
+                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        final NotificationCompat.Builder builder = new NotificationCompat.Builder(this)
+                .setSmallIcon(android.R.drawable.stat_sys_download)
+                .setContentTitle(getString(R.string.import_in_progress))
+                .setContentIntent(PendingIntent.getActivity(this, 0,
+                        new Intent(this, CatalogActivity.class), 0))
+                .setOngoing(true)
+                .setProgress(0, 0, true);
+        startForeground(NOTIFICATION_ID, builder.build());
+
+        final long size = querySize(csvUri);
+        ProductImporter.ProgressListener listener = new ProductImporter.ProgressListener() {
+            private long mLastUpdate;
+
+            @Override
+            public void onProgress(long bytesRead, int rowsRead) {
+                long now = SystemClock.elapsedRealtime();
+                if (now - mLastUpdate < PROGRESS_INTERVAL_MILLIS) {
+                    return;
+                }
+                mLastUpdate = now;
+                builder.setContentText(getResources().getQuantityString(
+                        R.plurals.import_rows_read, rowsRead, rowsRead));
+                if (size > 0) {
+                    builder.setProgress(100, (int) Math.min(100, bytesRead * 100 / size), false);
+                }
+                notificationManager.notify(NOTIFICATION_ID, builder.build());
+            }
+        };
+
+        NotificationCompat.Builder done = new NotificationCompat.Builder(this)
+                .setSmallIcon(android.R.drawable.stat_sys_download_done)
+                .setContentIntent(PendingIntent.getActivity(this, 0,
+                        new Intent(this, CatalogActivity.class), 0))
+                .setAutoCancel(true);
+        try {
+            InputStream in = getContentResolver().openInputStream(csvUri);
+            if (in == null) {
+                throw new IOException("Can't open " + csvUri);
+            }
+            ProductImporter.Result result =
+                    new ProductImporter(getContentResolver()).importCsv(in, upsert, listener);
+            String summary = getString(R.string.import_done_summary, result.rowsImported,
+                    result.rowsSkipped);
+            done.setContentTitle(getString(R.string.import_done)).setContentText(summary);
+            if (!result.errors.isEmpty()) {
+                // List the first skipped rows, so the user knows what to fix in the file
+                NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                        .setSummaryText(summary);
+                for (int i = 0; i < result.errors.size() && i < MAX_ERRORS_SHOWN; i++) {
+                    style.addLine(result.errors.get(i));
+                }
+                done.setStyle(style);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to read " + csvUri, e);
+            done.setContentTitle(getString(R.string.import_failed)).setContentText(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // The file lacks a column every product needs
+            Log.e(LOG_TAG, "Failed to import " + csvUri, e);
+            done.setContentTitle(getString(R.string.import_failed)).setContentText(e.getMessage());
+        } catch (SecurityException e) {
+            Log.e(LOG_TAG, "Not allowed to read " + csvUri, e);
+            done.setContentTitle(getString(R.string.import_failed)).setContentText(e.getMessage());
+        }
+
+        stopForeground(true);
+        notificationManager.notify(NOTIFICATION_ID, done.build());
+    }
+
+    /**
+     * Returns the size of the file with the given URI in bytes, or -1 if it isn't known.
+     */
+    private long querySize(Uri uri) {
+        Cursor cursor = null;
+        try {
+            cursor = getContentResolver().query(uri, new String[]{OpenableColumns.SIZE}, null,
+                    null, null);
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // Not every provider knows the size, or answers queries at all
+            Log.w(LOG_TAG, "Can't query the size of " + uri, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return -1;
+    }
+}
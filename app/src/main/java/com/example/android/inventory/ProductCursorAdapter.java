@@ -5,101 +5,397 @@ package com.example.android.inventory;
  * for Udacity project.
  */
 
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.net.Uri;
+import android.support.v4.os.TraceCompat;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.CursorAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.example.android.inventory.data.ProductContract;
+import com.example.android.inventory.image.ImageLoader;
+
+import java.util.ArrayList;
 
 /**
- * {@link ProductCursorAdapter} is an adapter for a list or grid view
- * that uses a {@link Cursor} of product data as its data source. This adapter knows
- * how to create list items for each row of product data in the {@link Cursor}.
+ * {@link ProductCursorAdapter} is an adapter for a {@link RecyclerView}
+ * that uses the {@link Cursor} pages of a {@link ProductPager} as its data source. This adapter
+ * knows how to create list items for each row of product data in those pages.
+ * <p/>
+ * Binding a row runs on every scroll frame, so it allocates nothing once the views of the list
+ * have been created: text is copied into the {@link ProductRowText} of each
+ * {@link ProductViewHolder}, column indices are resolved only when the rows come from a
+ * different cursor, and all rows share the same click listeners. Product images are loaded by
+ * the {@link ImageLoader} in the background, and only when a row shows a different image than
+ * before.
  */
-public class ProductCursorAdapter extends CursorAdapter {
+public class ProductCursorAdapter extends RecyclerView.Adapter<ProductCursorAdapter.ProductViewHolder> {
+
+    /**
+     * Receives clicks on the products of the catalog.
+     */
+    public interface OnProductClickListener {
+        /**
+         * Called when the user clicked the row of the product with the given ID.
+         */
+        void onProductClick(long id);
+    }
+
+    /**
+     * Payload for {@link #notifyItemChanged(int, Object)} when the data of a row changed. With a
+     * payload the list rebinds the row's existing views instead of cross-fading to new ones.
+     */
+    public static final Object PAYLOAD_ROW_DATA = new Object();
+
+    /**
+     * Number of rows on each side of the visible rows whose images are prefetched
+     */
+    private static final int PREFETCH_DISTANCE = 6;
+
+    /**
+     * Holds the views of a single list item, and the buffers its text is written to.
+     */
+    static class ProductViewHolder extends RecyclerView.ViewHolder {
+        final TextView nameTextView;
+        final TextView quantityTextView;
+        final TextView priceTextView;
+        final Button saleButton;
+        final ImageView thumbnailImageView;
+
+        // Text of the row, reused every time the list item is bound to another product
+        final ProductRowText text;
+
+        // Image URI the thumbnail was requested for, or a length of -1 if none was requested
+        char[] shownImage = new char[128];
+        int shownImageLength = -1;
+
+        // ID of the product shown, or RecyclerView.NO_ID while its page is loading
+        long productId = RecyclerView.NO_ID;
+
+        // Quantity of the product as stored, without the sales that aren't stored yet
+        long storedQuantity;
+
+        ProductViewHolder(View itemView, char[] quantityLabel, char[] priceLabel) {
+            super(itemView);
+            nameTextView = (TextView) itemView.findViewById(R.id.name);
+            quantityTextView = (TextView) itemView.findViewById(R.id.quantity);
+            priceTextView = (TextView) itemView.findViewById(R.id.price);
+            saleButton = (Button) itemView.findViewById(R.id.sale_btn);
+            thumbnailImageView = (ImageView) itemView.findViewById(R.id.thumbnail);
+            text = new ProductRowText(quantityLabel, priceLabel);
+        }
+    }
+
+    private final Context mContext;
+
+    /**
+     * Pager that loads the rows shown by this adapter
+     */
+    private final ProductPager mPager;
+
+    /**
+     * Labels written in front of the quantity and the price of every product
+     */
+    private final char[] mQuantityLabel;
+    private final char[] mPriceLabel;
+
+    /**
+     * Loads the product images, and their size in pixels
+     */
+    private final ImageLoader mImageLoader;
+    private final int mThumbnailSize;
+
+    /**
+     * Collects the sales made with the sale buttons, and the ones not stored yet
+     */
+    private final SaleCoalescer mSaleCoalescer;
+
+    /**
+     * Rows the images were last prefetched around
+     */
+    private int mPrefetchFirstPosition = -1;
+    private int mPrefetchLastPosition = -1;
+
+    /**
+     * Cursor the column indices below were resolved for
+     */
+    private Cursor mIndexedCursor;
+    private int mIdColumnIndex;
+    private int mNameColumnIndex;
+    private int mQuantityColumnIndex;
+    private int mPriceColumnIndex;
+    private int mImageColumnIndex;
+
+    /**
+     * Opens the product of the clicked row, found through the view holder in the row's tag
+     */
+    private final View.OnClickListener mItemClickListener;
+
+    /**
+     * Sells one piece of the product of the row whose sale button was clicked
+     */
+    private final View.OnClickListener mSaleClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            ProductViewHolder holder = (ProductViewHolder) view.getTag();
+            // A row that already shows no stock can't sell more, or the sales would use up
+            // stock from the next shipment once they're written
+            if (holder.productId == RecyclerView.NO_ID || !isInStock(holder)) {
+                return;
+            }
+            // Quick repeated sales are collected and written as one adjustment. Show the sale
+            // right away, the row is refreshed again once the provider notifies the change.
+            mSaleCoalescer.addSale(holder.productId, holder.storedQuantity);
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                notifyItemChanged(position, PAYLOAD_ROW_DATA);
+            }
+        }
+    };
 
     /**
      * Constructs a new {@link ProductCursorAdapter}.
      *
-     * @param context The context
-     * @param c       The cursor from which to get the data.
+     * @param context  The context
+     * @param pager    The pager from which to get the data.
+     * @param listener Listener to notify when a product is clicked
      */
-    public ProductCursorAdapter(Context context, Cursor c) {
-        super(context, c, 0 /* flags */);
+    public ProductCursorAdapter(Context context, ProductPager pager,
+                                final OnProductClickListener listener) {
+        mContext = context;
+        mPager = pager;
+        mQuantityLabel = (context.getString(R.string.quantity) + " ").toCharArray();
+        mPriceLabel = context.getString(R.string.price).toCharArray();
+        mImageLoader = ImageLoader.getInstance(context);
+        mSaleCoalescer = SaleCoalescer.getInstance(context);
+        mThumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+        mItemClickListener = new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                // Ignore clicks on rows whose page is still loading
+                ProductViewHolder holder = (ProductViewHolder) view.getTag();
+                if (holder.productId != RecyclerView.NO_ID) {
+                    listener.onProductClick(holder.productId);
+                }
+            }
+        };
+        setHasStableIds(true);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPager.getCount();
+    }
+
+    /**
+     * Returns the ID of the product at the given position. Rows whose page isn't loaded keep
+     * the ID they had when it was, so the IDs stay stable while pages are dropped and loaded
+     * again.
+     */
+    @Override
+    public long getItemId(int position) {
+        Cursor cursor = mPager.getRow(position);
+        if (cursor == null) {
+            // Pages start out empty, so every row of the pager was loaded before. A row that
+            // somehow wasn't still gets an ID of its own.
+            long id = mPager.getRowId(position);
+            return id != -1 ? id : -1 - position;
+        }
+        if (cursor != mIndexedCursor) {
+            resolveColumnIndices(cursor);
+        }
+        return cursor.getLong(mIdColumnIndex);
+    }
+
+    /**
+     * Makes a new blank list item view and its view holder. No data is set (or bound) to the
+     * views yet.
+     *
+     * @param parent   The parent to which the new view is attached to
+     * @param viewType The type of the new view, this adapter only has one
+     * @return the view holder of the newly created list item view.
+     */
+    @Override
+    public ProductViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        ProductViewHolder holder = new ProductViewHolder(view, mQuantityLabel, mPriceLabel);
+
+        // The listeners are shared by all rows, the tag tells them which row was clicked
+        view.setTag(holder);
+        view.setOnClickListener(mItemClickListener);
+        holder.saleButton.setTag(holder);
+        holder.saleButton.setOnClickListener(mSaleClickListener);
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ProductViewHolder holder, int position) {
+        TraceCompat.beginSection("ProductCursorAdapter.bindView");
+        try {
+            Cursor cursor = mPager.getRow(position);
+            if (cursor == null) {
+                bindPlaceholder(holder);
+            } else {
+                bindView(holder, cursor);
+            }
+        } finally {
+            TraceCompat.endSection();
+        }
     }
 
     /**
-     * Makes a new blank list item view. No data is set (or bound) to the views yet.
+     * Clears the given list item while the page of its product is being loaded.
      *
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already
-     *                moved to the correct position.
-     * @param parent  The parent to which the new view is attached to
-     * @return the newly created list item view.
+     * @param holder View holder of the list item
+     */
+    void bindPlaceholder(ProductViewHolder holder) {
+        holder.productId = RecyclerView.NO_ID;
+        holder.nameTextView.setText(null);
+        holder.quantityTextView.setText(null);
+        holder.priceTextView.setText(null);
+        holder.saleButton.setEnabled(false);
+        clearThumbnail(holder);
+    }
+
+    /**
+     * Stop loading the image of a row that scrolled out of view, so the pool only works on
+     * images that are still needed.
      */
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+    public void onViewRecycled(ProductViewHolder holder) {
+        clearThumbnail(holder);
+    }
+
+    /**
+     * Cancel the image request of the given list item and clear its image.
+     */
+    private void clearThumbnail(ProductViewHolder holder) {
+        mImageLoader.cancel(holder.thumbnailImageView);
+        holder.thumbnailImageView.setImageDrawable(null);
+        holder.shownImageLength = -1;
     }
 
     /**
      * This method binds the product data (in the current row pointed to by cursor) to the given
-     * list item layout. For example, the name for the current product can be set on the name TextView
+     * list item. For example, the name for the current product is set on the name TextView
      * in the list item layout.
      *
-     * @param view    Existing view, returned earlier by newView() method
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already moved to the
-     *                correct row.
+     * @param holder View holder of the list item
+     * @param cursor The cursor from which to get the data. The cursor is already moved to the
+     *               correct row.
      */
-    @Override
-    public void bindView(View view, Context context, Cursor cursor) {
+    void bindView(ProductViewHolder holder, Cursor cursor) {
+        // Every page of the pager is a different cursor, so look up the columns again
+        // when a row comes from another one
+        if (cursor != mIndexedCursor) {
+            resolveColumnIndices(cursor);
+        }
 
-        // Find fields to populate in inflated template
-        TextView nameTextView = (TextView) view.findViewById(R.id.name);
-        final TextView quantityTextView = (TextView) view.findViewById(R.id.quantity);
-        TextView priceTextView = (TextView) view.findViewById(R.id.price);
+        holder.productId = cursor.getLong(mIdColumnIndex);
+        holder.storedQuantity = cursor.getLong(mQuantityColumnIndex);
 
-        // Find sale button in inflated view
-        Button saleButton = (Button) view.findViewById(R.id.sale_btn);
+        // The quantity includes the sales that haven't been stored yet
+        ProductRowText text = holder.text;
+        text.bind(cursor, mNameColumnIndex, mQuantityColumnIndex, mPriceColumnIndex,
+                mImageColumnIndex,
+                mSaleCoalescer.getPendingDelta(holder.productId, holder.storedQuantity));
+        holder.nameTextView.setText(text.nameBuffer.data, 0, text.nameBuffer.sizeCopied);
+        holder.quantityTextView.setText(text.quantityChars, 0, text.quantityLength);
+        holder.priceTextView.setText(text.priceChars, 0, text.priceLength);
 
-        // Find the columns of product attributes that we're interested in and
-        // extract properties from cursor.
-        final String productName = cursor.getString(cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME));
-        final String productQuantity = cursor.getString(cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY));
-        final String productPrice = cursor.getString(cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE));
-        final String productId = cursor.getString(cursor.getColumnIndexOrThrow(ProductContract.ProductEntry._ID));
+        holder.saleButton.setEnabled(isInStock(holder));
 
-        // Set onclick listener on sale button
-        saleButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                int saleQuantity = Integer.parseInt(productQuantity);
-                if (saleQuantity > 0) {
-                    saleQuantity--;
-                    ContentValues values = new ContentValues();
-                    values.put(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY, saleQuantity);
-                    Uri currentProductUri = ContentUris.withAppendedId(ProductContract.ProductEntry.CONTENT_URI, Long.parseLong(productId));
-                    // Update the existing product's quantity and return the number of rows returned
-                    view.getContext().getContentResolver().update(currentProductUri, values, null, null);
-                }
+        // Only request the image when the row shows a different one, as a request allocates
+        CharArrayBuffer imageBuffer = text.imageBuffer;
+        if (!isShownImage(holder, imageBuffer)) {
+            if (holder.shownImage.length < imageBuffer.sizeCopied) {
+                holder.shownImage = new char[imageBuffer.sizeCopied];
             }
-        });
+            System.arraycopy(imageBuffer.data, 0, holder.shownImage, 0, imageBuffer.sizeCopied);
+            holder.shownImageLength = imageBuffer.sizeCopied;
+            Uri imageUri = imageBuffer.sizeCopied == 0 ? null
+                    : Uri.parse(new String(imageBuffer.data, 0, imageBuffer.sizeCopied));
+            mImageLoader.load(imageUri, holder.thumbnailImageView, mThumbnailSize, mThumbnailSize);
+        }
+    }
+
+    /**
+     * Returns whether the product of the given list item has any stock left once the sales
+     * that aren't stored yet are subtracted.
+     */
+    private boolean isInStock(ProductViewHolder holder) {
+        return holder.storedQuantity
+                + mSaleCoalescer.getPendingDelta(holder.productId, holder.storedQuantity) > 0;
+    }
+
+    /**
+     * Returns whether the image in the buffer is the one the list item already shows.
+     */
+    private static boolean isShownImage(ProductViewHolder holder, CharArrayBuffer imageBuffer) {
+        if (holder.shownImageLength != imageBuffer.sizeCopied) {
+            return false;
+        }
+        for (int i = 0; i < imageBuffer.sizeCopied; i++) {
+            if (holder.shownImage[i] != imageBuffer.data[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        String productDisplayQuantity = context.getString(R.string.quantity) + " " + productQuantity;
-        String productDisplayPrice = context.getString(R.string.price) + productPrice;
+    /**
+     * Tell the adapter which rows are visible, so it can prefetch the images of the rows just
+     * outside of them.
+     */
+    public void onVisibleRowsChanged(int firstPosition, int lastPosition) {
+        if (firstPosition == mPrefetchFirstPosition && lastPosition == mPrefetchLastPosition) {
+            return;
+        }
+        mPrefetchFirstPosition = firstPosition;
+        mPrefetchLastPosition = lastPosition;
+
+        ArrayList<Uri> imageUris = new ArrayList<Uri>();
+        addImageUris(imageUris, lastPosition + 1, lastPosition + PREFETCH_DISTANCE);
+        addImageUris(imageUris, firstPosition - PREFETCH_DISTANCE, firstPosition - 1);
+        mImageLoader.setPrefetches(imageUris, mThumbnailSize, mThumbnailSize);
+    }
 
-        // Populate fields with extracted properties
-        nameTextView.setText(productName);
-        quantityTextView.setText(productDisplayQuantity);
-        priceTextView.setText(productDisplayPrice);
+    /**
+     * Add the image URIs of the loaded rows between the given positions (inclusive) to the list.
+     */
+    private void addImageUris(ArrayList<Uri> imageUris, int fromPosition, int toPosition) {
+        int end = Math.min(toPosition, getItemCount() - 1);
+        for (int position = Math.max(fromPosition, 0); position <= end; position++) {
+            Cursor cursor = mPager.getRow(position);
+            if (cursor == null) {
+                continue;
+            }
+            if (cursor != mIndexedCursor) {
+                resolveColumnIndices(cursor);
+            }
+            String image = cursor.getString(mImageColumnIndex);
+            if (!TextUtils.isEmpty(image)) {
+                imageUris.add(Uri.parse(image));
+            }
+        }
+    }
+
+    /**
+     * Look up the columns of the product attributes that we're interested in.
+     */
+    private void resolveColumnIndices(Cursor cursor) {
+        mIndexedCursor = cursor;
+        mIdColumnIndex = cursor.getColumnIndexOrThrow(ProductContract.ProductEntry._ID);
+        mNameColumnIndex = cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PRODUCT_NAME);
+        mQuantityColumnIndex = cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        mPriceColumnIndex = cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PRODUCT_PRICE);
+        mImageColumnIndex = cursor.getColumnIndexOrThrow(ProductContract.ProductEntry.COLUMN_PRODUCT_IMAGE);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,610 @@
+package com.example.android.inventory;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.os.TraceCompat;
+import android.support.v4.util.LongSparseArray;
+
+import com.example.android.inventory.data.ProductContract;
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the products of the catalog one page at a time while the user scrolls.
+ * <p/>
+ * Pages are bounded by (sort key, _id) rows instead of offsets, so loading a page costs the same
+ * however deep into the catalog it is, and rows added or removed elsewhere never make a page skip
+ * or repeat products. Only pages near the visible rows keep their cursor. Pages further away are
+ * closed and loaded again when the user scrolls back, so memory use doesn't grow with the catalog
+ * beyond the product IDs of the rows. Those are kept, so a row keeps its ID while its page is
+ * closed, see {@link #getRowId(int)}.
+ * <p/>
+ * When a single product changes, only that product is loaded again and its row is patched, unless
+ * the change moved the product to another place in the sort order. Inserts, deletes and other
+ * changes to the list reload the loaded pages.
+ * <p/>
+ * All methods must be called on the main thread.
+ */
+public class ProductPager {
+
+    /**
+     * Receives updates about the rows of a {@link ProductPager}.
+     */
+    public interface Listener {
+        /**
+         * Called when rows were loaded, dropped or changed.
+         */
+        void onPagesChanged();
+
+        /**
+         * Called when the data of the single row at the given position changed, while all other
+         * rows stayed the same.
+         */
+        void onRowChanged(int position);
+    }
+
+    /**
+     * Maximum number of rows loaded by a new page
+     */
+    static final int PAGE_SIZE = 100;
+
+    /**
+     * Number of pages kept loaded on each side of the visible rows
+     */
+    private static final int PAGES_KEPT = 2;
+
+    /**
+     * Row id of a page that has no bound on that side
+     */
+    private static final long NO_BOUND = -1;
+
+    /**
+     * A page of rows, bounded by the row right before it (exclusive) and its own last row
+     * (inclusive). The first page has no lower bound and the last page has no upper bound.
+     */
+    private static final class Page {
+        String afterKey;
+        long afterId = NO_BOUND;
+        String untilKey;
+        long untilId = NO_BOUND;
+
+        // Loaded rows, or null while the page isn't loaded
+        Cursor cursor;
+
+        // Number of rows the page had when it was last loaded, and their product IDs
+        int count;
+        long[] ids;
+
+        // Rows loaded again after their product changed, by product ID. Reloading the page
+        // replaces them.
+        final LongSparseArray<Cursor> changedRows = new LongSparseArray<Cursor>();
+
+        // Identifies the latest load of this page, so older results can be ignored
+        int loadToken;
+        boolean loading;
+
+        // Whether the page was removed from the pager
+        boolean discarded;
+    }
+
+    private final ContentResolver mResolver;
+    private final String[] mProjection;
+    private final Listener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final ArrayList<Page> mPages = new ArrayList<Page>();
+
+    /**
+     * Position of the first row of every page, plus the total row count at the end
+     */
+    private int[] mPageStarts = {0};
+
+    private String mSortOrder;
+    private String mSelection;
+    private String[] mQueryProjection;
+    private String mSortColumn;
+
+    /**
+     * Index of the _id column in the rows loaded by the pager
+     */
+    private int mIdColumnIndex;
+
+    /**
+     * Cursor shown instead of the pages (for example search results), or null
+     */
+    private Cursor mFixedCursor;
+
+    private int mFirstVisiblePage;
+    private int mLastVisiblePage;
+
+    /**
+     * Reloads the loaded pages whenever products change
+     */
+    private final ContentObserver mObserver;
+
+    /**
+     * Constructs a new {@link ProductPager}.
+     *
+     * @param resolver   to query the products with
+     * @param projection columns to load for every row
+     * @param listener   to notify when rows change
+     */
+    public ProductPager(ContentResolver resolver, String[] projection, Listener listener) {
+        mResolver = resolver;
+        mProjection = projection;
+        mListener = listener;
+        mObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                // Before Jelly Bean observers aren't told which URI changed
+                onChange(selfChange, null);
+            }
+
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                long id = ProductEntry.getChangedProductId(uri);
+                if (id == -1) {
+                    reloadPages();
+                } else {
+                    onProductChanged(id);
+                }
+            }
+        };
+        mResolver.registerContentObserver(ProductEntry.CONTENT_URI, true, mObserver);
+    }
+
+    /**
+     * Show the products that match the given selection, or the whole catalog if it's null, in
+     * the given sort order (one of the SORT_ORDER constants of {@link ProductEntry}), starting
+     * from the first page.
+     */
+    public void setSortOrder(String sortOrder, String selection) {
+        discardPages();
+        mFixedCursor = null;
+        mSortOrder = sortOrder;
+        mSelection = selection;
+        mSortColumn = ProductEntry.getSortColumn(sortOrder);
+
+        // The sort column is needed to bound the pages and the _id to find changed products,
+        // so load them even if they aren't displayed
+        ArrayList<String> queryProjection = new ArrayList<String>();
+        Collections.addAll(queryProjection, mProjection);
+        if (!queryProjection.contains(ProductEntry._ID)) {
+            queryProjection.add(ProductEntry._ID);
+        }
+        if (!queryProjection.contains(mSortColumn)) {
+            queryProjection.add(mSortColumn);
+        }
+        mQueryProjection = queryProjection.toArray(new String[queryProjection.size()]);
+        mIdColumnIndex = queryProjection.indexOf(ProductEntry._ID);
+
+        Page firstPage = new Page();
+        mPages.add(firstPage);
+        updatePageStarts();
+        loadPage(firstPage);
+        mListener.onPagesChanged();
+    }
+
+    /**
+     * Show the rows of the given cursor instead of pages of the catalog, or nothing if it's null.
+     * The cursor stays owned by the caller.
+     */
+    public void showCursor(Cursor cursor) {
+        TraceCompat.beginSection("ProductPager.swapCursor");
+        try {
+            discardPages();
+            mFixedCursor = cursor;
+            updatePageStarts();
+            mListener.onPagesChanged();
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Returns whether the pager is showing a cursor given to {@link #showCursor(Cursor)}.
+     */
+    public boolean isShowingCursor() {
+        return mFixedCursor != null;
+    }
+
+    /**
+     * Returns the number of rows, including rows of pages that currently aren't loaded.
+     */
+    public int getCount() {
+        if (mFixedCursor != null) {
+            return mFixedCursor.getCount();
+        }
+        return mPageStarts[mPageStarts.length - 1];
+    }
+
+    /**
+     * Returns a cursor moved to the row at the given position, or null if the page of that row
+     * isn't loaded right now. The cursor must not be kept, it can be closed once the user scrolls.
+     */
+    public Cursor getRow(int position) {
+        if (mFixedCursor != null) {
+            return mFixedCursor.moveToPosition(position) ? mFixedCursor : null;
+        }
+        int pageIndex = findPage(position);
+        Page page = mPages.get(pageIndex);
+        Cursor cursor = page.cursor;
+        if (cursor == null || !cursor.moveToPosition(position - mPageStarts[pageIndex])) {
+            return null;
+        }
+        if (page.changedRows.size() != 0) {
+            // Prefer the row loaded after the product changed
+            Cursor changedRow = page.changedRows.get(cursor.getLong(mIdColumnIndex));
+            if (changedRow != null && changedRow.moveToFirst()) {
+                return changedRow;
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns the product ID of the row at the given position, also while the page of that row
+     * isn't loaded, or -1 if the row was never loaded. The ID only changes when the pages are
+     * loaded again with other products at that position.
+     */
+    public long getRowId(int position) {
+        if (mFixedCursor != null) {
+            return mFixedCursor.moveToPosition(position) ? mFixedCursor.getLong(
+                    mFixedCursor.getColumnIndexOrThrow(ProductEntry._ID)) : -1;
+        }
+        int pageIndex = findPage(position);
+        long[] ids = mPages.get(pageIndex).ids;
+        int row = position - mPageStarts[pageIndex];
+        return ids != null && row >= 0 && row < ids.length ? ids[row] : -1;
+    }
+
+    /**
+     * Tell the pager which rows are visible. Loads the pages around them, including the next page
+     * of the catalog when the user gets close to the end, and drops the pages further away.
+     */
+    public void onVisibleRowsChanged(int firstPosition, int lastPosition) {
+        if (mFixedCursor != null || mPages.isEmpty()) {
+            return;
+        }
+        int firstPage = findPage(firstPosition);
+        int lastPage = findPage(Math.max(firstPosition, lastPosition));
+        if (firstPage == mFirstVisiblePage && lastPage == mLastVisiblePage) {
+            return;
+        }
+        mFirstVisiblePage = firstPage;
+        mLastVisiblePage = lastPage;
+        updateLoadedPages();
+    }
+
+    /**
+     * Stop loading pages and release all cursors. The pager can't be used afterwards.
+     */
+    public void close() {
+        mResolver.unregisterContentObserver(mObserver);
+        discardPages();
+        mFixedCursor = null;
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Load the pages around the visible ones and close the pages further away.
+     */
+    private void updateLoadedPages() {
+        int keepFrom = mFirstVisiblePage - PAGES_KEPT;
+        int keepTo = mLastVisiblePage + PAGES_KEPT;
+        boolean dropped = false;
+        for (int i = 0; i < mPages.size(); i++) {
+            Page page = mPages.get(i);
+            if (i >= keepFrom && i <= keepTo) {
+                if (page.cursor == null && !page.loading) {
+                    loadPage(page);
+                }
+            } else if (page.cursor != null) {
+                // Keep the row count, so positions of the other pages don't move
+                closePage(page);
+                dropped = true;
+            }
+        }
+        if (dropped) {
+            mListener.onPagesChanged();
+        }
+    }
+
+    /**
+     * Load the rows of the given page on the background thread.
+     */
+    private void loadPage(final Page page) {
+        final int loadToken = ++page.loadToken;
+        page.loading = true;
+
+        Uri.Builder builder = ProductEntry.CONTENT_URI.buildUpon();
+        if (page.afterId != NO_BOUND) {
+            builder.appendQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_KEY, page.afterKey)
+                    .appendQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_ID,
+                            String.valueOf(page.afterId));
+        }
+        if (page.untilId != NO_BOUND) {
+            builder.appendQueryParameter(ProductContract.QUERY_PARAMETER_UNTIL_KEY, page.untilKey)
+                    .appendQueryParameter(ProductContract.QUERY_PARAMETER_UNTIL_ID,
+                            String.valueOf(page.untilId));
+        } else {
+            // The last page is open ended, so only load one page worth of rows
+            builder.appendQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT,
+                    String.valueOf(PAGE_SIZE));
+        }
+        final Uri uri = builder.build();
+        final String[] projection = mQueryProjection;
+        final String selection = mSelection;
+        final String sortOrder = mSortOrder;
+        final int idColumnIndex = mIdColumnIndex;
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                TraceCompat.beginSection("ProductPager.query");
+                final Cursor cursor;
+                final long[] ids;
+                try {
+                    cursor = mResolver.query(uri, projection, selection, null, sortOrder);
+                    // Fill the cursor window here rather than on the main thread
+                    ids = cursor != null ? readIds(cursor, idColumnIndex) : null;
+                } finally {
+                    TraceCompat.endSection();
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        TraceCompat.beginSection("ProductPager.swapCursor");
+                        try {
+                            onPageLoaded(page, loadToken, cursor, ids);
+                        } finally {
+                            TraceCompat.endSection();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread with the rows of a page.
+     */
+    private void onPageLoaded(Page page, int loadToken, Cursor cursor, long[] ids) {
+        if (page.discarded || loadToken != page.loadToken || cursor == null) {
+            // The page was discarded or loaded again since, so these rows are out of date
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+        page.loading = false;
+        closePage(page);
+        page.cursor = cursor;
+        page.count = ids.length;
+        page.ids = ids;
+
+        // A full last page gets a fixed upper bound, and a new open ended page follows it
+        int pageIndex = mPages.indexOf(page);
+        if (page.untilId == NO_BOUND && page.count == PAGE_SIZE && cursor.moveToLast()) {
+            page.untilKey = getSortKey(cursor);
+            page.untilId = cursor.getLong(mIdColumnIndex);
+            Page nextPage = new Page();
+            nextPage.afterKey = page.untilKey;
+            nextPage.afterId = page.untilId;
+            mPages.add(pageIndex + 1, nextPage);
+        }
+
+        updatePageStarts();
+        mListener.onPagesChanged();
+
+        // The new page may bring the next page within reach
+        updateLoadedPages();
+    }
+
+    /**
+     * Reload the pages that are loaded, after the products changed.
+     */
+    private void reloadPages() {
+        if (mFixedCursor != null) {
+            return;
+        }
+        for (Page page : mPages) {
+            // The current rows stay visible until the new ones arrive
+            if (page.cursor != null || page.loading) {
+                loadPage(page);
+            }
+        }
+    }
+
+    /**
+     * Refresh the row of a single product that changed. If the product isn't loaded, or the change
+     * moved it somewhere else in the sort order, the loaded pages are reloaded instead.
+     */
+    private void onProductChanged(final long id) {
+        if (mFixedCursor != null) {
+            return;
+        }
+        int pageIndex = findLoadedProduct(id);
+        if (pageIndex == -1) {
+            // The product may have moved into the loaded pages
+            reloadPages();
+            return;
+        }
+
+        final Page page = mPages.get(pageIndex);
+        final int loadToken = page.loadToken;
+        final String[] projection = mQueryProjection;
+        final String selection = mSelection;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor;
+                if (selection == null) {
+                    cursor = mResolver.query(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id),
+                            projection, null, null, null);
+                } else {
+                    // A product that no longer matches the selection comes back without a row,
+                    // like a deleted one, so it is removed from the pages
+                    cursor = mResolver.query(ProductEntry.CONTENT_URI, projection,
+                            ProductEntry._ID + "=? AND (" + selection + ")",
+                            new String[]{String.valueOf(id)}, null);
+                }
+                if (cursor != null) {
+                    cursor.getCount();
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onProductLoaded(page, loadToken, id, cursor);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called on the main thread with the row of a product that changed.
+     */
+    private void onProductLoaded(Page page, int loadToken, long id, Cursor cursor) {
+        if (page.discarded || loadToken != page.loadToken || page.cursor == null || cursor == null) {
+            // The page was dropped or loaded again since, which already brought the new row
+            if (cursor != null) {
+                cursor.close();
+            }
+            return;
+        }
+
+        int position = findRow(page, id);
+        if (position == -1 || !cursor.moveToFirst()
+                || !getSortKey(cursor).equals(getSortKey(page.cursor))) {
+            // The product was deleted or left the selection, or its place in the sort order
+            // changed
+            cursor.close();
+            reloadPages();
+            return;
+        }
+
+        Cursor oldRow = page.changedRows.get(id);
+        if (oldRow != null) {
+            oldRow.close();
+        }
+        page.changedRows.put(id, cursor);
+        mListener.onRowChanged(mPageStarts[mPages.indexOf(page)] + position);
+    }
+
+    /**
+     * Returns the index of the loaded page holding the product with the given ID, or -1 if none.
+     */
+    private int findLoadedProduct(long id) {
+        for (int i = 0; i < mPages.size(); i++) {
+            if (mPages.get(i).cursor != null && findRow(mPages.get(i), id) != -1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the position within the page of the product with the given ID, or -1 if the page
+     * doesn't hold it. The page cursor is left on that row.
+     */
+    private int findRow(Page page, long id) {
+        Cursor cursor = page.cursor;
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            if (cursor.getLong(mIdColumnIndex) == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the product IDs of all rows of the given cursor, in order.
+     */
+    private static long[] readIds(Cursor cursor, int idColumnIndex) {
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            ids[i] = cursor.getLong(idColumnIndex);
+        }
+        return ids;
+    }
+
+    /**
+     * Close the rows of a page, keeping its row count and the IDs of its rows.
+     */
+    private static void closePage(Page page) {
+        if (page.cursor != null) {
+            page.cursor.close();
+            page.cursor = null;
+        }
+        for (int i = 0; i < page.changedRows.size(); i++) {
+            page.changedRows.valueAt(i).close();
+        }
+        page.changedRows.clear();
+    }
+
+    /**
+     * Close all pages and forget them.
+     */
+    private void discardPages() {
+        for (Page page : mPages) {
+            page.discarded = true;
+            closePage(page);
+        }
+        mPages.clear();
+        mFirstVisiblePage = -1;
+        mLastVisiblePage = -1;
+        updatePageStarts();
+    }
+
+    /**
+     * Recompute the position of the first row of every page.
+     */
+    private void updatePageStarts() {
+        mPageStarts = new int[mPages.size() + 1];
+        for (int i = 0; i < mPages.size(); i++) {
+            mPageStarts[i + 1] = mPageStarts[i] + mPages.get(i).count;
+        }
+    }
+
+    /**
+     * Returns the index of the page holding the row at the given position. Positions past the
+     * end belong to the last page.
+     */
+    private int findPage(int position) {
+        // Find the last page that starts at or before the position. Empty pages start at the
+        // same position as the page after them, so they are skipped.
+        int low = 0;
+        int high = mPages.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (mPageStarts[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the sort key of the row the cursor is on, in the form the provider expects.
+     */
+    private String getSortKey(Cursor cursor) {
+        int columnIndex = cursor.getColumnIndexOrThrow(mSortColumn);
+        if (cursor.getType(columnIndex) == Cursor.FIELD_TYPE_FLOAT) {
+            // Cursor.getString() rounds real numbers, which could skip rows at the page boundary
+            return Double.toString(cursor.getDouble(columnIndex));
+        }
+        return cursor.getString(columnIndex);
+    }
+}
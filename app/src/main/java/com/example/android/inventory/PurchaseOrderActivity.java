@@ -0,0 +1,320 @@
+package com.example.android.inventory;
+
+import android.app.AlertDialog;
+import android.app.LoaderManager;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.CursorLoader;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.Loader;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.format.DateUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ListView;
+import android.widget.SimpleCursorAdapter;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.inventory.data.ProductContract;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderItemEntry;
+import com.example.android.inventory.data.ProductWriter;
+
+import java.math.BigDecimal;
+import java.text.DecimalFormat;
+
+/**
+ * Lists the purchase orders, creates new ones for every product below its reorder point, and
+ * sends or receives a single order.
+ */
+public class PurchaseOrderActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    // Identifies the Loader of the purchase orders
+    private static final int ORDERS_LOADER = 0;
+
+    // Identifies the Loader of the items of the order the user picked
+    private static final int ITEMS_LOADER = 1;
+
+    // Keys of the picked order in the arguments of the items loader
+    private static final String ARG_ORDER_ID = "order_id";
+    private static final String ARG_SUPPLIER = "supplier";
+    private static final String ARG_OPEN = "open";
+
+    // Columns of the purchase orders shown in the list
+    private static final String[] ORDERS_PROJECTION = {
+            PurchaseOrderEntry._ID,
+            PurchaseOrderEntry.COLUMN_SUPPLIER,
+            PurchaseOrderEntry.COLUMN_STATUS,
+            PurchaseOrderEntry.COLUMN_CREATED_TIME,
+            PurchaseOrderEntry.COLUMN_RECEIVED_TIME
+    };
+
+    // Columns of the items in a purchase order document
+    private static final String[] ITEMS_PROJECTION = {
+            PurchaseOrderItemEntry.COLUMN_NAME,
+            PurchaseOrderItemEntry.COLUMN_PRICE,
+            PurchaseOrderItemEntry.COLUMN_QUANTITY
+    };
+
+    // Shows the purchase orders, open orders first
+    private SimpleCursorAdapter mAdapter;
+
+    // Arguments of the items loader, describing the order the user picked last
+    private Bundle mItemsArgs;
+
+    // Formats the prices and totals of the documents with grouping
+    private final DecimalFormat mPriceFormat = new DecimalFormat("#,##0.00");
+
+    // ID of the order whose document should be shown once its items are loaded, or -1. The
+    // items loader keeps reloading as orders change, but the dialog is only shown once.
+    private long mPendingDocumentOrderId = -1;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_purchase_orders);
+
+        ListView orderListView = (ListView) findViewById(R.id.list);
+        orderListView.setEmptyView(findViewById(R.id.empty_view));
+
+        // Show the supplier of each order, and below it whether it's still open
+        mAdapter = new SimpleCursorAdapter(this, android.R.layout.simple_list_item_2, null,
+                new String[]{PurchaseOrderEntry.COLUMN_SUPPLIER, PurchaseOrderEntry.COLUMN_STATUS},
+                new int[]{android.R.id.text1, android.R.id.text2}, 0);
+        mAdapter.setViewBinder(new SimpleCursorAdapter.ViewBinder() {
+            @Override
+            public boolean setViewValue(View view, Cursor cursor, int columnIndex) {
+                if (columnIndex != cursor.getColumnIndex(PurchaseOrderEntry.COLUMN_STATUS)) {
+                    return false;
+                }
+                ((TextView) view).setText(formatStatus(cursor));
+                return true;
+            }
+        });
+        orderListView.setAdapter(mAdapter);
+
+        // Show the document of an order when it's clicked
+        orderListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                Cursor cursor = mAdapter.getCursor();
+                if (cursor == null || !cursor.moveToPosition(position)) {
+                    return;
+                }
+                Bundle args = new Bundle();
+                args.putLong(ARG_ORDER_ID, id);
+                args.putString(ARG_SUPPLIER, cursor.getString(
+                        cursor.getColumnIndex(PurchaseOrderEntry.COLUMN_SUPPLIER)));
+                args.putBoolean(ARG_OPEN, cursor.getInt(cursor.getColumnIndex(
+                        PurchaseOrderEntry.COLUMN_STATUS)) == PurchaseOrderEntry.STATUS_OPEN);
+                mItemsArgs = args;
+                mPendingDocumentOrderId = id;
+                getLoaderManager().restartLoader(ITEMS_LOADER, args, PurchaseOrderActivity.this);
+            }
+        });
+
+        getLoaderManager().initLoader(ORDERS_LOADER, null, this);
+    }
+
+    /**
+     * Returns the text describing the status of the purchase order at the current position of
+     * the cursor.
+     */
+    private String formatStatus(Cursor cursor) {
+        if (cursor.getInt(cursor.getColumnIndex(PurchaseOrderEntry.COLUMN_STATUS))
+                == PurchaseOrderEntry.STATUS_OPEN) {
+            long created = cursor.getLong(cursor.getColumnIndex(PurchaseOrderEntry.COLUMN_CREATED_TIME));
+            return getString(R.string.purchase_order_status_open, DateUtils.formatDateTime(this,
+                    created, DateUtils.FORMAT_SHOW_DATE));
+        }
+        long received = cursor.getLong(cursor.getColumnIndex(PurchaseOrderEntry.COLUMN_RECEIVED_TIME));
+        return getString(R.string.purchase_order_status_received, DateUtils.formatDateTime(this,
+                received, DateUtils.FORMAT_SHOW_DATE));
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        // Inflate the menu options from the res/menu/menu_purchase_orders.xml file.
+        getMenuInflater().inflate(R.menu.menu_purchase_orders, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            // Respond to a click on the "Order low stock" menu option
+            case R.id.action_create_purchase_orders:
+                createPurchaseOrders();
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    /**
+     * Order every product below its reorder point, with one purchase order per supplier.
+     */
+    private void createPurchaseOrders() {
+        final Context appContext = getApplicationContext();
+        boolean queued = ProductWriter.getInstance(this).call(PurchaseOrderEntry.CONTENT_URI,
+                ProductContract.METHOD_CREATE_PURCHASE_ORDERS, null, null,
+                new ProductWriter.Callback<Bundle>() {
+                    @Override
+                    public void onSuccess(Bundle result) {
+                        int orders = result.getLongArray(PurchaseOrderEntry.KEY_ORDER_IDS).length;
+                        String message = orders == 0
+                                ? appContext.getString(R.string.purchase_orders_nothing_to_order)
+                                : appContext.getResources().getQuantityString(
+                                R.plurals.purchase_orders_created, orders, orders);
+                        Toast.makeText(appContext, message, Toast.LENGTH_SHORT).show();
+                    }
+                });
+        if (!queued) {
+            Toast.makeText(this, R.string.write_queue_full, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Add the ordered quantities of a purchase order to the stock, all at once.
+     */
+    private void receivePurchaseOrder(long orderId) {
+        final Context appContext = getApplicationContext();
+        Uri orderUri = ContentUris.withAppendedId(PurchaseOrderEntry.CONTENT_URI, orderId);
+        boolean queued = ProductWriter.getInstance(this).call(orderUri,
+                ProductContract.METHOD_RECEIVE_PURCHASE_ORDER, orderUri.toString(), null,
+                new ProductWriter.Callback<Bundle>() {
+                    @Override
+                    public void onSuccess(Bundle result) {
+                        // A null result means the order was already received, which the list
+                        // shows by now
+                        if (result != null) {
+                            Toast.makeText(appContext, R.string.purchase_order_received,
+                                    Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+        if (!queued) {
+            Toast.makeText(this, R.string.write_queue_full, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        if (id == ITEMS_LOADER) {
+            return new CursorLoader(this, PurchaseOrderItemEntry.buildItemsUri(
+                    args.getLong(ARG_ORDER_ID)), ITEMS_PROJECTION, null, null, null);
+        }
+        return new CursorLoader(this, PurchaseOrderEntry.CONTENT_URI, ORDERS_PROJECTION, null, null,
+                PurchaseOrderEntry.SORT_ORDER_OPEN_FIRST);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (loader.getId() == ORDERS_LOADER) {
+            mAdapter.swapCursor(cursor);
+            return;
+        }
+
+        // Only the first load of the items after a click shows the document
+        if (cursor == null || mItemsArgs == null
+                || mItemsArgs.getLong(ARG_ORDER_ID) != mPendingDocumentOrderId) {
+            return;
+        }
+        mPendingDocumentOrderId = -1;
+        long orderId = mItemsArgs.getLong(ARG_ORDER_ID);
+        String supplier = mItemsArgs.getString(ARG_SUPPLIER);
+        showDocument(orderId, supplier, mItemsArgs.getBoolean(ARG_OPEN),
+                buildDocument(supplier, cursor));
+    }
+
+    /**
+     * Format the purchase order document for a supplier: one line per item with the ordered
+     * quantity and unit price, followed by the total.
+     */
+    private String buildDocument(String supplier, Cursor items) {
+        int nameColumnIndex = items.getColumnIndex(PurchaseOrderItemEntry.COLUMN_NAME);
+        int priceColumnIndex = items.getColumnIndex(PurchaseOrderItemEntry.COLUMN_PRICE);
+        int quantityColumnIndex = items.getColumnIndex(PurchaseOrderItemEntry.COLUMN_QUANTITY);
+
+        StringBuilder document = new StringBuilder(getString(R.string.purchase_order_greeting, supplier));
+        // Prices are in cents, so the total adds up exactly
+        long totalCents = 0;
+        items.moveToPosition(-1);
+        while (items.moveToNext()) {
+            long priceCents = items.getLong(priceColumnIndex);
+            int quantity = items.getInt(quantityColumnIndex);
+            totalCents += priceCents * quantity;
+            document.append(getString(R.string.purchase_order_line, quantity,
+                    items.getString(nameColumnIndex), formatCents(priceCents)));
+        }
+        document.append(getString(R.string.purchase_order_total, formatCents(totalCents)));
+        return document.toString();
+    }
+
+    /**
+     * Return an amount of cents with grouping and two decimals, for example 1,234.50.
+     */
+    private String formatCents(long cents) {
+        return mPriceFormat.format(BigDecimal.valueOf(cents, 2));
+    }
+
+    /**
+     * Show the document of a purchase order, with the options to email it to the supplier and,
+     * while it's open, to receive it.
+     */
+    private void showDocument(final long orderId, final String supplier, boolean open,
+                              final String document) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(supplier);
+        builder.setMessage(document);
+        builder.setPositiveButton(R.string.purchase_order_send, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                sendOrderEmail(orderId, document);
+            }
+        });
+        if (open) {
+            builder.setNeutralButton(R.string.purchase_order_receive, new DialogInterface.OnClickListener() {
+                public void onClick(DialogInterface dialog, int id) {
+                    receivePurchaseOrder(orderId);
+                }
+            });
+        }
+        builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+
+        // Create and show the AlertDialog
+        AlertDialog alertDialog = builder.create();
+        alertDialog.show();
+    }
+
+    /**
+     * Start an email intent with the document of a purchase order
+     */
+    private void sendOrderEmail(long orderId, String document) {
+        Intent intent = new Intent(Intent.ACTION_SENDTO);
+        intent.setData(Uri.parse("mailto:")); // only email apps should handle this
+        intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.purchase_order_subject, orderId));
+        intent.putExtra(Intent.EXTRA_TEXT, document);
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivity(intent);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == ORDERS_LOADER) {
+            mAdapter.swapCursor(null);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.android.inventory;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LongSparseArray;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductWriter;
+
+/**
+ * Combines quick repeated sales of the same product into a single quantity adjustment.
+ * <p/>
+ * Every sale adds to a pending delta of its product. The first sale starts a short window, and
+ * when the window ends the delta of every product is written with one adjustment per product
+ * through the {@link ProductWriter}, so ten taps cost one transaction, one notification and one
+ * row reload instead of ten. Until the catalog shows the written quantity,
+ * {@link #getPendingDelta(long, long)} tells it how many sales to subtract from the stored one.
+ * <p/>
+ * The provider notifies the change before the writer hands back the result, so the catalog can
+ * requery the row before the written delta is cleared here. Each product's deltas in the writer
+ * therefore remember the stored quantity they were added to, and stop counting as soon as the
+ * catalog shows another one.
+ * <p/>
+ * The coalescer belongs to the app rather than an activity, so sales still waiting for their
+ * window are written even if the catalog is destroyed in the meantime. {@link #flush()} writes
+ * them right away, for when the app may be about to be killed.
+ * <p/>
+ * All methods must be called on the main thread.
+ */
+public final class SaleCoalescer {
+
+    /**
+     * Default time sales are collected before they are written, in milliseconds
+     */
+    static final long DEFAULT_WINDOW_MILLIS = 400;
+
+    private static SaleCoalescer sInstance;
+
+    /**
+     * Returns the sale coalescer of the app.
+     */
+    public static synchronized SaleCoalescer getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SaleCoalescer(ProductWriter.getInstance(context), DEFAULT_WINDOW_MILLIS);
+        }
+        return sInstance;
+    }
+
+    private final ProductWriter mWriter;
+    private final long mWindowMillis;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Quantity deltas that haven't been handed to the writer yet, by product ID
+     */
+    private final LongSparseArray<Integer> mPendingDeltas = new LongSparseArray<Integer>();
+
+    /**
+     * Quantity deltas handed to the writer that haven't been written yet, by product ID
+     */
+    private final LongSparseArray<Integer> mWritingDeltas = new LongSparseArray<Integer>();
+
+    /**
+     * Stored quantity the catalog showed at the latest sale of each product with a pending delta
+     */
+    private final LongSparseArray<Long> mPendingBases = new LongSparseArray<Long>();
+
+    /**
+     * Stored quantity the deltas in {@link #mWritingDeltas} were added to, by product ID
+     */
+    private final LongSparseArray<Long> mWritingBases = new LongSparseArray<Long>();
+
+    /**
+     * Whether {@link #mFlushRunnable} is waiting for the window to end
+     */
+    private boolean mFlushScheduled;
+
+    /**
+     * Writes the pending deltas when the window ends
+     */
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructs a new {@link SaleCoalescer} writing through the given writer.
+     *
+     * @param windowMillis time sales are collected before they are written, in milliseconds
+     */
+    SaleCoalescer(ProductWriter writer, long windowMillis) {
+        mWriter = writer;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Record the sale of a single piece of the given product.
+     *
+     * @param storedQuantity quantity of the product as the catalog row read it from the provider,
+     *                       without the sales that aren't stored yet
+     */
+    public void addSale(long productId, long storedQuantity) {
+        addDelta(mPendingDeltas, productId, -1);
+        mPendingBases.put(productId, storedQuantity);
+        // The window starts with the first sale, so a steady stream of taps is still written
+        // at least once per window
+        if (!mFlushScheduled) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Returns the change of the given product's quantity that isn't shown by the stored quantity
+     * yet, a negative number for sales. Doesn't allocate, so it can be used while binding rows.
+     *
+     * @param storedQuantity quantity of the product as the catalog row read it from the provider
+     */
+    public int getPendingDelta(long productId, long storedQuantity) {
+        int delta = mPendingDeltas.get(productId, 0);
+        // A row that was requeried after the write was stored already includes the written
+        // delta, even if the writer hasn't reported back yet
+        Long writingBase = mWritingBases.get(productId);
+        if (writingBase != null && writingBase == storedQuantity) {
+            delta += mWritingDeltas.get(productId, 0);
+        }
+        return delta;
+    }
+
+    /**
+     * Hand the pending delta of every product to the writer now. Deltas the writer refuses
+     * because it is busy stay pending and are tried again after another window.
+     */
+    public void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        for (int i = mPendingDeltas.size() - 1; i >= 0; i--) {
+            final long productId = mPendingDeltas.keyAt(i);
+            final int delta = mPendingDeltas.valueAt(i);
+
+            ContentValues values = new ContentValues();
+            values.put(ProductEntry.KEY_QUANTITY_DELTA, delta);
+            boolean queued = mWriter.update(ProductEntry.buildAdjustUri(productId), values, null,
+                    null, new ProductWriter.Callback<Integer>() {
+                        @Override
+                        public void onSuccess(Integer rowsUpdated) {
+                            removeWritingDelta(productId, delta);
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            super.onFailure(e);
+                            removeWritingDelta(productId, delta);
+                        }
+                    });
+            if (queued) {
+                // A product with earlier writes still in the writer keeps their base, so the
+                // row shows this delta too late rather than twice
+                if (mWritingBases.indexOfKey(productId) < 0) {
+                    mWritingBases.put(productId, mPendingBases.get(productId));
+                }
+                mPendingDeltas.removeAt(i);
+                mPendingBases.remove(productId);
+                addDelta(mWritingDeltas, productId, delta);
+            }
+        }
+        if (mPendingDeltas.size() > 0) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Write the pending deltas once the window has passed.
+     */
+    private void scheduleFlush() {
+        mFlushScheduled = true;
+        mHandler.postDelayed(mFlushRunnable, mWindowMillis);
+    }
+
+    /**
+     * Forget a delta the writer is done with, and the base of the product once none are left.
+     */
+    private void removeWritingDelta(long productId, int delta) {
+        addDelta(mWritingDeltas, productId, -delta);
+        if (mWritingDeltas.indexOfKey(productId) < 0) {
+            mWritingBases.remove(productId);
+        }
+    }
+
+    /**
+     * Add the given amount to a product's delta in the given array, dropping deltas of 0.
+     */
+    private static void addDelta(LongSparseArray<Integer> deltas, long productId, int amount) {
+        int delta = deltas.get(productId, 0) + amount;
+        if (delta == 0) {
+            deltas.remove(productId);
+        } else {
+            deltas.put(productId, delta);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.android.inventory.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Reads comma-separated values one row at a time, as described in RFC 4180. Fields may be quoted
+ * to contain commas, line breaks and doubled quotes. Only the current row is held in memory, so
+ * files of any length can be read, as long as no single field is longer than
+ * {@link #MAX_FIELD_LENGTH}.
+ */
+final class CsvReader implements Closeable {
+
+    /**
+     * Longest field accepted, in characters. A longer field most likely comes from a quote that
+     * is never closed, which would otherwise swallow the rest of the file.
+     */
+    static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    /**
+     * Marks the end of the input
+     */
+    private static final int END = -1;
+
+    private final Reader mReader;
+
+    /**
+     * Fields of the current row, reused for every row
+     */
+    private final ArrayList<String> mFields = new ArrayList<String>();
+
+    /**
+     * Characters of the current field, reused for every field
+     */
+    private final StringBuilder mField = new StringBuilder();
+
+    /**
+     * Number of lines read so far, and the line the current row started on
+     */
+    private int mLineNumber = 1;
+    private int mRowLineNumber;
+
+    /**
+     * Character read ahead of the current position, or -2 if there is none
+     */
+    private int mPeeked = -2;
+
+    /**
+     * Constructs a new {@link CsvReader}. The reader should be buffered, since it is read one
+     * character at a time.
+     */
+    CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Returns the line of the input the row returned last started on, counting from 1.
+     */
+    int getRowLineNumber() {
+        return mRowLineNumber;
+    }
+
+    /**
+     * Read the next row. Returns its fields, or null at the end of the input. The returned array
+     * is only valid until the next call.
+     *
+     * @throws IOException if the input can't be read, or a field is longer than
+     *                     {@link #MAX_FIELD_LENGTH}
+     */
+    String[] readRow() throws IOException {
+        int c = read();
+        if (c == END) {
+            return null;
+        }
+        // Skip the byte order mark some editors write at the start of UTF-8 files
+        if (c == '\uFEFF' && mRowLineNumber == 0) {
+            c = read();
+            if (c == END) {
+                return null;
+            }
+        }
+
+        mRowLineNumber = mLineNumber;
+        mFields.clear();
+        mField.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == END) {
+                    // A quote that is never closed ends with the input
+                    break;
+                } else if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        mLineNumber++;
+                    }
+                    append((char) c);
+                }
+            } else if (c == ',') {
+                endField();
+            } else if (c == '\r' || c == '\n' || c == END) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (c != END) {
+                    mLineNumber++;
+                }
+                break;
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else {
+                append((char) c);
+            }
+            c = read();
+        }
+        endField();
+        return mFields.toArray(new String[mFields.size()]);
+    }
+
+    /**
+     * Add a character to the current field. Throws if the field gets too long.
+     */
+    private void append(char c) throws IOException {
+        if (mField.length() >= MAX_FIELD_LENGTH) {
+            throw new IOException("Field on line " + mRowLineNumber + " is longer than "
+                    + MAX_FIELD_LENGTH + " characters");
+        }
+        mField.append(c);
+    }
+
+    /**
+     * Add the current field to the row and start a new one.
+     */
+    private void endField() {
+        mFields.add(mField.toString());
+        mField.setLength(0);
+    }
+
+    private int read() throws IOException {
+        if (mPeeked != -2) {
+            int c = mPeeked;
+            mPeeked = -2;
+            return c;
+        }
+        return mReader.read();
+    }
+
+    private int peek() throws IOException {
+        if (mPeeked == -2) {
+            mPeeked = mReader.read();
+        }
+        return mPeeked;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
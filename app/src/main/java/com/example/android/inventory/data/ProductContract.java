@@ -1,9 +1,12 @@
 package com.example.android.inventory.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import java.util.List;
+
 /**
  * Created by Biggi on 10/16/2016
  * for Udacity project.
@@ -30,6 +33,182 @@ public class ProductContract {
      */
     public static final String PATH_PRODUCTS = "products";
 
+    /**
+     * Path appended to a single product URI to adjust its quantity by a relative amount.
+     */
+    public static final String PATH_ADJUST = "adjust";
+
+    /**
+     * Path appended to {@link ProductEntry#CONTENT_URI} to search products by name and supplier.
+     * The search text follows as the last path segment.
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path appended to a single product URI to list the stock movements of the product.
+     */
+    public static final String PATH_MOVEMENTS = "movements";
+
+    /**
+     * Path appended to a single product URI to read the quantity of the product in stock at a
+     * point in time, given by {@link #QUERY_PARAMETER_AT}.
+     */
+    public static final String PATH_STOCK = "stock";
+
+    /**
+     * Path appended to the base content URI to read the summary of the inventory. It isn't below
+     * {@link ProductEntry#CONTENT_URI}, so observers of the products aren't told about changes
+     * to the summary alone.
+     */
+    public static final String PATH_SUMMARY = "summary";
+
+    /**
+     * Path appended to {@link ProductEntry#CONTENT_URI} to export all products as a file. The
+     * format follows as the last path segment, {@link #EXPORT_FORMAT_CSV} or
+     * {@link #EXPORT_FORMAT_JSON}.
+     */
+    public static final String PATH_EXPORT = "export";
+
+    /**
+     * Path appended to {@link ProductEntry#CONTENT_URI} to read the call counts and latencies
+     * the provider recorded, see {@link MetricsEntry}.
+     */
+    public static final String PATH_METRICS = "_metrics";
+
+    /**
+     * Formats of the export, see {@link #PATH_EXPORT}.
+     */
+    public static final String EXPORT_FORMAT_CSV = "csv";
+    public static final String EXPORT_FORMAT_JSON = "json";
+
+    /**
+     * The MIME types of the export formats.
+     */
+    public static final String EXPORT_CSV_TYPE = "text/csv";
+    public static final String EXPORT_JSON_TYPE = "application/json";
+
+    /**
+     * Path of the purchase orders.
+     */
+    public static final String PATH_PURCHASE_ORDERS = "purchase_orders";
+
+    /**
+     * Path appended to a single purchase order URI to list the items of the order.
+     */
+    public static final String PATH_ITEMS = "items";
+
+    /**
+     * Path of the product images stored by the app.
+     */
+    public static final String PATH_IMAGES = "images";
+
+    /**
+     * The content URI of the product images stored by the app. Each image is a JPEG file named
+     * after the hash of its contents, which can be opened for reading with
+     * {@link ContentResolver#openFileDescriptor(Uri, String)}.
+     */
+    public static final Uri IMAGES_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_IMAGES);
+
+    /**
+     * The MIME type of a stored product image.
+     */
+    public static final String IMAGE_TYPE = "image/jpeg";
+
+    /**
+     * Query parameter that limits the number of rows returned by a query.
+     */
+    public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+    /**
+     * Query parameters that start a page of products right after the given row. The key is the
+     * row's value of the sort column (see {@link ProductEntry#getSortColumn(String)}) and the id
+     * is its _id. Paging requires one of the SORT_ORDER constants of {@link ProductEntry}.
+     */
+    public static final String QUERY_PARAMETER_AFTER_KEY = "after_key";
+    public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+    /**
+     * Query parameters that end a page of products at (and including) the given row, in the same
+     * form as {@link #QUERY_PARAMETER_AFTER_KEY} and {@link #QUERY_PARAMETER_AFTER_ID}.
+     */
+    public static final String QUERY_PARAMETER_UNTIL_KEY = "until_key";
+    public static final String QUERY_PARAMETER_UNTIL_ID = "until_id";
+
+    /**
+     * Query parameter of the stock URI (see {@link StockMovementEntry#buildStockUri(long, long)})
+     * with the point in time to read the quantity at, in milliseconds since the epoch. The current
+     * quantity is returned without it.
+     */
+    public static final String QUERY_PARAMETER_AT = "at";
+
+    /**
+     * Query parameter of {@link ProductEntry#CONTENT_URI} that turns a bulk insert into an
+     * upsert when set to "true": a row whose name and supplier match an existing product,
+     * ignoring case, updates that product instead of adding another one.
+     */
+    public static final String QUERY_PARAMETER_UPSERT = "upsert";
+
+    /**
+     * Name of the provider method that adjusts a product's quantity and returns the result.
+     * The argument is the adjust URI of the product (see {@link ProductEntry#buildAdjustUri(long)})
+     * and the extras hold the {@link ProductEntry#KEY_QUANTITY_DELTA}.
+     */
+    public static final String METHOD_ADJUST_QUANTITY = "adjust_quantity";
+
+    /**
+     * Name of the provider method that compares the inventory summary against a full recompute
+     * from the products table, and rebuilds it if they differ. The result holds
+     * {@link SummaryEntry#KEY_CONSISTENT}.
+     */
+    public static final String METHOD_CHECK_SUMMARY = "check_summary";
+
+    /**
+     * Name of the provider method that orders every product whose quantity is below its reorder
+     * point and that isn't on an open purchase order yet. One purchase order is created per
+     * supplier. The result holds {@link PurchaseOrderEntry#KEY_ORDER_IDS}.
+     */
+    public static final String METHOD_CREATE_PURCHASE_ORDERS = "create_purchase_orders";
+
+    /**
+     * Name of the provider method that receives an open purchase order, adding the ordered
+     * quantity of every item to the stock of its product. The argument is the URI of the order
+     * (see {@link PurchaseOrderEntry#CONTENT_URI}). The result holds
+     * {@link PurchaseOrderEntry#KEY_RECEIVED_ITEMS}, or is null if the order doesn't exist or was
+     * already received.
+     */
+    public static final String METHOD_RECEIVE_PURCHASE_ORDER = "receive_purchase_order";
+
+    /**
+     * Name of the provider method that backs up the database into a snapshot file, whose
+     * absolute path is the argument. Writers are only held up while the database files are
+     * copied, not while the snapshot is written. The result holds {@link #KEY_SNAPSHOT_ROWS}
+     * and {@link #KEY_SNAPSHOT_BYTES}.
+     */
+    public static final String METHOD_BACKUP_SNAPSHOT = "backup_snapshot";
+
+    /**
+     * Name of the provider method that replaces the products, the stock ledger and the purchase
+     * orders with the contents of a snapshot file written by {@link #METHOD_BACKUP_SNAPSHOT},
+     * whose absolute path is the argument. The snapshot is loaded in one transaction. The
+     * result holds {@link #KEY_SNAPSHOT_ROWS} and {@link #KEY_SNAPSHOT_BYTES}, or is null if the
+     * file can't be read or isn't a snapshot of the current database version.
+     */
+    public static final String METHOD_RESTORE_SNAPSHOT = "restore_snapshot";
+
+    /**
+     * Keys of the results of the snapshot methods: the number of rows in the snapshot and the
+     * size of the snapshot file in bytes.
+     * <p/>
+     * Type: long
+     */
+    public static final String KEY_SNAPSHOT_ROWS = "snapshot_rows";
+    public static final String KEY_SNAPSHOT_BYTES = "snapshot_bytes";
+
+    /**
+     * Name of the provider method that sets all metrics of {@link MetricsEntry} back to 0.
+     */
+    public static final String METHOD_RESET_METRICS = "reset_metrics";
+
     /**
      * Inner class that defines constant values for the products database table.
      * Each entry in the table represents a single product.
@@ -38,6 +217,11 @@ public class ProductContract {
 
         /**
          * The content URI to access the product data in the provider
+         * <p/>
+         * Changes are notified on this URI when products are inserted or deleted, or when an
+         * update may have changed any number of products. When a single product is updated,
+         * the change is notified on the URI of that product instead (see
+         * {@link #getChangedProductId(Uri)}), so observers can refresh just that product.
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PRODUCTS);
 
@@ -61,9 +245,10 @@ public class ProductContract {
         public final static String COLUMN_PRODUCT_NAME = "name";
 
         /**
-         * Price of the product.
+         * Price of the product, in cents. Whole cents keep sums of prices exact, see
+         * {@link ProductPrice} for parsing and formatting them.
          * <p/>
-         * Type: REAL
+         * Type: INTEGER
          */
         public final static String COLUMN_PRODUCT_PRICE = "price";
 
@@ -88,6 +273,72 @@ public class ProductContract {
          */
         public final static String COLUMN_PRODUCT_IMAGE = "image";
 
+        /**
+         * Reorder point of the product. Once the quantity drops below it, the product is put on
+         * the next purchase order of its supplier, for enough pieces to bring the quantity up to
+         * twice the reorder point. A reorder point of 0 means the product is never reordered.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PRODUCT_REORDER_POINT = "reorder_point";
+
+        /**
+         * Selection that only keeps the products in stock. The quantity is part of the name
+         * index and has an index of its own, so every sort order still reads its rows straight
+         * from its index and skips the products out of stock on the way.
+         */
+        public static final String SELECTION_IN_STOCK = COLUMN_PRODUCT_QUANTITY + " > 0";
+
+        /**
+         * Sort order listing products by name, ignoring case.
+         * Served by an index, so no sorting step is needed.
+         */
+        public static final String SORT_ORDER_NAME =
+                COLUMN_PRODUCT_NAME + " COLLATE NOCASE ASC, " + _ID + " ASC";
+
+        /**
+         * Sort order listing products by supplier, ignoring case.
+         */
+        public static final String SORT_ORDER_SUPPLIER =
+                COLUMN_PRODUCT_SUPPLIER + " COLLATE NOCASE ASC, " + _ID + " ASC";
+
+        /**
+         * Sort order listing products with the lowest quantity first.
+         */
+        public static final String SORT_ORDER_QUANTITY =
+                COLUMN_PRODUCT_QUANTITY + " ASC, " + _ID + " ASC";
+
+        /**
+         * Sort order listing products with the lowest price first.
+         */
+        public static final String SORT_ORDER_PRICE =
+                COLUMN_PRODUCT_PRICE + " ASC, " + _ID + " ASC";
+
+        /**
+         * Returns the column the given sort order sorts by, or null if the sort order isn't one of
+         * the SORT_ORDER constants.
+         */
+        public static String getSortColumn(String sortOrder) {
+            if (SORT_ORDER_NAME.equals(sortOrder)) {
+                return COLUMN_PRODUCT_NAME;
+            } else if (SORT_ORDER_SUPPLIER.equals(sortOrder)) {
+                return COLUMN_PRODUCT_SUPPLIER;
+            } else if (SORT_ORDER_QUANTITY.equals(sortOrder)) {
+                return COLUMN_PRODUCT_QUANTITY;
+            } else if (SORT_ORDER_PRICE.equals(sortOrder)) {
+                return COLUMN_PRODUCT_PRICE;
+            }
+            return null;
+        }
+
+        /**
+         * Key of the signed quantity change passed to an adjust URI, either in the ContentValues
+         * of an update or in the extras of {@link ProductContract#METHOD_ADJUST_QUANTITY}.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String KEY_QUANTITY_DELTA = "delta";
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of products.
          */
@@ -99,5 +350,457 @@ public class ProductContract {
          */
         public static final String CONTENT_ITEM_TYPE =
                 ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PRODUCTS;
+
+        /**
+         * Returns the ID of the single product a change notification was sent for, or -1 if the
+         * notification isn't about a single product (for example a product was inserted or
+         * deleted, which changes the list of products).
+         */
+        public static long getChangedProductId(Uri uri) {
+            if (uri == null || !CONTENT_AUTHORITY.equals(uri.getAuthority())) {
+                return -1;
+            }
+            List<String> pathSegments = uri.getPathSegments();
+            if (pathSegments.size() != 2 || !PATH_PRODUCTS.equals(pathSegments.get(0))) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(pathSegments.get(1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Returns the URI used to search products for the given text. Every word of the text is
+         * matched as a prefix of a word in the product's name or supplier. Products whose name
+         * matches come before products that only match by supplier.
+         */
+        public static Uri buildSearchUri(String text) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SEARCH)
+                    .appendPath(text)
+                    .build();
+        }
+
+        /**
+         * Returns the URI of the export of all products in the given format,
+         * {@link ProductContract#EXPORT_FORMAT_CSV} or {@link ProductContract#EXPORT_FORMAT_JSON}.
+         * <p/>
+         * The export is a stream rather than a cursor: open it for reading with
+         * {@link ContentResolver#openInputStream(Uri)}. The rows are written while they are read,
+         * so exporting takes the same little memory however many products there are. The CSV
+         * export can be imported again.
+         */
+        public static Uri buildExportUri(String format) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_EXPORT)
+                    .appendPath(format)
+                    .build();
+        }
+
+        /**
+         * Returns the URI used to adjust the quantity of the product with the given ID.
+         */
+        public static Uri buildAdjustUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendPath(PATH_ADJUST)
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the inventory summary table. The table has a
+     * single row, which the database keeps up to date whenever products change, so reading it
+     * doesn't depend on the number of products.
+     */
+    public static final class SummaryEntry {
+
+        /**
+         * The content URI of the summary. Changes are notified whenever a product changes.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUMMARY);
+
+        /**
+         * Name of database table for the summary
+         */
+        public final static String TABLE_NAME = "products_summary";
+
+        /**
+         * Value of all products in stock, the sum of price times quantity, in cents.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TOTAL_VALUE_CENTS = "total_value_cents";
+
+        /**
+         * Number of products.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PRODUCT_COUNT = "product_count";
+
+        /**
+         * Number of products with a quantity of 0.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+
+        /**
+         * Key of the result of {@link ProductContract#METHOD_CHECK_SUMMARY}, false if the summary
+         * didn't match the products and had to be rebuilt.
+         * <p/>
+         * Type: boolean
+         */
+        public final static String KEY_CONSISTENT = "consistent";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUMMARY;
+    }
+
+    /**
+     * Inner class that defines constant values for the stock movements database table.
+     * Each entry in the table is a single change of a product's quantity. Entries are only ever
+     * added, so the table is a complete history of the stock of every product, including
+     * products that were deleted since.
+     */
+    public static final class StockMovementEntry implements BaseColumns {
+
+        /**
+         * Name of database table for stock movements
+         */
+        public final static String TABLE_NAME = "stock_movements";
+
+        /**
+         * Unique ID number for the movement. Later movements have higher IDs.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the product whose quantity changed.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Time of the movement, in milliseconds since the epoch.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TIME = "time";
+
+        /**
+         * Kind of the movement, one of the TYPE constants.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TYPE = "type";
+
+        /**
+         * Signed change of the quantity.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_DELTA = "delta";
+
+        /**
+         * Possible values for the type of the movement.
+         */
+        public static final int TYPE_INITIAL = 0;
+        public static final int TYPE_SALE = 1;
+        public static final int TYPE_SHIPMENT = 2;
+        public static final int TYPE_CORRECTION = 3;
+
+        /**
+         * The MIME type of the movements URI of a product.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_MOVEMENTS;
+
+        /**
+         * The MIME type of the stock URI of a product.
+         */
+        public static final String CONTENT_STOCK_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK;
+
+        /**
+         * Returns the URI listing the stock movements of the product with the given ID, oldest
+         * first. The movements can only be queried.
+         */
+        public static Uri buildMovementsUri(long productId) {
+            return ContentUris.withAppendedId(ProductEntry.CONTENT_URI, productId).buildUpon()
+                    .appendPath(PATH_MOVEMENTS)
+                    .build();
+        }
+
+        /**
+         * Returns the URI that reads the quantity the product with the given ID had in stock at
+         * the given time, in milliseconds since the epoch. The query returns a single row with
+         * {@link #COLUMN_TIME} and {@link ProductEntry#COLUMN_PRODUCT_QUANTITY}.
+         */
+        public static Uri buildStockUri(long productId, long time) {
+            return ContentUris.withAppendedId(ProductEntry.CONTENT_URI, productId).buildUpon()
+                    .appendPath(PATH_STOCK)
+                    .appendQueryParameter(QUERY_PARAMETER_AT, String.valueOf(time))
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the purchase orders database table.
+     * Each entry in the table is an order of products from a single supplier.
+     */
+    public static final class PurchaseOrderEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the purchase orders in the provider. Purchase orders are
+         * created and received through provider methods, and can only be queried otherwise.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PURCHASE_ORDERS);
+
+        /**
+         * Name of database table for purchase orders
+         */
+        public final static String TABLE_NAME = "purchase_orders";
+
+        /**
+         * Unique ID number for the purchase order.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Supplier the products are ordered from.
+         * <p/>
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER = "supplier";
+
+        /**
+         * State of the purchase order, one of the STATUS constants.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_STATUS = "status";
+
+        /**
+         * Time the purchase order was created, in milliseconds since the epoch.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CREATED_TIME = "created_time";
+
+        /**
+         * Time the purchase order was received, in milliseconds since the epoch, or null while
+         * it is open.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_RECEIVED_TIME = "received_time";
+
+        /**
+         * Possible values for the status of the purchase order.
+         */
+        public static final int STATUS_OPEN = 0;
+        public static final int STATUS_RECEIVED = 1;
+
+        /**
+         * Sort order listing open purchase orders first, then the newest first.
+         */
+        public static final String SORT_ORDER_OPEN_FIRST =
+                COLUMN_STATUS + " ASC, " + _ID + " DESC";
+
+        /**
+         * Key of the IDs of the purchase orders created by
+         * {@link ProductContract#METHOD_CREATE_PURCHASE_ORDERS}, empty if nothing needed ordering.
+         * <p/>
+         * Type: long[]
+         */
+        public final static String KEY_ORDER_IDS = "order_ids";
+
+        /**
+         * Key of the number of items whose products were still in the catalog and had their
+         * quantity raised by {@link ProductContract#METHOD_RECEIVE_PURCHASE_ORDER}.
+         * <p/>
+         * Type: int
+         */
+        public final static String KEY_RECEIVED_ITEMS = "received_items";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of purchase orders.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PURCHASE_ORDERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single purchase order.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_PURCHASE_ORDERS;
+    }
+
+    /**
+     * Inner class that defines constant values for the purchase order items database table.
+     * Each entry in the table is a product ordered by a purchase order. The name and the price of
+     * the product are copied when the order is created, so the order still reads the same after
+     * the product changes or is deleted.
+     */
+    public static final class PurchaseOrderItemEntry implements BaseColumns {
+
+        /**
+         * Name of database table for purchase order items
+         */
+        public final static String TABLE_NAME = "purchase_order_items";
+
+        /**
+         * Unique ID number for the item.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * ID of the purchase order the item belongs to.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_ORDER_ID = "order_id";
+
+        /**
+         * ID of the ordered product.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PRODUCT_ID = "product_id";
+
+        /**
+         * Name of the product when it was ordered.
+         * <p/>
+         * Type: TEXT
+         */
+        public final static String COLUMN_NAME = "name";
+
+        /**
+         * Unit price of the product when it was ordered, in cents.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PRICE = "price";
+
+        /**
+         * Number of pieces ordered.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_QUANTITY = "quantity";
+
+        /**
+         * The MIME type of the items URI of a purchase order.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_ITEMS;
+
+        /**
+         * Returns the URI listing the items of the purchase order with the given ID, in the
+         * order they were added. The items can only be queried.
+         */
+        public static Uri buildItemsUri(long orderId) {
+            return ContentUris.withAppendedId(PurchaseOrderEntry.CONTENT_URI, orderId).buildUpon()
+                    .appendPath(PATH_ITEMS)
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the metrics of the provider. Every row holds
+     * the calls of one operation on the URIs matching one pattern, since the provider was created
+     * or the metrics were last reset with {@link ProductContract#METHOD_RESET_METRICS}. Patterns
+     * and operations that weren't called have no row. The metrics can only be queried, and
+     * changes to them aren't notified.
+     */
+    public static final class MetricsEntry {
+
+        /**
+         * The content URI of the metrics.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(ProductEntry.CONTENT_URI, PATH_METRICS);
+
+        /**
+         * Pattern of the URIs called, relative to the authority, for example "products/#".
+         * <p/>
+         * Type: TEXT
+         */
+        public final static String COLUMN_URI = "uri";
+
+        /**
+         * Operation called, one of {@link #OPERATION_QUERY}, {@link #OPERATION_INSERT},
+         * {@link #OPERATION_UPDATE}, {@link #OPERATION_DELETE} or {@link #OPERATION_NOTIFY}.
+         * <p/>
+         * Type: TEXT
+         */
+        public final static String COLUMN_OPERATION = "operation";
+
+        /**
+         * Number of calls that returned normally. Calls that threw aren't counted.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CALLS = "calls";
+
+        /**
+         * Number of rows returned, inserted, updated or deleted by all calls together.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_ROWS = "rows";
+
+        /**
+         * Mean latency of a call, in microseconds.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_MEAN_MICROS = "mean_micros";
+
+        /**
+         * Latencies that 50, 90 and 99 percent of the calls didn't exceed, in microseconds.
+         * They are read from a histogram whose buckets are a quarter of a power of two wide,
+         * so they are up to 25% too high.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_P50_MICROS = "p50_micros";
+        public final static String COLUMN_P90_MICROS = "p90_micros";
+        public final static String COLUMN_P99_MICROS = "p99_micros";
+
+        /**
+         * Latency of the slowest call, in microseconds.
+         * <p/>
+         * Type: INTEGER
+         */
+        public final static String COLUMN_MAX_MICROS = "max_micros";
+
+        /**
+         * Possible values for the operation of the metrics. Queries include reading the first
+         * window of rows, and notifications are the changes sent to the content resolver.
+         */
+        public static final String OPERATION_QUERY = "query";
+        public static final String OPERATION_INSERT = "insert";
+        public static final String OPERATION_UPDATE = "update";
+        public static final String OPERATION_DELETE = "delete";
+        public static final String OPERATION_NOTIFY = "notify";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI}.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_METRICS;
     }
-}
\ No newline at end of file
+}
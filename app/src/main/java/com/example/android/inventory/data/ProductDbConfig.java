@@ -0,0 +1,67 @@
+package com.example.android.inventory.data;
+
+import com.example.android.inventory.BuildConfig;
+
+/**
+ * Storage mode of the products database. Decides how readers and writers share the database
+ * and how much memory SQLite may use for it. The values for the app come from the build type,
+ * see the DB_* build config fields in app/build.gradle.
+ */
+public final class ProductDbConfig {
+
+    /**
+     * Classic rollback-journal mode, in which a writer blocks every reader.
+     */
+    public static final ProductDbConfig ROLLBACK_JOURNAL =
+            new ProductDbConfig(false, 0, 2048, "FULL", 25);
+
+    /**
+     * Whether write-ahead logging is enabled. With write-ahead logging the platform opens a pool
+     * of read connections next to the single write connection, so catalog queries keep running
+     * while a sale or an edit is being written. The size of that pool is decided by the platform.
+     */
+    public final boolean writeAheadLogging;
+
+    /**
+     * Maximum number of bytes of the database file SQLite may memory-map, or 0 to disable
+     * memory-mapped I/O.
+     */
+    public final long mmapSize;
+
+    /**
+     * Size of the page cache of the write connection, in KiB.
+     */
+    public final int cacheSizeKb;
+
+    /**
+     * Value of the synchronous pragma of the write connection: OFF, NORMAL or FULL.
+     * NORMAL is safe with write-ahead logging and avoids a sync on every commit.
+     */
+    public final String synchronous;
+
+    /**
+     * Number of compiled statements each connection keeps cached (at most 100).
+     */
+    public final int statementCacheSize;
+
+    /**
+     * Constructs a new {@link ProductDbConfig}.
+     */
+    public ProductDbConfig(boolean writeAheadLogging, long mmapSize, int cacheSizeKb,
+                           String synchronous, int statementCacheSize) {
+        this.writeAheadLogging = writeAheadLogging;
+        this.mmapSize = mmapSize;
+        this.cacheSizeKb = cacheSizeKb;
+        this.synchronous = synchronous;
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * Returns the storage mode configured for the current build type.
+     */
+    public static ProductDbConfig fromBuildConfig() {
+        return new ProductDbConfig(BuildConfig.DB_WRITE_AHEAD_LOGGING, BuildConfig.DB_MMAP_SIZE,
+                BuildConfig.DB_CACHE_SIZE_KB, BuildConfig.DB_SYNCHRONOUS,
+                BuildConfig.DB_STATEMENT_CACHE_SIZE);
+    }
+}
@@ -6,16 +6,33 @@ package com.example.android.inventory.data;
  */
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.util.Log;
 
 import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderItemEntry;
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+import com.example.android.inventory.data.ProductContract.SummaryEntry;
+
+import java.util.Arrays;
 
 /**
  * Database helper for Inventory app. Manages database creation and version management.
  */
 public class ProductDbHelper extends SQLiteOpenHelper {
 
+    /**
+     * Tag for the log messages
+     */
+    public static final String LOG_TAG = ProductDbHelper.class.getSimpleName();
+
     /**
      * Name of the database file
      */
@@ -24,15 +41,129 @@ public class ProductDbHelper extends SQLiteOpenHelper {
     /**
      * Database version. If you change the database schema, you must increment the database version.
      */
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 8;
 
     /**
-     * Constructs a new instance of {@link ProductDbHelper}.
+     * Columns of the products table. Prices are whole cents since version 8.
+     */
+    private static final String SQL_PRODUCTS_COLUMNS = ProductEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + ProductEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+            + ProductEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL, "
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+            + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " TEXT NOT NULL, "
+            + ProductEntry.COLUMN_PRODUCT_IMAGE + " TEXT, "
+            + ProductEntry.COLUMN_PRODUCT_REORDER_POINT + " INTEGER NOT NULL DEFAULT 0";
+
+    /**
+     * Columns of the purchase order items table. Items refer to their product by ID only, as a
+     * received order stays on record after its products are deleted.
+     */
+    private static final String SQL_PURCHASE_ORDER_ITEMS_COLUMNS = PurchaseOrderItemEntry._ID
+            + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + PurchaseOrderItemEntry.COLUMN_ORDER_ID + " INTEGER NOT NULL REFERENCES "
+            + PurchaseOrderEntry.TABLE_NAME + " (" + PurchaseOrderEntry._ID + "), "
+            + PurchaseOrderItemEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+            + PurchaseOrderItemEntry.COLUMN_NAME + " TEXT NOT NULL, "
+            + PurchaseOrderItemEntry.COLUMN_PRICE + " INTEGER NOT NULL, "
+            + PurchaseOrderItemEntry.COLUMN_QUANTITY + " INTEGER NOT NULL";
+
+    /**
+     * Name of the index that serves the catalog sorted by name. Besides the sort key it holds every
+     * column of the catalog projection, so the catalog can be read without touching the table.
+     */
+    static final String INDEX_PRODUCTS_NAME = "index_products_name";
+
+    /**
+     * Name of the index that serves sorting by supplier
+     */
+    static final String INDEX_PRODUCTS_SUPPLIER = "index_products_supplier";
+
+    /**
+     * Name of the index that serves sorting by quantity
+     */
+    static final String INDEX_PRODUCTS_QUANTITY = "index_products_quantity";
+
+    /**
+     * Name of the index that serves sorting by price
+     */
+    static final String INDEX_PRODUCTS_PRICE = "index_products_price";
+
+    /**
+     * Name of the full-text search table that shadows the name and supplier of every product.
+     * The docid of each row is the _id of its product.
+     */
+    static final String TABLE_PRODUCTS_SEARCH = "products_search";
+
+    /**
+     * Name of the table of stock snapshots, which stores the quantity of a product after every
+     * {@link StockLedger#SNAPSHOT_INTERVAL} of its movements. Its product_id and time columns are
+     * named like the ones of {@link StockMovementEntry}.
+     */
+    static final String TABLE_STOCK_SNAPSHOTS = "stock_snapshots";
+
+    /**
+     * ID of the stock movement a snapshot was taken after.
+     * <p/>
+     * Type: INTEGER
+     */
+    static final String COLUMN_SNAPSHOT_MOVEMENT_ID = "movement_id";
+
+    /**
+     * Quantity of the product after the movement of a snapshot.
+     * <p/>
+     * Type: INTEGER
+     */
+    static final String COLUMN_SNAPSHOT_QUANTITY = "quantity";
+
+    /**
+     * Name of the index that finds the movements of a product
+     */
+    static final String INDEX_STOCK_MOVEMENTS_PRODUCT = "index_stock_movements_product";
+
+    /**
+     * Names of the indexes that find the snapshots of a product by time and by movement
+     */
+    static final String INDEX_STOCK_SNAPSHOTS_TIME = "index_stock_snapshots_time";
+    static final String INDEX_STOCK_SNAPSHOTS_MOVEMENT = "index_stock_snapshots_movement";
+
+    /**
+     * Name of the index that finds the items of a purchase order
+     */
+    static final String INDEX_PURCHASE_ORDER_ITEMS_ORDER = "index_purchase_order_items_order";
+
+    /**
+     * Name of the index that finds the purchase orders a product is on
+     */
+    static final String INDEX_PURCHASE_ORDER_ITEMS_PRODUCT = "index_purchase_order_items_product";
+
+    /**
+     * Storage mode of the database
+     */
+    private final ProductDbConfig mConfig;
+
+    /**
+     * Constructs a new instance of {@link ProductDbHelper} using the storage mode of the build type.
      *
      * @param context of the app
      */
     public ProductDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, ProductDbConfig.fromBuildConfig());
+    }
+
+    /**
+     * Constructs a new instance of {@link ProductDbHelper}.
+     *
+     * @param context of the app
+     * @param name    of the database file
+     * @param config  storage mode of the database
+     */
+    ProductDbHelper(Context context, String name, ProductDbConfig config) {
+        super(context, name, null, DATABASE_VERSION);
+        mConfig = config;
+        // From Jelly Bean on, the journal mode can be picked before the database is opened
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(config.writeAheadLogging);
+        }
     }
 
     /**
@@ -42,15 +173,57 @@ public class ProductDbHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         // Create a String that contains the SQL statement to create the products table
         String SQL_CREATE_PRODUCTS_TABLE = "CREATE TABLE " + ProductEntry.TABLE_NAME + " ("
-                + ProductEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + ProductEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
-                + ProductEntry.COLUMN_PRODUCT_PRICE + " REAL NOT NULL, "
-                + ProductEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
-                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " TEXT NOT NULL, "
-                + ProductEntry.COLUMN_PRODUCT_IMAGE + " TEXT);";
+                + SQL_PRODUCTS_COLUMNS + ");";
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_PRODUCTS_TABLE);
+
+        // Create the indexes added in version 2
+        createSortIndexes(db);
+
+        // Create the search table added in version 3
+        createSearchTable(db);
+        createSearchTriggers(db);
+
+        // Create the stock ledger added in version 5
+        createStockLedger(db);
+
+        // Create the summary added in version 6
+        createSummaryTable(db);
+        rebuildSummary(db);
+        createSummaryTriggers(db);
+
+        // Create the purchase orders added in version 7
+        createPurchaseOrderTables(db);
+    }
+
+    /**
+     * This is called when the database has been opened. Applies the storage mode.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+
+        // Before Jelly Bean, write-ahead logging can only be switched on after opening
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && mConfig.writeAheadLogging && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+        db.setMaxSqlCacheSize(mConfig.statementCacheSize);
+
+        // These pragmas are per connection, so they apply to the write connection.
+        // Read connections of the write-ahead logging pool keep the platform defaults.
+        if (!db.isReadOnly()) {
+            db.execSQL("PRAGMA synchronous = " + mConfig.synchronous);
+            // A negative cache size is a number of KiB rather than a number of pages
+            db.execSQL("PRAGMA cache_size = -" + mConfig.cacheSizeKb);
+            try {
+                DatabaseUtils.longForQuery(db, "PRAGMA mmap_size = " + mConfig.mmapSize, null);
+            } catch (SQLiteDoneException e) {
+                // Older SQLite versions don't support memory-mapped I/O and return no row
+                Log.i(LOG_TAG, "Memory-mapped I/O is not supported");
+            }
+        }
     }
 
     /**
@@ -58,6 +231,329 @@ public class ProductDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to be done here.
+        // Apply every upgrade step between the old and the new version, in order. Version 8
+        // rebuilds the products table, which drops its indexes and triggers, so the steps
+        // before it leave creating those to it.
+        if (oldVersion < 3) {
+            createSearchTable(db);
+            // Index the products that already exist
+            db.execSQL("INSERT INTO " + TABLE_PRODUCTS_SEARCH + " (docid, "
+                    + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ")"
+                    + " SELECT " + ProductEntry._ID + ", " + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+                    + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " FROM " + ProductEntry.TABLE_NAME + ";");
+        }
+        if (oldVersion < 5) {
+            createStockLedger(db);
+            // Start the history of every existing product with the quantity it has now
+            db.execSQL("INSERT INTO " + StockMovementEntry.TABLE_NAME + " ("
+                    + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_TIME + ", "
+                    + StockMovementEntry.COLUMN_TYPE + ", " + StockMovementEntry.COLUMN_DELTA + ")"
+                    + " SELECT " + ProductEntry._ID + ", " + System.currentTimeMillis() + ", "
+                    + StockMovementEntry.TYPE_INITIAL + ", " + ProductEntry.COLUMN_PRODUCT_QUANTITY
+                    + " FROM " + ProductEntry.TABLE_NAME
+                    + " WHERE " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " != 0;");
+        }
+        if (oldVersion < 6) {
+            // The summary is computed from the products that already exist in version 8
+            createSummaryTable(db);
+        }
+        if (oldVersion < 7) {
+            // Existing products start out without a reorder point, so nothing is ordered for
+            // them until one is set
+            db.execSQL("ALTER TABLE " + ProductEntry.TABLE_NAME + " ADD COLUMN "
+                    + ProductEntry.COLUMN_PRODUCT_REORDER_POINT + " INTEGER NOT NULL DEFAULT 0;");
+            createPurchaseOrderTables(db);
+        }
+        if (oldVersion < 8) {
+            // Prices are stored in cents. A column can't change its type, so the products are
+            // copied into a new table with their prices rounded to whole cents.
+            rebuildTable(db, ProductEntry.TABLE_NAME, SQL_PRODUCTS_COLUMNS,
+                    ProductEntry._ID + ", " + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+                            + toCents(ProductEntry.COLUMN_PRODUCT_PRICE) + ", "
+                            + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                            + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ", "
+                            + ProductEntry.COLUMN_PRODUCT_IMAGE + ", "
+                            + ProductEntry.COLUMN_PRODUCT_REORDER_POINT);
+            createSortIndexes(db);
+            createSearchTriggers(db);
+            createSummaryTriggers(db);
+            // The value of the stock is the same in cents, but a summary created by the step of
+            // version 6 is still empty
+            rebuildSummary(db);
+
+            // Purchase orders created by the step of version 7 already have cents
+            if (oldVersion == 7) {
+                rebuildTable(db, PurchaseOrderItemEntry.TABLE_NAME,
+                        SQL_PURCHASE_ORDER_ITEMS_COLUMNS,
+                        PurchaseOrderItemEntry._ID + ", " + PurchaseOrderItemEntry.COLUMN_ORDER_ID + ", "
+                                + PurchaseOrderItemEntry.COLUMN_PRODUCT_ID + ", "
+                                + PurchaseOrderItemEntry.COLUMN_NAME + ", "
+                                + toCents(PurchaseOrderItemEntry.COLUMN_PRICE) + ", "
+                                + PurchaseOrderItemEntry.COLUMN_QUANTITY);
+                createPurchaseOrderItemIndexes(db);
+            }
+        }
+    }
+
+    /**
+     * SQL expression that rounds a price in dollars from before version 8 to whole cents.
+     */
+    private static String toCents(String column) {
+        return "CAST(round(" + column + " * 100) AS INTEGER)";
+    }
+
+    /**
+     * Replace a table with a new one of the given columns, filled from the old table by the given
+     * list of expressions. The indexes and triggers of the old table are dropped with it. The
+     * last ID the old table handed out is kept, so IDs of deleted rows aren't used again, as the
+     * stock ledger and the purchase orders still refer to them.
+     */
+    private static void rebuildTable(SQLiteDatabase db, String table, String columns,
+                                     String selectList) {
+        String newTable = table + "_new";
+        db.execSQL("CREATE TABLE " + newTable + " (" + columns + ");");
+        db.execSQL("INSERT INTO " + newTable + " SELECT " + selectList + " FROM " + table + ";");
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + newTable + "';");
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + newTable + "', seq"
+                + " FROM sqlite_sequence WHERE name = '" + table + "';");
+        db.execSQL("DROP TABLE " + table + ";");
+        db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + table + ";");
+    }
+
+    /**
+     * Create the covering index of the catalog sorted by name.
+     */
+    private static void createNameIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_NAME + " ON " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE, "
+                + ProductEntry._ID + ", "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+                + ProductEntry.COLUMN_PRODUCT_IMAGE + ");");
+    }
+
+    /**
+     * Create the indexes used to sort the catalog. Every index ends with the row ID (which SQLite
+     * appends implicitly when it isn't listed), so each sort order in
+     * {@link ProductEntry} can be read straight from its index without a separate sorting step.
+     */
+    private static void createSortIndexes(SQLiteDatabase db) {
+        createNameIndex(db);
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_SUPPLIER + " ON " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " COLLATE NOCASE);");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_QUANTITY + " ON " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PRODUCTS_PRICE + " ON " + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_PRICE + ");");
+    }
+
+    /**
+     * Create the full-text search table for product names and suppliers.
+     */
+    private static void createSearchTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PRODUCTS_SEARCH + " USING fts4("
+                + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ");");
+    }
+
+    /**
+     * Create the triggers that keep the search table in sync with the products table. Only
+     * changes to the name or the supplier touch the search table, so quantity updates don't pay
+     * for it.
+     */
+    private static void createSearchTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_SEARCH + "_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "INSERT INTO " + TABLE_PRODUCTS_SEARCH + " (docid, "
+                + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ")"
+                + " VALUES (new." + ProductEntry._ID + ", new." + ProductEntry.COLUMN_PRODUCT_NAME
+                + ", new." + ProductEntry.COLUMN_PRODUCT_SUPPLIER + "); END;");
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_SEARCH + "_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_SUPPLIER
+                + " ON " + ProductEntry.TABLE_NAME + " BEGIN "
+                + "UPDATE " + TABLE_PRODUCTS_SEARCH + " SET "
+                + ProductEntry.COLUMN_PRODUCT_NAME + " = new." + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " = new." + ProductEntry.COLUMN_PRODUCT_SUPPLIER
+                + " WHERE docid = old." + ProductEntry._ID + "; END;");
+        db.execSQL("CREATE TRIGGER " + TABLE_PRODUCTS_SEARCH + "_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + TABLE_PRODUCTS_SEARCH + " WHERE docid = old." + ProductEntry._ID
+                + "; END;");
+    }
+
+    /**
+     * SQL expression of the value of a product in stock, in cents, for the product row given by
+     * the prefix (new., old. or nothing). Prices are whole cents, so the value is an integer
+     * product and the sums stay exact, and the summary doesn't drift away from a full recompute.
+     */
+    private static String valueCents(String row) {
+        return row + ProductEntry.COLUMN_PRODUCT_PRICE + " * " + row + ProductEntry.COLUMN_PRODUCT_QUANTITY;
+    }
+
+    /**
+     * SQL query that computes the summary from the whole products table, in the column order of
+     * the summary table.
+     */
+    private static final String SQL_COMPUTE_SUMMARY = "SELECT coalesce(sum(" + valueCents("") + "), 0), "
+            + "count(*), coalesce(sum(" + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0), 0)"
+            + " FROM " + ProductEntry.TABLE_NAME;
+
+    /**
+     * Create the one-row summary table. It is filled by {@link #rebuildSummary(SQLiteDatabase)}.
+     */
+    private static void createSummaryTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SummaryEntry.TABLE_NAME + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY CHECK (" + BaseColumns._ID + " = 1), "
+                + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS + " INTEGER NOT NULL, "
+                + SummaryEntry.COLUMN_PRODUCT_COUNT + " INTEGER NOT NULL, "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL);");
+    }
+
+    /**
+     * Create the triggers that keep the summary up to date. Every trigger applies just the
+     * difference the changed row makes, so a sale costs the same no matter how many products
+     * there are.
+     */
+    private static void createSummaryTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_insert AFTER INSERT ON "
+                + ProductEntry.TABLE_NAME + " BEGIN UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS + " = " + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS
+                + " + " + valueCents("new.") + ", "
+                + SummaryEntry.COLUMN_PRODUCT_COUNT + " = " + SummaryEntry.COLUMN_PRODUCT_COUNT + " + 1, "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " + (new." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0); END;");
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_update AFTER UPDATE OF "
+                + ProductEntry.COLUMN_PRODUCT_PRICE + ", " + ProductEntry.COLUMN_PRODUCT_QUANTITY
+                + " ON " + ProductEntry.TABLE_NAME + " BEGIN UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS + " = " + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS
+                + " + " + valueCents("new.") + " - " + valueCents("old.") + ", "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " + (new." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0)"
+                + " - (old." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0); END;");
+        db.execSQL("CREATE TRIGGER " + SummaryEntry.TABLE_NAME + "_delete AFTER DELETE ON "
+                + ProductEntry.TABLE_NAME + " BEGIN UPDATE " + SummaryEntry.TABLE_NAME + " SET "
+                + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS + " = " + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS
+                + " - " + valueCents("old.") + ", "
+                + SummaryEntry.COLUMN_PRODUCT_COUNT + " = " + SummaryEntry.COLUMN_PRODUCT_COUNT + " - 1, "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + " = " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " - (old." + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = 0); END;");
+    }
+
+    /**
+     * Replace the summary with one computed from the whole products table.
+     */
+    static void rebuildSummary(SQLiteDatabase db) {
+        db.execSQL("INSERT OR REPLACE INTO " + SummaryEntry.TABLE_NAME + " (" + BaseColumns._ID + ", "
+                + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS + ", " + SummaryEntry.COLUMN_PRODUCT_COUNT + ", "
+                + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT + ") SELECT 1, * FROM ("
+                + SQL_COMPUTE_SUMMARY + ");");
+    }
+
+    /**
+     * Returns whether the summary matches one computed from the whole products table. This reads
+     * every product, so it is meant for checks rather than for showing the summary.
+     */
+    static boolean isSummaryConsistent(SQLiteDatabase db) {
+        long[] stored = querySummary(db, "SELECT " + SummaryEntry.COLUMN_TOTAL_VALUE_CENTS + ", "
+                + SummaryEntry.COLUMN_PRODUCT_COUNT + ", " + SummaryEntry.COLUMN_OUT_OF_STOCK_COUNT
+                + " FROM " + SummaryEntry.TABLE_NAME);
+        long[] computed = querySummary(db, SQL_COMPUTE_SUMMARY);
+        return Arrays.equals(stored, computed);
+    }
+
+    /**
+     * Returns the three columns of the summary returned by the given query, or null if it
+     * returns no row.
+     */
+    private static long[] querySummary(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new long[]{cursor.getLong(0), cursor.getLong(1), cursor.getLong(2)};
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Create the purchase orders and purchase order items tables.
+     */
+    private static void createPurchaseOrderTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + PurchaseOrderEntry.TABLE_NAME + " ("
+                + PurchaseOrderEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + PurchaseOrderEntry.COLUMN_SUPPLIER + " TEXT NOT NULL, "
+                + PurchaseOrderEntry.COLUMN_STATUS + " INTEGER NOT NULL DEFAULT "
+                + PurchaseOrderEntry.STATUS_OPEN + ", "
+                + PurchaseOrderEntry.COLUMN_CREATED_TIME + " INTEGER NOT NULL, "
+                + PurchaseOrderEntry.COLUMN_RECEIVED_TIME + " INTEGER);");
+
+        db.execSQL("CREATE TABLE " + PurchaseOrderItemEntry.TABLE_NAME + " ("
+                + SQL_PURCHASE_ORDER_ITEMS_COLUMNS + ");");
+        createPurchaseOrderItemIndexes(db);
+    }
+
+    /**
+     * Create the indexes that find the items of a purchase order and the orders of a product.
+     */
+    private static void createPurchaseOrderItemIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_PURCHASE_ORDER_ITEMS_ORDER + " ON "
+                + PurchaseOrderItemEntry.TABLE_NAME + " (" + PurchaseOrderItemEntry.COLUMN_ORDER_ID + ");");
+        db.execSQL("CREATE INDEX " + INDEX_PURCHASE_ORDER_ITEMS_PRODUCT + " ON "
+                + PurchaseOrderItemEntry.TABLE_NAME + " (" + PurchaseOrderItemEntry.COLUMN_PRODUCT_ID + ");");
+    }
+
+    /**
+     * Create the stock movements and snapshots tables and their indexes. Triggers reject any
+     * change to existing rows, so the ledger can only grow.
+     */
+    private static void createStockLedger(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + StockMovementEntry.TABLE_NAME + " ("
+                + StockMovementEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockMovementEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_TYPE + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_DELTA + " INTEGER NOT NULL);");
+        // The row ID follows the product ID implicitly, so a product's movements are in order
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_MOVEMENTS_PRODUCT + " ON "
+                + StockMovementEntry.TABLE_NAME + " (" + StockMovementEntry.COLUMN_PRODUCT_ID + ");");
+
+        db.execSQL("CREATE TABLE " + TABLE_STOCK_SNAPSHOTS + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + StockMovementEntry.COLUMN_PRODUCT_ID + " INTEGER NOT NULL, "
+                + COLUMN_SNAPSHOT_MOVEMENT_ID + " INTEGER NOT NULL, "
+                + StockMovementEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + COLUMN_SNAPSHOT_QUANTITY + " INTEGER NOT NULL);");
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_SNAPSHOTS_TIME + " ON " + TABLE_STOCK_SNAPSHOTS + " ("
+                + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_TIME + ", "
+                + COLUMN_SNAPSHOT_MOVEMENT_ID + ");");
+        db.execSQL("CREATE INDEX " + INDEX_STOCK_SNAPSHOTS_MOVEMENT + " ON " + TABLE_STOCK_SNAPSHOTS
+                + " (" + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + COLUMN_SNAPSHOT_MOVEMENT_ID + ");");
+
+        createLedgerTriggers(db);
+    }
+
+    /**
+     * Create the triggers that reject any change to existing rows of the stock ledger.
+     */
+    static void createLedgerTriggers(SQLiteDatabase db) {
+        for (String table : new String[]{StockMovementEntry.TABLE_NAME, TABLE_STOCK_SNAPSHOTS}) {
+            db.execSQL("CREATE TRIGGER " + table + "_no_update BEFORE UPDATE ON " + table
+                    + " BEGIN SELECT RAISE(ABORT, '" + table + " is append-only'); END;");
+            db.execSQL("CREATE TRIGGER " + table + "_no_delete BEFORE DELETE ON " + table
+                    + " BEGIN SELECT RAISE(ABORT, '" + table + " is append-only'); END;");
+        }
+    }
+
+    /**
+     * Drop the triggers that keep the stock ledger append-only. Only restoring a snapshot does
+     * this, within the transaction that replaces the whole ledger and creates them again.
+     */
+    static void dropLedgerTriggers(SQLiteDatabase db) {
+        for (String table : new String[]{StockMovementEntry.TABLE_NAME, TABLE_STOCK_SNAPSHOTS}) {
+            db.execSQL("DROP TRIGGER IF EXISTS " + table + "_no_update;");
+            db.execSQL("DROP TRIGGER IF EXISTS " + table + "_no_delete;");
+        }
     }
 }
@@ -0,0 +1,219 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProvider;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+/**
+ * Writes all products to a pipe, as CSV or JSON depending on the MIME type of the export URI.
+ * <p/>
+ * The products are read in pages of {@link #PAGE_SIZE} rows, each continuing after the last _id
+ * of the previous page, and every row is written to a buffered stream as soon as it is read.
+ * Neither the file nor the cursor is ever held in memory as a whole. Paging by _id also means a
+ * product changed or deleted while the export runs can't make another product appear twice or
+ * go missing, which re-running a query at an offset could.
+ * <p/>
+ * The CSV export uses the column names of {@link ProductEntry} as its header, so it can be
+ * imported again with {@link ProductImporter}, which ignores the _id column. Prices are
+ * written in dollars with two decimals, for example 13.99, although they are stored in cents.
+ */
+final class ProductExporter implements ContentProvider.PipeDataWriter<SQLiteDatabase> {
+
+    private static final String LOG_TAG = ProductExporter.class.getSimpleName();
+
+    /**
+     * Number of products read by one query
+     */
+    static final int PAGE_SIZE = 1000;
+
+    /**
+     * Size of the buffer the export is written through, in characters
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Exported columns, in the order of the CSV fields. Indexes are the COLUMN_INDEX constants.
+     */
+    private static final String[] EXPORTED_COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+            ProductEntry.COLUMN_PRODUCT_REORDER_POINT,
+            ProductEntry.COLUMN_PRODUCT_IMAGE
+    };
+    private static final int COLUMN_INDEX_ID = 0;
+    private static final int COLUMN_INDEX_NAME = 1;
+    private static final int COLUMN_INDEX_PRICE = 2;
+    private static final int COLUMN_INDEX_QUANTITY = 3;
+    private static final int COLUMN_INDEX_SUPPLIER = 4;
+    private static final int COLUMN_INDEX_REORDER_POINT = 5;
+    private static final int COLUMN_INDEX_IMAGE = 6;
+
+    /**
+     * Reads the page of products following the given _id
+     */
+    private static final String SQL_SELECT_PAGE =
+            "SELECT " + TextUtils.join(", ", EXPORTED_COLUMNS)
+            + " FROM " + ProductEntry.TABLE_NAME
+            + " WHERE " + ProductEntry._ID + " > ?"
+            + " ORDER BY " + ProductEntry._ID
+            + " LIMIT " + PAGE_SIZE;
+
+    /**
+     * Runs on a background thread of {@link ContentProvider#openPipeHelper}, which closes the
+     * pipe when this returns. The reader of the pipe may close it early, which ends the export.
+     */
+    @Override
+    public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                Bundle opts, SQLiteDatabase database) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(output.getFileDescriptor()), Charset.forName("UTF-8")),
+                BUFFER_SIZE);
+        try {
+            if (ProductContract.EXPORT_JSON_TYPE.equals(mimeType)) {
+                writeJson(database, writer);
+            } else {
+                writeCsv(database, writer);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Export of " + uri + " ended early", e);
+        }
+    }
+
+    /**
+     * Write all products as CSV, with a header row of column names and CRLF line ends as
+     * described in RFC 4180.
+     */
+    static void writeCsv(SQLiteDatabase database, Writer writer) throws IOException {
+        for (int i = 0; i < EXPORTED_COLUMNS.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(EXPORTED_COLUMNS[i]);
+        }
+        writer.write("\r\n");
+
+        char[] price = new char[ProductPrice.MAX_CHARS];
+        long lastId = -1;
+        int pageRows;
+        do {
+            Cursor cursor = queryPage(database, lastId);
+            try {
+                pageRows = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    for (int i = 0; i < EXPORTED_COLUMNS.length; i++) {
+                        if (i > 0) {
+                            writer.write(',');
+                        }
+                        if (i == COLUMN_INDEX_PRICE) {
+                            // Never needs quoting, and is written without creating a string
+                            writer.write(price, 0, ProductPrice.writeCents(price, 0,
+                                    cursor.getLong(COLUMN_INDEX_PRICE)));
+                            continue;
+                        }
+                        // SQLite turns numbers into text the same way in every locale
+                        writeCsvField(writer, cursor.getString(i));
+                    }
+                    writer.write("\r\n");
+                    lastId = cursor.getLong(COLUMN_INDEX_ID);
+                }
+            } finally {
+                cursor.close();
+            }
+        } while (pageRows == PAGE_SIZE);
+    }
+
+    /**
+     * Write all products as a JSON array of objects, one per product, keyed by column name.
+     * Products without an image have a null image.
+     */
+    static void writeJson(SQLiteDatabase database, Writer writer) throws IOException {
+        JsonWriter json = new JsonWriter(writer);
+        json.beginArray();
+
+        long lastId = -1;
+        int pageRows;
+        do {
+            Cursor cursor = queryPage(database, lastId);
+            try {
+                pageRows = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(COLUMN_INDEX_ID);
+                    json.beginObject();
+                    json.name(ProductEntry._ID).value(lastId);
+                    json.name(ProductEntry.COLUMN_PRODUCT_NAME)
+                            .value(cursor.getString(COLUMN_INDEX_NAME));
+                    // Exactly the cents, which a double couldn't promise
+                    json.name(ProductEntry.COLUMN_PRODUCT_PRICE)
+                            .value(BigDecimal.valueOf(cursor.getLong(COLUMN_INDEX_PRICE), 2));
+                    json.name(ProductEntry.COLUMN_PRODUCT_QUANTITY)
+                            .value(cursor.getLong(COLUMN_INDEX_QUANTITY));
+                    json.name(ProductEntry.COLUMN_PRODUCT_SUPPLIER)
+                            .value(cursor.getString(COLUMN_INDEX_SUPPLIER));
+                    json.name(ProductEntry.COLUMN_PRODUCT_REORDER_POINT)
+                            .value(cursor.getLong(COLUMN_INDEX_REORDER_POINT));
+                    json.name(ProductEntry.COLUMN_PRODUCT_IMAGE)
+                            .value(cursor.getString(COLUMN_INDEX_IMAGE));
+                    json.endObject();
+                }
+            } finally {
+                cursor.close();
+            }
+        } while (pageRows == PAGE_SIZE);
+
+        json.endArray();
+        // Flushes the JSON writer into the given writer, without closing it
+        json.flush();
+    }
+
+    /**
+     * Write a CSV field, quoting it if it contains a separator, a quote or a line break. Null is
+     * written as an empty field.
+     */
+    private static void writeCsvField(Writer writer, String field) throws IOException {
+        if (field == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            char c = field.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(field);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static Cursor queryPage(SQLiteDatabase database, long lastId) {
+        return database.rawQuery(SQL_SELECT_PAGE, new String[]{String.valueOf(lastId)});
+    }
+}
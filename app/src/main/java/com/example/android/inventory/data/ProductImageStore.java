@@ -0,0 +1,193 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.text.format.DateUtils;
+
+import com.example.android.inventory.image.ImageLoader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Stores product images in the app's internal storage.
+ * <p/>
+ * Picked images are ingested once: they are decoded, scaled down to at most
+ * {@link #MAX_IMAGE_SIZE} pixels on each side and stored as JPEG. Files are named by the SHA-256
+ * hash of their contents, so products with the same image share one file. Stored images are
+ * served by {@link ProductProvider} under {@link ProductContract#IMAGES_URI}, which keeps them
+ * readable without the permission of the app the image was picked from.
+ */
+public final class ProductImageStore {
+
+    /**
+     * Maximum width and height of a stored image, in pixels
+     */
+    static final int MAX_IMAGE_SIZE = 1024;
+
+    /**
+     * Quality of the stored JPEG images, from 0 to 100
+     */
+    private static final int JPEG_QUALITY = 85;
+
+    /**
+     * Time an unreferenced image is kept, so an image that was just picked in the editor isn't
+     * deleted before its product is saved
+     */
+    static final long GARBAGE_GRACE_PERIOD_MILLIS = DateUtils.HOUR_IN_MILLIS;
+
+    /**
+     * Name of the directory of the images, within the app's files directory
+     */
+    private static final String IMAGE_DIRECTORY = "images";
+
+    /**
+     * Names of stored image files: a hex SHA-256 hash and the file extension
+     */
+    private static final Pattern IMAGE_NAME = Pattern.compile("[0-9a-f]{64}\\.jpg");
+
+    private final ContentResolver mResolver;
+    private final File mDirectory;
+
+    /**
+     * Constructs a new {@link ProductImageStore} for the app's images.
+     */
+    public ProductImageStore(Context context) {
+        this(context.getContentResolver(), new File(context.getFilesDir(), IMAGE_DIRECTORY));
+    }
+
+    /**
+     * Constructs a new {@link ProductImageStore} keeping the images in the given directory.
+     */
+    ProductImageStore(ContentResolver resolver, File directory) {
+        mResolver = resolver;
+        mDirectory = directory;
+    }
+
+    /**
+     * Copy the image at the given URI into the store, scaled down and transcoded to JPEG.
+     * Returns the URI of the stored image, to be saved in {@link ProductContract.ProductEntry#COLUMN_PRODUCT_IMAGE}.
+     * Must not be called on the main thread.
+     *
+     * @throws IOException if the image can't be read or stored
+     */
+    public Uri ingest(Uri source) throws IOException {
+        Bitmap bitmap = ImageLoader.decodeSampledBitmap(mResolver, source, MAX_IMAGE_SIZE,
+                MAX_IMAGE_SIZE);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + source);
+        }
+
+        // Subsampling only goes down in powers of two, scale the rest of the way
+        int longestSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longestSide > MAX_IMAGE_SIZE) {
+            float scale = (float) MAX_IMAGE_SIZE / longestSide;
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, jpeg);
+        bitmap.recycle();
+        byte[] bytes = jpeg.toByteArray();
+
+        String name = hash(bytes) + ".jpg";
+        File file = new File(mDirectory, name);
+        if (file.exists()) {
+            // The same image is stored already. Mark it as used, so it isn't collected as garbage
+            // before the product referencing it is saved.
+            file.setLastModified(System.currentTimeMillis());
+        } else {
+            write(file, bytes);
+        }
+        return Uri.withAppendedPath(ProductContract.IMAGES_URI, name);
+    }
+
+    /**
+     * Returns the file of the stored image with the given URI, or null if the URI can't belong to
+     * a stored image. The file may not exist.
+     */
+    File getFile(Uri imageUri) {
+        String name = imageUri.getLastPathSegment();
+        // Only accept names the store creates, so the URI can't reach other files
+        if (name == null || !IMAGE_NAME.matcher(name).matches()) {
+            return null;
+        }
+        return new File(mDirectory, name);
+    }
+
+    /**
+     * Delete the stored images that aren't referenced anymore and weren't used within the
+     * {@link #GARBAGE_GRACE_PERIOD_MILLIS}. Must not be called on the main thread.
+     *
+     * @param referencedNames file names of the images products still refer to
+     * @param now             current time, in milliseconds since the epoch
+     * @return the number of images deleted
+     */
+    int collectGarbage(Set<String> referencedNames, long now) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : files) {
+            if (!referencedNames.contains(file.getName())
+                    && now - file.lastModified() > GARBAGE_GRACE_PERIOD_MILLIS
+                    && file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Write the bytes to the given file. A temporary file is renamed into place, so a stored image
+     * is never seen half written.
+     */
+    private void write(File file, byte[] bytes) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + mDirectory);
+        }
+        File tempFile = File.createTempFile(file.getName(), ".tmp", mDirectory);
+        OutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Failed to rename " + tempFile);
+        }
+    }
+
+    /**
+     * Returns the SHA-256 hash of the bytes as lower case hex.
+     */
+    private static String hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Imports products from a CSV file through the provider.
+ * <p/>
+ * The first row of the file names the columns, using the column names of {@link ProductEntry}
+ * in any order and case. Columns with other names are ignored, so a file may carry extra
+ * columns such as an _id. The file is streamed: rows are parsed one at a time, checked with the
+ * same rules the provider applies to a new product, and written in bulk inserts of
+ * {@link #BATCH_SIZE} rows, each of which is one transaction. Only one batch and a limited
+ * number of error messages are held in memory, however long the file is. Rows that can't be
+ * imported are skipped and reported, and don't stop the import.
+ * <p/>
+ * Importing reads the file and writes to the database, so it must not run on the main thread.
+ */
+public final class ProductImporter {
+
+    /**
+     * Number of rows written in one transaction
+     */
+    public static final int BATCH_SIZE = 500;
+
+    /**
+     * Number of skipped rows whose reason is kept in the result. Further rows are only counted.
+     */
+    public static final int MAX_REPORTED_ERRORS = 20;
+
+    /**
+     * Size of the buffer the file is read through, in characters
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Columns a file can set, in lower case
+     */
+    private static final String[] IMPORTED_COLUMNS = {
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+            ProductEntry.COLUMN_PRODUCT_IMAGE,
+            ProductEntry.COLUMN_PRODUCT_REORDER_POINT
+    };
+
+    /**
+     * Columns every file needs, since a product can't be inserted without them
+     */
+    private static final String[] REQUIRED_COLUMNS = {
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_SUPPLIER
+    };
+
+    /**
+     * Receives the progress of an import after every batch.
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the importing thread after a batch was written.
+         *
+         * @param bytesRead number of bytes of the file read so far
+         * @param rowsRead  number of rows read so far, not counting the header
+         */
+        void onProgress(long bytesRead, int rowsRead);
+    }
+
+    /**
+     * Outcome of an import.
+     */
+    public static final class Result {
+
+        /**
+         * Number of rows read, not counting the header and blank lines
+         */
+        public final int rowsRead;
+
+        /**
+         * Number of rows that inserted or updated a product
+         */
+        public final int rowsImported;
+
+        /**
+         * Number of rows that were skipped because they don't describe a valid product
+         */
+        public final int rowsSkipped;
+
+        /**
+         * Reasons for the first {@link #MAX_REPORTED_ERRORS} skipped rows, with their line numbers
+         */
+        public final List<String> errors;
+
+        Result(int rowsRead, int rowsImported, int rowsSkipped, List<String> errors) {
+            this.rowsRead = rowsRead;
+            this.rowsImported = rowsImported;
+            this.rowsSkipped = rowsSkipped;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+    }
+
+    private final ContentResolver mResolver;
+
+    /**
+     * Constructs a new {@link ProductImporter} writing through the given resolver.
+     */
+    public ProductImporter(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Import the products of a CSV file encoded in UTF-8. Closes the stream when done.
+     *
+     * @param in       contents of the file
+     * @param upsert   whether a row with the name and supplier of an existing product updates it,
+     *                 instead of adding another product
+     * @param listener receives the progress of the import, or null
+     * @throws IOException              if the file can't be read
+     * @throws IllegalArgumentException if the file lacks a column every product needs
+     */
+    public Result importCsv(InputStream in, boolean upsert, ProgressListener listener)
+            throws IOException {
+        CountingInputStream countingIn = new CountingInputStream(in);
+        CsvReader reader = new CsvReader(new BufferedReader(
+                new InputStreamReader(countingIn, "UTF-8"), BUFFER_SIZE));
+        try {
+            String[] header = reader.readRow();
+            if (header == null) {
+                return new Result(0, 0, 0, new ArrayList<String>());
+            }
+            String[] columns = mapColumns(header);
+
+            Uri uri = ProductEntry.CONTENT_URI;
+            if (upsert) {
+                uri = uri.buildUpon()
+                        .appendQueryParameter(ProductContract.QUERY_PARAMETER_UPSERT, "true")
+                        .build();
+            }
+
+            ContentValues[] batch = new ContentValues[BATCH_SIZE];
+            int batchSize = 0;
+            int rowsRead = 0;
+            int rowsImported = 0;
+            int rowsSkipped = 0;
+            List<String> errors = new ArrayList<String>();
+            String[] row;
+            while ((row = reader.readRow()) != null) {
+                // Blank lines are not rows
+                if (row.length == 1 && row[0].trim().length() == 0) {
+                    continue;
+                }
+                rowsRead++;
+                try {
+                    batch[batchSize] = parseRow(columns, row);
+                    batchSize++;
+                } catch (IllegalArgumentException e) {
+                    rowsSkipped++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add("Line " + reader.getRowLineNumber() + ": " + e.getMessage());
+                    }
+                }
+
+                if (batchSize == BATCH_SIZE) {
+                    rowsImported += mResolver.bulkInsert(uri, batch);
+                    Arrays.fill(batch, null);
+                    batchSize = 0;
+                    if (listener != null) {
+                        listener.onProgress(countingIn.getCount(), rowsRead);
+                    }
+                }
+            }
+            if (batchSize > 0) {
+                rowsImported += mResolver.bulkInsert(uri, Arrays.copyOf(batch, batchSize));
+            }
+            if (listener != null) {
+                listener.onProgress(countingIn.getCount(), rowsRead);
+            }
+            return new Result(rowsRead, rowsImported, rowsSkipped, errors);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the product column of every field given the header row, with null for fields
+     * that aren't imported.
+     */
+    private static String[] mapColumns(String[] header) {
+        String[] columns = new String[header.length];
+        for (int i = 0; i < header.length; i++) {
+            String name = header[i].trim().toLowerCase(Locale.US);
+            for (String column : IMPORTED_COLUMNS) {
+                if (column.equals(name)) {
+                    columns[i] = column;
+                    break;
+                }
+            }
+        }
+        for (String required : REQUIRED_COLUMNS) {
+            if (!Arrays.asList(columns).contains(required)) {
+                throw new IllegalArgumentException("CSV file has no " + required + " column");
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Convert a row into the content values of a product. Empty fields are left out, so the
+     * column defaults apply. Throws an {@link IllegalArgumentException} with the reason if the
+     * row doesn't describe a valid product.
+     */
+    private static ContentValues parseRow(String[] columns, String[] row) {
+        if (row.length != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " fields, found "
+                    + row.length);
+        }
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < columns.length; i++) {
+            String column = columns[i];
+            String field = row[i].trim();
+            if (column == null || field.length() == 0) {
+                continue;
+            }
+            if (ProductEntry.COLUMN_PRODUCT_PRICE.equals(column)) {
+                // Written in dollars, stored in cents. The NumberFormatException of an invalid
+                // price is an IllegalArgumentException with the reason.
+                values.put(column, ProductPrice.parseCents(field));
+            } else if (ProductEntry.COLUMN_PRODUCT_QUANTITY.equals(column)
+                    || ProductEntry.COLUMN_PRODUCT_REORDER_POINT.equals(column)) {
+                try {
+                    values.put(column, Integer.parseInt(field));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid " + column + " " + field);
+                }
+            } else {
+                values.put(column, field);
+            }
+        }
+
+        // Apply the rules of the provider, so a batch is never rejected because of one row
+        ProductValidator.validateBulkInsertColumns(values);
+        ProductValidator.validateInsertValues(values);
+        return values;
+    }
+
+    /**
+     * Counts the bytes read from a stream, to report progress against the size of the file.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.SystemClock;
+
+import com.example.android.inventory.data.ProductContract.MetricsEntry;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Call counts, rows and latencies of the provider, kept per URI matcher code and operation.
+ * <p/>
+ * Recording a call only adds to a few counters of one {@link AtomicLongArray}, so it takes no
+ * lock and allocates nothing. Latencies are counted in a histogram whose buckets are a quarter
+ * of a power of two of microseconds wide, which is enough to tell a 2 ms query from a 3 ms one
+ * and keeps every histogram at {@link #BUCKET_COUNT} counters. Percentiles are only computed
+ * when the metrics are read.
+ */
+final class ProductMetrics {
+
+    /**
+     * Operations the metrics are kept for, the indexes of {@link #OPERATION_NAMES}
+     */
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+    static final int NOTIFY = 4;
+
+    private static final String[] OPERATION_NAMES = {
+            MetricsEntry.OPERATION_QUERY,
+            MetricsEntry.OPERATION_INSERT,
+            MetricsEntry.OPERATION_UPDATE,
+            MetricsEntry.OPERATION_DELETE,
+            MetricsEntry.OPERATION_NOTIFY
+    };
+
+    /**
+     * Number of buckets of a histogram. Latencies from 7 * 2^18 microseconds, about 1.8 seconds,
+     * go into the last one.
+     */
+    static final int BUCKET_COUNT = 80;
+
+    /**
+     * Counters kept for every URI pattern and operation, followed by the histogram buckets. The
+     * buckets add up to the number of calls.
+     */
+    private static final int FIELD_ROWS = 0;
+    private static final int FIELD_TOTAL_NANOS = 1;
+    private static final int FIELD_MAX_NANOS = 2;
+    private static final int FIELD_BUCKETS = 3;
+    private static final int FIELD_COUNT = FIELD_BUCKETS + BUCKET_COUNT;
+
+    /**
+     * Columns of {@link #query(String[])}, in the order their values are computed
+     */
+    private static final String[] COLUMNS = {
+            MetricsEntry.COLUMN_URI,
+            MetricsEntry.COLUMN_OPERATION,
+            MetricsEntry.COLUMN_CALLS,
+            MetricsEntry.COLUMN_ROWS,
+            MetricsEntry.COLUMN_MEAN_MICROS,
+            MetricsEntry.COLUMN_P50_MICROS,
+            MetricsEntry.COLUMN_P90_MICROS,
+            MetricsEntry.COLUMN_P99_MICROS,
+            MetricsEntry.COLUMN_MAX_MICROS
+    };
+
+    private final int mFirstCode;
+    private final String[] mUriNames;
+    private final AtomicLongArray mFields;
+
+    /**
+     * Time of the last reset, in milliseconds of {@link SystemClock#elapsedRealtime()}
+     */
+    private volatile long mResetMillis = SystemClock.elapsedRealtime();
+
+    /**
+     * Constructs a new {@link ProductMetrics} for the URI matcher codes from the given first code
+     * on, one for each of the given names. Calls of other codes aren't recorded.
+     */
+    ProductMetrics(int firstCode, String[] uriNames) {
+        mFirstCode = firstCode;
+        mUriNames = uriNames;
+        mFields = new AtomicLongArray(uriNames.length * OPERATION_NAMES.length * FIELD_COUNT);
+    }
+
+    /**
+     * Record a call that returned normally.
+     *
+     * @param code       URI matcher code of the URI called
+     * @param operation  one of the operation constants, for example {@link #QUERY}
+     * @param rows       number of rows the call returned or changed
+     * @param startNanos value of {@link System#nanoTime()} when the call started
+     */
+    void record(int code, int operation, long rows, long startNanos) {
+        int index = code - mFirstCode;
+        if (index < 0 || index >= mUriNames.length) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        int offset = (index * OPERATION_NAMES.length + operation) * FIELD_COUNT;
+        mFields.addAndGet(offset + FIELD_ROWS, rows);
+        mFields.addAndGet(offset + FIELD_TOTAL_NANOS, nanos);
+        mFields.incrementAndGet(offset + FIELD_BUCKETS + getBucket(nanos / 1000));
+
+        // Raise the maximum, unless another call raised it higher in the meantime
+        long max = mFields.get(offset + FIELD_MAX_NANOS);
+        while (nanos > max && !mFields.compareAndSet(offset + FIELD_MAX_NANOS, max, nanos)) {
+            max = mFields.get(offset + FIELD_MAX_NANOS);
+        }
+    }
+
+    /**
+     * Set all metrics back to 0. Calls recorded while this runs may be kept in part.
+     */
+    void reset() {
+        for (int i = 0; i < mFields.length(); i++) {
+            mFields.set(i, 0);
+        }
+        mResetMillis = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Return a row of the given columns of {@link MetricsEntry} for every URI pattern and
+     * operation that was called, or of all columns if the projection is null.
+     */
+    Cursor query(String[] projection) {
+        if (projection == null) {
+            projection = COLUMNS;
+        }
+        int[] columnIndexes = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnIndexes[i] = getColumnIndex(projection[i]);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection);
+        Object[] values = new Object[COLUMNS.length];
+        for (int index = 0; index < mUriNames.length; index++) {
+            for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+                if (!readRow(index, operation, values)) {
+                    continue;
+                }
+                MatrixCursor.RowBuilder row = cursor.newRow();
+                for (int columnIndex : columnIndexes) {
+                    row.add(values[columnIndex]);
+                }
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Print a table of the metrics, as {@link #query(String[])} returns them.
+     */
+    void dump(PrintWriter writer) {
+        writer.println("Provider metrics of the last "
+                + (SystemClock.elapsedRealtime() - mResetMillis) / 1000
+                + " s, latencies in microseconds:");
+        writer.println(String.format(Locale.US, "%-32s %-9s %9s %10s %9s %9s %9s %9s %9s",
+                (Object[]) COLUMNS));
+        Object[] values = new Object[COLUMNS.length];
+        for (int index = 0; index < mUriNames.length; index++) {
+            for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+                if (readRow(index, operation, values)) {
+                    writer.println(String.format(Locale.US,
+                            "%-32s %-9s %9d %10d %9d %9d %9d %9d %9d", values));
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the metrics of a URI pattern and operation into the given values, in the order of
+     * {@link #COLUMNS}. Return false if there were no calls.
+     */
+    private boolean readRow(int index, int operation, Object[] values) {
+        int offset = (index * OPERATION_NAMES.length + operation) * FIELD_COUNT;
+        // Read the histogram once, so the percentiles agree with the calls even if calls are
+        // recorded while it's read
+        long[] buckets = new long[BUCKET_COUNT];
+        long calls = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mFields.get(offset + FIELD_BUCKETS + i);
+            calls += buckets[i];
+        }
+        if (calls == 0) {
+            return false;
+        }
+        long maxMicros = mFields.get(offset + FIELD_MAX_NANOS) / 1000;
+
+        values[0] = mUriNames[index];
+        values[1] = OPERATION_NAMES[operation];
+        values[2] = calls;
+        values[3] = mFields.get(offset + FIELD_ROWS);
+        values[4] = mFields.get(offset + FIELD_TOTAL_NANOS) / 1000 / calls;
+        values[5] = getPercentile(buckets, calls, 50, maxMicros);
+        values[6] = getPercentile(buckets, calls, 90, maxMicros);
+        values[7] = getPercentile(buckets, calls, 99, maxMicros);
+        values[8] = maxMicros;
+        return true;
+    }
+
+    /**
+     * Return the highest latency of the bucket the given percentile of calls falls into, but no
+     * more than the highest latency recorded.
+     */
+    private static long getPercentile(long[] buckets, long calls, int percent, long maxMicros) {
+        long rank = (calls * percent + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(getBucketLimit(i), maxMicros);
+            }
+        }
+        // The last bucket has no upper limit
+        return maxMicros;
+    }
+
+    /**
+     * Return the histogram bucket of the given latency. Latencies up to 3 µs have a bucket each,
+     * from there on every power of two is split into four buckets.
+     */
+    static int getBucket(long micros) {
+        if (micros < 4) {
+            return (int) Math.max(micros, 0);
+        }
+        int log2 = 63 - Long.numberOfLeadingZeros(micros);
+        int bucket = (log2 - 1) * 4 + (int) ((micros >>> (log2 - 2)) & 3);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Return the highest latency in microseconds that falls into the given bucket.
+     */
+    static long getBucketLimit(int bucket) {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int log2 = bucket / 4 + 1;
+        return ((5L + bucket % 4) << (log2 - 2)) - 1;
+    }
+
+    private static int getColumnIndex(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown metrics column " + column);
+    }
+}
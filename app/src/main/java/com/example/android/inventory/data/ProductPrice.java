@@ -0,0 +1,143 @@
+package com.example.android.inventory.data;
+
+/**
+ * Parses and writes prices, which are stored as whole cents (see
+ * {@link ProductContract.ProductEntry#COLUMN_PRODUCT_PRICE}).
+ * <p/>
+ * Prices are read and written as text with a decimal point and two decimals, for example 13.99,
+ * in every locale, as the editor's decimal keyboard and the export files use them. Both
+ * directions work on primitive longs digit by digit, so they never go through a double, whose
+ * binary fractions can't hold most amounts of cents exactly.
+ */
+public final class ProductPrice {
+
+    /**
+     * Longest text a price can be written as: a sign, 17 digits of dollars, a decimal point and
+     * two digits of cents
+     */
+    public static final int MAX_CHARS = 21;
+
+    private ProductPrice() {
+    }
+
+    /**
+     * Parse a price written with an optional sign and decimal point, such as 13.99, 13.9, 13 or
+     * .99, into cents. Decimals after the second round the cents half up.
+     *
+     * @throws NumberFormatException if the text isn't a price or it doesn't fit into a long
+     */
+    public static long parseCents(String text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+
+        long cents = 0;
+        int digits = 0;
+        // Number of decimals read, or -1 before the decimal point
+        int decimals = -1;
+        boolean roundUp = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals == -1) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException("Invalid price " + text);
+            }
+            digits++;
+            if (decimals < 2) {
+                int digit = c - '0';
+                if (cents > (Long.MAX_VALUE - digit) / 10) {
+                    throw new NumberFormatException("Price " + text + " is too large");
+                }
+                cents = cents * 10 + digit;
+                if (decimals != -1) {
+                    decimals++;
+                }
+            } else if (decimals == 2) {
+                // Only the first digit after the cents decides the rounding
+                roundUp = c >= '5';
+                decimals++;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Invalid price " + text);
+        }
+
+        // Scale up prices given with fewer than two decimals
+        for (int scale = Math.max(decimals, 0); scale < 2; scale++) {
+            if (cents > Long.MAX_VALUE / 10) {
+                throw new NumberFormatException("Price " + text + " is too large");
+            }
+            cents *= 10;
+        }
+        if (roundUp) {
+            if (cents == Long.MAX_VALUE) {
+                throw new NumberFormatException("Price " + text + " is too large");
+            }
+            cents++;
+        }
+        return negative ? -cents : cents;
+    }
+
+    /**
+     * Return an amount of cents as text with two decimals, for example 13.99.
+     */
+    public static String format(long cents) {
+        char[] buffer = new char[MAX_CHARS];
+        return new String(buffer, 0, writeCents(buffer, 0, cents));
+    }
+
+    /**
+     * Write an amount of cents with two decimals (for example 13.99) into the buffer, starting at
+     * the given offset, without going through a String.
+     *
+     * @return the offset right after the last character written
+     */
+    public static int writeCents(char[] buffer, int offset, long cents) {
+        long dollars = cents / 100;
+        int rest = (int) (cents % 100);
+        if (cents < 0) {
+            buffer[offset++] = '-';
+            // Negate the parts rather than the amount, so Long.MIN_VALUE doesn't overflow
+            dollars = -dollars;
+            rest = -rest;
+        }
+        offset = writeLong(buffer, offset, dollars);
+        buffer[offset++] = '.';
+        buffer[offset++] = (char) ('0' + rest / 10);
+        buffer[offset++] = (char) ('0' + rest % 10);
+        return offset;
+    }
+
+    /**
+     * Write the decimal digits of a number into the buffer, starting at the given offset,
+     * without going through a String.
+     *
+     * @return the offset right after the last character written
+     */
+    public static int writeLong(char[] buffer, int offset, long value) {
+        if (value < 0) {
+            buffer[offset++] = '-';
+        } else {
+            // Work with negative numbers, so Long.MIN_VALUE doesn't overflow
+            value = -value;
+        }
+        int end = offset;
+        long rest = value;
+        do {
+            end++;
+            rest /= 10;
+        } while (rest != 0);
+        for (int i = end - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' - value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+}
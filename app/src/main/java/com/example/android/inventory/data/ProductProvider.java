@@ -1,15 +1,53 @@
 package com.example.android.inventory.data;
 
+import android.annotation.TargetApi;
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.StrictMode;
+import android.support.v4.os.TraceCompat;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.inventory.BuildConfig;
+import com.example.android.inventory.data.ProductContract.MetricsEntry;
 import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderItemEntry;
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+import com.example.android.inventory.data.ProductContract.SummaryEntry;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by Biggi on 10/16/2016
@@ -22,6 +60,46 @@ public class ProductProvider extends ContentProvider {
      */
     private ProductDbHelper mDbHelper;
 
+    /**
+     * Stored product images, served by {@link #openFile(Uri, String)}
+     */
+    private ProductImageStore mImageStore;
+
+    /**
+     * Runs the garbage collection of stored images off the calling thread
+     */
+    private final ExecutorService mImageExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Writes the exports of all products, served by {@link #openFile(Uri, String)}
+     */
+    private final ProductExporter mExporter = new ProductExporter();
+
+    /**
+     * Call counts, rows and latencies of queries, writes and notifications, served by
+     * {@link #dump(FileDescriptor, PrintWriter, String[])} and the metrics URI
+     */
+    private final ProductMetrics mMetrics = new ProductMetrics(PRODUCTS, METRICS_URI_NAMES);
+
+    /**
+     * The most recently read products, which answer queries of a single product. Its size comes
+     * from the PRODUCT_ROW_CACHE_SIZE build config field, 0 disables it.
+     */
+    private ProductRowCache mRowCache;
+
+    /**
+     * Content URIs changed by the batch running on the current thread, or null if the current
+     * thread isn't inside {@link #applyBatch(ArrayList)}. Notifications are held back until the
+     * batch commits, and each URI is only notified once.
+     */
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<Set<Uri>>();
+
+    /**
+     * IDs of the products changed by the batch running on the current thread, -1 for all of
+     * them, whose cached rows are removed once their changes are committed
+     */
+    private final ThreadLocal<Set<Long>> mPendingEvictions = new ThreadLocal<Set<Long>>();
+
     /**
      * Tag for the log messages
      */
@@ -37,6 +115,85 @@ public class ProductProvider extends ContentProvider {
      */
     private static final int PRODUCT_ID = 101;
 
+    /**
+     * URI matcher code for the content URI that adjusts the quantity of a single product
+     */
+    private static final int PRODUCT_ADJUST = 102;
+
+    /**
+     * URI matcher code for the content URI that searches products by name and supplier
+     */
+    private static final int PRODUCT_SEARCH = 103;
+
+    /**
+     * URI matcher code for the content URI of a stored product image
+     */
+    private static final int IMAGE = 104;
+
+    /**
+     * URI matcher code for the content URI of the stock movements of a single product
+     */
+    private static final int PRODUCT_MOVEMENTS = 105;
+
+    /**
+     * URI matcher code for the content URI of the quantity of a single product at a point in time
+     */
+    private static final int PRODUCT_STOCK = 106;
+
+    /**
+     * URI matcher code for the content URI of the inventory summary
+     */
+    private static final int SUMMARY = 107;
+
+    /**
+     * URI matcher code for the content URI for the purchase orders table
+     */
+    private static final int PURCHASE_ORDERS = 108;
+
+    /**
+     * URI matcher code for the content URI for a single purchase order
+     */
+    private static final int PURCHASE_ORDER_ID = 109;
+
+    /**
+     * URI matcher code for the content URI of the items of a single purchase order
+     */
+    private static final int PURCHASE_ORDER_ITEMS = 110;
+
+    /**
+     * URI matcher code for the export of all products as a file
+     */
+    private static final int EXPORT = 111;
+
+    /**
+     * URI matcher code for the metrics of the provider. Calls of it aren't recorded themselves.
+     */
+    private static final int METRICS = 112;
+
+    /**
+     * URI patterns of the URI matcher codes from {@link #PRODUCTS} to {@link #EXPORT}, as the
+     * metrics name them
+     */
+    private static final String[] METRICS_URI_NAMES = {
+            ProductContract.PATH_PRODUCTS,
+            ProductContract.PATH_PRODUCTS + "/#",
+            ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_ADJUST,
+            ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SEARCH + "/*",
+            ProductContract.PATH_IMAGES + "/*",
+            ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_MOVEMENTS,
+            ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_STOCK,
+            ProductContract.PATH_SUMMARY,
+            ProductContract.PATH_PURCHASE_ORDERS,
+            ProductContract.PATH_PURCHASE_ORDERS + "/#",
+            ProductContract.PATH_PURCHASE_ORDERS + "/#/" + ProductContract.PATH_ITEMS,
+            ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_EXPORT + "/*"
+    };
+
+    /**
+     * Number of search results returned when the search URI doesn't set a limit
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -48,11 +205,152 @@ public class ProductProvider extends ContentProvider {
      * Static initializer. This is run the first time anything is called from this class.
      */
     static {
-        // Add 2 content URIs to URI matcher
+        // Add 13 content URIs to URI matcher
         sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_PRODUCTS, PRODUCTS);
         sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_PRODUCTS + "/#", PRODUCT_ID);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_ADJUST, PRODUCT_ADJUST);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_SEARCH + "/*", PRODUCT_SEARCH);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_IMAGES + "/*", IMAGE);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_MOVEMENTS, PRODUCT_MOVEMENTS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/#/" + ProductContract.PATH_STOCK, PRODUCT_STOCK);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_SUMMARY, SUMMARY);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY, ProductContract.PATH_PURCHASE_ORDERS,
+                PURCHASE_ORDERS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PURCHASE_ORDERS + "/#", PURCHASE_ORDER_ID);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PURCHASE_ORDERS + "/#/" + ProductContract.PATH_ITEMS,
+                PURCHASE_ORDER_ITEMS);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_EXPORT + "/*", EXPORT);
+        sUriMatcher.addURI(ProductContract.CONTENT_AUTHORITY,
+                ProductContract.PATH_PRODUCTS + "/" + ProductContract.PATH_METRICS, METRICS);
     }
 
+    /**
+     * SQL statement used by {@link #bulkInsert(Uri, ContentValues[])} to insert a single product.
+     */
+    private static final String SQL_INSERT_PRODUCT = "INSERT INTO " + ProductEntry.TABLE_NAME + " ("
+            + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+            + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", "
+            + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ", "
+            + ProductEntry.COLUMN_PRODUCT_IMAGE + ", "
+            + ProductEntry.COLUMN_PRODUCT_REORDER_POINT + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+    /**
+     * SQL statement used to apply a signed delta to a product's quantity, never going below 0.
+     * Rows whose quantity wouldn't change are left alone, so no-op sales don't notify anyone.
+     */
+    private static final String SQL_ADJUST_QUANTITY = "UPDATE " + ProductEntry.TABLE_NAME
+            + " SET " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = max("
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ?1, 0)"
+            + " WHERE " + ProductEntry._ID + " = ?2 AND " + ProductEntry.COLUMN_PRODUCT_QUANTITY
+            + " != max(" + ProductEntry.COLUMN_PRODUCT_QUANTITY + " + ?1, 0)";
+
+    /**
+     * SQL statement used to store the received quantity of a single product.
+     */
+    private static final String SQL_SET_QUANTITY = "UPDATE " + ProductEntry.TABLE_NAME
+            + " SET " + ProductEntry.COLUMN_PRODUCT_QUANTITY + " = ? WHERE " + ProductEntry._ID + " = ?";
+
+    /**
+     * SQL statement used to read back a single product's quantity.
+     */
+    private static final String SQL_SELECT_QUANTITY = "SELECT " + ProductEntry.COLUMN_PRODUCT_QUANTITY
+            + " FROM " + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + " = ?";
+
+    /**
+     * SQL query used by an upsert to find the product with a given name and supplier, ignoring
+     * case. The name is looked up through the name index.
+     */
+    private static final String SQL_SELECT_PRODUCT_BY_NAME = "SELECT " + ProductEntry._ID + ", "
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " FROM " + ProductEntry.TABLE_NAME
+            + " WHERE " + ProductEntry.COLUMN_PRODUCT_NAME + " = ? COLLATE NOCASE AND "
+            + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " = ? COLLATE NOCASE"
+            + " ORDER BY " + ProductEntry._ID + " LIMIT 1";
+
+    /**
+     * Condition on the products table that is true for products below their reorder point that
+     * aren't on an open purchase order yet.
+     */
+    private static final String WHERE_NEEDS_REORDER = ProductEntry.TABLE_NAME + "."
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + " < " + ProductEntry.TABLE_NAME + "."
+            + ProductEntry.COLUMN_PRODUCT_REORDER_POINT + " AND " + ProductEntry.TABLE_NAME + "."
+            + ProductEntry._ID + " NOT IN (SELECT i." + PurchaseOrderItemEntry.COLUMN_PRODUCT_ID
+            + " FROM " + PurchaseOrderItemEntry.TABLE_NAME + " i JOIN " + PurchaseOrderEntry.TABLE_NAME
+            + " o ON i." + PurchaseOrderItemEntry.COLUMN_ORDER_ID + " = o." + PurchaseOrderEntry._ID
+            + " WHERE o." + PurchaseOrderEntry.COLUMN_STATUS + " = " + PurchaseOrderEntry.STATUS_OPEN + ")";
+
+    /**
+     * SQL statement used to create one open purchase order for every supplier with a product that
+     * needs reordering. The creation time is bound.
+     */
+    private static final String SQL_CREATE_PURCHASE_ORDERS = "INSERT INTO "
+            + PurchaseOrderEntry.TABLE_NAME + " (" + PurchaseOrderEntry.COLUMN_SUPPLIER + ", "
+            + PurchaseOrderEntry.COLUMN_STATUS + ", " + PurchaseOrderEntry.COLUMN_CREATED_TIME + ")"
+            + " SELECT " + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ", " + PurchaseOrderEntry.STATUS_OPEN
+            + ", ? FROM " + ProductEntry.TABLE_NAME + " WHERE " + WHERE_NEEDS_REORDER
+            + " GROUP BY " + ProductEntry.COLUMN_PRODUCT_SUPPLIER
+            + " ORDER BY " + ProductEntry.COLUMN_PRODUCT_SUPPLIER;
+
+    /**
+     * SQL statement used to put every product that needs reordering on the purchase order of its
+     * supplier created by {@link #SQL_CREATE_PURCHASE_ORDERS}. Each product is ordered up to twice
+     * its reorder point. The highest purchase order ID before the orders were created is bound.
+     */
+    private static final String SQL_CREATE_PURCHASE_ORDER_ITEMS = "INSERT INTO "
+            + PurchaseOrderItemEntry.TABLE_NAME + " (" + PurchaseOrderItemEntry.COLUMN_ORDER_ID + ", "
+            + PurchaseOrderItemEntry.COLUMN_PRODUCT_ID + ", " + PurchaseOrderItemEntry.COLUMN_NAME + ", "
+            + PurchaseOrderItemEntry.COLUMN_PRICE + ", " + PurchaseOrderItemEntry.COLUMN_QUANTITY + ")"
+            + " SELECT " + PurchaseOrderEntry.TABLE_NAME + "." + PurchaseOrderEntry._ID + ", "
+            + ProductEntry.TABLE_NAME + "." + ProductEntry._ID + ", "
+            + ProductEntry.COLUMN_PRODUCT_NAME + ", " + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+            + "2 * " + ProductEntry.COLUMN_PRODUCT_REORDER_POINT + " - " + ProductEntry.COLUMN_PRODUCT_QUANTITY
+            + " FROM " + ProductEntry.TABLE_NAME + " JOIN " + PurchaseOrderEntry.TABLE_NAME + " ON "
+            + PurchaseOrderEntry.TABLE_NAME + "." + PurchaseOrderEntry.COLUMN_SUPPLIER + " = "
+            + ProductEntry.TABLE_NAME + "." + ProductEntry.COLUMN_PRODUCT_SUPPLIER
+            + " WHERE " + PurchaseOrderEntry.TABLE_NAME + "." + PurchaseOrderEntry._ID + " > ? AND "
+            + WHERE_NEEDS_REORDER
+            + " ORDER BY " + PurchaseOrderEntry.TABLE_NAME + "." + PurchaseOrderEntry._ID + ", "
+            + ProductEntry.COLUMN_PRODUCT_NAME + " COLLATE NOCASE";
+
+    /**
+     * SQL statement used to find the highest purchase order ID.
+     */
+    private static final String SQL_SELECT_LAST_PURCHASE_ORDER = "SELECT coalesce(max("
+            + PurchaseOrderEntry._ID + "), 0) FROM " + PurchaseOrderEntry.TABLE_NAME;
+
+    /**
+     * SQL statement used to read the status of a single purchase order.
+     */
+    private static final String SQL_SELECT_PURCHASE_ORDER_STATUS = "SELECT "
+            + PurchaseOrderEntry.COLUMN_STATUS + " FROM " + PurchaseOrderEntry.TABLE_NAME
+            + " WHERE " + PurchaseOrderEntry._ID + " = ?";
+
+    /**
+     * SQL query for the items of a purchase order whose products still exist, with the ordered
+     * and the current quantity of the product.
+     */
+    private static final String SQL_SELECT_RECEIVABLE_ITEMS = "SELECT i."
+            + PurchaseOrderItemEntry.COLUMN_PRODUCT_ID + ", i." + PurchaseOrderItemEntry.COLUMN_QUANTITY
+            + ", p." + ProductEntry.COLUMN_PRODUCT_QUANTITY
+            + " FROM " + PurchaseOrderItemEntry.TABLE_NAME + " i JOIN " + ProductEntry.TABLE_NAME
+            + " p ON p." + ProductEntry._ID + " = i." + PurchaseOrderItemEntry.COLUMN_PRODUCT_ID
+            + " WHERE i." + PurchaseOrderItemEntry.COLUMN_ORDER_ID + " = ?";
+
+    /**
+     * SQL statement used to mark a purchase order as received at the bound time.
+     */
+    private static final String SQL_MARK_PURCHASE_ORDER_RECEIVED = "UPDATE "
+            + PurchaseOrderEntry.TABLE_NAME + " SET " + PurchaseOrderEntry.COLUMN_STATUS + " = "
+            + PurchaseOrderEntry.STATUS_RECEIVED + ", " + PurchaseOrderEntry.COLUMN_RECEIVED_TIME
+            + " = ? WHERE " + PurchaseOrderEntry._ID + " = ?";
+
     /**
      * Initialize the provider and the database helper object.
      */
@@ -60,6 +358,8 @@ public class ProductProvider extends ContentProvider {
     public boolean onCreate() {
         // Initialize a ProductDbHelper object to gain access to the products database.
         mDbHelper = new ProductDbHelper(getContext());
+        mImageStore = new ProductImageStore(getContext());
+        mRowCache = new ProductRowCache(BuildConfig.PRODUCT_ROW_CACHE_SIZE);
         return true;
     }
 
@@ -69,6 +369,19 @@ public class ProductProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        // Traced on the thread that queries, for example the one of a loader
+        TraceCompat.beginSection("ProductProvider.query");
+        try {
+            return queryUri(uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    private Cursor queryUri(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                            String sortOrder) {
+        long startNanos = System.nanoTime();
+
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
@@ -79,15 +392,51 @@ public class ProductProvider extends ContentProvider {
         int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
-                cursor = database.query(ProductEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = queryProducts(database, uri, projection, selection, selectionArgs, sortOrder);
                 break;
             case PRODUCT_ID:
-                selection = ProductEntry._ID + "=?";
+                cursor = queryProduct(database, ContentUris.parseId(uri), projection, sortOrder);
+                break;
+            case PRODUCT_SEARCH:
+                // Search results have their own ranking and notification URI
+                return recordQuery(match, searchProducts(uri, projection, null), startNanos);
+            case PRODUCT_MOVEMENTS:
+                // List the ledger of the product given by the ID in the URI, oldest first
+                selection = DatabaseUtils.concatenateWhere(selection,
+                        StockMovementEntry.COLUMN_PRODUCT_ID + "=" + getProductId(uri));
+                cursor = database.query(StockMovementEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null,
+                        sortOrder == null ? StockMovementEntry._ID + " ASC" : sortOrder);
+                break;
+            case PRODUCT_STOCK:
+                cursor = queryStock(database, uri);
+                break;
+            case SUMMARY:
+                // A single row kept up to date by triggers, so there is nothing to aggregate
+                cursor = database.query(SummaryEntry.TABLE_NAME, projection, null, null, null, null,
+                        null);
+                break;
+            case PURCHASE_ORDERS:
+                cursor = database.query(PurchaseOrderEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                break;
+            case PURCHASE_ORDER_ID:
+                selection = PurchaseOrderEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                cursor = database.query(ProductEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                cursor = database.query(PurchaseOrderEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                break;
+            case PURCHASE_ORDER_ITEMS:
+                // List the items of the purchase order given by the ID in the URI
+                selection = DatabaseUtils.concatenateWhere(selection,
+                        PurchaseOrderItemEntry.COLUMN_ORDER_ID + "=" + getProductId(uri));
+                cursor = database.query(PurchaseOrderItemEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, null, null,
+                        sortOrder == null ? PurchaseOrderItemEntry._ID + " ASC" : sortOrder);
                 break;
+            case METRICS:
+                // A copy of the metrics at the time of the query, whose changes aren't notified
+                return mMetrics.query(projection);
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
@@ -97,18 +446,277 @@ public class ProductProvider extends ContentProvider {
         // If the data at this URI changes, then we know we need to update the Cursor.
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
 
+        return recordQuery(match, cursor, startNanos);
+    }
+
+    /**
+     * Query the product with the given ID through the row cache. A cached row is returned
+     * without touching the database, otherwise the whole row is read and cached for the next
+     * query. The database is queried directly if the cache is disabled, if the projection asks
+     * for more than columns of the table, or inside a batch, whose rows aren't committed yet.
+     */
+    private Cursor queryProduct(SQLiteDatabase database, long id, String[] projection,
+                                String sortOrder) {
+        String selection = ProductEntry._ID + "=?";
+        String[] selectionArgs = new String[]{String.valueOf(id)};
+        int[] columnIndexes = ProductRowCache.getColumnIndexes(projection);
+        if (!mRowCache.isEnabled() || columnIndexes == null
+                || mPendingNotifications.get() != null) {
+            return database.query(ProductEntry.TABLE_NAME, projection, selection, selectionArgs,
+                    null, null, sortOrder);
+        }
+
+        Object[] row = mRowCache.get(id);
+        if (row == null) {
+            // Taken before the read, so a row that changes while it's read isn't kept
+            long generation = mRowCache.getGeneration();
+            Cursor cursor = database.query(ProductEntry.TABLE_NAME, ProductRowCache.COLUMNS,
+                    selection, selectionArgs, null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    row = ProductRowCache.readRow(cursor);
+                    mRowCache.put(id, row, generation);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ProductRowCache.toCursor(row, projection, columnIndexes);
+    }
+
+    /**
+     * Record a query in the metrics and return its cursor. Counting the rows fills the first
+     * window of the cursor, which its reader would do next anyway, so the latency recorded is
+     * the one of running the query rather than only of compiling it.
+     */
+    private Cursor recordQuery(int match, Cursor cursor, long startNanos) {
+        mMetrics.record(match, ProductMetrics.QUERY, cursor.getCount(), startNanos);
+        return cursor;
+    }
+
+    /**
+     * Return a single row with the quantity the product given by a stock URI had at the time of
+     * its {@link ProductContract#QUERY_PARAMETER_AT} parameter, or now if it has none.
+     */
+    private Cursor queryStock(SQLiteDatabase database, Uri uri) {
+        String at = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_AT);
+        long time;
+        try {
+            time = at == null ? System.currentTimeMillis() : Long.parseLong(at);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid time " + at + " in " + uri);
+        }
+
+        long quantity;
+        // Read the snapshot and the movements after it in one consistent state of the ledger
+        database.beginTransactionNonExclusive();
+        try {
+            quantity = StockLedger.getQuantityAt(database, getProductId(uri), time);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                StockMovementEntry.COLUMN_TIME, ProductEntry.COLUMN_PRODUCT_QUANTITY}, 1);
+        cursor.addRow(new Object[]{time, quantity});
         return cursor;
     }
 
+    /**
+     * Returns the product ID of a URI below a single product, such as an adjust URI, or the
+     * purchase order ID of a URI below a single purchase order.
+     */
+    private static long getProductId(Uri uri) {
+        // The ID is the segment right after "products" or "purchase_orders"
+        return Long.parseLong(uri.getPathSegments().get(1));
+    }
+
+    /**
+     * Query the products table, optionally restricted to one page of a sort order. A page is
+     * bounded by the keyset query parameters and the limit query parameter rather than by an
+     * offset, so the database can seek straight to the start of the page in the sort index.
+     */
+    private Cursor queryProducts(SQLiteDatabase database, Uri uri, String[] projection,
+                                 String selection, String[] selectionArgs, String sortOrder) {
+        String afterKey = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_KEY);
+        String afterId = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_AFTER_ID);
+        String untilKey = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_UNTIL_KEY);
+        String untilId = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_UNTIL_ID);
+        String limit = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT) == null
+                ? null : String.valueOf(getLimit(uri, 0));
+
+        // Without keyset bounds this is a plain query of the table
+        if (afterId == null && untilId == null) {
+            return database.query(ProductEntry.TABLE_NAME, projection, selection, selectionArgs,
+                    null, null, sortOrder, limit);
+        }
+
+        String sortKey = getSortKeyExpression(sortOrder);
+        if (sortKey == null) {
+            throw new IllegalArgumentException("Paging requires a product sort order, not " + sortOrder);
+        }
+
+        // Each bound is written so that SQLite can use it as a range on the sort index:
+        // "key >= k AND (key > k OR _id > id)" instead of "key > k OR (key = k AND _id > id)".
+        ArrayList<String> args = new ArrayList<String>();
+        StringBuilder where = new StringBuilder();
+        if (selection != null) {
+            where.append('(').append(selection).append(')');
+            if (selectionArgs != null) {
+                Collections.addAll(args, selectionArgs);
+            }
+        }
+        if (afterId != null) {
+            if (afterKey == null) {
+                throw new IllegalArgumentException("Paging after a row requires its key " + uri);
+            }
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+            where.append(sortKey).append(" >= ? AND (").append(sortKey).append(" > ? OR ")
+                    .append(ProductEntry._ID).append(" > ?)");
+            args.add(afterKey);
+            args.add(afterKey);
+            args.add(String.valueOf(Long.parseLong(afterId)));
+        }
+        if (untilId != null) {
+            if (untilKey == null) {
+                throw new IllegalArgumentException("Paging until a row requires its key " + uri);
+            }
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+            where.append(sortKey).append(" <= ? AND (").append(sortKey).append(" < ? OR ")
+                    .append(ProductEntry._ID).append(" <= ?)");
+            args.add(untilKey);
+            args.add(untilKey);
+            args.add(String.valueOf(Long.parseLong(untilId)));
+        }
+
+        return database.query(ProductEntry.TABLE_NAME, projection, where.toString(),
+                args.toArray(new String[args.size()]), null, null, sortOrder, limit);
+    }
+
+    /**
+     * Return the expression the given sort order sorts by (including its collation), or null if
+     * the sort order isn't one of the SORT_ORDER constants of {@link ProductEntry}.
+     */
+    private static String getSortKeyExpression(String sortOrder) {
+        String sortColumn = ProductEntry.getSortColumn(sortOrder);
+        if (ProductEntry.COLUMN_PRODUCT_NAME.equals(sortColumn)
+                || ProductEntry.COLUMN_PRODUCT_SUPPLIER.equals(sortColumn)) {
+            return sortColumn + " COLLATE NOCASE";
+        }
+        return sortColumn;
+    }
+
+    /**
+     * Perform the query for the given URI, and stop early if the query is cancelled. Only
+     * searches are cancelled in practice, since the catalog restarts them on every keystroke.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        if (sUriMatcher.match(uri) == PRODUCT_SEARCH) {
+            TraceCompat.beginSection("ProductProvider.query");
+            try {
+                long startNanos = System.nanoTime();
+                return recordQuery(PRODUCT_SEARCH,
+                        searchProducts(uri, projection, cancellationSignal), startNanos);
+            } finally {
+                TraceCompat.endSection();
+            }
+        }
+        return query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    /**
+     * Search products for the text in the last segment of the given search URI. Every word of the
+     * text is matched as a prefix against the full-text search table. Products whose name matches
+     * every word rank before products that need the supplier to match, then results are ordered
+     * by name.
+     */
+    private Cursor searchProducts(Uri uri, String[] projection, CancellationSignal cancellationSignal) {
+        // Get readable database
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+
+        // Build one full-text query over any column and one over the name only.
+        // Characters that have a meaning in the query syntax are treated as word breaks.
+        String[] words = uri.getLastPathSegment().split("[^\\p{L}\\p{N}]+");
+        StringBuilder anyColumnQuery = new StringBuilder();
+        StringBuilder nameQuery = new StringBuilder();
+        for (String word : words) {
+            if (word.length() > 0) {
+                anyColumnQuery.append(word).append("* ");
+                nameQuery.append(ProductEntry.COLUMN_PRODUCT_NAME).append(':').append(word).append("* ");
+            }
+        }
+
+        String columns = projection == null ? "*" : TextUtils.join(", ", projection);
+        int limit = getLimit(uri, DEFAULT_SEARCH_LIMIT);
+
+        Cursor cursor;
+        if (anyColumnQuery.length() == 0) {
+            // There is nothing to search for, so return no products
+            cursor = database.rawQuery("SELECT " + columns + " FROM " + ProductEntry.TABLE_NAME
+                    + " WHERE 0", null);
+        } else {
+            String matchingIds = "SELECT docid FROM " + ProductDbHelper.TABLE_PRODUCTS_SEARCH
+                    + " WHERE " + ProductDbHelper.TABLE_PRODUCTS_SEARCH + " MATCH ";
+            String sql = "SELECT " + columns + " FROM " + ProductEntry.TABLE_NAME
+                    + " WHERE " + ProductEntry._ID + " IN (" + matchingIds + "?2)"
+                    + " ORDER BY " + ProductEntry._ID + " IN (" + matchingIds + "?1) DESC, "
+                    + ProductEntry.SORT_ORDER_NAME
+                    + " LIMIT " + limit;
+            String[] args = {nameQuery.toString(), anyColumnQuery.toString()};
+            if (cancellationSignal != null) {
+                cursor = database.rawQuery(sql, args, cancellationSignal);
+            } else {
+                cursor = database.rawQuery(sql, args);
+            }
+        }
+
+        // Any change to the products can change the search results
+        cursor.setNotificationUri(getContext().getContentResolver(), ProductEntry.CONTENT_URI);
+        return cursor;
+    }
+
+    /**
+     * Return the value of the {@link ProductContract#QUERY_PARAMETER_LIMIT} query parameter of the
+     * given URI, or the default limit if the parameter isn't set.
+     */
+    private static int getLimit(Uri uri, int defaultLimit) {
+        String limit = uri.getQueryParameter(ProductContract.QUERY_PARAMETER_LIMIT);
+        if (limit == null) {
+            return defaultLimit;
+        }
+        try {
+            int value = Integer.parseInt(limit);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the exception below
+        }
+        throw new IllegalArgumentException("Invalid limit " + limit + " for " + uri);
+    }
+
     /**
      * Insert new data into the provider with the given ContentValues.
      */
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        noteWrite("insert");
+        long startNanos = System.nanoTime();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
-                return insertProduct(uri, contentValues);
+                Uri productUri = insertProduct(uri, contentValues);
+                mMetrics.record(match, ProductMetrics.INSERT, productUri == null ? 0 : 1,
+                        startNanos);
+                return productUri;
             default:
                 throw new IllegalArgumentException("Insertion is not supported for " + uri);
         }
@@ -119,66 +727,224 @@ public class ProductProvider extends ContentProvider {
      * for that specific row in the database.
      */
     private Uri insertProduct(Uri uri, ContentValues values) {
+        // Check that the values describe a valid product
+        ProductValidator.validateInsertValues(values);
 
-        // Check that the name is not null
-        String name = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Product requires a name");
-        }
-
-        // Check that the price is not null and that it's greater than or equal to 0
-        Double price = values.getAsDouble(ProductEntry.COLUMN_PRODUCT_PRICE);
-        if (price == null || price < 0) {
-            throw new IllegalArgumentException("Product requires valid price");
-        }
-
-        // If the quantity is provided, check that it's greater than or equal to 0
-        Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-        if (quantity != null && quantity < 0) {
-            throw new IllegalArgumentException("Product requires valid quantity");
-        }
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Check that the supplier is not null
-        String supplier = values.getAsString(ProductEntry.COLUMN_PRODUCT_SUPPLIER);
-        if (supplier == null) {
-            throw new IllegalArgumentException("Product requires valid supplier");
+        long id;
+        database.beginTransaction();
+        try {
+            // Insert the new product with the given values
+            id = database.insert(ProductEntry.TABLE_NAME, null, values);
+            if (id != -1) {
+                // Start the product's stock history in the same transaction
+                Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+                StockLedger.recordInitialQuantity(database, id, quantity == null ? 0 : quantity,
+                        System.currentTimeMillis());
+                database.setTransactionSuccessful();
+            }
+        } finally {
+            database.endTransaction();
         }
 
-        // Get writeable database
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
-        // Insert the new product with the given values
-        long id = database.insert(ProductEntry.TABLE_NAME, null, values);
         // If the ID is -1, then the insertion failed. Log an error and return null.
         if (id == -1) {
             Log.e(LOG_TAG, "Failed to insert row for " + uri);
             return null;
         }
 
+        // The ID may have belonged to a deleted product before, don't let its row be served
+        evictCachedProduct(id);
+
         // Notify all listeners that the data has changed for the product content URI.
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         // Once we know the ID of the new row in the table,
         // return the new URI with the ID appended to the end of it
         return ContentUris.withAppendedId(uri, id);
     }
 
+    /**
+     * Insert an array of new rows into the provider. All rows are written in a single transaction.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        noteWrite("bulkInsert");
+        long startNanos = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
+        switch (match) {
+            case PRODUCTS:
+                int rowsInserted = bulkInsertProducts(uri, values);
+                mMetrics.record(match, ProductMetrics.INSERT, rowsInserted, startNanos);
+                return rowsInserted;
+            default:
+                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Insert many products into the database at once. Every row is validated before anything is
+     * written, then all rows are inserted in one transaction through a single compiled statement.
+     * Either all of the products are inserted or none of them are. With the
+     * {@link ProductContract#QUERY_PARAMETER_UPSERT} parameter, rows matching an existing product
+     * update it instead. Return the number of rows that were inserted or updated.
+     */
+    private int bulkInsertProducts(Uri uri, ContentValues[] valuesArray) {
+        boolean upsert = Boolean.parseBoolean(
+                uri.getQueryParameter(ProductContract.QUERY_PARAMETER_UPSERT));
+
+        // Validate all rows up front, so a bad row can't leave a half-written catalog behind
+        for (ContentValues values : valuesArray) {
+            ProductValidator.validateBulkInsertColumns(values);
+            ProductValidator.validateInsertValues(values);
+        }
+
+        // If there are no rows to insert, then don't try to open a transaction
+        if (valuesArray.length == 0) {
+            return 0;
+        }
+
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rowsInserted = 0;
+        boolean imagesReplaced = false;
+        List<Long> updatedIds = new ArrayList<Long>();
+        long time = System.currentTimeMillis();
+        database.beginTransaction();
+        try {
+            // Compile the insert once and reuse it for every row of the batch
+            SQLiteStatement statement = database.compileStatement(SQL_INSERT_PRODUCT);
+            try {
+                for (ContentValues values : valuesArray) {
+                    long updatedId = upsert ? updateMatchingProduct(database, values, time) : -1;
+                    if (updatedId != -1) {
+                        imagesReplaced |= values.containsKey(ProductEntry.COLUMN_PRODUCT_IMAGE);
+                        updatedIds.add(updatedId);
+                        rowsInserted++;
+                        continue;
+                    }
+                    bindInsertValues(statement, values);
+                    long id = statement.executeInsert();
+                    Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+                    StockLedger.recordInitialQuantity(database, id, quantity == null ? 0 : quantity,
+                            time);
+                    rowsInserted++;
+                }
+            } finally {
+                statement.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // Only the updated products can be cached, the inserted ones are new
+        for (long id : updatedIds) {
+            evictCachedProduct(id);
+        }
+
+        // Notify all listeners once for the whole batch, rather than once per product
+        notifyChange(ProductEntry.CONTENT_URI);
+        // Updated products may not use their previous images anymore
+        if (imagesReplaced) {
+            collectImageGarbage();
+        }
+
+        // Return the number of rows inserted
+        return rowsInserted;
+    }
+
+    /**
+     * Update the product with the same name and supplier as the given (already validated) values,
+     * if there is one, recording a change of its quantity as a correction. Must be called inside
+     * the transaction of the bulk insert. Return the ID of the updated product, or -1 if there
+     * was none.
+     */
+    private static long updateMatchingProduct(SQLiteDatabase database, ContentValues values,
+                                                 long time) {
+        long id;
+        long oldQuantity;
+        Cursor cursor = database.rawQuery(SQL_SELECT_PRODUCT_BY_NAME, new String[]{
+                values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME),
+                values.getAsString(ProductEntry.COLUMN_PRODUCT_SUPPLIER)});
+        try {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            id = cursor.getLong(0);
+            oldQuantity = cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+
+        database.update(ProductEntry.TABLE_NAME, values, ProductEntry._ID + "=?",
+                new String[]{String.valueOf(id)});
+        Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        if (quantity != null && quantity != oldQuantity) {
+            StockLedger.recordMovement(database, id, StockMovementEntry.TYPE_CORRECTION,
+                    quantity - oldQuantity, quantity, time);
+        }
+        return id;
+    }
+
+    /**
+     * Bind the given (already validated) content values to the compiled
+     * {@link #SQL_INSERT_PRODUCT} statement. The bind positions follow
+     * {@link ProductValidator#INSERT_COLUMNS}.
+     */
+    private static void bindInsertValues(SQLiteStatement statement, ContentValues values) {
+        statement.bindString(1, values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME));
+        statement.bindLong(2, ProductValidator.getPriceCents(values));
+
+        // The quantity is optional and defaults to 0, same as the column default
+        Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        statement.bindLong(3, quantity == null ? 0 : quantity);
+
+        statement.bindString(4, values.getAsString(ProductEntry.COLUMN_PRODUCT_SUPPLIER));
+
+        // The image is optional
+        String image = values.getAsString(ProductEntry.COLUMN_PRODUCT_IMAGE);
+        if (image == null) {
+            statement.bindNull(5);
+        } else {
+            statement.bindString(5, image);
+        }
+
+        // The reorder point is optional and defaults to 0, same as the column default
+        Integer reorderPoint = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_REORDER_POINT);
+        statement.bindLong(6, reorderPoint == null ? 0 : reorderPoint);
+    }
+
     /**
      * Updates the data at the given selection and selection arguments, with the new ContentValues.
      */
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        noteWrite("update");
+        long startNanos = System.nanoTime();
+        int rowsUpdated;
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case PRODUCTS:
-                return updateProduct(uri, contentValues, selection, selectionArgs);
+                rowsUpdated = updateProduct(uri, contentValues, selection, selectionArgs);
+                break;
             case PRODUCT_ID:
                 selection = ProductEntry._ID + "=?";
                 selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updateProduct(uri, contentValues, selection, selectionArgs);
+                rowsUpdated = updateProduct(uri, contentValues, selection, selectionArgs);
+                break;
+            case PRODUCT_ADJUST:
+                rowsUpdated = adjustQuantity(uri, contentValues) == -1 ? 0 : 1;
+                break;
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
+        mMetrics.record(match, ProductMetrics.UPDATE, rowsUpdated, startNanos);
+        return rowsUpdated;
     }
 
     /**
@@ -191,59 +957,410 @@ public class ProductProvider extends ContentProvider {
         if (values.size() == 0) {
             return 0;
         }
-        // If the {@link ProductEntry#COLUMN_PRODUCT_NAME} key is present,
-        // check that the name value is not null.
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_NAME)) {
-            String name = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
-            if (name == null) {
-                throw new IllegalArgumentException("Product requires a name");
+        ProductValidator.validateUpdateValues(values);
+
+        // Update the selected products in the products database table with the given ContentValues
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        int rowsUpdated;
+        database.beginTransaction();
+        try {
+            // Record the quantities this update overwrites as corrections, before they're gone
+            if (values.containsKey(ProductEntry.COLUMN_PRODUCT_QUANTITY)) {
+                recordQuantityCorrections(database, values.getAsLong(ProductEntry.COLUMN_PRODUCT_QUANTITY),
+                        selection, selectionArgs);
             }
+            // Perform the update on the database and get the number of rows affected
+            rowsUpdated = database.update(ProductEntry.TABLE_NAME, values, selection, selectionArgs);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
-        // If the {@link ProductEntry#COLUMN_PRODUCT_PRICE} key is present,
-        // check that the price value is valid.
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE)) {
-            // Check that the price is greater than or equal to 0
-            Long quantity = values.getAsLong(ProductEntry.COLUMN_PRODUCT_PRICE);
-            if (quantity != null && quantity < 0) {
-                throw new IllegalArgumentException("Product requires valid price");
+        // If 1 or more rows were updated, then notify all listeners that the data at the
+        // given URI has changed
+        if (rowsUpdated != 0) {
+            // The update of a single product only changed its row, any other may change them all
+            evictCachedProduct(sUriMatcher.match(uri) == PRODUCT_ID ? ContentUris.parseId(uri) : -1);
+            notifyChange(uri);
+            // The products may not use their previous images anymore
+            if (values.containsKey(ProductEntry.COLUMN_PRODUCT_IMAGE)) {
+                collectImageGarbage();
             }
         }
 
-        // If the {@link ProductEntry#COLUMN_PRODUCT_QUANTITY} key is present,
-        // check that the quantity value is valid.
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_QUANTITY)) {
-            // Check that the quantity is greater than or equal to 0
-            Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
-            if (quantity != null && quantity < 0) {
-                throw new IllegalArgumentException("Product requires valid quantity");
+        // Return the number of rows updated
+        return rowsUpdated;
+    }
+
+    /**
+     * Append a correction to the stock ledger for every selected product whose quantity differs
+     * from the given one. Must be called inside the transaction of the update.
+     */
+    private static void recordQuantityCorrections(SQLiteDatabase database, Long quantity,
+                                                  String selection, String[] selectionArgs) {
+        if (quantity == null) {
+            // A null quantity is rejected by the table, which rolls back the transaction
+            return;
+        }
+        long time = System.currentTimeMillis();
+        Cursor cursor = database.query(ProductEntry.TABLE_NAME,
+                new String[]{ProductEntry._ID, ProductEntry.COLUMN_PRODUCT_QUANTITY},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long oldQuantity = cursor.getLong(1);
+                if (oldQuantity != quantity) {
+                    StockLedger.recordMovement(database, cursor.getLong(0),
+                            StockMovementEntry.TYPE_CORRECTION, quantity - oldQuantity, quantity, time);
+                }
             }
+        } finally {
+            cursor.close();
         }
+    }
 
-        // If the {@link ProductEntry#COLUMN_PRODUCT_SUPPLIER} key is present,
-        // check that the supplier value is not null.
-        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_SUPPLIER)) {
-            String supplier = values.getAsString(ProductEntry.COLUMN_PRODUCT_SUPPLIER);
-            if (supplier == null) {
-                throw new IllegalArgumentException("Product requires valid supplier");
-            }
+    /**
+     * Adjust the quantity of the product given by an adjust URI by the
+     * {@link ProductEntry#KEY_QUANTITY_DELTA} in the given content values.
+     * Return the resulting quantity, or -1 if the product doesn't exist.
+     */
+    private long adjustQuantity(Uri uri, ContentValues values) {
+        // Check that the delta is present
+        Integer delta = values.getAsInteger(ProductEntry.KEY_QUANTITY_DELTA);
+        if (delta == null || values.size() != 1) {
+            throw new IllegalArgumentException("Quantity adjustment requires only a delta");
         }
+        return adjustQuantity(uri, delta);
+    }
+
+    /**
+     * Adjust the quantity of the product given by an adjust URI by a signed delta, clamping the
+     * result at 0. The change is applied by the database in a single statement, so concurrent
+     * adjustments can't overwrite each other. The quantities before and after it are read in the
+     * same transaction, and the change is appended to the stock ledger as a sale or a shipment.
+     * Return the resulting quantity, or -1 if the product doesn't exist.
+     */
+    private long adjustQuantity(Uri uri, int delta) {
+        long id = getProductId(uri);
 
-        // Update the selected products in the products database table with the given ContentValues
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(ProductEntry.TABLE_NAME, values, selection, selectionArgs);
+        int rowsUpdated = 0;
+        long quantity;
+        database.beginTransaction();
+        try {
+            SQLiteStatement select = database.compileStatement(SQL_SELECT_QUANTITY);
+            try {
+                long oldQuantity = queryQuantity(select, id);
+                if (oldQuantity != -1) {
+                    SQLiteStatement update = database.compileStatement(SQL_ADJUST_QUANTITY);
+                    try {
+                        update.bindLong(1, delta);
+                        update.bindLong(2, id);
+                        rowsUpdated = update.executeUpdateDelete();
+                    } finally {
+                        update.close();
+                    }
+                }
 
-        // If 1 or more rows were updated, then notify all listeners that the data at the
-        // given URI has changed
+                // Read back the resulting quantity inside the same transaction
+                quantity = rowsUpdated == 0 ? oldQuantity : queryQuantity(select, id);
+                if (rowsUpdated != 0) {
+                    StockLedger.recordMovement(database, id, delta < 0
+                                    ? StockMovementEntry.TYPE_SALE : StockMovementEntry.TYPE_SHIPMENT,
+                            quantity - oldQuantity, quantity, System.currentTimeMillis());
+                }
+            } finally {
+                select.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // If the quantity changed, then notify all listeners that the product has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            evictCachedProduct(id);
+            notifyChange(ContentUris.withAppendedId(ProductEntry.CONTENT_URI, id));
         }
 
-        // Return the number of rows updated
-        return rowsUpdated;
+        return quantity;
+    }
+
+    /**
+     * Returns the quantity of the given product read with {@link #SQL_SELECT_QUANTITY}, or -1 if
+     * the product doesn't exist.
+     */
+    private static long queryQuantity(SQLiteStatement select, long id) {
+        select.bindLong(1, id);
+        try {
+            return select.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            // No row was returned, so there is no product with this ID
+            return -1;
+        }
+    }
+
+    /**
+     * Call a provider-defined method. Supports {@link ProductContract#METHOD_ADJUST_QUANTITY},
+     * which returns the resulting quantity under {@link ProductEntry#COLUMN_PRODUCT_QUANTITY},
+     * or null if the product doesn't exist, {@link ProductContract#METHOD_CHECK_SUMMARY}, and the
+     * purchase order methods {@link ProductContract#METHOD_CREATE_PURCHASE_ORDERS} and
+     * {@link ProductContract#METHOD_RECEIVE_PURCHASE_ORDER}, and the snapshot methods
+     * {@link ProductContract#METHOD_BACKUP_SNAPSHOT} and
+     * {@link ProductContract#METHOD_RESTORE_SNAPSHOT}, which return null if they fail.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (ProductContract.METHOD_ADJUST_QUANTITY.equals(method)) {
+            noteWrite("call");
+            long startNanos = System.nanoTime();
+            Uri uri = Uri.parse(arg);
+            if (sUriMatcher.match(uri) != PRODUCT_ADJUST) {
+                throw new IllegalArgumentException("Quantity adjustment is not supported for " + uri);
+            }
+            if (extras == null || !extras.containsKey(ProductEntry.KEY_QUANTITY_DELTA)) {
+                throw new IllegalArgumentException("Quantity adjustment requires a delta");
+            }
+            long quantity = adjustQuantity(uri, extras.getInt(ProductEntry.KEY_QUANTITY_DELTA));
+            mMetrics.record(PRODUCT_ADJUST, ProductMetrics.UPDATE, quantity == -1 ? 0 : 1,
+                    startNanos);
+            if (quantity == -1) {
+                return null;
+            }
+            Bundle result = new Bundle();
+            result.putLong(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+            return result;
+        }
+        if (ProductContract.METHOD_CHECK_SUMMARY.equals(method)) {
+            noteWrite("call");
+            Bundle result = new Bundle();
+            result.putBoolean(SummaryEntry.KEY_CONSISTENT, checkSummary());
+            return result;
+        }
+        if (ProductContract.METHOD_CREATE_PURCHASE_ORDERS.equals(method)) {
+            noteWrite("call");
+            Bundle result = new Bundle();
+            result.putLongArray(PurchaseOrderEntry.KEY_ORDER_IDS, createPurchaseOrders());
+            return result;
+        }
+        if (ProductContract.METHOD_RECEIVE_PURCHASE_ORDER.equals(method)) {
+            noteWrite("call");
+            Uri uri = Uri.parse(arg);
+            if (sUriMatcher.match(uri) != PURCHASE_ORDER_ID) {
+                throw new IllegalArgumentException("Receiving is not supported for " + uri);
+            }
+            int receivedItems = receivePurchaseOrder(ContentUris.parseId(uri));
+            if (receivedItems == -1) {
+                return null;
+            }
+            Bundle result = new Bundle();
+            result.putInt(PurchaseOrderEntry.KEY_RECEIVED_ITEMS, receivedItems);
+            return result;
+        }
+        if (ProductContract.METHOD_BACKUP_SNAPSHOT.equals(method)) {
+            noteWrite("call");
+            try {
+                ProductSnapshot.Result snapshot = ProductSnapshot.backup(
+                        mDbHelper.getWritableDatabase(), new File(arg),
+                        getContext().getCacheDir());
+                return createSnapshotResult(snapshot);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to back up into " + arg, e);
+                return null;
+            } catch (RuntimeException e) {
+                // Database errors are reported like file errors, instead of crashing the
+                // background thread the caller backs up on
+                Log.e(LOG_TAG, "Failed to back up into " + arg, e);
+                return null;
+            }
+        }
+        if (ProductContract.METHOD_RESTORE_SNAPSHOT.equals(method)) {
+            noteWrite("call");
+            ProductSnapshot.Result snapshot;
+            try {
+                snapshot = ProductSnapshot.restore(mDbHelper.getWritableDatabase(), new File(arg));
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Failed to restore " + arg, e);
+                return null;
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Failed to restore " + arg, e);
+                return null;
+            }
+            // Everything may have changed, and images may no longer be referenced
+            evictCachedProduct(-1);
+            notifyChange(ProductEntry.CONTENT_URI);
+            notifyChange(PurchaseOrderEntry.CONTENT_URI);
+            collectImageGarbage();
+            return createSnapshotResult(snapshot);
+        }
+        if (ProductContract.METHOD_RESET_METRICS.equals(method)) {
+            mMetrics.reset();
+            mRowCache.resetCounts();
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    private static Bundle createSnapshotResult(ProductSnapshot.Result snapshot) {
+        Bundle result = new Bundle();
+        result.putLong(ProductContract.KEY_SNAPSHOT_ROWS, snapshot.rows);
+        result.putLong(ProductContract.KEY_SNAPSHOT_BYTES, snapshot.bytes);
+        return result;
+    }
+
+    /**
+     * Create one purchase order per supplier for every product below its reorder point that isn't
+     * on an open purchase order yet. The products are found and ordered by two set-based
+     * statements in one transaction, however many products and suppliers there are. Return the
+     * IDs of the new purchase orders, in order of supplier.
+     */
+    private long[] createPurchaseOrders() {
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        long[] orderIds;
+        database.beginTransaction();
+        try {
+            long lastOrderId = DatabaseUtils.longForQuery(database, SQL_SELECT_LAST_PURCHASE_ORDER, null);
+
+            SQLiteStatement createOrders = database.compileStatement(SQL_CREATE_PURCHASE_ORDERS);
+            try {
+                createOrders.bindLong(1, System.currentTimeMillis());
+                createOrders.executeInsert();
+            } finally {
+                createOrders.close();
+            }
+
+            // The new orders are the only ones after the last order, and have no items yet
+            SQLiteStatement createItems = database.compileStatement(SQL_CREATE_PURCHASE_ORDER_ITEMS);
+            try {
+                createItems.bindLong(1, lastOrderId);
+                createItems.executeInsert();
+            } finally {
+                createItems.close();
+            }
+
+            Cursor cursor = database.query(PurchaseOrderEntry.TABLE_NAME,
+                    new String[]{PurchaseOrderEntry._ID}, PurchaseOrderEntry._ID + " > ?",
+                    new String[]{String.valueOf(lastOrderId)}, null, null, PurchaseOrderEntry._ID);
+            try {
+                orderIds = new long[cursor.getCount()];
+                for (int i = 0; cursor.moveToNext(); i++) {
+                    orderIds[i] = cursor.getLong(0);
+                }
+            } finally {
+                cursor.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (orderIds.length != 0) {
+            notifyChange(PurchaseOrderEntry.CONTENT_URI);
+        }
+        return orderIds;
+    }
+
+    /**
+     * Receive the open purchase order with the given ID. In one transaction, the ordered quantity
+     * of every item is added to its product and recorded in the stock ledger as a shipment, and
+     * the order is marked as received, so the stock never shows half of a delivery. Items whose
+     * product was deleted since are skipped. Return the number of items received, or -1 if the
+     * order doesn't exist or was already received.
+     */
+    private int receivePurchaseOrder(long orderId) {
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        List<Long> productIds = new ArrayList<Long>();
+        long time = System.currentTimeMillis();
+        database.beginTransaction();
+        try {
+            long status;
+            SQLiteStatement select = database.compileStatement(SQL_SELECT_PURCHASE_ORDER_STATUS);
+            try {
+                select.bindLong(1, orderId);
+                status = select.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                // No row was returned, so there is no purchase order with this ID
+                return -1;
+            } finally {
+                select.close();
+            }
+            if (status != PurchaseOrderEntry.STATUS_OPEN) {
+                return -1;
+            }
+
+            Cursor cursor = database.rawQuery(SQL_SELECT_RECEIVABLE_ITEMS,
+                    new String[]{String.valueOf(orderId)});
+            SQLiteStatement update = database.compileStatement(SQL_SET_QUANTITY);
+            try {
+                while (cursor.moveToNext()) {
+                    long productId = cursor.getLong(0);
+                    long delta = cursor.getLong(1);
+                    long quantity = cursor.getLong(2) + delta;
+                    update.bindLong(1, quantity);
+                    update.bindLong(2, productId);
+                    update.executeUpdateDelete();
+                    StockLedger.recordMovement(database, productId, StockMovementEntry.TYPE_SHIPMENT,
+                            delta, quantity, time);
+                    productIds.add(productId);
+                }
+            } finally {
+                update.close();
+                cursor.close();
+            }
+
+            SQLiteStatement markReceived = database.compileStatement(SQL_MARK_PURCHASE_ORDER_RECEIVED);
+            try {
+                markReceived.bindLong(1, time);
+                markReceived.bindLong(2, orderId);
+                markReceived.executeUpdateDelete();
+            } finally {
+                markReceived.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        for (long productId : productIds) {
+            evictCachedProduct(productId);
+        }
+        notifyChange(PurchaseOrderEntry.CONTENT_URI);
+        if (!productIds.isEmpty()) {
+            notifyChange(ProductEntry.CONTENT_URI);
+        }
+        return productIds.size();
+    }
+
+    /**
+     * Compare the summary against a full recompute from the products table, and rebuild it if
+     * they differ. Returns whether the summary was consistent.
+     */
+    private boolean checkSummary() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        boolean consistent;
+        database.beginTransaction();
+        try {
+            consistent = ProductDbHelper.isSummaryConsistent(database);
+            if (!consistent) {
+                Log.w(LOG_TAG, "Inventory summary doesn't match the products, rebuilding it");
+                ProductDbHelper.rebuildSummary(database);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        if (!consistent) {
+            notifyChange(SummaryEntry.CONTENT_URI);
+        }
+        return consistent;
     }
 
     /**
@@ -251,6 +1368,9 @@ public class ProductProvider extends ContentProvider {
      */
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        noteWrite("delete");
+        long startNanos = System.nanoTime();
+
         // Track the number of rows that were deleted
         int rowsDeleted;
 
@@ -272,16 +1392,115 @@ public class ProductProvider extends ContentProvider {
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
+        mMetrics.record(match, ProductMetrics.DELETE, rowsDeleted, startNanos);
 
-        // If 1 or more rows were deleted, then notify all listeners that the data at the
-        // given URI has changed
+        // If 1 or more rows were deleted, then notify all listeners that the list of products
+        // has changed. This also reaches listeners of the deleted rows' URIs.
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            evictCachedProduct(match == PRODUCT_ID ? ContentUris.parseId(uri) : -1);
+            notifyChange(ProductEntry.CONTENT_URI);
+            // Delete the images only the deleted products used
+            collectImageGarbage();
         }
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Apply a batch of operations inside a database transaction, and notify listeners once per
+     * changed URI after the commit instead of once per operation. Operations marked with
+     * {@link ContentProviderOperation.Builder#withYieldAllowed(boolean)} let other threads use the
+     * database before them, which keeps long batches from starving the catalog loader.
+     * <p/>
+     * A yield commits the operations before it, so yields split the batch into separate commits.
+     * If an operation fails, only the operations since the last yield are rolled back, and the
+     * changes committed before it are still notified. A batch without yield points is committed
+     * completely or not at all.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        noteWrite("applyBatch");
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        Set<Uri> pendingNotifications = new LinkedHashSet<Uri>();
+        mPendingNotifications.set(pendingNotifications);
+        // URIs changed by the operations committed so far
+        Set<Uri> committedNotifications = new LinkedHashSet<Uri>();
+        Set<Long> pendingEvictions = new HashSet<Long>();
+        mPendingEvictions.set(pendingEvictions);
+
+        ContentProviderResult[] results;
+        database.beginTransaction();
+        try {
+            final int numOperations = operations.size();
+            results = new ContentProviderResult[numOperations];
+            for (int i = 0; i < numOperations; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                // Give other connections a chance to run at the yield points the caller allowed.
+                // Yielding commits the operations before it, so their cached rows are stale now.
+                if (i > 0 && operation.isYieldAllowed() && yieldIfContended(database)) {
+                    removeCachedProducts(pendingEvictions);
+                    committedNotifications.addAll(pendingNotifications);
+                    pendingNotifications.clear();
+                }
+                // Earlier results are passed in so back-references can be resolved
+                results[i] = operation.apply(this, results, i);
+            }
+            database.setTransactionSuccessful();
+            committedNotifications.addAll(pendingNotifications);
+        } finally {
+            database.endTransaction();
+            mPendingNotifications.remove();
+            mPendingEvictions.remove();
+            // Drop the cached rows changed since the last yield. If the batch failed they were
+            // rolled back, but removing a row that is still current costs just one more read.
+            removeCachedProducts(pendingEvictions);
+
+            // Send the notifications of the committed operations, which are only the ones
+            // before the last yield if the batch failed
+            for (Uri uri : committedNotifications) {
+                sendNotification(uri);
+            }
+            if (!committedNotifications.isEmpty()) {
+                // Images may have been released by the batch, which wasn't committed before
+                collectImageGarbage();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Report a write made on the main thread to {@link StrictMode}. The thread policy can't see the
+     * disk I/O SQLite does in native code, so writes are reported as custom slow calls instead,
+     * which a {@link StrictMode.ThreadPolicy} with
+     * {@link StrictMode.ThreadPolicy.Builder#detectCustomSlowCalls()} turns into a log or a crash.
+     * Writes belong on {@link ProductWriter}.
+     */
+    private static void noteWrite(String operation) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            StrictMode.noteSlowCall("ProductProvider." + operation + " on the main thread");
+        }
+    }
+
+    /**
+     * Print the metrics of the provider, for
+     * {@code adb shell dumpsys activity provider ProductProvider}. With the
+     * argument --reset the metrics are set back to 0 after they are printed. Before Jelly Bean
+     * MR2 the metrics can only be read through {@link MetricsEntry#CONTENT_URI}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mMetrics.dump(writer);
+        mRowCache.dump(writer);
+        if (args != null && Arrays.asList(args).contains("--reset")) {
+            mMetrics.reset();
+            mRowCache.resetCounts();
+            writer.println("Metrics reset");
+        }
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
@@ -293,8 +1512,182 @@ public class ProductProvider extends ContentProvider {
                 return ProductEntry.CONTENT_LIST_TYPE;
             case PRODUCT_ID:
                 return ProductEntry.CONTENT_ITEM_TYPE;
+            case PRODUCT_SEARCH:
+                return ProductEntry.CONTENT_LIST_TYPE;
+            case IMAGE:
+                return ProductContract.IMAGE_TYPE;
+            case PRODUCT_MOVEMENTS:
+                return StockMovementEntry.CONTENT_LIST_TYPE;
+            case PRODUCT_STOCK:
+                return StockMovementEntry.CONTENT_STOCK_TYPE;
+            case SUMMARY:
+                return SummaryEntry.CONTENT_ITEM_TYPE;
+            case PURCHASE_ORDERS:
+                return PurchaseOrderEntry.CONTENT_LIST_TYPE;
+            case PURCHASE_ORDER_ID:
+                return PurchaseOrderEntry.CONTENT_ITEM_TYPE;
+            case PURCHASE_ORDER_ITEMS:
+                return PurchaseOrderItemEntry.CONTENT_LIST_TYPE;
+            case EXPORT:
+                return getExportType(uri);
+            case METRICS:
+                return MetricsEntry.CONTENT_LIST_TYPE;
             default:
                 throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the MIME types a stream of the content URI can be opened as, for
+     * {@link android.content.ContentResolver#openTypedAssetFileDescriptor}. Each export has one.
+     */
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        if (sUriMatcher.match(uri) != EXPORT) {
+            return super.getStreamTypes(uri, mimeTypeFilter);
+        }
+        String type = getExportType(uri);
+        if (ClipDescription.compareMimeTypes(type, mimeTypeFilter)) {
+            return new String[]{type};
+        }
+        return null;
+    }
+
+    /**
+     * Returns the MIME type of the format of the given export URI.
+     */
+    private static String getExportType(Uri uri) {
+        String format = uri.getLastPathSegment();
+        if (ProductContract.EXPORT_FORMAT_CSV.equals(format)) {
+            return ProductContract.EXPORT_CSV_TYPE;
+        } else if (ProductContract.EXPORT_FORMAT_JSON.equals(format)) {
+            return ProductContract.EXPORT_JSON_TYPE;
+        }
+        throw new IllegalArgumentException("Unknown export format " + format);
+    }
+
+    /**
+     * Open a stored product image or an export of all products for reading. The descriptor of
+     * an image refers to the stored file itself, so nothing is copied. The descriptor of an
+     * export is the read end of a pipe, which the export is written to on a background thread
+     * while it is being read, so it is never stored as a whole.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        final int match = sUriMatcher.match(uri);
+        if (match != IMAGE && match != EXPORT) {
+            throw new IllegalArgumentException("Opening files is not supported for " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new IllegalArgumentException("Can only read " + uri + ", not open it in mode "
+                    + mode);
+        }
+        if (match == EXPORT) {
+            return openPipeHelper(uri, getExportType(uri), null, mDbHelper.getReadableDatabase(),
+                    mExporter);
+        }
+        File file = mImageStore.getFile(uri);
+        if (file == null || !file.exists()) {
+            throw new FileNotFoundException("No stored image for " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    /**
+     * Delete the stored images no product refers to anymore, on a background thread. Inside a
+     * batch this waits until the batch commits, as the released images are only known then.
+     */
+    private void collectImageGarbage() {
+        if (mPendingNotifications.get() != null) {
+            return;
+        }
+        mImageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Set<String> referencedNames = new HashSet<String>();
+                SQLiteDatabase database = mDbHelper.getReadableDatabase();
+                Cursor cursor = database.query(true, ProductEntry.TABLE_NAME,
+                        new String[]{ProductEntry.COLUMN_PRODUCT_IMAGE},
+                        ProductEntry.COLUMN_PRODUCT_IMAGE + " LIKE ?",
+                        new String[]{ProductContract.IMAGES_URI + "/%"}, null, null, null, null);
+                try {
+                    while (cursor.moveToNext()) {
+                        referencedNames.add(Uri.parse(cursor.getString(0)).getLastPathSegment());
+                    }
+                } finally {
+                    cursor.close();
+                }
+                mImageStore.collectGarbage(referencedNames, System.currentTimeMillis());
+            }
+        });
+    }
+
+    /**
+     * Let other connections use the database at a yield point of a batch. Returns whether the
+     * transaction was committed and a new one begun to do so, which only happens when another
+     * connection is waiting.
+     */
+    boolean yieldIfContended(SQLiteDatabase database) {
+        return database.yieldIfContendedSafely();
+    }
+
+    /**
+     * Remove the cached row of the product with the given ID, or all cached rows if the ID is -1.
+     * Call after the change is committed. Inside a batch the rows are removed once the change is
+     * committed, at a yield point or at the end of the batch, as a reader could cache the old
+     * row again until then.
+     */
+    private void evictCachedProduct(long id) {
+        Set<Long> pendingEvictions = mPendingEvictions.get();
+        if (pendingEvictions != null) {
+            pendingEvictions.add(id);
+        } else if (id == -1) {
+            mRowCache.clear();
+        } else {
+            mRowCache.remove(id);
+        }
+    }
+
+    /**
+     * Remove the cached rows of the products with the given IDs, or all of them if one is -1,
+     * and forget the IDs.
+     */
+    private void removeCachedProducts(Set<Long> ids) {
+        if (ids.contains(-1L)) {
+            mRowCache.clear();
+        } else {
+            for (long id : ids) {
+                mRowCache.remove(id);
+            }
+        }
+        ids.clear();
+    }
+
+    /**
+     * Notify all listeners that the data at the given URI has changed. Inside a batch the
+     * notification is deferred until the batch commits.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> pendingNotifications = mPendingNotifications.get();
+        if (pendingNotifications != null) {
+            pendingNotifications.add(uri);
+        } else {
+            sendNotification(uri);
+        }
+        // The summary follows every change to the products. It isn't below their URI, so the
+        // catalog doesn't reload all of its pages when only a single product changed.
+        if (ProductEntry.CONTENT_URI.equals(uri) || ProductEntry.getChangedProductId(uri) != -1) {
+            notifyChange(SummaryEntry.CONTENT_URI);
+        }
+    }
+
+    /**
+     * Notify the content resolver that the data at the given URI has changed, and record how
+     * long that took in the metrics.
+     */
+    private void sendNotification(Uri uri) {
+        long startNanos = System.nanoTime();
+        getContext().getContentResolver().notifyChange(uri, null);
+        mMetrics.record(sUriMatcher.match(uri), ProductMetrics.NOTIFY, 0, startNanos);
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The most recently read rows of the products table, kept by {@link ProductProvider} so the
+ * editor and other single product lookups are answered without going to the database.
+ * <p/>
+ * A row read from the database is only kept if nothing was removed from the cache while it was
+ * read. Every write removes the rows it changed after it commits, so a reader that read a row
+ * before the commit can't put it back afterwards: the removal moves the generation on, and the
+ * row is dropped instead of cached.
+ * <p/>
+ * A cache with a size of 0 is disabled: it never returns or keeps a row.
+ */
+final class ProductRowCache {
+
+    /**
+     * Columns of a cached row, in the order of the products table
+     */
+    static final String[] COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+            ProductEntry.COLUMN_PRODUCT_IMAGE,
+            ProductEntry.COLUMN_PRODUCT_REORDER_POINT
+    };
+
+    /**
+     * Rows by product ID, or null if the cache is disabled
+     */
+    private final LruCache<Long, Object[]> mRows;
+
+    /**
+     * Number of removals so far, guarded by the cache itself
+     */
+    private long mGeneration;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * Constructs a new {@link ProductRowCache} that keeps up to the given number of rows.
+     */
+    ProductRowCache(int maxRows) {
+        if (maxRows < 0) {
+            throw new IllegalArgumentException("Invalid row cache size " + maxRows);
+        }
+        mRows = maxRows == 0 ? null : new LruCache<Long, Object[]>(maxRows);
+    }
+
+    boolean isEnabled() {
+        return mRows != null;
+    }
+
+    /**
+     * Return the generation to pass to {@link #put(long, Object[], long)}. Take it before the
+     * row is read from the database.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Return the cached row of the product with the given ID, or null if it isn't cached. The
+     * values are in the order of {@link #COLUMNS} and must not be changed.
+     */
+    Object[] get(long id) {
+        if (mRows == null) {
+            return null;
+        }
+        Object[] row;
+        synchronized (this) {
+            row = mRows.get(id);
+        }
+        if (row == null) {
+            mMisses.incrementAndGet();
+        } else {
+            mHits.incrementAndGet();
+        }
+        return row;
+    }
+
+    /**
+     * Keep the row of a product, unless something was removed since the given generation was
+     * taken.
+     */
+    synchronized void put(long id, Object[] row, long generation) {
+        if (mRows != null && generation == mGeneration) {
+            mRows.put(id, row);
+        }
+    }
+
+    /**
+     * Remove the row of the product with the given ID. Call after the change is committed.
+     */
+    synchronized void remove(long id) {
+        mGeneration++;
+        if (mRows != null) {
+            mRows.remove(id);
+        }
+    }
+
+    /**
+     * Remove all rows, for writes that may have changed any product. Call after the change is
+     * committed.
+     */
+    synchronized void clear() {
+        mGeneration++;
+        if (mRows != null) {
+            mRows.evictAll();
+        }
+    }
+
+    long getHitCount() {
+        return mHits.get();
+    }
+
+    long getMissCount() {
+        return mMisses.get();
+    }
+
+    /**
+     * Set the hit and miss counts back to 0.
+     */
+    void resetCounts() {
+        mHits.set(0);
+        mMisses.set(0);
+    }
+
+    /**
+     * Print the size of the cache and how often it was hit.
+     */
+    void dump(PrintWriter writer) {
+        if (mRows == null) {
+            writer.println("Product row cache disabled");
+            return;
+        }
+        long hits = mHits.get();
+        long misses = mMisses.get();
+        int size;
+        synchronized (this) {
+            size = mRows.size();
+        }
+        writer.println(String.format(Locale.US,
+                "Product row cache: %d of %d rows, %d hits, %d misses (%d%% hits)",
+                size, mRows.maxSize(), hits, misses,
+                hits + misses == 0 ? 0 : hits * 100 / (hits + misses)));
+    }
+
+    /**
+     * Read the current row of a cursor of all {@link #COLUMNS}, in their order.
+     */
+    static Object[] readRow(Cursor cursor) {
+        Object[] row = new Object[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    row[i] = null;
+                    break;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Return the column indexes of a row for the given projection, or of all columns if it is
+     * null. Return null if the projection asks for anything else than a column, such as an
+     * expression, which only the database can answer.
+     */
+    static int[] getColumnIndexes(String[] projection) {
+        if (projection == null) {
+            projection = COLUMNS;
+        }
+        int[] columnIndexes = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnIndexes[i] = -1;
+            for (int j = 0; j < COLUMNS.length; j++) {
+                if (COLUMNS[j].equals(projection[i])) {
+                    columnIndexes[i] = j;
+                    break;
+                }
+            }
+            if (columnIndexes[i] == -1) {
+                return null;
+            }
+        }
+        return columnIndexes;
+    }
+
+    /**
+     * Return a cursor with the given columns of a row, or no rows if the row is null.
+     */
+    static Cursor toCursor(Object[] row, String[] projection, int[] columnIndexes) {
+        MatrixCursor cursor = new MatrixCursor(projection == null ? COLUMNS : projection, 1);
+        if (row != null) {
+            MatrixCursor.RowBuilder builder = cursor.newRow();
+            for (int columnIndex : columnIndexes) {
+                builder.add(row[columnIndex]);
+            }
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,499 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderEntry;
+import com.example.android.inventory.data.ProductContract.PurchaseOrderItemEntry;
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Backs up the inventory database into a compact binary snapshot file, and restores it from one.
+ * <p/>
+ * Backing up never reads the live database row by row. It takes the write lock only to copy the
+ * database files, which are consistent as long as no transaction can commit, and serializes the
+ * copy afterwards while writers carry on. Restoring maps the snapshot into memory, checks it and
+ * loads it in one transaction, so the database holds either the whole snapshot or what it held
+ * before.
+ * <p/>
+ * The snapshot holds every table whose contents can't be derived from other tables: the
+ * products, the stock ledger and the purchase orders. The search table and the summary are
+ * kept up by their triggers while the products are loaded. The file consists of:
+ * <ul>
+ * <li>the {@link #MAGIC} bytes, the database version as an int and the backup time as a long,</li>
+ * <li>for each table: its name, its number of columns and their names, then each row as a
+ * {@link #ROW} byte followed by one tagged value per column, and an {@link #END_OF_TABLE}
+ * byte,</li>
+ * <li>the CRC-32 of everything before it, as an int.</li>
+ * </ul>
+ * Integers and lengths are written as variable-length integers, so small values take a single
+ * byte, and text is written as UTF-8.
+ */
+final class ProductSnapshot {
+
+    /**
+     * First bytes of every snapshot file: a name and the version of the format
+     */
+    private static final byte[] MAGIC = {'I', 'N', 'V', 'S', 'N', 'A', 'P', 1};
+
+    /**
+     * Markers of the rows of a table
+     */
+    private static final int ROW = 1;
+    private static final int END_OF_TABLE = 0;
+
+    /**
+     * Tags of the values of a row
+     */
+    private static final int VALUE_NULL = 0;
+    private static final int VALUE_INTEGER = 1;
+    private static final int VALUE_FLOAT = 2;
+    private static final int VALUE_TEXT = 3;
+    private static final int VALUE_BLOB = 4;
+
+    /**
+     * Tables in a snapshot, in the order they are written and loaded
+     */
+    static final String[] TABLES = {
+            ProductEntry.TABLE_NAME,
+            StockMovementEntry.TABLE_NAME,
+            ProductDbHelper.TABLE_STOCK_SNAPSHOTS,
+            PurchaseOrderEntry.TABLE_NAME,
+            PurchaseOrderItemEntry.TABLE_NAME
+    };
+
+    /**
+     * Number of rows of the database copy read by one query
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * Size of the buffers the files are written and checked through, in bytes
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Names a snapshot may use for a column, so they can be put into SQL as they are
+     */
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Outcome of a backup or a restore.
+     */
+    static final class Result {
+
+        /**
+         * Number of rows in the snapshot
+         */
+        final long rows;
+
+        /**
+         * Size of the snapshot file, in bytes
+         */
+        final long bytes;
+
+        /**
+         * Time writers were kept waiting, in milliseconds. For a backup this is the time taken
+         * to copy the database files; for a restore it is the whole load.
+         */
+        final long lockMillis;
+
+        Result(long rows, long bytes, long lockMillis) {
+            this.rows = rows;
+            this.bytes = bytes;
+            this.lockMillis = lockMillis;
+        }
+    }
+
+    private ProductSnapshot() {
+    }
+
+    /**
+     * Write a snapshot of the given database to a file. The file is replaced only once the
+     * snapshot is complete.
+     *
+     * @param database     the database to back up
+     * @param snapshotFile the file to write the snapshot to
+     * @param workDir      directory to hold the temporary copy of the database in
+     * @throws IOException if a file can't be written
+     */
+    static Result backup(SQLiteDatabase database, File snapshotFile, File workDir)
+            throws IOException {
+        File copyFile = new File(workDir, "snapshot_copy.db");
+        deleteDatabaseFiles(copyFile);
+
+        // While this connection holds the write lock no transaction can commit, so neither the
+        // database file nor the write-ahead log changes. Readers carry on as usual.
+        long lockStart = SystemClock.elapsedRealtime();
+        database.beginTransactionNonExclusive();
+        try {
+            copyFile(new File(database.getPath()), copyFile);
+            File walFile = new File(database.getPath() + "-wal");
+            if (walFile.exists()) {
+                copyFile(walFile, new File(copyFile.getPath() + "-wal"));
+            }
+        } finally {
+            database.endTransaction();
+        }
+        long lockMillis = SystemClock.elapsedRealtime() - lockStart;
+
+        File tempFile = new File(snapshotFile.getPath() + ".tmp");
+        SQLiteDatabase copy = SQLiteDatabase.openDatabase(copyFile.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        long rows = 0;
+        try {
+            FileOutputStream fileOut = new FileOutputStream(tempFile);
+            try {
+                CRC32 crc = new CRC32();
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new CheckedOutputStream(fileOut, crc), BUFFER_SIZE));
+                out.write(MAGIC);
+                out.writeInt(copy.getVersion());
+                out.writeLong(System.currentTimeMillis());
+                writeVarLong(out, TABLES.length);
+                for (String table : TABLES) {
+                    rows += writeTable(copy, table, out);
+                }
+                out.flush();
+                // The checksum covers everything written so far, but not itself
+                new DataOutputStream(fileOut).writeInt((int) crc.getValue());
+                fileOut.getFD().sync();
+            } finally {
+                fileOut.close();
+            }
+        } finally {
+            copy.close();
+            deleteDatabaseFiles(copyFile);
+        }
+
+        if (!tempFile.renameTo(snapshotFile)) {
+            tempFile.delete();
+            throw new IOException("Can't replace " + snapshotFile);
+        }
+        return new Result(rows, snapshotFile.length(), lockMillis);
+    }
+
+    /**
+     * Replace the contents of the snapshot tables of the given database with the snapshot in
+     * a file, in one transaction.
+     *
+     * @throws IOException if the file can't be read, is corrupt or comes from another database
+     *                     version
+     */
+    static Result restore(SQLiteDatabase database, File snapshotFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            if (size < MAGIC.length + 4 + 8 + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException(snapshotFile + " is not a snapshot");
+            }
+            // The file is read straight from the page cache, without copying it into the heap
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            checkCrc(buffer, (int) size - 4);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException(snapshotFile + " is not a snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != database.getVersion()) {
+                throw new IOException("Snapshot of database version " + version
+                        + " can't be restored into version " + database.getVersion());
+            }
+            // Skip the backup time
+            buffer.getLong();
+
+            long lockStart = SystemClock.elapsedRealtime();
+            long rows = 0;
+            database.beginTransaction();
+            try {
+                // The stock ledger is append-only, except for being replaced as a whole here
+                ProductDbHelper.dropLedgerTriggers(database);
+                for (String table : TABLES) {
+                    database.delete(table, null, null);
+                }
+                int tableCount = (int) readVarLong(buffer);
+                byte[] bytes = new byte[256];
+                for (int i = 0; i < tableCount; i++) {
+                    rows += loadTable(database, buffer, bytes);
+                }
+                if (buffer.position() != size - 4) {
+                    throw new IOException(snapshotFile + " has unexpected data at its end");
+                }
+                ProductDbHelper.createLedgerTriggers(database);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            return new Result(rows, size, SystemClock.elapsedRealtime() - lockStart);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(snapshotFile + " is truncated");
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Write the name, the columns and the rows of a table of the database copy. The rows are
+     * read in pages in order of _id, so each query reads only the rows it returns. Returns the
+     * number of rows written.
+     */
+    private static long writeTable(SQLiteDatabase copy, String table, DataOutputStream out)
+            throws IOException {
+        String sql = "SELECT * FROM " + table + " WHERE " + BaseColumns._ID + " > ?"
+                + " ORDER BY " + BaseColumns._ID + " LIMIT " + PAGE_SIZE;
+        writeString(out, table);
+
+        long rows = 0;
+        long lastId = Long.MIN_VALUE;
+        boolean header = true;
+        int pageRows;
+        do {
+            Cursor cursor = copy.rawQuery(sql, new String[]{String.valueOf(lastId)});
+            try {
+                pageRows = cursor.getCount();
+                int columnCount = cursor.getColumnCount();
+                if (header) {
+                    writeVarLong(out, columnCount);
+                    for (int i = 0; i < columnCount; i++) {
+                        writeString(out, cursor.getColumnName(i));
+                    }
+                    header = false;
+                }
+                int idColumn = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+                while (cursor.moveToNext()) {
+                    out.write(ROW);
+                    for (int i = 0; i < columnCount; i++) {
+                        writeValue(out, cursor, i);
+                    }
+                    lastId = cursor.getLong(idColumn);
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+        } while (pageRows == PAGE_SIZE);
+
+        out.write(END_OF_TABLE);
+        return rows;
+    }
+
+    private static void writeValue(DataOutputStream out, Cursor cursor, int column)
+            throws IOException {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_NULL:
+                out.write(VALUE_NULL);
+                break;
+            case Cursor.FIELD_TYPE_INTEGER:
+                out.write(VALUE_INTEGER);
+                long value = cursor.getLong(column);
+                // Zigzag encoding keeps small negative deltas small too
+                writeVarLong(out, (value << 1) ^ (value >> 63));
+                break;
+            case Cursor.FIELD_TYPE_FLOAT:
+                out.write(VALUE_FLOAT);
+                out.writeDouble(cursor.getDouble(column));
+                break;
+            case Cursor.FIELD_TYPE_STRING:
+                out.write(VALUE_TEXT);
+                writeString(out, cursor.getString(column));
+                break;
+            default:
+                byte[] blob = cursor.getBlob(column);
+                out.write(VALUE_BLOB);
+                writeVarLong(out, blob.length);
+                out.write(blob);
+                break;
+        }
+    }
+
+    /**
+     * Insert the rows of the next table of the snapshot. Returns the number of rows loaded.
+     */
+    private static long loadTable(SQLiteDatabase database, ByteBuffer buffer, byte[] bytes)
+            throws IOException {
+        String table = readString(buffer, bytes);
+        if (!Arrays.asList(TABLES).contains(table)) {
+            throw new IOException("Unknown table " + table + " in snapshot");
+        }
+        int columnCount = (int) readVarLong(buffer);
+        String[] columns = new String[columnCount];
+        String[] placeholders = new String[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = readString(buffer, bytes);
+            if (!COLUMN_NAME.matcher(columns[i]).matches()) {
+                throw new IOException("Invalid column " + columns[i] + " in snapshot");
+            }
+            placeholders[i] = "?";
+        }
+
+        long rows = 0;
+        SQLiteStatement insert = database.compileStatement("INSERT INTO " + table + " ("
+                + TextUtils.join(", ", columns) + ") VALUES ("
+                + TextUtils.join(", ", placeholders) + ")");
+        try {
+            while (buffer.get() == ROW) {
+                insert.clearBindings();
+                for (int i = 1; i <= columnCount; i++) {
+                    bytes = bindValue(insert, i, buffer, bytes);
+                }
+                insert.executeInsert();
+                rows++;
+            }
+        } finally {
+            insert.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Bind the next value of the snapshot. Returns the buffer to decode text with, which grows
+     * to hold the longest text so far.
+     */
+    private static byte[] bindValue(SQLiteStatement insert, int index, ByteBuffer buffer,
+                                    byte[] bytes) throws IOException {
+        int tag = buffer.get();
+        switch (tag) {
+            case VALUE_NULL:
+                insert.bindNull(index);
+                return bytes;
+            case VALUE_INTEGER:
+                long zigzag = readVarLong(buffer);
+                insert.bindLong(index, (zigzag >>> 1) ^ -(zigzag & 1));
+                return bytes;
+            case VALUE_FLOAT:
+                insert.bindDouble(index, buffer.getDouble());
+                return bytes;
+            case VALUE_TEXT:
+                int length = (int) readVarLong(buffer);
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, 2 * bytes.length)];
+                }
+                buffer.get(bytes, 0, length);
+                insert.bindString(index, new String(bytes, 0, length, UTF_8));
+                return bytes;
+            case VALUE_BLOB:
+                byte[] blob = new byte[(int) readVarLong(buffer)];
+                buffer.get(blob);
+                insert.bindBlob(index, blob);
+                return bytes;
+            default:
+                throw new IOException("Invalid value tag " + tag + " in snapshot");
+        }
+    }
+
+    /**
+     * Check that the given number of bytes at the start of the buffer match the CRC-32 that
+     * follows them. Leaves the buffer at its start.
+     */
+    private static void checkCrc(ByteBuffer buffer, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[BUFFER_SIZE];
+        buffer.position(0);
+        while (buffer.position() < length) {
+            int count = Math.min(chunk.length, length - buffer.position());
+            buffer.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        if (buffer.getInt() != (int) crc.getValue()) {
+            throw new IOException("Snapshot is corrupt");
+        }
+        buffer.position(0);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] bytes) throws IOException {
+        int length = (int) readVarLong(buffer);
+        if (length > bytes.length) {
+            throw new IOException("Name of " + length + " bytes in snapshot");
+        }
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, UTF_8);
+    }
+
+    /**
+     * Write a non-negative value seven bits at a time, lowest bits first. The top bit of each
+     * byte tells whether more bytes follow.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid number in snapshot");
+    }
+
+    /**
+     * Copy a file using the kernel, without passing its contents through the heap.
+     */
+    private static void copyFile(File source, File destination) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        try {
+            FileOutputStream out = new FileOutputStream(destination);
+            try {
+                FileChannel inChannel = in.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += inChannel.transferTo(position, size - position, out.getChannel());
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Delete a database file along with its journal and write-ahead log files.
+     */
+    private static void deleteDatabaseFiles(File file) {
+        for (String suffix : new String[]{"", "-journal", "-wal", "-shm"}) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+/**
+ * Checks the content values of products before {@link ProductProvider} writes them. Every
+ * check throws an {@link IllegalArgumentException} with the reason a value is rejected.
+ * <p/>
+ * The checks only read the content values, without touching the database, so they run before
+ * a transaction is started and can be measured on their own (see the benchmark module).
+ */
+final class ProductValidator {
+
+    /**
+     * Columns a product can be inserted with, in the bind order of the provider's insert
+     * statement.
+     */
+    static final String[] INSERT_COLUMNS = {
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_SUPPLIER,
+            ProductEntry.COLUMN_PRODUCT_IMAGE,
+            ProductEntry.COLUMN_PRODUCT_REORDER_POINT
+    };
+
+    private ProductValidator() {
+    }
+
+    /**
+     * Check that the given content values describe a valid new product: a name, a price of at
+     * least 0 cents and a supplier are required, and a quantity or reorder point must not be
+     * negative.
+     */
+    static void validateInsertValues(ContentValues values) {
+        // Check that the name is not null
+        String name = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
+        if (name == null) {
+            throw new IllegalArgumentException("Product requires a name");
+        }
+
+        // Check that the price is a whole number of cents and that it's greater than or equal to 0
+        Long price = getPriceCents(values);
+        if (price == null || price < 0) {
+            throw new IllegalArgumentException("Product requires valid price");
+        }
+
+        // If the quantity is provided, check that it's greater than or equal to 0
+        Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+        if (quantity != null && quantity < 0) {
+            throw new IllegalArgumentException("Product requires valid quantity");
+        }
+
+        // Check that the supplier is not null
+        String supplier = values.getAsString(ProductEntry.COLUMN_PRODUCT_SUPPLIER);
+        if (supplier == null) {
+            throw new IllegalArgumentException("Product requires valid supplier");
+        }
+
+        // If the reorder point is provided, check that it's greater than or equal to 0
+        Integer reorderPoint = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_REORDER_POINT);
+        if (reorderPoint != null && reorderPoint < 0) {
+            throw new IllegalArgumentException("Product requires valid reorder point");
+        }
+    }
+
+    /**
+     * Check the given content values of an update. Only the attributes present are checked,
+     * against the same rules as a new product.
+     */
+    static void validateUpdateValues(ContentValues values) {
+        // If the {@link ProductEntry#COLUMN_PRODUCT_NAME} key is present,
+        // check that the name value is not null.
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_NAME)) {
+            String name = values.getAsString(ProductEntry.COLUMN_PRODUCT_NAME);
+            if (name == null) {
+                throw new IllegalArgumentException("Product requires a name");
+            }
+        }
+
+        // If the {@link ProductEntry#COLUMN_PRODUCT_PRICE} key is present,
+        // check that the price value is valid.
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_PRICE)) {
+            // Check that the price is a whole number of cents and that it's greater than or
+            // equal to 0
+            Long price = getPriceCents(values);
+            if (price == null || price < 0) {
+                throw new IllegalArgumentException("Product requires valid price");
+            }
+        }
+
+        // If the {@link ProductEntry#COLUMN_PRODUCT_QUANTITY} key is present,
+        // check that the quantity value is valid.
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_QUANTITY)) {
+            // Check that the quantity is greater than or equal to 0
+            Integer quantity = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY);
+            if (quantity != null && quantity < 0) {
+                throw new IllegalArgumentException("Product requires valid quantity");
+            }
+        }
+
+        // If the {@link ProductEntry#COLUMN_PRODUCT_SUPPLIER} key is present,
+        // check that the supplier value is not null.
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_SUPPLIER)) {
+            String supplier = values.getAsString(ProductEntry.COLUMN_PRODUCT_SUPPLIER);
+            if (supplier == null) {
+                throw new IllegalArgumentException("Product requires valid supplier");
+            }
+        }
+
+        // If the {@link ProductEntry#COLUMN_PRODUCT_REORDER_POINT} key is present,
+        // check that the reorder point is valid.
+        if (values.containsKey(ProductEntry.COLUMN_PRODUCT_REORDER_POINT)) {
+            // Check that the reorder point is greater than or equal to 0
+            Integer reorderPoint = values.getAsInteger(ProductEntry.COLUMN_PRODUCT_REORDER_POINT);
+            if (reorderPoint != null && reorderPoint < 0) {
+                throw new IllegalArgumentException("Product requires valid reorder point");
+            }
+        }
+    }
+
+    /**
+     * Return the price in the given content values in cents, or null if it's missing or isn't a
+     * whole number. A price with a fraction, such as 13.99 put in dollars, is rejected rather
+     * than cut off to 13 cents.
+     */
+    static Long getPriceCents(ContentValues values) {
+        Object price = values.get(ProductEntry.COLUMN_PRODUCT_PRICE);
+        if (price instanceof Double || price instanceof Float) {
+            double cents = ((Number) price).doubleValue();
+            if (cents != Math.rint(cents) || Double.isInfinite(cents)) {
+                return null;
+            }
+        }
+        return values.getAsLong(ProductEntry.COLUMN_PRODUCT_PRICE);
+    }
+
+    /**
+     * Check that the given content values only contain columns the bulk insert statement knows
+     * how to bind. Otherwise the extra values would be silently dropped.
+     */
+    static void validateBulkInsertColumns(ContentValues values) {
+        for (String column : values.keySet()) {
+            boolean known = false;
+            for (String insertColumn : INSERT_COLUMNS) {
+                if (insertColumn.equals(column)) {
+                    known = true;
+                    break;
+                }
+            }
+            if (!known) {
+                throw new IllegalArgumentException("Unknown product column " + column);
+            }
+        }
+    }
+}
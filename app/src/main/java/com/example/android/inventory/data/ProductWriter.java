@@ -0,0 +1,236 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes to {@link ProductProvider} on a single background thread, so the main thread never waits
+ * for the database.
+ * <p/>
+ * Writes run one at a time in the order they were submitted, and their results are delivered to
+ * a {@link Callback} on the main thread. At most {@link #MAX_PENDING_WRITES} writes can wait at a
+ * time. When the queue is full new writes are refused, and the submitting method returns false,
+ * so the UI can tell the user instead of piling up work the database can't keep up with.
+ */
+public final class ProductWriter {
+
+    private static final String LOG_TAG = ProductWriter.class.getSimpleName();
+
+    /**
+     * Maximum number of writes waiting for the writer thread
+     */
+    static final int MAX_PENDING_WRITES = 64;
+
+    /**
+     * Receives the result of a write on the main thread.
+     *
+     * @param <T> type of the result
+     */
+    public static abstract class Callback<T> {
+        /**
+         * Called with the result of the write.
+         */
+        public abstract void onSuccess(T result);
+
+        /**
+         * Called when the write failed, for example because the provider rejected the values.
+         * Logs the error by default.
+         */
+        public void onFailure(Exception e) {
+            Log.e(LOG_TAG, "Write failed", e);
+        }
+    }
+
+    /**
+     * A single write, run on the writer thread.
+     */
+    private static abstract class Write<T> {
+        abstract T run(ContentResolver resolver) throws Exception;
+    }
+
+    private static ProductWriter sInstance;
+
+    /**
+     * Returns the writer of the app.
+     */
+    public static synchronized ProductWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ProductWriter(context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+
+    /**
+     * Constructs a new {@link ProductWriter} writing through the given resolver. The app uses the
+     * writer returned by {@link #getInstance(Context)}, so all of its writes share one queue.
+     */
+    public ProductWriter(ContentResolver resolver) {
+        mResolver = resolver;
+        // A single thread keeps the writes in order, and the bounded queue pushes back on callers
+        mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING_WRITES), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, LOG_TAG);
+            }
+        });
+    }
+
+    /**
+     * Insert a row, see {@link ContentResolver#insert(Uri, ContentValues)}. The callback receives
+     * the URI of the new row, or null if it couldn't be inserted.
+     *
+     * @return false if the write was refused because too many writes are waiting
+     */
+    public boolean insert(final Uri uri, final ContentValues values, Callback<Uri> callback) {
+        return submit(new Write<Uri>() {
+            @Override
+            Uri run(ContentResolver resolver) {
+                return resolver.insert(uri, values);
+            }
+        }, callback);
+    }
+
+    /**
+     * Update rows, see {@link ContentResolver#update(Uri, ContentValues, String, String[])}. The
+     * callback receives the number of rows updated.
+     *
+     * @return false if the write was refused because too many writes are waiting
+     */
+    public boolean update(final Uri uri, final ContentValues values, final String selection,
+                          final String[] selectionArgs, Callback<Integer> callback) {
+        return submit(new Write<Integer>() {
+            @Override
+            Integer run(ContentResolver resolver) {
+                return resolver.update(uri, values, selection, selectionArgs);
+            }
+        }, callback);
+    }
+
+    /**
+     * Delete rows, see {@link ContentResolver#delete(Uri, String, String[])}. The callback
+     * receives the number of rows deleted.
+     *
+     * @return false if the write was refused because too many writes are waiting
+     */
+    public boolean delete(final Uri uri, final String selection, final String[] selectionArgs,
+                          Callback<Integer> callback) {
+        return submit(new Write<Integer>() {
+            @Override
+            Integer run(ContentResolver resolver) {
+                return resolver.delete(uri, selection, selectionArgs);
+            }
+        }, callback);
+    }
+
+    /**
+     * Call a provider method that writes, see
+     * {@link ContentResolver#call(Uri, String, String, Bundle)}. The callback receives the result
+     * of the method.
+     *
+     * @return false if the write was refused because too many writes are waiting
+     */
+    public boolean call(final Uri uri, final String method, final String arg, final Bundle extras,
+                        Callback<Bundle> callback) {
+        return submit(new Write<Bundle>() {
+            @Override
+            Bundle run(ContentResolver resolver) {
+                return resolver.call(uri, method, arg, extras);
+            }
+        }, callback);
+    }
+
+    /**
+     * Apply a batch of operations in one transaction, see
+     * {@link ContentResolver#applyBatch(String, ArrayList)}.
+     *
+     * @return false if the write was refused because too many writes are waiting
+     */
+    public boolean applyBatch(final ArrayList<ContentProviderOperation> operations,
+                              Callback<ContentProviderResult[]> callback) {
+        return submit(new Write<ContentProviderResult[]>() {
+            @Override
+            ContentProviderResult[] run(ContentResolver resolver)
+                    throws RemoteException, OperationApplicationException {
+                return resolver.applyBatch(ProductContract.CONTENT_AUTHORITY, operations);
+            }
+        }, callback);
+    }
+
+    /**
+     * Queue a write for the writer thread. The callback may be null.
+     *
+     * @return false if the queue is full
+     */
+    private <T> boolean submit(final Write<T> write, final Callback<T> callback) {
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    T result = null;
+                    Exception error = null;
+                    try {
+                        result = write.run(mResolver);
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                    deliver(callback, result, error);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, "Write refused, " + MAX_PENDING_WRITES + " writes are waiting");
+            return false;
+        }
+    }
+
+    /**
+     * Hand the result or the error of a write to its callback on the main thread.
+     */
+    private <T> void deliver(final Callback<T> callback, final T result, final Exception error) {
+        if (callback == null) {
+            if (error != null) {
+                Log.e(LOG_TAG, "Write failed", error);
+            }
+            return;
+        }
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (error == null) {
+                    callback.onSuccess(result);
+                } else {
+                    callback.onFailure(error);
+                }
+            }
+        });
+    }
+}
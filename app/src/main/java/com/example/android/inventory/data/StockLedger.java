@@ -0,0 +1,189 @@
+package com.example.android.inventory.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.inventory.data.ProductContract.StockMovementEntry;
+
+/**
+ * Records the changes of product quantities in the stock movements table, and answers what a
+ * product's quantity was at any point in time.
+ * <p/>
+ * Every change of a quantity appends a movement. The caller updates the quantity in the products
+ * table inside the same transaction, so the quantity always equals the sum of the product's
+ * movements. Every {@link #SNAPSHOT_INTERVAL} movements of a product, the resulting quantity is
+ * also stored as a snapshot. The quantity at a point in time then starts from the last snapshot
+ * before it and adds at most {@link #SNAPSHOT_INTERVAL} movements, instead of replaying the
+ * whole history of the product.
+ */
+final class StockLedger {
+
+    /**
+     * Number of movements of a product between two of its snapshots
+     */
+    static final int SNAPSHOT_INTERVAL = 100;
+
+    /**
+     * SQL statement used to append a movement.
+     */
+    private static final String SQL_INSERT_MOVEMENT = "INSERT INTO " + StockMovementEntry.TABLE_NAME
+            + " (" + StockMovementEntry.COLUMN_PRODUCT_ID + ", " + StockMovementEntry.COLUMN_TIME + ", "
+            + StockMovementEntry.COLUMN_TYPE + ", " + StockMovementEntry.COLUMN_DELTA
+            + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * SQL statement used to find the movement of the latest snapshot of a product.
+     */
+    private static final String SQL_SELECT_LAST_SNAPSHOT = "SELECT coalesce(max("
+            + ProductDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + "), 0) FROM "
+            + ProductDbHelper.TABLE_STOCK_SNAPSHOTS
+            + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID + " = ?";
+
+    /**
+     * SQL statement used to count the movements of a product after a given movement.
+     */
+    private static final String SQL_COUNT_MOVEMENTS_AFTER = "SELECT count(*) FROM "
+            + StockMovementEntry.TABLE_NAME + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID
+            + " = ? AND " + StockMovementEntry._ID + " > ?";
+
+    /**
+     * SQL statement used to store a snapshot.
+     */
+    private static final String SQL_INSERT_SNAPSHOT = "INSERT INTO "
+            + ProductDbHelper.TABLE_STOCK_SNAPSHOTS + " (" + StockMovementEntry.COLUMN_PRODUCT_ID + ", "
+            + ProductDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + ", " + StockMovementEntry.COLUMN_TIME + ", "
+            + ProductDbHelper.COLUMN_SNAPSHOT_QUANTITY + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * SQL query for the latest snapshot of a product taken at or before a given time.
+     */
+    private static final String SQL_SELECT_SNAPSHOT_BEFORE = "SELECT "
+            + ProductDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + ", " + ProductDbHelper.COLUMN_SNAPSHOT_QUANTITY
+            + " FROM " + ProductDbHelper.TABLE_STOCK_SNAPSHOTS
+            + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID + " = ? AND "
+            + StockMovementEntry.COLUMN_TIME + " <= ?"
+            + " ORDER BY " + StockMovementEntry.COLUMN_TIME + " DESC, "
+            + ProductDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + " DESC LIMIT 1";
+
+    /**
+     * SQL statement used to find the movement of the first snapshot of a product after a given
+     * movement. No movement after it can belong to an earlier point in time.
+     */
+    private static final String SQL_SELECT_NEXT_SNAPSHOT = "SELECT coalesce(min("
+            + ProductDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + "), " + Long.MAX_VALUE + ") FROM "
+            + ProductDbHelper.TABLE_STOCK_SNAPSHOTS
+            + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID + " = ? AND "
+            + ProductDbHelper.COLUMN_SNAPSHOT_MOVEMENT_ID + " > ?";
+
+    /**
+     * SQL statement used to add up the movements of a product between two movements, up to a
+     * given time.
+     */
+    private static final String SQL_SUM_MOVEMENTS = "SELECT coalesce(sum("
+            + StockMovementEntry.COLUMN_DELTA + "), 0) FROM " + StockMovementEntry.TABLE_NAME
+            + " WHERE " + StockMovementEntry.COLUMN_PRODUCT_ID + " = ? AND "
+            + StockMovementEntry._ID + " > ? AND " + StockMovementEntry._ID + " <= ? AND "
+            + StockMovementEntry.COLUMN_TIME + " <= ?";
+
+    // Only static helpers, not to be instantiated
+    private StockLedger() {
+    }
+
+    /**
+     * Append a movement of a product that was just inserted, with its starting quantity. A new
+     * product has no earlier movements, so no snapshot is due.
+     */
+    static void recordInitialQuantity(SQLiteDatabase db, long productId, long quantity, long time) {
+        if (quantity != 0) {
+            append(db, productId, StockMovementEntry.TYPE_INITIAL, quantity, time);
+        }
+    }
+
+    /**
+     * Append a movement and take a snapshot of the product if one is due. Must be called inside
+     * the transaction that changes the product's quantity.
+     *
+     * @param type     one of the TYPE constants of {@link StockMovementEntry}
+     * @param delta    signed change of the quantity
+     * @param quantity quantity of the product after the movement
+     * @param time     time of the movement, in milliseconds since the epoch
+     */
+    static void recordMovement(SQLiteDatabase db, long productId, int type, long delta,
+                               long quantity, long time) {
+        long movementId = append(db, productId, type, delta, time);
+
+        long lastSnapshotMovementId = queryLong(db, SQL_SELECT_LAST_SNAPSHOT, productId);
+        if (queryLong(db, SQL_COUNT_MOVEMENTS_AFTER, productId, lastSnapshotMovementId)
+                >= SNAPSHOT_INTERVAL) {
+            SQLiteStatement statement = db.compileStatement(SQL_INSERT_SNAPSHOT);
+            try {
+                statement.bindLong(1, productId);
+                statement.bindLong(2, movementId);
+                statement.bindLong(3, time);
+                statement.bindLong(4, quantity);
+                statement.executeInsert();
+            } finally {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the quantity the given product had in stock at the given time, in milliseconds
+     * since the epoch: the quantity of the latest snapshot before that time, plus the movements
+     * after the snapshot up to that time. Returns 0 for times before the product existed.
+     */
+    static long getQuantityAt(SQLiteDatabase db, long productId, long time) {
+        long snapshotMovementId = 0;
+        long quantity = 0;
+        Cursor snapshot = db.rawQuery(SQL_SELECT_SNAPSHOT_BEFORE,
+                new String[]{String.valueOf(productId), String.valueOf(time)});
+        try {
+            // Without a snapshot that early, start from the first movement
+            if (snapshot.moveToFirst()) {
+                snapshotMovementId = snapshot.getLong(0);
+                quantity = snapshot.getLong(1);
+            }
+        } finally {
+            snapshot.close();
+        }
+
+        // Only the movements up to the next snapshot need to be added
+        long nextSnapshotMovementId = queryLong(db, SQL_SELECT_NEXT_SNAPSHOT, productId,
+                snapshotMovementId);
+        return quantity + queryLong(db, SQL_SUM_MOVEMENTS, productId, snapshotMovementId,
+                nextSnapshotMovementId, time);
+    }
+
+    /**
+     * Append a movement to the ledger. Return the ID of the movement.
+     */
+    private static long append(SQLiteDatabase db, long productId, int type, long delta, long time) {
+        SQLiteStatement statement = db.compileStatement(SQL_INSERT_MOVEMENT);
+        try {
+            statement.bindLong(1, productId);
+            statement.bindLong(2, time);
+            statement.bindLong(3, type);
+            statement.bindLong(4, delta);
+            return statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Run a query that returns a single number, binding the given arguments in order.
+     */
+    private static long queryLong(SQLiteDatabase db, String sql, long... args) {
+        SQLiteStatement statement = db.compileStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                statement.bindLong(i + 1, args[i]);
+            }
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.android.inventory.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Keeps decoded images as files in a directory, so they don't have to be decoded from the full
+ * size original again after the app restarts. When the files grow past the size limit, the least
+ * recently used ones are deleted.
+ * <p/>
+ * Methods do disk I/O and must not be called on the main thread.
+ */
+class ImageDiskCache {
+
+    private static final String LOG_TAG = ImageDiskCache.class.getSimpleName();
+
+    /**
+     * Quality of images stored as JPEG, from 0 to 100
+     */
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Suffix of files that are still being written
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxSize;
+
+    /**
+     * Constructs a new {@link ImageDiskCache}.
+     *
+     * @param directory directory holding the cached images, created when needed
+     * @param maxSize   maximum number of bytes the cached images may use
+     */
+    ImageDiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Returns the image stored for the given key, or null if there is none.
+     */
+    Bitmap get(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        // Mark the file as recently used, so it is the last one to be deleted
+        file.setLastModified(System.currentTimeMillis());
+        return BitmapFactory.decodeFile(file.getPath());
+    }
+
+    /**
+     * Store the image for the given key, then delete old images if the cache grew too large.
+     */
+    void put(String key, Bitmap bitmap) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Failed to create " + mDirectory);
+            return;
+        }
+
+        // Write to a temporary file first, so readers never see a partly written image
+        File file = getFile(key);
+        File tempFile = new File(file.getPath() + TEMP_SUFFIX + Thread.currentThread().getId());
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            // Photos are stored as JPEG, images with transparency keep it as PNG
+            Bitmap.CompressFormat format = bitmap.hasAlpha()
+                    ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+            if (!bitmap.compress(format, JPEG_QUALITY, out)) {
+                throw new IOException("Failed to compress image");
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to rename " + tempFile);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to store image " + key, e);
+            tempFile.delete();
+            return;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + tempFile, e);
+                }
+            }
+        }
+
+        trimToSize();
+    }
+
+    /**
+     * Delete the least recently used images until the cache fits within its size limit.
+     */
+    private synchronized void trimToSize() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= mMaxSize) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                long leftModified = left.lastModified();
+                long rightModified = right.lastModified();
+                return leftModified < rightModified ? -1 : (leftModified == rightModified ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && size > mMaxSize; i++) {
+            // Files still being written belong to another thread
+            if (files[i].getName().contains(TEMP_SUFFIX)) {
+                continue;
+            }
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the given key. Keys are hashed, as they may contain any character.
+     */
+    private File getFile(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(mDirectory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device supports SHA-1
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            // Every Android device supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
+}
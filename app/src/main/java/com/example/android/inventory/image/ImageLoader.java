@@ -0,0 +1,380 @@
+package com.example.android.inventory.image;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.support.v4.os.TraceCompat;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.example.android.inventory.R;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Loads product images into {@link ImageView}s without blocking the main thread.
+ * <p/>
+ * Images are decoded on background threads, downsampled to about the size of the view they are
+ * shown in, and kept in a memory cache and a disk cache, so showing the same image again (for
+ * example after a rotation) doesn't decode the original again. Each view shows the image of its
+ * latest request only, and requests can be cancelled when the view goes away. Images can also be
+ * prefetched into the memory cache before a view needs them.
+ * <p/>
+ * All methods must be called on the main thread.
+ */
+public final class ImageLoader {
+
+    private static final String LOG_TAG = ImageLoader.class.getSimpleName();
+
+    /**
+     * Part of the maximum heap size the memory cache may use, as a divisor
+     */
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    /**
+     * Name of the directory of the disk cache, within the app's cache directory
+     */
+    private static final String DISK_CACHE_DIRECTORY = "images";
+
+    /**
+     * Maximum size of the disk cache, in bytes
+     */
+    private static final long DISK_CACHE_SIZE = 20 * 1024 * 1024;
+
+    /**
+     * Number of images decoded at the same time
+     */
+    private static final int THREAD_COUNT = 2;
+
+    private static ImageLoader sInstance;
+
+    /**
+     * Returns the image loader of the app.
+     */
+    public static synchronized ImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageLoader(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final ContentResolver mResolver;
+    private final DisplayMetrics mDisplayMetrics;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ImageDiskCache mDiskCache;
+    private final ExecutorService mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Prefetch requests that haven't finished yet, by cache key
+     */
+    private final HashMap<String, Request> mPrefetches = new HashMap<String, Request>();
+
+    private ImageLoader(Context context) {
+        mResolver = context.getContentResolver();
+        mDisplayMetrics = context.getResources().getDisplayMetrics();
+
+        // Budget the memory cache by the number of bytes of the cached bitmaps
+        int memoryCacheSize = (int) Math.min(Runtime.getRuntime().maxMemory() / MEMORY_CACHE_DIVISOR,
+                Integer.MAX_VALUE);
+        mMemoryCache = new LruCache<String, Bitmap>(memoryCacheSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+
+        mDiskCache = new ImageDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY),
+                DISK_CACHE_SIZE);
+        mExecutor = Executors.newFixedThreadPool(THREAD_COUNT, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Leave the CPU to the main thread while it draws frames
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, LOG_TAG);
+            }
+        });
+    }
+
+    /**
+     * Show the image at the given URI in the image view, downsampled to the size of the view.
+     * The view is cleared while the image loads, and a null URI just clears it.
+     */
+    public void load(Uri uri, ImageView imageView) {
+        ViewGroup.LayoutParams layoutParams = imageView.getLayoutParams();
+        int width = getTargetSize(imageView.getWidth(),
+                layoutParams == null ? 0 : layoutParams.width, mDisplayMetrics.widthPixels);
+        int height = getTargetSize(imageView.getHeight(),
+                layoutParams == null ? 0 : layoutParams.height, mDisplayMetrics.heightPixels);
+        load(uri, imageView, width, height);
+    }
+
+    /**
+     * Show the image at the given URI in the image view, downsampled to about the given size in
+     * pixels. The view is cleared while the image loads, and a null URI just clears it.
+     */
+    public void load(Uri uri, ImageView imageView, int width, int height) {
+        // A view only ever shows the image it was asked for last
+        cancel(imageView);
+        if (uri == null) {
+            imageView.setImageDrawable(null);
+            return;
+        }
+
+        String key = getKey(uri, width, height);
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            imageView.setImageBitmap(bitmap);
+            return;
+        }
+
+        imageView.setImageDrawable(null);
+        // Take over a prefetch of the same image rather than decoding it twice
+        Request request = mPrefetches.remove(key);
+        if (request == null) {
+            request = new Request(uri, key, width, height);
+            request.mFuture = mExecutor.submit(request);
+        }
+        request.mImageView = imageView;
+        imageView.setTag(R.id.image_loader_request, request);
+    }
+
+    /**
+     * Load the images at the given URIs into the memory cache, at about the given size, so views
+     * can show them right away later. Prefetches of images that aren't in the list anymore are
+     * cancelled.
+     */
+    public void setPrefetches(List<Uri> uris, int width, int height) {
+        HashMap<String, Uri> wanted = new HashMap<String, Uri>();
+        for (Uri uri : uris) {
+            wanted.put(getKey(uri, width, height), uri);
+        }
+
+        // Cancel the prefetches that are no longer wanted
+        Iterator<Map.Entry<String, Request>> iterator = mPrefetches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Request> entry = iterator.next();
+            if (!wanted.containsKey(entry.getKey())) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+
+        // Start the new ones, unless the image is cached already
+        for (Map.Entry<String, Uri> entry : wanted.entrySet()) {
+            String key = entry.getKey();
+            if (!mPrefetches.containsKey(key) && mMemoryCache.get(key) == null) {
+                Request request = new Request(entry.getValue(), key, width, height);
+                mPrefetches.put(key, request);
+                request.mFuture = mExecutor.submit(request);
+            }
+        }
+    }
+
+    /**
+     * Cancel the request that is loading an image into the given view, if any.
+     */
+    public void cancel(ImageView imageView) {
+        Request request = (Request) imageView.getTag(R.id.image_loader_request);
+        if (request != null) {
+            request.cancel();
+            imageView.setTag(R.id.image_loader_request, null);
+        }
+    }
+
+    /**
+     * Returns the size to decode an image for, along one side of a view: the laid out size of the
+     * view, else the size from its layout params, else the size of the screen.
+     */
+    private static int getTargetSize(int viewSize, int layoutParamsSize, int screenSize) {
+        if (viewSize > 0) {
+            return viewSize;
+        }
+        if (layoutParamsSize > 0) {
+            return layoutParamsSize;
+        }
+        return screenSize;
+    }
+
+    /**
+     * Returns the key an image is cached under. Each size of an image is cached separately.
+     */
+    private static String getKey(Uri uri, int width, int height) {
+        return uri + "@" + width + "x" + height;
+    }
+
+    /**
+     * Returns the largest power of two the image can be subsampled by, while it still covers the
+     * requested size.
+     */
+    public static int calculateInSampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int inSampleSize = 1;
+        while (imageWidth / (inSampleSize * 2) >= width
+                && imageHeight / (inSampleSize * 2) >= height) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Decode the image at the given URI, subsampled by a power of two to about the given size,
+     * but no smaller. Returns null if the image can't be read. Must not be called on the main
+     * thread.
+     */
+    public static Bitmap decodeSampledBitmap(ContentResolver resolver, Uri uri, int width,
+                                             int height) throws IOException {
+        return decodeSampledBitmap(resolver, uri, width, height, null);
+    }
+
+    /**
+     * Decode the image at the given URI like {@link #decodeSampledBitmap(ContentResolver, Uri,
+     * int, int)}. Also returns null if the request was cancelled in the meantime.
+     */
+    private static Bitmap decodeSampledBitmap(ContentResolver resolver, Uri uri, int width,
+                                              int height, Request request) throws IOException {
+        TraceCompat.beginSection("ImageLoader.decode");
+        try {
+            // Read the dimensions of the image first, without allocating its pixels
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decodeFileDescriptor(resolver, uri, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            if (request != null && request.isCancelled()) {
+                return null;
+            }
+
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                    width, height);
+            return decodeFileDescriptor(resolver, uri, options);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Decode the image at the given URI with the given options. The file is opened for every
+     * decode, as not every descriptor can be rewound.
+     */
+    private static Bitmap decodeFileDescriptor(ContentResolver resolver, Uri uri,
+                                               BitmapFactory.Options options) throws IOException {
+        ParcelFileDescriptor parcelFileDescriptor = resolver.openFileDescriptor(uri, "r");
+        if (parcelFileDescriptor == null) {
+            return null;
+        }
+        try {
+            return BitmapFactory.decodeFileDescriptor(parcelFileDescriptor.getFileDescriptor(),
+                    null, options);
+        } finally {
+            parcelFileDescriptor.close();
+        }
+    }
+
+    /**
+     * Loads a single image on a background thread and delivers it to its view, if it has one.
+     * Prefetch requests only fill the caches.
+     */
+    final class Request implements Runnable {
+        private final Uri mUri;
+        private final String mKey;
+        private final int mWidth;
+        private final int mHeight;
+
+        // The view to show the image in, or null for a prefetch. Only used on the main thread.
+        ImageView mImageView;
+
+        private volatile boolean mCancelled;
+
+        Future<?> mFuture;
+
+        Request(Uri uri, String key, int width, int height) {
+            mUri = uri;
+            mKey = key;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+
+        void cancel() {
+            mCancelled = true;
+            // Drop the view, so a cancelled request doesn't keep the activity around
+            mImageView = null;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled()) {
+                return;
+            }
+
+            // An earlier request may have decoded the same image in the meantime
+            Bitmap bitmap = mMemoryCache.get(mKey);
+            if (bitmap == null) {
+                bitmap = mDiskCache.get(mKey);
+                if (bitmap == null) {
+                    try {
+                        bitmap = decodeSampledBitmap(mResolver, mUri, mWidth, mHeight, this);
+                    } catch (IOException e) {
+                        Log.e(LOG_TAG, "Failed to load image " + mUri, e);
+                    } catch (SecurityException e) {
+                        // The permission to read a picked document can be lost
+                        Log.e(LOG_TAG, "Not allowed to load image " + mUri, e);
+                    }
+                    if (bitmap != null) {
+                        mDiskCache.put(mKey, bitmap);
+                    }
+                }
+                if (bitmap != null) {
+                    mMemoryCache.put(mKey, bitmap);
+                }
+            }
+
+            final Bitmap result = bitmap;
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mPrefetches.get(mKey) == Request.this) {
+                        mPrefetches.remove(mKey);
+                    }
+                    ImageView imageView = mImageView;
+                    // Only show the image if this is still the latest request of the view
+                    if (imageView != null && imageView.getTag(R.id.image_loader_request) == Request.this) {
+                        imageView.setTag(R.id.image_loader_request, null);
+                        imageView.setImageBitmap(result);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.android.inventory;
+
+import android.database.MatrixCursor;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+/**
+ * Measures turning a cursor row into the text of a catalog row, as
+ * {@link ProductCursorAdapter#bindView} does for every row scrolled into view. The cursor is a
+ * {@link MatrixCursor} rather than one backed by a cursor window, so copying out of the window
+ * itself isn't part of the score.
+ */
+@State(Scope.Thread)
+public class ProductRowTextBenchmark {
+
+    private static final String[] COLUMNS = {
+            ProductEntry._ID,
+            ProductEntry.COLUMN_PRODUCT_NAME,
+            ProductEntry.COLUMN_PRODUCT_QUANTITY,
+            ProductEntry.COLUMN_PRODUCT_PRICE,
+            ProductEntry.COLUMN_PRODUCT_IMAGE
+    };
+    private static final int ROWS = 100;
+
+    private MatrixCursor mCursor;
+    private ProductRowText mText;
+
+    @Setup
+    public void setUp() {
+        mCursor = new MatrixCursor(COLUMNS, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            mCursor.addRow(new Object[]{i + 1, "Product " + i, i * 7, 99 + i * 100L,
+                    i % 2 == 0 ? null : "content://media/external/images/media/" + i});
+        }
+        mText = new ProductRowText("Quantity ".toCharArray(), "Price $".toCharArray());
+    }
+
+    @TearDown
+    public void tearDown() {
+        mCursor.close();
+    }
+
+    @Benchmark
+    public ProductRowText bind() {
+        nextRow();
+        mText.bind(mCursor, 1, 2, 3, 4, 0);
+        return mText;
+    }
+
+    /**
+     * The row text built as strings, as the adapter did before it reused buffers
+     */
+    @Benchmark
+    public void bindWithStrings(Blackhole blackhole) {
+        nextRow();
+        blackhole.consume(mCursor.getString(1));
+        blackhole.consume("Quantity " + mCursor.getString(2));
+        blackhole.consume("Price $" + mCursor.getString(3));
+        blackhole.consume(mCursor.getString(4));
+    }
+
+    private void nextRow() {
+        if (!mCursor.moveToNext()) {
+            mCursor.moveToFirst();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the cost of passing a product through {@link ContentValues}, which keeps every number
+ * as a boxed object in a hash map. Quantities from -128 to 127 are boxed to cached objects,
+ * larger ones allocate a new Integer each time; the gc profiler shows the difference as
+ * allocated bytes per operation.
+ */
+@State(Scope.Thread)
+public class ContentValuesBenchmark {
+
+    @Param({"33", "1000"})
+    public int quantity;
+
+    @Param({"1399"})
+    public long priceCents;
+
+    private ContentValues mValues;
+
+    @Setup
+    public void setUp() {
+        mValues = putProduct();
+    }
+
+    /**
+     * Build the content values of a product, as every insert from the editor does
+     */
+    @Benchmark
+    public ContentValues put() {
+        return putProduct();
+    }
+
+    /**
+     * Read the numbers back, as the provider does to check and bind them
+     */
+    @Benchmark
+    public void get(Blackhole blackhole) {
+        blackhole.consume(mValues.getAsString(ProductEntry.COLUMN_PRODUCT_NAME));
+        blackhole.consume(mValues.getAsLong(ProductEntry.COLUMN_PRODUCT_PRICE).longValue());
+        blackhole.consume(mValues.getAsInteger(ProductEntry.COLUMN_PRODUCT_QUANTITY).intValue());
+        blackhole.consume(mValues.getAsString(ProductEntry.COLUMN_PRODUCT_SUPPLIER));
+    }
+
+    /**
+     * The same values without content values, as a baseline for the two above
+     */
+    @Benchmark
+    public void primitives(Blackhole blackhole) {
+        blackhole.consume("Jump Rope");
+        blackhole.consume(priceCents);
+        blackhole.consume(quantity);
+        blackhole.consume("Acme");
+    }
+
+    private ContentValues putProduct() {
+        ContentValues values = new ContentValues();
+        values.put(ProductEntry.COLUMN_PRODUCT_NAME, "Jump Rope");
+        values.put(ProductEntry.COLUMN_PRODUCT_PRICE, priceCents);
+        values.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, quantity);
+        values.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Acme");
+        return values;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.android.inventory.data;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Measures the queries behind a product's content URI: reading one product by _id, as the editor
+ * does, and setting its quantity, as a sale does. They run on the SQLite JDBC driver, against a
+ * products table with the schema of {@link ProductDbHelper} in WAL mode, but without the
+ * triggers of the stock ledger and summary.
+ */
+@State(Scope.Thread)
+public class ProductByIdBenchmark {
+
+    private static final String SQL_SELECT_PRODUCT = "SELECT "
+            + ProductEntry._ID + ", "
+            + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+            + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+            + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", "
+            + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ", "
+            + ProductEntry.COLUMN_PRODUCT_IMAGE + ", "
+            + ProductEntry.COLUMN_PRODUCT_REORDER_POINT
+            + " FROM " + ProductEntry.TABLE_NAME + " WHERE " + ProductEntry._ID + "=?";
+
+    private static final String SQL_SET_QUANTITY = "UPDATE " + ProductEntry.TABLE_NAME
+            + " SET " + ProductEntry.COLUMN_PRODUCT_QUANTITY + "=? WHERE " + ProductEntry._ID + "=?";
+
+    @Param({"10000"})
+    public int products;
+
+    private File mDatabaseFile;
+    private Connection mConnection;
+    private PreparedStatement mSelect;
+    private PreparedStatement mUpdate;
+
+    /**
+     * Next product to read or update. The ids are walked in a stride that isn't a divisor of
+     * the number of products, so consecutive calls don't hit neighbouring pages.
+     */
+    private long mNextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        mDatabaseFile = File.createTempFile("inventory", ".db");
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + mDatabaseFile.getPath());
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            statement.execute("CREATE TABLE " + ProductEntry.TABLE_NAME + " ("
+                    + ProductEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + ProductEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                    + ProductEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL, "
+                    + ProductEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                    + ProductEntry.COLUMN_PRODUCT_SUPPLIER + " TEXT NOT NULL, "
+                    + ProductEntry.COLUMN_PRODUCT_IMAGE + " TEXT, "
+                    + ProductEntry.COLUMN_PRODUCT_REORDER_POINT + " INTEGER NOT NULL DEFAULT 0);");
+            statement.execute("CREATE INDEX products_quantity ON " + ProductEntry.TABLE_NAME
+                    + " (" + ProductEntry.COLUMN_PRODUCT_QUANTITY + ")");
+        } finally {
+            statement.close();
+        }
+
+        mConnection.setAutoCommit(false);
+        PreparedStatement insert = mConnection.prepareStatement("INSERT INTO "
+                + ProductEntry.TABLE_NAME + " ("
+                + ProductEntry.COLUMN_PRODUCT_NAME + ", "
+                + ProductEntry.COLUMN_PRODUCT_PRICE + ", "
+                + ProductEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + ProductEntry.COLUMN_PRODUCT_SUPPLIER + ") VALUES (?, ?, ?, ?)");
+        try {
+            for (int i = 0; i < products; i++) {
+                insert.setString(1, "Product " + i);
+                insert.setLong(2, 1399);
+                insert.setInt(3, i % 100);
+                insert.setString(4, "Acme");
+                insert.executeUpdate();
+            }
+        } finally {
+            insert.close();
+        }
+        mConnection.commit();
+        // Every update is its own transaction, as it is in the provider
+        mConnection.setAutoCommit(true);
+
+        // Prepared once, as the provider's statement cache keeps them compiled
+        mSelect = mConnection.prepareStatement(SQL_SELECT_PRODUCT);
+        mUpdate = mConnection.prepareStatement(SQL_SET_QUANTITY);
+        mNextId = 1;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mSelect.close();
+        mUpdate.close();
+        mConnection.close();
+        mDatabaseFile.delete();
+        new File(mDatabaseFile.getPath() + "-wal").delete();
+        new File(mDatabaseFile.getPath() + "-shm").delete();
+    }
+
+    @Benchmark
+    public void queryById(Blackhole blackhole) throws SQLException {
+        readProduct(mSelect, nextId(), blackhole);
+    }
+
+    /**
+     * The same query compiled every time, as happens when it falls out of the statement cache
+     */
+    @Benchmark
+    public void queryByIdUncached(Blackhole blackhole) throws SQLException {
+        PreparedStatement select = mConnection.prepareStatement(SQL_SELECT_PRODUCT);
+        try {
+            readProduct(select, nextId(), blackhole);
+        } finally {
+            select.close();
+        }
+    }
+
+    @Benchmark
+    public int updateQuantityById() throws SQLException {
+        long id = nextId();
+        mUpdate.setLong(1, id % 100);
+        mUpdate.setLong(2, id);
+        return mUpdate.executeUpdate();
+    }
+
+    private static void readProduct(PreparedStatement select, long id, Blackhole blackhole)
+            throws SQLException {
+        select.setLong(1, id);
+        ResultSet result = select.executeQuery();
+        try {
+            if (result.next()) {
+                blackhole.consume(result.getLong(1));
+                blackhole.consume(result.getString(2));
+                blackhole.consume(result.getLong(3));
+                blackhole.consume(result.getInt(4));
+                blackhole.consume(result.getString(5));
+                blackhole.consume(result.getString(6));
+                blackhole.consume(result.getInt(7));
+            }
+        } finally {
+            result.close();
+        }
+    }
+
+    private long nextId() {
+        long id = mNextId;
+        mNextId = (mNextId + 7919) % products + 1;
+        return id;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.inventory.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.DecimalFormat;
+import java.util.Random;
+
+/**
+ * Measures prices stored as cents, see {@link ProductPrice}, against prices stored as doubles,
+ * as they were before. Parsing and formatting are compared with what the editor did before,
+ * which parsed with {@link Double#parseDouble} and formatted with a new {@link DecimalFormat}
+ * each time; the value of the stock is compared as a sum of longs and a sum of doubles.
+ */
+@State(Scope.Thread)
+public class ProductPriceBenchmark {
+
+    private static final int PRODUCTS = 1000;
+
+    private final char[] mBuffer = new char[ProductPrice.MAX_CHARS];
+
+    private long[] mPriceCents;
+    private double[] mPrices;
+    private int[] mQuantities;
+    private String[] mPriceTexts;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mPriceCents = new long[PRODUCTS];
+        mPrices = new double[PRODUCTS];
+        mQuantities = new int[PRODUCTS];
+        mPriceTexts = new String[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            mPriceCents[i] = random.nextInt(100000);
+            mPrices[i] = mPriceCents[i] / 100.0;
+            mQuantities[i] = random.nextInt(100);
+            mPriceTexts[i] = ProductPrice.format(mPriceCents[i]);
+        }
+    }
+
+    @Benchmark
+    public long parseCents() {
+        return ProductPrice.parseCents(nextText());
+    }
+
+    @Benchmark
+    public double parseDouble() {
+        return Double.parseDouble(nextText());
+    }
+
+    /**
+     * Format into a reused buffer, as the catalog rows and the CSV export do
+     */
+    @Benchmark
+    public int writeCents() {
+        return ProductPrice.writeCents(mBuffer, 0, mPriceCents[nextIndex()]);
+    }
+
+    @Benchmark
+    public String formatCents() {
+        return ProductPrice.format(mPriceCents[nextIndex()]);
+    }
+
+    @Benchmark
+    public String formatDouble() {
+        return new DecimalFormat("0.00").format(mPrices[nextIndex()]);
+    }
+
+    /**
+     * The value of the stock in cents, which is exact
+     */
+    @Benchmark
+    public long sumCents() {
+        long total = 0;
+        for (int i = 0; i < PRODUCTS; i++) {
+            total += mPriceCents[i] * mQuantities[i];
+        }
+        return total;
+    }
+
+    /**
+     * The value of the stock in dollars, rounding each product to cents as the summary did
+     */
+    @Benchmark
+    public long sumDoubles() {
+        long total = 0;
+        for (int i = 0; i < PRODUCTS; i++) {
+            total += Math.round(mPrices[i] * 100) * mQuantities[i];
+        }
+        return total;
+    }
+
+    private String nextText() {
+        return mPriceTexts[nextIndex()];
+    }
+
+    private int nextIndex() {
+        mIndex = (mIndex + 1) % PRODUCTS;
+        return mIndex;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.inventory.data;
+
+import android.content.ContentValues;
+
+import com.example.android.inventory.data.ProductContract.ProductEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the checks {@link ProductProvider} runs on the content values of every insert and
+ * update, see {@link ProductValidator}.
+ */
+@State(Scope.Thread)
+public class ProductValidatorBenchmark {
+
+    /**
+     * A new product as the editor inserts it, with typed values
+     */
+    private ContentValues mInsertValues;
+
+    /**
+     * The same product with every value as text, as the CSV importer inserts it. Reading a
+     * number from text parses it each time it's read.
+     */
+    private ContentValues mTextInsertValues;
+
+    /**
+     * A sale, which only updates the quantity
+     */
+    private ContentValues mQuantityUpdateValues;
+
+    @Setup
+    public void setUp() {
+        mInsertValues = new ContentValues();
+        mInsertValues.put(ProductEntry.COLUMN_PRODUCT_NAME, "Jump Rope");
+        mInsertValues.put(ProductEntry.COLUMN_PRODUCT_PRICE, 1399);
+        mInsertValues.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 33);
+        mInsertValues.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Acme");
+        mInsertValues.put(ProductEntry.COLUMN_PRODUCT_REORDER_POINT, 5);
+
+        mTextInsertValues = new ContentValues();
+        mTextInsertValues.put(ProductEntry.COLUMN_PRODUCT_NAME, "Jump Rope");
+        mTextInsertValues.put(ProductEntry.COLUMN_PRODUCT_PRICE, "1399");
+        mTextInsertValues.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, "33");
+        mTextInsertValues.put(ProductEntry.COLUMN_PRODUCT_SUPPLIER, "Acme");
+        mTextInsertValues.put(ProductEntry.COLUMN_PRODUCT_REORDER_POINT, "5");
+
+        mQuantityUpdateValues = new ContentValues();
+        mQuantityUpdateValues.put(ProductEntry.COLUMN_PRODUCT_QUANTITY, 32);
+    }
+
+    @Benchmark
+    public ContentValues validateInsert() {
+        ProductValidator.validateInsertValues(mInsertValues);
+        return mInsertValues;
+    }
+
+    @Benchmark
+    public ContentValues validateTextInsert() {
+        ProductValidator.validateInsertValues(mTextInsertValues);
+        return mTextInsertValues;
+    }
+
+    @Benchmark
+    public ContentValues validateBulkInsert() {
+        // A bulk insert checks the columns as well as the values of every row
+        ProductValidator.validateBulkInsertColumns(mInsertValues);
+        ProductValidator.validateInsertValues(mInsertValues);
+        return mInsertValues;
+    }
+
+    @Benchmark
+    public ContentValues validateFullUpdate() {
+        ProductValidator.validateUpdateValues(mInsertValues);
+        return mInsertValues;
+    }
+
+    @Benchmark
+    public ContentValues validateQuantityUpdate() {
+        ProductValidator.validateUpdateValues(mQuantityUpdateValues);
+        return mQuantityUpdateValues;
+    }
+}